@@ -0,0 +1,815 @@
+package pins25.common;
+
+import java.util.*;
+
+/**
+ * Vmesna predstavitev funkcij v obliki SSA.
+ *
+ * Funkcija je sestavljena iz osnovnih blokov. Vsak ukaz, ki izracuna vrednost,
+ * je hkrati tudi ta vrednost (operandi ukaza so kar ukazi, ki izracunajo
+ * vrednosti operandov). Lokalne spremenljivke, katerih naslov se ne uporablja,
+ * so predstavljene z vrednostmi in funkcijami phi, vse ostale pa z ukazi za
+ * dostop do pomnilnika.
+ *
+ * Ker je vmesna predstavitev zgrajena iz kode skladovnega stroja, ima vsak blok
+ * tudi seznam vrednosti, ki so ob vstopu v blok na skladu (npr. pri izracunu
+ * vrednosti logicnih izrazov).
+ */
+public class IR {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public IR() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Funkcija.
+	 */
+	public static class Function {
+
+		/** Labela funkcije (glej {@link Labels}). */
+		public final int label;
+
+		/** Klicni zapis funkcije. */
+		public final Mem.Frame frame;
+
+		/**
+		 * Velikost dela klicnega zapisa pod kazalcem na klicni zapis (skupaj s
+		 * kazalcem na klicni zapis in povratnim naslovom).
+		 */
+		public int frameSize;
+
+		/** Osnovni bloki v vrstnem redu, v katerem se prevedejo (prvi je vstopni). */
+		public final List<Block> blocks = new ArrayList<Block>();
+
+		/**
+		 * Odmiki besed v klicnem zapisu, ki se ne spreminjajo in katerih naslov se ne
+		 * uporablja (branje iz njih je enako kot konstanta).
+		 */
+		public final Set<Integer> readOnlySlots = new HashSet<Integer>();
+
+		/** Odmiki besed v klicnem zapisu, ki so predstavljene z vrednostmi. */
+		public final Set<Integer> promotedSlots = new TreeSet<Integer>();
+
+		/** Stevec vrednosti. */
+		private int nextId = 0;
+
+		/**
+		 * Ustvari novo funkcijo.
+		 *
+		 * @param label     Labela funkcije.
+		 * @param frame     Klicni zapis funkcije.
+		 * @param frameSize Velikost dela klicnega zapisa pod kazalcem na klicni
+		 *                  zapis.
+		 */
+		public Function(final int label, final Mem.Frame frame, final int frameSize) {
+			this.label = label;
+			this.frame = frame;
+			this.frameSize = frameSize;
+		}
+
+		/**
+		 * Vrne vstopni blok funkcije.
+		 *
+		 * @return Vstopni blok funkcije.
+		 */
+		public Block entry() {
+			return blocks.getFirst();
+		}
+
+		/**
+		 * Doda ukaz v funkcijo (ukazu doloci stevilko).
+		 *
+		 * @param <I>   Vrsta ukaza.
+		 * @param instr Ukaz.
+		 * @return Ukaz.
+		 */
+		public <I extends Instr> I add(final I instr) {
+			instr.id = nextId++;
+			return instr;
+		}
+
+		/**
+		 * Nadomesti vrednosti z drugimi vrednostmi (v operandih, funkcijah phi in
+		 * seznamih vrednosti na skladu).
+		 *
+		 * @param replacement Preslikava, ki vrednostim doloca nadomestne vrednosti.
+		 */
+		public void replace(final Map<Instr, Instr> replacement) {
+			if (replacement.isEmpty())
+				return;
+			for (final Block block : blocks) {
+				block.stack.replaceAll(value -> resolve(replacement, value));
+				for (final Instr instr : block.all())
+					instr.ops.replaceAll(value -> resolve(replacement, value));
+			}
+		}
+
+		/**
+		 * Vrne koncno nadomestno vrednost.
+		 *
+		 * @param replacement Preslikava, ki vrednostim doloca nadomestne vrednosti.
+		 * @param value       Vrednost.
+		 * @return Koncna nadomestna vrednost.
+		 */
+		private static Instr resolve(final Map<Instr, Instr> replacement, Instr value) {
+			while (replacement.containsKey(value))
+				value = replacement.get(value);
+			return value;
+		}
+
+		/**
+		 * Vrne vse uporabe vrednosti (vrednosti na skladu ob vstopu v blok se ne
+		 * stejejo).
+		 *
+		 * @return Preslikava, ki vsaki vrednosti doloci ukaze, ki jo uporabijo.
+		 */
+		public Map<Instr, List<Instr>> uses() {
+			final Map<Instr, List<Instr>> uses = new HashMap<Instr, List<Instr>>();
+			for (final Block block : blocks)
+				for (final Instr instr : block.all())
+					for (final Instr op : instr.ops)
+						uses.computeIfAbsent(op, _ -> new ArrayList<Instr>()).add(instr);
+			return uses;
+		}
+
+		/**
+		 * Odstrani bloke, ki niso dosegljivi iz vstopnega bloka, in popravi
+		 * predhodnike ostalih blokov.
+		 *
+		 * @return Ali je bil kaksen blok odstranjen.
+		 */
+		public boolean removeUnreachable() {
+			final Set<Block> reachable = new HashSet<Block>();
+			final Deque<Block> worklist = new ArrayDeque<Block>();
+			reachable.add(entry());
+			worklist.add(entry());
+			while (!worklist.isEmpty())
+				for (final Block succ : worklist.removeFirst().succs())
+					if (reachable.add(succ))
+						worklist.add(succ);
+			if (reachable.size() == blocks.size())
+				return false;
+			blocks.retainAll(reachable);
+			for (final Block block : blocks)
+				for (int pred = block.preds.size() - 1; pred >= 0; pred--)
+					if (!reachable.contains(block.preds.get(pred)))
+						block.removePred(pred);
+			return true;
+		}
+
+		/**
+		 * Vrne bloke v obratnem vrstnem redu obiska v globino.
+		 *
+		 * @return Bloki v obratnem vrstnem redu obiska v globino.
+		 */
+		public List<Block> reversePostorder() {
+			final List<Block> postorder = new ArrayList<Block>();
+			final Set<Block> visited = new HashSet<Block>();
+			final Deque<Iterator<Block>> stack = new ArrayDeque<Iterator<Block>>();
+			final Deque<Block> path = new ArrayDeque<Block>();
+			visited.add(entry());
+			stack.push(entry().succs().iterator());
+			path.push(entry());
+			while (!stack.isEmpty()) {
+				if (stack.peek().hasNext()) {
+					final Block succ = stack.peek().next();
+					if (visited.add(succ)) {
+						stack.push(succ.succs().iterator());
+						path.push(succ);
+					}
+				} else {
+					stack.pop();
+					postorder.add(path.pop());
+				}
+			}
+			return postorder.reversed();
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder string = new StringBuilder();
+			string.append("function " + Labels.name(label) + " (frame size " + frameSize + ")\n");
+			for (final Block block : blocks) {
+				string.append(block + ":");
+				if (!block.preds.isEmpty())
+					string.append(" preds=" + block.preds.stream().map(Block::toString).toList());
+				if (!block.stack.isEmpty())
+					string.append(" stack=" + block.stack.stream().map(Instr::ref).toList());
+				string.append("\n");
+				for (final Instr instr : block.all())
+					string.append("    " + instr + "\n");
+			}
+			return string.toString();
+		}
+
+	}
+
+	/**
+	 * Osnovni blok.
+	 */
+	public static class Block {
+
+		/** Labela bloka (glej {@link Labels}). */
+		public final int label;
+
+		/**
+		 * Predhodniki bloka (operandi funkcij phi so v enakem vrstnem redu kot
+		 * predhodniki).
+		 */
+		public final List<Block> preds = new ArrayList<Block>();
+
+		/** Funkcije phi na zacetku bloka. */
+		public final List<Phi> phis = new ArrayList<Phi>();
+
+		/** Ukazi bloka (brez funkcij phi in brez zakljucnega skoka). */
+		public final List<Instr> instrs = new ArrayList<Instr>();
+
+		/** Vrednosti, ki so ob vstopu v blok na skladu (zadnja je na vrhu). */
+		public final List<Instr> stack = new ArrayList<Instr>();
+
+		/** Zakljucni ukaz bloka. */
+		public Instr term;
+
+		/**
+		 * Ustvari nov osnovni blok.
+		 *
+		 * @param label Labela bloka.
+		 */
+		public Block(final int label) {
+			this.label = label;
+		}
+
+		/**
+		 * Vrne naslednike bloka.
+		 *
+		 * @return Nasledniki bloka.
+		 */
+		public List<Block> succs() {
+			return switch (term) {
+				case Jump jump -> List.of(jump.target);
+				case Branch branch -> branch.thenBlock == branch.elseBlock ? List.of(branch.thenBlock)
+						: List.of(branch.thenBlock, branch.elseBlock);
+				case null, default -> List.of();
+			};
+		}
+
+		/**
+		 * Vrne vse ukaze bloka (funkcije phi, ukaze in zakljucni ukaz).
+		 *
+		 * @return Vsi ukazi bloka.
+		 */
+		public List<Instr> all() {
+			final List<Instr> all = new ArrayList<Instr>(phis);
+			all.addAll(instrs);
+			if (term != null)
+				all.add(term);
+			return all;
+		}
+
+		/**
+		 * Odstrani predhodnika bloka (in pripadajoce operande funkcij phi).
+		 *
+		 * @param pred Mesto predhodnika.
+		 */
+		public void removePred(final int pred) {
+			preds.remove(pred);
+			for (final Phi phi : phis)
+				phi.ops.remove(pred);
+		}
+
+		/**
+		 * Zamenja predhodnika bloka.
+		 *
+		 * @param oldPred Stari predhodnik.
+		 * @param newPred Novi predhodnik.
+		 */
+		public void replacePred(final Block oldPred, final Block newPred) {
+			preds.replaceAll(pred -> pred == oldPred ? newPred : pred);
+		}
+
+		/**
+		 * Vrne vrednosti, ki morajo biti na skladu ob prehodu v dani blok.
+		 *
+		 * @param succ Naslednik bloka.
+		 * @return Vrednosti na skladu ob prehodu v naslednika.
+		 */
+		public List<Instr> exitStack(final Block succ) {
+			final List<Instr> stack = new ArrayList<Instr>();
+			final int pred = succ.preds.indexOf(this);
+			for (final Instr value : succ.stack)
+				stack.add((value instanceof Phi phi) && (phi.block == succ) ? phi.ops.get(pred) : value);
+			return stack;
+		}
+
+		@Override
+		public String toString() {
+			return Labels.name(label);
+		}
+
+	}
+
+	/**
+	 * Ukaz (in hkrati vrednost, ki jo ukaz izracuna).
+	 */
+	public static abstract class Instr {
+
+		/** Stevilka vrednosti. */
+		public int id;
+
+		/** Blok, v katerem je ukaz. */
+		public Block block;
+
+		/** Operandi ukaza. */
+		public final List<Instr> ops;
+
+		/** Lokacija dela izvorne kode, ki se prevede v ta ukaz. */
+		public final Report.Locatable loc;
+
+		/**
+		 * Ustvari nov ukaz.
+		 *
+		 * @param loc Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 * @param ops Operandi ukaza.
+		 */
+		public Instr(final Report.Locatable loc, final Instr... ops) {
+			this.loc = loc;
+			this.ops = new ArrayList<Instr>(Arrays.asList(ops));
+		}
+
+		/**
+		 * Ali ukaz izracuna vrednost.
+		 *
+		 * @return Ali ukaz izracuna vrednost.
+		 */
+		public boolean hasValue() {
+			return true;
+		}
+
+		/**
+		 * Ali je ukaz brez stranskih ucinkov in je njegova vrednost odvisna le od
+		 * operandov.
+		 *
+		 * @return Ali je ukaz cist.
+		 */
+		public boolean isPure() {
+			return false;
+		}
+
+		/**
+		 * Vrne oznako vrednosti.
+		 *
+		 * @return Oznaka vrednosti.
+		 */
+		public String ref() {
+			return "%" + id;
+		}
+
+		/**
+		 * Vrne opis ukaza brez operandov.
+		 *
+		 * @return Opis ukaza.
+		 */
+		protected abstract String name();
+
+		@Override
+		public String toString() {
+			return (hasValue() ? ref() + " = " : "") + name()
+					+ (ops.isEmpty() ? "" : " " + String.join(", ", ops.stream().map(Instr::ref).toList()));
+		}
+
+	}
+
+	/** Konstanta. */
+	public static class Const extends Instr {
+
+		/** Vrednost konstante. */
+		public final int value;
+
+		/**
+		 * Ustvari novo konstanto.
+		 *
+		 * @param value Vrednost konstante.
+		 * @param loc   Lokacija.
+		 */
+		public Const(final int value, final Report.Locatable loc) {
+			super(loc);
+			this.value = value;
+		}
+
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+
+		@Override
+		protected String name() {
+			return "const " + value;
+		}
+
+	}
+
+	/** Naslov labele. */
+	public static class Name extends Instr {
+
+		/** Labela (glej {@link Labels}). */
+		public final int label;
+
+		/**
+		 * Ustvari nov naslov labele.
+		 *
+		 * @param label Labela.
+		 * @param loc   Lokacija.
+		 */
+		public Name(final int label, final Report.Locatable loc) {
+			super(loc);
+			this.label = label;
+		}
+
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+
+		@Override
+		protected String name() {
+			return "name " + Labels.name(label);
+		}
+
+	}
+
+	/** Naslov besede v klicnem zapisu (kazalec na klicni zapis in odmik). */
+	public static class Slot extends Instr {
+
+		/** Odmik od kazalca na klicni zapis. */
+		public final int offset;
+
+		/**
+		 * Ustvari nov naslov besede v klicnem zapisu.
+		 *
+		 * @param offset Odmik od kazalca na klicni zapis.
+		 * @param loc    Lokacija.
+		 */
+		public Slot(final int offset, final Report.Locatable loc) {
+			super(loc);
+			this.offset = offset;
+		}
+
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+
+		@Override
+		protected String name() {
+			return "slot FP" + (offset < 0 ? "" : "+") + offset;
+		}
+
+	}
+
+	/** Kazalec na klicni zapis dane globine (iz prikaza). */
+	public static class Display extends Instr {
+
+		/** Globina klicnega zapisa. */
+		public final int depth;
+
+		/**
+		 * Ustvari nov kazalec na klicni zapis dane globine.
+		 *
+		 * @param depth Globina klicnega zapisa.
+		 * @param loc   Lokacija.
+		 */
+		public Display(final int depth, final Report.Locatable loc) {
+			super(loc);
+			this.depth = depth;
+		}
+
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+
+		@Override
+		protected String name() {
+			return "display " + depth;
+		}
+
+	}
+
+	/** Enomestna operacija. */
+	public static class Un extends Instr {
+
+		/** Operacija ({@code NOT} ali {@code NEG}). */
+		public final PDM.OPER.Oper oper;
+
+		/**
+		 * Ustvari novo enomestno operacijo.
+		 *
+		 * @param oper Operacija.
+		 * @param expr Operand.
+		 * @param loc  Lokacija.
+		 */
+		public Un(final PDM.OPER.Oper oper, final Instr expr, final Report.Locatable loc) {
+			super(loc, expr);
+			this.oper = oper;
+		}
+
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+
+		@Override
+		protected String name() {
+			return oper.toString().toLowerCase();
+		}
+
+	}
+
+	/** Dvomestna operacija. */
+	public static class Bin extends Instr {
+
+		/** Operacija. */
+		public final PDM.OPER.Oper oper;
+
+		/**
+		 * Ustvari novo dvomestno operacijo.
+		 *
+		 * @param oper Operacija.
+		 * @param fst  Prvi operand.
+		 * @param snd  Drugi operand.
+		 * @param loc  Lokacija.
+		 */
+		public Bin(final PDM.OPER.Oper oper, final Instr fst, final Instr snd, final Report.Locatable loc) {
+			super(loc, fst, snd);
+			this.oper = oper;
+		}
+
+		/**
+		 * Deljenje je cisto le, ce delitelj zagotovo ni {@code 0}.
+		 */
+		@Override
+		public boolean isPure() {
+			if ((oper == PDM.OPER.Oper.DIV) || (oper == PDM.OPER.Oper.MOD))
+				return (ops.get(1) instanceof Const c) && (c.value != 0);
+			return true;
+		}
+
+		@Override
+		protected String name() {
+			return oper.toString().toLowerCase();
+		}
+
+	}
+
+	/** Branje iz pomnilnika. */
+	public static class Load extends Instr {
+
+		/**
+		 * Ustvari novo branje iz pomnilnika.
+		 *
+		 * @param addr Naslov.
+		 * @param loc  Lokacija.
+		 */
+		public Load(final Instr addr, final Report.Locatable loc) {
+			super(loc, addr);
+		}
+
+		@Override
+		protected String name() {
+			return "load";
+		}
+
+	}
+
+	/** Pisanje v pomnilnik. */
+	public static class Store extends Instr {
+
+		/**
+		 * Ustvari novo pisanje v pomnilnik.
+		 *
+		 * @param value Vrednost.
+		 * @param addr  Naslov.
+		 * @param loc   Lokacija.
+		 */
+		public Store(final Instr value, final Instr addr, final Report.Locatable loc) {
+			super(loc, value, addr);
+		}
+
+		@Override
+		public boolean hasValue() {
+			return false;
+		}
+
+		@Override
+		protected String name() {
+			return "store";
+		}
+
+	}
+
+	/** Inicializacija pomnilnika (ukaz {@link PDM.INIT}). */
+	public static class Init extends Instr {
+
+		/** Stevilo besed, ki jih zapise inicializacija, ali {@code null}, ce ni znano. */
+		public final Integer size;
+
+		/**
+		 * Ustvari novo inicializacijo pomnilnika.
+		 *
+		 * @param dst  Naslov pomnilnika.
+		 * @param init Naslov opisa zacetnih vrednosti.
+		 * @param size Stevilo besed, ki jih zapise inicializacija, ali {@code null}.
+		 * @param loc  Lokacija.
+		 */
+		public Init(final Instr dst, final Instr init, final Integer size, final Report.Locatable loc) {
+			super(loc, dst, init);
+			this.size = size;
+		}
+
+		@Override
+		public boolean hasValue() {
+			return false;
+		}
+
+		@Override
+		protected String name() {
+			return "init";
+		}
+
+	}
+
+	/** Klic funkcije (operandi so vrednosti na skladu: argumenti, staticna povezava in naslov funkcije). */
+	public static class Call extends Instr {
+
+		/** Klicni zapis klicane funkcije. */
+		public final Mem.Frame frame;
+
+		/**
+		 * Ali je klic na repnem mestu (klicana funkcija lahko prevzame klicni zapis,
+		 * ce funkcija takoj vrne rezultat klica).
+		 */
+		public final boolean tail;
+
+		/**
+		 * Ustvari nov klic funkcije.
+		 *
+		 * @param frame Klicni zapis klicane funkcije.
+		 * @param ops   Argumenti (zadnji je prvi), staticna povezava in naslov
+		 *              funkcije.
+		 * @param loc   Lokacija.
+		 */
+		public Call(final Mem.Frame frame, final List<Instr> ops, final Report.Locatable loc) {
+			this(frame, ops, false, loc);
+		}
+
+		/**
+		 * Ustvari nov klic funkcije.
+		 *
+		 * @param frame Klicni zapis klicane funkcije.
+		 * @param ops   Argumenti (zadnji je prvi), staticna povezava in naslov
+		 *              funkcije.
+		 * @param tail  Ali je klic na repnem mestu.
+		 * @param loc   Lokacija.
+		 */
+		public Call(final Mem.Frame frame, final List<Instr> ops, final boolean tail, final Report.Locatable loc) {
+			super(loc);
+			this.frame = frame;
+			this.tail = tail;
+			this.ops.addAll(ops);
+		}
+
+		@Override
+		protected String name() {
+			return tail ? "tail call" : "call";
+		}
+
+	}
+
+	/** Funkcija phi. */
+	public static class Phi extends Instr {
+
+		/**
+		 * Odmik besede v klicnem zapisu, katere vrednost predstavlja funkcija, ali
+		 * {@code null}, ce funkcija predstavlja vrednost na skladu.
+		 */
+		public final Integer slot;
+
+		/**
+		 * Ustvari novo funkcijo phi.
+		 *
+		 * @param slot Odmik besede v klicnem zapisu ali {@code null}.
+		 * @param loc  Lokacija.
+		 */
+		public Phi(final Integer slot, final Report.Locatable loc) {
+			super(loc);
+			this.slot = slot;
+		}
+
+		@Override
+		public boolean isPure() {
+			return true;
+		}
+
+		@Override
+		protected String name() {
+			return "phi";
+		}
+
+	}
+
+	/** Brezpogojni skok. */
+	public static class Jump extends Instr {
+
+		/** Ciljni blok. */
+		public Block target;
+
+		/**
+		 * Ustvari nov brezpogojni skok.
+		 *
+		 * @param target Ciljni blok.
+		 * @param loc    Lokacija.
+		 */
+		public Jump(final Block target, final Report.Locatable loc) {
+			super(loc);
+			this.target = target;
+		}
+
+		@Override
+		public boolean hasValue() {
+			return false;
+		}
+
+		@Override
+		protected String name() {
+			return "jump " + target;
+		}
+
+	}
+
+	/** Pogojni skok. */
+	public static class Branch extends Instr {
+
+		/** Blok, ki se izvede, ce pogoj velja. */
+		public Block thenBlock;
+
+		/** Blok, ki se izvede, ce pogoj ne velja. */
+		public Block elseBlock;
+
+		/**
+		 * Ustvari nov pogojni skok.
+		 *
+		 * @param cond      Pogoj.
+		 * @param thenBlock Blok, ki se izvede, ce pogoj velja.
+		 * @param elseBlock Blok, ki se izvede, ce pogoj ne velja.
+		 * @param loc       Lokacija.
+		 */
+		public Branch(final Instr cond, final Block thenBlock, final Block elseBlock, final Report.Locatable loc) {
+			super(loc, cond);
+			this.thenBlock = thenBlock;
+			this.elseBlock = elseBlock;
+		}
+
+		@Override
+		public boolean hasValue() {
+			return false;
+		}
+
+		@Override
+		protected String name() {
+			return "branch " + thenBlock + ", " + elseBlock + ",";
+		}
+
+	}
+
+	/** Vrnitev iz funkcije. */
+	public static class Ret extends Instr {
+
+		/** Velikost parametrov (skupaj s staticno povezavo). */
+		public final int parsSize;
+
+		/**
+		 * Ustvari novo vrnitev iz funkcije.
+		 *
+		 * @param value    Vrednost funkcije.
+		 * @param parsSize Velikost parametrov.
+		 * @param loc      Lokacija.
+		 */
+		public Ret(final Instr value, final int parsSize, final Report.Locatable loc) {
+			super(loc, value);
+			this.parsSize = parsSize;
+		}
+
+		@Override
+		public boolean hasValue() {
+			return false;
+		}
+
+		@Override
+		protected String name() {
+			return "ret " + parsSize + ",";
+		}
+
+	}
+
+}
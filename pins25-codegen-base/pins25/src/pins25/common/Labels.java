@@ -0,0 +1,193 @@
+package pins25.common;
+
+import java.util.*;
+
+/**
+ * Tabela oznak.
+ *
+ * Oznake ukazov skladovnega in registrskega stroja ter osnovnih blokov vmesne
+ * predstavitve so cela stevila. Oznaka je dolocena s svojimi sestavnimi deli
+ * (vrsto, imenom in lokacijo v izvorni kodi oziroma oznako, iz katere je
+ * izpeljana), zato enaki sestavni deli vedno dajo enako oznako. Ime oznake se
+ * sestavi sele, ko je potrebno (za izpis in sledenje delovanja strojev).
+ */
+public class Labels {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private Labels() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Oznaka, podana z imenom.
+	 *
+	 * @param name Ime oznake.
+	 */
+	private record Named(String name) {
+	}
+
+	/**
+	 * Oznaka dela izvorne kode.
+	 *
+	 * @param kind   Vrsta oznake.
+	 * @param name   Ime definicije ali {@code null}.
+	 * @param line   Vrstica v izvorni kodi.
+	 * @param column Stolpec v izvorni kodi.
+	 */
+	private record Located(String kind, String name, int line, int column) {
+	}
+
+	/**
+	 * Oznaka, izpeljana iz druge oznake.
+	 *
+	 * @param base   Oznaka, iz katere je izpeljana.
+	 * @param suffix Pripona imena.
+	 * @param other  Oznaka, katere ime sledi priponi, ali {@code -1}.
+	 */
+	private record Derived(int base, String suffix, int other) {
+	}
+
+	/** Oznake po sestavnih delih. */
+	private static final HashMap<Record, Integer> labels = new HashMap<Record, Integer>();
+
+	/** Sestavni deli oznak. */
+	private static final ArrayList<Record> parts = new ArrayList<Record>();
+
+	/** Ze sestavljena imena oznak. */
+	private static final ArrayList<String> names = new ArrayList<String>();
+
+	/**
+	 * Vrne oznako z danimi sestavnimi deli.
+	 *
+	 * @param part Sestavni deli oznake.
+	 * @return Oznaka.
+	 */
+	private static int intern(final Record part) {
+		final Integer label = labels.get(part);
+		if (label != null)
+			return label;
+		labels.put(part, parts.size());
+		parts.add(part);
+		names.add(null);
+		return parts.size() - 1;
+	}
+
+	/**
+	 * Vrne oznako z danim imenom.
+	 *
+	 * @param name Ime oznake.
+	 * @return Oznaka.
+	 */
+	public static int label(final String name) {
+		return intern(new Named(name));
+	}
+
+	/**
+	 * Vrne oznako dela izvorne kode (z imenom {@code kind:name@line:column}).
+	 *
+	 * @param kind Vrsta oznake.
+	 * @param name Ime definicije ali {@code null}.
+	 * @param loc  Lokacija dela izvorne kode.
+	 * @return Oznaka.
+	 */
+	public static int label(final String kind, final String name, final Report.Locatable loc) {
+		final Report.Location location = loc.location();
+		return intern(new Located(kind, name, location.begLine(), location.begColumn()));
+	}
+
+	/**
+	 * Vrne oznako, izpeljano iz dane oznake (z imenom, ki je ime dane oznake z
+	 * dodano pripono).
+	 *
+	 * @param base   Oznaka, iz katere je izpeljana.
+	 * @param suffix Pripona imena.
+	 * @return Oznaka.
+	 */
+	public static int label(final int base, final String suffix) {
+		return intern(new Derived(base, suffix, -1));
+	}
+
+	/**
+	 * Vrne oznako, izpeljano iz dveh oznak (z imenom, ki je sestavljeno iz imena
+	 * prve oznake, pripone in imena druge oznake).
+	 *
+	 * @param base   Oznaka, iz katere je izpeljana.
+	 * @param suffix Pripona imena.
+	 * @param other  Oznaka, katere ime sledi priponi.
+	 * @return Oznaka.
+	 */
+	public static int label(final int base, final String suffix, final int other) {
+		return intern(new Derived(base, suffix, other));
+	}
+
+	/**
+	 * Vrne ime oznake.
+	 *
+	 * @param label Oznaka.
+	 * @return Ime oznake.
+	 */
+	public static String name(final int label) {
+		String name = names.get(label);
+		if (name == null) {
+			name = switch (parts.get(label)) {
+				case Named named -> named.name();
+				case Located located -> located.kind() + (located.name() == null ? "" : ":" + located.name()) + "@"
+						+ located.line() + ":" + located.column();
+				case Derived derived ->
+					name(derived.base()) + derived.suffix() + (derived.other() < 0 ? "" : name(derived.other()));
+				default -> throw new Report.InternalError();
+			};
+			names.set(label, name);
+		}
+		return name;
+	}
+
+	/**
+	 * Pozabi vse oznake. Oznake, ustvarjene pred klicem, postanejo neveljavne.
+	 */
+	public static void reset() {
+		labels.clear();
+		parts.clear();
+		names.clear();
+	}
+
+	/**
+	 * Vrne oznako, iz katere je izpeljana dana oznaka.
+	 *
+	 * @param label Oznaka.
+	 * @return Oznaka, iz katere je izpeljana, ali {@code -1}, ce dana oznaka ni
+	 *         izpeljana.
+	 */
+	public static int base(final int label) {
+		return parts.get(label) instanceof Derived derived ? derived.base() : -1;
+	}
+
+	/**
+	 * Vrne vrsto oznake dela izvorne kode.
+	 *
+	 * @param label Oznaka.
+	 * @return Vrsta oznake ali {@code null}, ce oznaka ni oznaka dela izvorne
+	 *         kode.
+	 */
+	public static String kind(final int label) {
+		return parts.get(label) instanceof Located located ? located.kind() : null;
+	}
+
+	/**
+	 * Ugotovi, ali je oznako ustvaril prevajalnik (in ni podana z imenom, kot na
+	 * primer oznaka funkcije {@code main} ali 'sistemske' funkcije).
+	 *
+	 * @param label Oznaka.
+	 * @return Ali je oznako ustvaril prevajalnik.
+	 */
+	public static boolean generated(final int label) {
+		return switch (parts.get(label)) {
+			case Named named -> named.name().contains("@");
+			case Located __ -> true;
+			case Derived derived -> generated(derived.base()) || derived.suffix().contains("@")
+					|| ((derived.other() >= 0) && generated(derived.other()));
+			default -> throw new Report.InternalError();
+		};
+	}
+
+}
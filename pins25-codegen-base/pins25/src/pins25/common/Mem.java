@@ -39,6 +39,9 @@ public class Mem {
 		 */
 		public final Integer varsSize;
 
+		/** Stevilo virtualnih registrov za spremenljivke in parametre. */
+		public final Integer numRegs;
+
 		/** Dostopi do parametrov. */
 		public final List<RelAccess> debugPars;
 
@@ -58,10 +61,29 @@ public class Mem {
 		 */
 		public Frame(final String name, final Integer depth, final Integer parsSize, final Integer varsSize,
 				List<RelAccess> debugPars, final List<RelAccess> debugVars) {
+			this(name, depth, parsSize, varsSize, 0, debugPars, debugVars);
+		}
+
+		/**
+		 * Ustvari nov klicni zapis.
+		 * 
+		 * @param name      Ime oznake, torej polno ime funkcije.
+		 * @param depth     Staticna globina funkcije.
+		 * @param parsSize  Skupna velikost parametrov (skupaj s staticno povezavo).
+		 * @param varsSize  Skupna velikost lokalnih spremenljivk (skupaj s shranjenim
+		 *                  klicnim kazalcem in povratnim naslovom.
+		 * @param numRegs   Stevilo virtualnih registrov za spremenljivke in
+		 *                  parametre.
+		 * @param debugPars Dostopi do parametrov.
+		 * @param debugVars Dostopi do lokalnih spremenljivk.
+		 */
+		public Frame(final String name, final Integer depth, final Integer parsSize, final Integer varsSize,
+				final Integer numRegs, List<RelAccess> debugPars, final List<RelAccess> debugVars) {
 			this.name = name;
 			this.depth = depth;
 			this.parsSize = parsSize;
 			this.varsSize = varsSize;
+			this.numRegs = numRegs;
 			this.debugPars = Collections.unmodifiableList(debugPars);
 			this.debugVars = Collections.unmodifiableList(debugVars);
 		}
@@ -118,15 +140,26 @@ public class Mem {
 
 	/**
 	 * Relativni dostop do spremenljivke (na skladu).
+	 * 
+	 * Spremenljivka, ki ni dosegljiva prek naslova ali iz gnezdenih funkcij, je
+	 * lahko namesto v klicnem zapisu v virtualnem registru klicnega zapisa; lokalna
+	 * spremenljivka v virtualnem registru nima odmika, parameter pa ga ohrani, saj
+	 * ga klicoca funkcija prenese prek pomnilnika.
 	 */
 	public static class RelAccess extends Access {
 
-		/** Odmik od vrha klicnega zapisa, torej od vrednosti klicnega kazalca. */
+		/**
+		 * Odmik od vrha klicnega zapisa, torej od vrednosti klicnega kazalca (ali
+		 * {@code null}, ce spremenljivka ni v pomnilniku).
+		 */
 		public final Integer offset;
 
 		/** Staticna globina spremenljivke. */
 		public final Integer depth;
 
+		/** Virtualni register (ali {@code null}, ce je spremenljivka v pomnilniku). */
+		public final Integer reg;
+
 		/** Ime spremenljivke. */
 		public final String debugName;
 
@@ -142,9 +175,26 @@ public class Mem {
 		 */
 		public RelAccess(final Integer offset, final Integer depth, Integer size, final Vector<Integer> inits,
 				final String debugName) {
+			this(offset, depth, null, size, inits, debugName);
+		}
+
+		/**
+		 * Ustvari nov relativni dostop do spremenljivke.
+		 * 
+		 * @param offset    Odmik od vrha klicnega zapisa, torej od vrednosti klicnega
+		 *                  kazalca (ali {@code null}).
+		 * @param depth     Staticna globina spremenljivke.
+		 * @param reg       Virtualni register (ali {@code null}).
+		 * @param size      Velikost spremenljivke.
+		 * @param inits     Zacetna vrednost spremenljivke.
+		 * @param debugName Ime spremenljivke.
+		 */
+		public RelAccess(final Integer offset, final Integer depth, final Integer reg, Integer size,
+				final Vector<Integer> inits, final String debugName) {
 			super(size, inits);
 			this.offset = offset;
 			this.depth = depth;
+			this.reg = reg;
 			this.debugName = debugName;
 		}
 
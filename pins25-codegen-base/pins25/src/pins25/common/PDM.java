@@ -65,18 +65,18 @@ public class PDM {
 	 */
 	public static class LABEL extends INSTR implements DataInstr, CodeInstr {
 
-		/** Ime oznake. */
-		public final String name;
+		/** Oznaka (glej {@link Labels}). */
+		public final int label;
 
 		/**
 		 * Ustvari nov ukaz {@link LABEL}.
 		 * 
-		 * @param name          Ime oznake.
+		 * @param label         Oznaka.
 		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
 		 */
-		public LABEL(final String name, final Report.Locatable debugLocation) {
+		public LABEL(final int label, final Report.Locatable debugLocation) {
 			super(debugLocation);
-			this.name = name;
+			this.label = label;
 		}
 
 		@Override
@@ -86,7 +86,7 @@ public class PDM {
 
 		@Override
 		public String toString() {
-			return "LABEL " + name;
+			return "LABEL " + Labels.name(label);
 		}
 
 	}
@@ -218,6 +218,110 @@ public class PDM {
 
 	}
 
+	/**
+	 * Prenos bajta iz pomnilnika na sklad (razsirjenega z niclami na besedo).
+	 */
+	public static class LDB extends INSTR implements CodeInstr {
+
+		/**
+		 * Ustvari nok ukaz {@link LDB}.
+		 * 
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public LDB(final Report.Locatable debugLocation) {
+			super(debugLocation);
+		}
+
+		@Override
+		public String toString() {
+			return "LDB";
+		}
+
+	}
+
+	/**
+	 * Prenos najnizjega bajta vrednosti s sklada v pomnilnik.
+	 */
+	public static class STB extends INSTR implements CodeInstr {
+
+		/**
+		 * Ustvari nok ukaz {@link STB}.
+		 * 
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public STB(final Report.Locatable debugLocation) {
+			super(debugLocation);
+		}
+
+		@Override
+		public String toString() {
+			return "STB";
+		}
+
+	}
+
+	/**
+	 * Prenos vrednosti virtualnega registra klicnega zapisa na sklad.
+	 */
+	public static class VLOAD extends INSTR implements CodeInstr {
+
+		/** Virtualni register. */
+		public final Integer reg;
+
+		/**
+		 * Ustvari nok ukaz {@link VLOAD}.
+		 * 
+		 * @param reg           Virtualni register.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public VLOAD(final Integer reg, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.reg = reg;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "VLOAD " + reg;
+		}
+
+	}
+
+	/**
+	 * Prenos vrednosti s sklada v virtualni register klicnega zapisa.
+	 */
+	public static class VSAVE extends INSTR implements CodeInstr {
+
+		/** Virtualni register. */
+		public final Integer reg;
+
+		/**
+		 * Ustvari nok ukaz {@link VSAVE}.
+		 * 
+		 * @param reg           Virtualni register.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public VSAVE(final Integer reg, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.reg = reg;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "VSAVE " + reg;
+		}
+
+	}
+
 	/**
 	 * Spreminjanje lokacija vrha sklada.
 	 */
@@ -239,6 +343,38 @@ public class PDM {
 
 	}
 
+	/**
+	 * Rezervacija prostora za lokalne spremenljivke na vrhu sklada: vrh sklada se
+	 * premakne v enem koraku, rezerviran prostor pa napolni z niclami.
+	 */
+	public static class ENTER extends INSTR implements CodeInstr {
+
+		/** Velikost rezerviranega prostora. */
+		public final Integer size;
+
+		/**
+		 * Ustvari nok ukaz {@link ENTER}.
+		 * 
+		 * @param size          Velikost rezerviranega prostora.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public ENTER(final Integer size, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.size = size;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "ENTER " + size;
+		}
+
+	}
+
 	/**
 	 * Prenos konstante na sklad.
 	 */
@@ -275,18 +411,18 @@ public class PDM {
 	 */
 	public static class NAME extends INSTR implements CodeInstr {
 
-		/** Ime oznake. */
-		public final String name;
+		/** Oznaka (glej {@link Labels}). */
+		public final int label;
 
 		/**
 		 * Ustvari nok ukaz {@link NAME}.
 		 * 
-		 * @param name          Ime oznake.
+		 * @param label         Oznaka.
 		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
 		 */
-		public NAME(final String name, final Report.Locatable debugLocation) {
+		public NAME(final int label, final Report.Locatable debugLocation) {
 			super(debugLocation);
-			this.name = name;
+			this.label = label;
 		}
 
 		@Override
@@ -296,7 +432,7 @@ public class PDM {
 
 		@Override
 		public String toString() {
-			return "NAME " + name;
+			return "NAME " + Labels.name(label);
 		}
 
 	}
@@ -337,6 +473,37 @@ public class PDM {
 
 	}
 
+	/**
+	 * Prenos kazalca na klicni zapis dane globine (iz prikaza) na sklad.
+	 */
+	public static class DISP extends INSTR implements CodeInstr {
+
+		/** Globina klicnega zapisa. */
+		public final Integer depth;
+
+		/**
+		 * Ustvari nok ukaz {@link DISP}.
+		 *
+		 * @param depth         Globina klicnega zapisa.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public DISP(final Integer depth, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.depth = depth;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "DISP " + depth;
+		}
+
+	}
+
 	/**
 	 * Izvedba racunske operacije.
 	 */
@@ -439,28 +606,204 @@ public class PDM {
 
 	}
 
+	/**
+	 * Brezpogojni skok na oznako, podano v ukazu.
+	 */
+	public static class JUMP extends INSTR implements CodeInstr {
+
+		/** Ciljna oznaka. */
+		public final int target;
+
+		/**
+		 * Ustvari nok ukaz {@link JUMP}.
+		 * 
+		 * @param target        Ciljna oznaka.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public JUMP(final int target, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.target = target;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "JUMP " + Labels.name(target);
+		}
+
+	}
+
+	/**
+	 * Pogojni skok na oznako, podano v ukazu (ce pogoj ni izpolnjen, se izvajanje
+	 * nadaljuje z naslednjim ukazom).
+	 */
+	public static class JCOND extends INSTR implements CodeInstr {
+
+		/** Ali se skok izvede, ce je vrednost pogoja razlicna od {@code 0}. */
+		public final boolean ifTrue;
+
+		/** Ciljna oznaka. */
+		public final int target;
+
+		/**
+		 * Ustvari nok ukaz {@link JCOND}.
+		 * 
+		 * @param ifTrue        Ali se skok izvede, ce je vrednost pogoja razlicna od
+		 *                      {@code 0}.
+		 * @param target        Ciljna oznaka.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public JCOND(final boolean ifTrue, final int target, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.ifTrue = ifTrue;
+			this.target = target;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return (ifTrue ? "JT " : "JF ") + Labels.name(target);
+		}
+
+	}
+
 	/**
 	 * Klic podprograma.
 	 */
 	public static class CALL extends INSTR implements CodeInstr {
 
+		/**
+		 * Globina klicnega zapisa klicanega podprograma (vnos v prikazu, ki ga
+		 * nastavi klic) ali {@code -1}, ce klic prikaza ne spremeni.
+		 */
+		public final Integer depth;
+
 		/** Klicni zapis klicanega podprograma. */
 		public final Mem.Frame debugFrame;
 
 		/**
 		 * Ustvari nok ukaz {@link CALL}.
 		 * 
+		 * @param depth         Globina klicnega zapisa klicanega podprograma ali
+		 *                      {@code -1}.
+		 * @param debugFrame    Klicni zapis klicanega podprograma.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public CALL(final Integer depth, final Mem.Frame debugFrame, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.depth = depth;
+			this.debugFrame = debugFrame;
+		}
+
+		@Override
+		public String toString() {
+			return depth < 0 ? "CALL" : "CALL D" + depth;
+		}
+
+	}
+
+	/**
+	 * Klic podprograma, podanega v ukazu: staticna povezava je naslov klicnega
+	 * zapisa na podani globini v prikazu (ali {@code 0} za globino {@code 0}).
+	 */
+	public static class CALLI extends INSTR implements CodeInstr {
+
+		/** Oznaka klicanega podprograma. */
+		public final int target;
+
+		/** Globina klicnega zapisa, na katerega kaze staticna povezava. */
+		public final Integer depth;
+
+		/** Klicni zapis klicanega podprograma. */
+		public final Mem.Frame debugFrame;
+
+		/**
+		 * Ustvari nok ukaz {@link CALLI}.
+		 * 
+		 * @param target        Oznaka klicanega podprograma.
+		 * @param depth         Globina klicnega zapisa, na katerega kaze staticna
+		 *                      povezava.
 		 * @param debugFrame    Klicni zapis klicanega podprograma.
 		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
 		 */
-		public CALL(final Mem.Frame debugFrame, final Report.Locatable debugLocation) {
+		public CALLI(final int target, final Integer depth, final Mem.Frame debugFrame,
+				final Report.Locatable debugLocation) {
 			super(debugLocation);
+			this.target = target;
+			this.depth = depth;
 			this.debugFrame = debugFrame;
 		}
 
+		@Override
+		public Integer size() {
+			return super.size() + 8;
+		}
+
 		@Override
 		public String toString() {
-			return "CALL";
+			return "CALLI " + Labels.name(target) + ",D" + depth;
+		}
+
+	}
+
+	/**
+	 * Klic podprograma na repnem mestu: klicani podprogram prevzame klicni zapis
+	 * klicocega podprograma in se vrne neposredno na mesto njegovega klica.
+	 */
+	public static class TCALL extends INSTR implements CodeInstr {
+
+		/** Velikost argumentov klicanega podprograma (brez staticne povezave). */
+		public final Integer argsSize;
+
+		/** Velikost parametrov klicocega podprograma (brez staticne povezave). */
+		public final Integer parsSize;
+
+		/**
+		 * Globina klicnega zapisa klicanega podprograma (vnos v prikazu, ki ga
+		 * nastavi klic) ali {@code -1}, ce klic prikaza ne spremeni.
+		 */
+		public final Integer depth;
+
+		/** Klicni zapis klicanega podprograma. */
+		public final Mem.Frame debugFrame;
+
+		/**
+		 * Ustvari nok ukaz {@link TCALL}.
+		 * 
+		 * @param argsSize      Velikost argumentov klicanega podprograma (brez
+		 *                      staticne povezave).
+		 * @param parsSize      Velikost parametrov klicocega podprograma (brez
+		 *                      staticne povezave).
+		 * @param depth         Globina klicnega zapisa klicanega podprograma ali
+		 *                      {@code -1}.
+		 * @param debugFrame    Klicni zapis klicanega podprograma.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public TCALL(final Integer argsSize, final Integer parsSize, final Integer depth,
+				final Mem.Frame debugFrame, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.argsSize = argsSize;
+			this.parsSize = parsSize;
+			this.depth = depth;
+			this.debugFrame = debugFrame;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 8;
+		}
+
+		@Override
+		public String toString() {
+			return "TCALL " + argsSize + "," + parsSize + (depth < 0 ? "" : ",D" + depth);
 		}
 
 	}
@@ -491,4 +834,42 @@ public class PDM {
 
 	}
 
-}
\ No newline at end of file
+	/**
+	 * Vrnitev iz podprograma z velikostjo parametrov (brez staticne povezave),
+	 * podano v ukazu.
+	 */
+	public static class RET extends INSTR implements CodeInstr {
+
+		/** Velikost parametrov vracajocega se podprograma (brez staticne povezave). */
+		public final Integer parsSize;
+
+		/** Klicni zapis vracajocega se podprograma. */
+		public final Mem.Frame debugFrame;
+
+		/**
+		 * Ustvari nok ukaz {@link RET}.
+		 * 
+		 * @param parsSize      Velikost parametrov vracajocega se podprograma (brez
+		 *                      staticne povezave).
+		 * @param debugFrame    Klicni zapis vracajocega se programa.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public RET(final Integer parsSize, final Mem.Frame debugFrame, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.parsSize = parsSize;
+			this.debugFrame = debugFrame;
+		}
+
+		@Override
+		public Integer size() {
+			return super.size() + 4;
+		}
+
+		@Override
+		public String toString() {
+			return "RET " + parsSize;
+		}
+
+	}
+
+}
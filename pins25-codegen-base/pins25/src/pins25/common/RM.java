@@ -0,0 +1,819 @@
+package pins25.common;
+
+import java.util.*;
+
+/**
+ * Ukazi registrskega stroja.
+ *
+ * Registrski stroj ima za vsak klicni zapis svoj nabor (navideznih) registrov
+ * {@code r0}, {@code r1}, ..., ukazi pa so triadresni. Pomnilnik, klicni zapisi
+ * in staticni podatki so enaki kot pri skladovnem stroju: kazalec na klicni
+ * zapis {@code FP} kaze na staticno povezavo, nad njo so parametri, pod njo pa
+ * (za prostorom za stari kazalec na klicni zapis in povratni naslov) lokalne
+ * spremenljivke.
+ *
+ * Vse spremenljivke (in parametri, ki so samo posebna vrsta spremenljivke),
+ * katerih ime se zacne z {@code debug}, so lahko nastavljene na {@code null}.
+ * Uporabljajo se samo za izpis sledenja delovanja registrskega stroja.
+ */
+public class RM {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public RM() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Vrne ime registra.
+	 *
+	 * @param reg Stevilka registra.
+	 * @return Ime registra.
+	 */
+	private static String reg(final int reg) {
+		return "r" + reg;
+	}
+
+	/**
+	 * Vrne opis naslova v pomnilniku.
+	 *
+	 * @param base   Stevilka baznega registra ali {@code null} za kazalec na klicni
+	 *               zapis.
+	 * @param offset Odmik.
+	 * @return Opis naslova.
+	 */
+	private static String addr(final Integer base, final int offset) {
+		return "[" + (base == null ? "FP" : reg(base)) + (offset < 0 ? "" : "+") + offset + "]";
+	}
+
+	/**
+	 * Ukaz registrskega stroja.
+	 */
+	public static abstract class INSTR {
+
+		/** Lokacija dela izvorne kode, ki se prevede v ta ukaz. */
+		public final Report.Location debugLocation;
+
+		/**
+		 * Ustvari nov ukaz registrskega stroja.
+		 *
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public INSTR(final Report.Locatable debugLocation) {
+			this.debugLocation = debugLocation == null ? null : debugLocation.location();
+		}
+
+		/**
+		 * Vrne registre, ki jih ukaz bere ali pise.
+		 *
+		 * @return Registri, ki jih ukaz bere ali pise.
+		 */
+		public List<Integer> regs() {
+			return List.of();
+		}
+
+	}
+
+	/**
+	 * Oznaka.
+	 */
+	public static class LABEL extends INSTR {
+
+		/** Oznaka (glej {@link Labels}). */
+		public final int label;
+
+		/**
+		 * Ustvari nov ukaz {@link LABEL}.
+		 *
+		 * @param label         Oznaka.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public LABEL(final int label, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.label = label;
+		}
+
+		@Override
+		public String toString() {
+			return "LABEL " + Labels.name(label);
+		}
+
+	}
+
+	/**
+	 * Rezervacija prostora za lokalne spremenljivke (prostor se napolni z
+	 * niclami).
+	 */
+	public static class ENTER extends INSTR {
+
+		/** Velikost dela klicnega zapisa pod kazalcem na klicni zapis. */
+		public final int size;
+
+		/**
+		 * Ustvari nov ukaz {@link ENTER}.
+		 *
+		 * @param size          Velikost dela klicnega zapisa pod kazalcem na
+		 *                      klicni zapis.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public ENTER(final int size, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.size = size;
+		}
+
+		@Override
+		public String toString() {
+			return "ENTER " + size;
+		}
+
+	}
+
+	/**
+	 * Prenos konstante v register.
+	 */
+	public static class LI extends INSTR {
+
+		/** Ciljni register. */
+		public final int rd;
+
+		/** Konstanta. */
+		public final int intc;
+
+		/**
+		 * Ustvari nov ukaz {@link LI}.
+		 *
+		 * @param rd            Ciljni register.
+		 * @param intc          Konstanta.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public LI(final int rd, final int intc, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rd = rd;
+			this.intc = intc;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rd);
+		}
+
+		@Override
+		public String toString() {
+			return "LI " + reg(rd) + ", " + intc;
+		}
+
+	}
+
+	/**
+	 * Prenos naslova oznake v register.
+	 */
+	public static class LA extends INSTR {
+
+		/** Ciljni register. */
+		public final int rd;
+
+		/** Oznaka (glej {@link Labels}). */
+		public final int label;
+
+		/**
+		 * Ustvari nov ukaz {@link LA}.
+		 *
+		 * @param rd            Ciljni register.
+		 * @param label         Oznaka.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public LA(final int rd, final int label, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rd = rd;
+			this.label = label;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rd);
+		}
+
+		@Override
+		public String toString() {
+			return "LA " + reg(rd) + ", " + Labels.name(label);
+		}
+
+	}
+
+	/**
+	 * Prenos naslova v klicnem zapisu v register.
+	 */
+	public static class LF extends INSTR {
+
+		/** Ciljni register. */
+		public final int rd;
+
+		/** Odmik od kazalca na klicni zapis. */
+		public final int offset;
+
+		/**
+		 * Ustvari nov ukaz {@link LF}.
+		 *
+		 * @param rd            Ciljni register.
+		 * @param offset        Odmik od kazalca na klicni zapis.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public LF(final int rd, final int offset, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rd = rd;
+			this.offset = offset;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rd);
+		}
+
+		@Override
+		public String toString() {
+			return "LF " + reg(rd) + ", FP" + (offset < 0 ? "" : "+") + offset;
+		}
+
+	}
+
+	/**
+	 * Prenos kazalca na klicni zapis dane globine (iz prikaza) v register.
+	 */
+	public static class LP extends INSTR {
+
+		/** Ciljni register. */
+		public final int rd;
+
+		/** Globina klicnega zapisa. */
+		public final int depth;
+
+		/**
+		 * Ustvari nov ukaz {@link LP}.
+		 *
+		 * @param rd            Ciljni register.
+		 * @param depth         Globina klicnega zapisa.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public LP(final int rd, final int depth, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rd = rd;
+			this.depth = depth;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rd);
+		}
+
+		@Override
+		public String toString() {
+			return "LP " + reg(rd) + ", D" + depth;
+		}
+
+	}
+
+	/**
+	 * Prenos vrednosti iz registra v register.
+	 */
+	public static class MOV extends INSTR {
+
+		/** Ciljni register. */
+		public final int rd;
+
+		/** Izvorni register. */
+		public final int rs;
+
+		/**
+		 * Ustvari nov ukaz {@link MOV}.
+		 *
+		 * @param rd            Ciljni register.
+		 * @param rs            Izvorni register.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public MOV(final int rd, final int rs, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rd = rd;
+			this.rs = rs;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rd, rs);
+		}
+
+		@Override
+		public String toString() {
+			return "MOV " + reg(rd) + ", " + reg(rs);
+		}
+
+	}
+
+	/**
+	 * Enomestna racunska operacija.
+	 */
+	public static class UNOP extends INSTR {
+
+		/** Racunska operacija ({@code NOT} ali {@code NEG}). */
+		public final PDM.OPER.Oper oper;
+
+		/** Ciljni register. */
+		public final int rd;
+
+		/** Register z operandom. */
+		public final int rs;
+
+		/**
+		 * Ustvari nov ukaz {@link UNOP}.
+		 *
+		 * @param oper          Racunska operacija.
+		 * @param rd            Ciljni register.
+		 * @param rs            Register z operandom.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public UNOP(final PDM.OPER.Oper oper, final int rd, final int rs, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.oper = oper;
+			this.rd = rd;
+			this.rs = rs;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rd, rs);
+		}
+
+		@Override
+		public String toString() {
+			return oper + " " + reg(rd) + ", " + reg(rs);
+		}
+
+	}
+
+	/**
+	 * Dvomestna racunska operacija.
+	 */
+	public static class BINOP extends INSTR {
+
+		/** Racunska operacija. */
+		public final PDM.OPER.Oper oper;
+
+		/** Ciljni register. */
+		public final int rd;
+
+		/** Register s prvim operandom. */
+		public final int rs1;
+
+		/** Register z drugim operandom. */
+		public final int rs2;
+
+		/**
+		 * Ustvari nov ukaz {@link BINOP}.
+		 *
+		 * @param oper          Racunska operacija.
+		 * @param rd            Ciljni register.
+		 * @param rs1           Register s prvim operandom.
+		 * @param rs2           Register z drugim operandom.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public BINOP(final PDM.OPER.Oper oper, final int rd, final int rs1, final int rs2,
+				final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.oper = oper;
+			this.rd = rd;
+			this.rs1 = rs1;
+			this.rs2 = rs2;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rd, rs1, rs2);
+		}
+
+		@Override
+		public String toString() {
+			return oper + " " + reg(rd) + ", " + reg(rs1) + ", " + reg(rs2);
+		}
+
+	}
+
+	/**
+	 * Dvomestna racunska operacija s konstanto kot drugim operandom.
+	 */
+	public static class BINOPI extends INSTR {
+
+		/** Racunska operacija. */
+		public final PDM.OPER.Oper oper;
+
+		/** Ciljni register. */
+		public final int rd;
+
+		/** Register s prvim operandom. */
+		public final int rs;
+
+		/** Konstanta (drugi operand). */
+		public final int intc;
+
+		/**
+		 * Ustvari nov ukaz {@link BINOPI}.
+		 *
+		 * @param oper          Racunska operacija.
+		 * @param rd            Ciljni register.
+		 * @param rs            Register s prvim operandom.
+		 * @param intc          Konstanta (drugi operand).
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public BINOPI(final PDM.OPER.Oper oper, final int rd, final int rs, final int intc,
+				final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.oper = oper;
+			this.rd = rd;
+			this.rs = rs;
+			this.intc = intc;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rd, rs);
+		}
+
+		@Override
+		public String toString() {
+			return oper + "I " + reg(rd) + ", " + reg(rs) + ", " + intc;
+		}
+
+	}
+
+	/**
+	 * Prenos vrednosti iz pomnilnika v register.
+	 */
+	public static class LD extends INSTR {
+
+		/** Ciljni register. */
+		public final int rd;
+
+		/** Bazni register ali {@code null} za kazalec na klicni zapis. */
+		public final Integer base;
+
+		/** Odmik od baznega naslova. */
+		public final int offset;
+
+		/**
+		 * Ustvari nov ukaz {@link LD}.
+		 *
+		 * @param rd            Ciljni register.
+		 * @param base          Bazni register ali {@code null} za kazalec na klicni
+		 *                      zapis.
+		 * @param offset        Odmik od baznega naslova.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public LD(final int rd, final Integer base, final int offset, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rd = rd;
+			this.base = base;
+			this.offset = offset;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return base == null ? List.of(rd) : List.of(rd, base);
+		}
+
+		@Override
+		public String toString() {
+			return "LD " + reg(rd) + ", " + addr(base, offset);
+		}
+
+	}
+
+	/**
+	 * Prenos vrednosti iz registra v pomnilnik.
+	 */
+	public static class ST extends INSTR {
+
+		/** Register z vrednostjo. */
+		public final int rs;
+
+		/** Bazni register ali {@code null} za kazalec na klicni zapis. */
+		public final Integer base;
+
+		/** Odmik od baznega naslova. */
+		public final int offset;
+
+		/**
+		 * Ustvari nov ukaz {@link ST}.
+		 *
+		 * @param rs            Register z vrednostjo.
+		 * @param base          Bazni register ali {@code null} za kazalec na klicni
+		 *                      zapis.
+		 * @param offset        Odmik od baznega naslova.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public ST(final int rs, final Integer base, final int offset, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rs = rs;
+			this.base = base;
+			this.offset = offset;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return base == null ? List.of(rs) : List.of(rs, base);
+		}
+
+		@Override
+		public String toString() {
+			return "ST " + reg(rs) + ", " + addr(base, offset);
+		}
+
+	}
+
+	/**
+	 * Inicializacija pomnilnika (enako kot {@link PDM.INIT}).
+	 */
+	public static class INIT extends INSTR {
+
+		/** Register z naslovom pomnilnika. */
+		public final int rdst;
+
+		/** Register z naslovom opisa zacetnih vrednosti. */
+		public final int rinit;
+
+		/**
+		 * Ustvari nov ukaz {@link INIT}.
+		 *
+		 * @param rdst          Register z naslovom pomnilnika.
+		 * @param rinit         Register z naslovom opisa zacetnih vrednosti.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public INIT(final int rdst, final int rinit, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rdst = rdst;
+			this.rinit = rinit;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rdst, rinit);
+		}
+
+		@Override
+		public String toString() {
+			return "INIT " + reg(rdst) + ", " + reg(rinit);
+		}
+
+	}
+
+	/**
+	 * Brezpogojni skok.
+	 */
+	public static class JMP extends INSTR {
+
+		/** Ciljna oznaka. */
+		public final int target;
+
+		/**
+		 * Ustvari nov ukaz {@link JMP}.
+		 *
+		 * @param target        Ciljna oznaka.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public JMP(final int target, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.target = target;
+		}
+
+		@Override
+		public String toString() {
+			return "JMP " + Labels.name(target);
+		}
+
+	}
+
+	/**
+	 * Pogojni skok (ce pogoj ni izpolnjen, se izvajanje nadaljuje z naslednjim
+	 * ukazom).
+	 */
+	public static class JCOND extends INSTR {
+
+		/** Register s pogojem. */
+		public final int rc;
+
+		/** Ali se skok izvede, ce je vrednost pogoja razlicna od {@code 0}. */
+		public final boolean ifTrue;
+
+		/** Ciljna oznaka. */
+		public final int target;
+
+		/**
+		 * Ustvari nov ukaz {@link JCOND}.
+		 *
+		 * @param rc            Register s pogojem.
+		 * @param ifTrue        Ali se skok izvede, ce je vrednost pogoja razlicna od
+		 *                      {@code 0}.
+		 * @param target        Ciljna oznaka.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public JCOND(final int rc, final boolean ifTrue, final int target, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rc = rc;
+			this.ifTrue = ifTrue;
+			this.target = target;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rc);
+		}
+
+		@Override
+		public String toString() {
+			return (ifTrue ? "JT " : "JF ") + reg(rc) + ", " + Labels.name(target);
+		}
+
+	}
+
+	/**
+	 * Klic podprograma.
+	 *
+	 * Argumenti se v vrstnem redu, v katerem so navedeni, prenesejo na sklad v
+	 * pomnilniku (zadnji je staticna povezava), nato pa se ustvari nov klicni
+	 * zapis z novim naborom registrov.
+	 */
+	public static class CALL extends INSTR {
+
+		/** Register za rezultat ali {@code null}, ce se rezultat ne uporablja. */
+		public final Integer rd;
+
+		/** Oznaka klicanega podprograma ali {@code null}. */
+		public final Integer target;
+
+		/** Register z naslovom klicanega podprograma (ce oznaka ni podana). */
+		public final Integer rt;
+
+		/** Registri z argumenti (zadnji je staticna povezava). */
+		public final List<Integer> args;
+
+		/**
+		 * Globina klicnega zapisa klicanega podprograma (vnos v prikazu, ki ga
+		 * nastavi klic) ali {@code -1}, ce klic prikaza ne spremeni.
+		 */
+		public final int depth;
+
+		/** Klicni zapis klicanega podprograma. */
+		public final Mem.Frame debugFrame;
+
+		/**
+		 * Ustvari nov ukaz {@link CALL}.
+		 *
+		 * @param rd            Register za rezultat ali {@code null}.
+		 * @param target        Oznaka klicanega podprograma ali {@code null}.
+		 * @param rt            Register z naslovom klicanega podprograma ali
+		 *                      {@code null}.
+		 * @param args          Registri z argumenti (zadnji je staticna povezava).
+		 * @param depth         Globina klicnega zapisa klicanega podprograma ali
+		 *                      {@code -1}.
+		 * @param debugFrame    Klicni zapis klicanega podprograma.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public CALL(final Integer rd, final Integer target, final Integer rt, final List<Integer> args,
+				final int depth, final Mem.Frame debugFrame, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rd = rd;
+			this.target = target;
+			this.rt = rt;
+			this.args = Collections.unmodifiableList(new ArrayList<Integer>(args));
+			this.depth = depth;
+			this.debugFrame = debugFrame;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			final List<Integer> regs = new ArrayList<Integer>(args);
+			if (rd != null)
+				regs.add(rd);
+			if (rt != null)
+				regs.add(rt);
+			return regs;
+		}
+
+		@Override
+		public String toString() {
+			return "CALL " + (rd == null ? "_" : reg(rd)) + ", " + (target == null ? reg(rt) : Labels.name(target)) + "("
+					+ String.join(", ", args.stream().map(RM::reg).toList()) + ")";
+		}
+
+	}
+
+	/**
+	 * Klic podprograma na repnem mestu.
+	 *
+	 * Argumenti nadomestijo parametre klicocega podprograma, klicani podprogram
+	 * pa prevzame njegov klicni zapis in se vrne neposredno na mesto njegovega
+	 * klica.
+	 */
+	public static class TCALL extends INSTR {
+
+		/** Oznaka klicanega podprograma ali {@code null}. */
+		public final Integer target;
+
+		/** Register z naslovom klicanega podprograma (ce oznaka ni podana). */
+		public final Integer rt;
+
+		/** Registri z argumenti (zadnji je staticna povezava). */
+		public final List<Integer> args;
+
+		/** Velikost parametrov klicocega podprograma (brez staticne povezave). */
+		public final int parsSize;
+
+		/**
+		 * Globina klicnega zapisa klicanega podprograma (vnos v prikazu, ki ga
+		 * nastavi klic) ali {@code -1}, ce klic prikaza ne spremeni.
+		 */
+		public final int depth;
+
+		/** Klicni zapis klicanega podprograma. */
+		public final Mem.Frame debugFrame;
+
+		/**
+		 * Ustvari nov ukaz {@link TCALL}.
+		 *
+		 * @param target        Oznaka klicanega podprograma ali {@code null}.
+		 * @param rt            Register z naslovom klicanega podprograma ali
+		 *                      {@code null}.
+		 * @param args          Registri z argumenti (zadnji je staticna povezava).
+		 * @param parsSize      Velikost parametrov klicocega podprograma (brez
+		 *                      staticne povezave).
+		 * @param depth         Globina klicnega zapisa klicanega podprograma ali
+		 *                      {@code -1}.
+		 * @param debugFrame    Klicni zapis klicanega podprograma.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public TCALL(final Integer target, final Integer rt, final List<Integer> args, final int parsSize,
+				final int depth, final Mem.Frame debugFrame, final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.target = target;
+			this.rt = rt;
+			this.args = Collections.unmodifiableList(new ArrayList<Integer>(args));
+			this.parsSize = parsSize;
+			this.depth = depth;
+			this.debugFrame = debugFrame;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			final List<Integer> regs = new ArrayList<Integer>(args);
+			if (rt != null)
+				regs.add(rt);
+			return regs;
+		}
+
+		@Override
+		public String toString() {
+			return "TCALL " + (target == null ? reg(rt) : Labels.name(target)) + "("
+					+ String.join(", ", args.stream().map(RM::reg).toList()) + "), " + parsSize;
+		}
+
+	}
+
+	/**
+	 * Vrnitev iz podprograma.
+	 */
+	public static class RET extends INSTR {
+
+		/** Register z rezultatom. */
+		public final int rs;
+
+		/** Velikost parametrov (brez staticne povezave). */
+		public final int parsSize;
+
+		/** Klicni zapis vracajocega se podprograma. */
+		public final Mem.Frame debugFrame;
+
+		/**
+		 * Ustvari nov ukaz {@link RET}.
+		 *
+		 * @param rs            Register z rezultatom.
+		 * @param parsSize      Velikost parametrov (brez staticne povezave).
+		 * @param debugFrame    Klicni zapis vracajocega se podprograma.
+		 * @param debugLocation Lokacija dela izvorne kode, ki se prevede v ta ukaz.
+		 */
+		public RET(final int rs, final int parsSize, final Mem.Frame debugFrame,
+				final Report.Locatable debugLocation) {
+			super(debugLocation);
+			this.rs = rs;
+			this.parsSize = parsSize;
+			this.debugFrame = debugFrame;
+		}
+
+		@Override
+		public List<Integer> regs() {
+			return List.of(rs);
+		}
+
+		@Override
+		public String toString() {
+			return "RET " + reg(rs) + ", " + parsSize;
+		}
+
+	}
+
+}
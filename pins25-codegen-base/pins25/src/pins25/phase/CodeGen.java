@@ -19,6 +19,147 @@ public class CodeGen {
 		throw new Report.InternalError();
 	}
 
+	/**
+	 * Ali se pogoji v stavkih {@code if} in {@code while} prevedejo v skoke
+	 * (operatorji {@code &&}, {@code ||} in {@code !} neposredno skocijo na vejo,
+	 * ki se izvede) namesto v izracun vrednosti pogoja.
+	 */
+	public static boolean jumpingCode = true;
+
+	/**
+	 * Ali se do klicnih zapisov nelokalnih spremenljivk dostopa prek prikaza
+	 * skladovnega stroja (ukaz {@code DISP}) namesto po verigi staticnih povezav.
+	 */
+	public static boolean display = true;
+
+	/**
+	 * Ali se klici na repnem mestu prevedejo v ukaz {@code TCALL}, s katerim
+	 * klicana funkcija prevzame klicni zapis klicoce funkcije.
+	 */
+	public static boolean tailCalls = true;
+
+	/**
+	 * Ali se skoki, klici, vrnitve in rezervacije prostora na skladu pred
+	 * izvajanjem na skladovnem stroju prevedejo v ukaze s takojsnjimi operandi
+	 * ({@code JUMP}, {@code JT}, {@code JF}, {@code CALLI}, {@code RET} in
+	 * {@code ENTER}).
+	 */
+	public static boolean immediates = true;
+
+	/**
+	 * Ali si enaki nizi, zakljuceni z znakom {@code '\00'}, delijo en vnos v
+	 * podatkih programa, nizi, ki so priponi drugih nizov, pa so postavljeni v
+	 * njihov konec. Deljeni so le nizi, ki jih program lahko le bere (glej
+	 * {@link #readOnlyStrings}).
+	 */
+	public static boolean stringPooling = true;
+
+	/**
+	 * Ali so nizi (konstante v izrazih ter nizi funkcij {@code getstr} in
+	 * {@code putstr}) shranjeni po en znak na bajt namesto po en znak na besedo.
+	 * Do posameznih znakov takih nizov program dostopa s funkcijama
+	 * {@code getbyte} in {@code putbyte}.
+	 */
+	public static boolean packedStrings = false;
+
+	/**
+	 * Del zaporedja ukazov {@link CodeBuffer}: ukazi od mesta {@code start} do
+	 * mesta {@code end} (brez njega).
+	 *
+	 * @param start Mesto prvega ukaza.
+	 * @param end   Mesto za zadnjim ukazom.
+	 */
+	public record Range(int start, int end) {
+	}
+
+	/**
+	 * Zaporedje ukazov, v katerega generator kode zapisuje ukaze v vrstnem redu,
+	 * v katerem si sledijo v programu. Koda posameznega vozlisca je del tega
+	 * zaporedja, zato se koda podizrazov in podstavkov ne kopira v kodo
+	 * nadrejenih vozlisc.
+	 *
+	 * Ukazi se dodajajo le na konec zaporedja. Izjema so rezervirana mesta za
+	 * ukaze, ki so znani sele kasneje (ce ukaza ni, ostane mesto prazno).
+	 */
+	public static class CodeBuffer {
+
+		/** Ukazi (prazna rezervirana mesta so {@code null}). */
+		private final ArrayList<PDM.CodeInstr> instrs = new ArrayList<PDM.CodeInstr>();
+
+		/**
+		 * Ustvari novo prazno zaporedje ukazov.
+		 */
+		public CodeBuffer() {
+		}
+
+		/**
+		 * Vrne dolzino zaporedja, tj. mesto, na katerega se doda naslednji ukaz.
+		 *
+		 * @return Dolzina zaporedja.
+		 */
+		public int size() {
+			return instrs.size();
+		}
+
+		/**
+		 * Doda ukaz na konec zaporedja.
+		 *
+		 * @param instr Ukaz.
+		 */
+		public void add(final PDM.CodeInstr instr) {
+			instrs.add(instr);
+		}
+
+		/**
+		 * Na koncu zaporedja rezervira mesto za ukaz, ki se doloci kasneje.
+		 *
+		 * @return Rezervirano mesto.
+		 */
+		public int reserve() {
+			instrs.add(null);
+			return instrs.size() - 1;
+		}
+
+		/**
+		 * Na rezervirano mesto postavi ukaz.
+		 *
+		 * @param pos   Rezervirano mesto.
+		 * @param instr Ukaz.
+		 */
+		public void set(final int pos, final PDM.CodeInstr instr) {
+			if (instrs.get(pos) != null)
+				throw new Report.InternalError();
+			instrs.set(pos, instr);
+		}
+
+		/**
+		 * Doda ukaze na konec zaporedja.
+		 *
+		 * @param code Ukazi.
+		 * @return Del zaporedja z dodanimi ukazi.
+		 */
+		public Range append(final List<PDM.CodeInstr> code) {
+			final int start = instrs.size();
+			instrs.addAll(code);
+			return new Range(start, instrs.size());
+		}
+
+		/**
+		 * Vrne ukaze v delu zaporedja (brez praznih mest).
+		 *
+		 * @param range Del zaporedja.
+		 * @return Ukazi.
+		 */
+		public List<PDM.CodeInstr> code(final Range range) {
+			final List<PDM.CodeInstr> code = new ArrayList<PDM.CodeInstr>(range.end() - range.start());
+			for (int pos = range.start(); pos < range.end(); pos++)
+				if (instrs.get(pos) != null)
+					code.add(instrs.get(pos));
+			return code;
+		}
+
+	}
+
 	/**
 	 * Abstraktno sintaksno drevo z dodanimi atributi izracuna pomnilniske
 	 * predstavitve.
@@ -31,14 +172,26 @@ public class CodeGen {
 	 * <li>({@link Memory}) klicni zapis funkcije;</li>
 	 * <li>({@link Memory}) dostop do parametra;</li>
 	 * <li>({@link Memory}) dostop do spremenljivke;</li>
-	 * <li>({@link CodeGen}) seznam ukazov, ki predstavljajo kodo programa;</li>
+	 * <li>({@link Memory}) dostopi do zajetih vrednosti dvignjenih funkcij;</li>
+	 * <li>({@link Optim}) vrednost konstantnega izraza;</li>
+	 * <li>({@link Optim}) podizraz, s katerim se nadomesti izraz;</li>
+	 * <li>({@link Optim}) dosegljive funkcije, spremenljivke in konstantni
+	 * nizi;</li>
+	 * <li>({@link Inline}) klici, ki se nadomestijo s telesom funkcije;</li>
+	 * <li>({@link Inline}) funkcije, katerih klici so vsi vstavljeni;</li>
+	 * <li>({@link Loops}) nacin prevajanja zanke;</li>
+	 * <li>({@link CodeGen}) del zaporedja ukazov, ki predstavlja kodo
+	 * programa;</li>
 	 * <li>({@link CodeGen}) seznam ukazov, ki predstavljajo podatke programa.</li>
 	 * </ol>
 	 */
-	public static class AttrAST extends Memory.AttrAST {
+	public static class AttrAST extends Loops.AttrAST {
+
+		/** Zaporedje ukazov, katerega dele dolocajo atributi kode. */
+		public final CodeBuffer codeBuffer;
 
-		/** Atribut: seznam ukazov, ki predstavljajo kodo programa. */
-		public final Map<AST.Node, List<PDM.CodeInstr>> attrCode;
+		/** Atribut: del zaporedja ukazov, ki predstavlja kodo programa. */
+		public final Map<AST.Node, Range> attrCode;
 
 		/** Atribut: seznam ukazov, ki predstavljajo podatke programa. */
 		public final Map<AST.Node, List<PDM.DataInstr>> attrData;
@@ -46,14 +199,18 @@ public class CodeGen {
 		/**
 		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi generiranja kode.
 		 * 
-		 * @param attrAST  Abstraktno sintaksno drevo z dodanimi atributi pomnilniske
-		 *                 predstavitve.
-		 * @param attrCode Attribut: seznam ukazov, ki predstavljajo kodo programa.
-		 * @param attrData Attribut: seznam ukazov, ki predstavljajo podatke programa.
+		 * @param attrAST    Abstraktno sintaksno drevo z dodanimi atributi
+		 *                   optimizacije zank.
+		 * @param codeBuffer Zaporedje ukazov, katerega dele dolocajo atributi kode.
+		 * @param attrCode   Attribut: del zaporedja ukazov, ki predstavlja kodo
+		 *                   programa.
+		 * @param attrData   Attribut: seznam ukazov, ki predstavljajo podatke
+		 *                   programa.
 		 */
-		public AttrAST(final Memory.AttrAST attrAST, final Map<AST.Node, List<PDM.CodeInstr>> attrCode,
+		public AttrAST(final Loops.AttrAST attrAST, final CodeBuffer codeBuffer, final Map<AST.Node, Range> attrCode,
 				final Map<AST.Node, List<PDM.DataInstr>> attrData) {
 			super(attrAST);
+			this.codeBuffer = codeBuffer;
 			this.attrCode = attrCode;
 			this.attrData = attrData;
 		}
@@ -66,10 +223,23 @@ public class CodeGen {
 		 */
 		public AttrAST(final AttrAST attrAST) {
 			super(attrAST);
+			this.codeBuffer = attrAST.codeBuffer;
 			this.attrCode = attrAST.attrCode;
 			this.attrData = attrAST.attrData;
 		}
 
+		/**
+		 * Vrne kodo vozlisca.
+		 *
+		 * @param node Vozlisce.
+		 * @return Seznam ukazov, ki predstavljajo kodo vozlisca, ali {@code null}, ce
+		 *         vozlisce nima kode.
+		 */
+		public List<PDM.CodeInstr> code(final AST.Node node) {
+			final Range range = attrCode.get(node);
+			return range == null ? null : codeBuffer.code(range);
+		}
+
 		@Override
 		public String head(final AST.Node node, final boolean highlighted) {
 			final StringBuffer head = new StringBuffer();
@@ -82,7 +252,7 @@ public class CodeGen {
 			super.desc(indent, node, false);
 			System.out.print(highlighted ? "\033[31m" : "");
 			if (attrCode.get(node) != null) {
-				List<PDM.CodeInstr> instrs = attrCode.get(node);
+				List<PDM.CodeInstr> instrs = code(node);
 				if (instrs != null) {
 					if (indent > 0)
 						System.out.printf("%" + indent + "c", ' ');
@@ -116,18 +286,47 @@ public class CodeGen {
 	/**
 	 * Izracuna kodo programa
 	 * 
-	 * @param memoryAttrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
-	 *                      pomnilniske predstavitve.
+	 * @param loopsAttrAST Abstraktno sintaksno drevo z dodanimi atributi
+	 *                     optimizacije zank.
 	 * @return Abstraktno sintaksno drevo z dodanimi atributi izracuna pomnilniske
 	 *         predstavitve.
 	 */
-	public static AttrAST generate(final Memory.AttrAST memoryAttrAST) {
-		AttrAST attrAST = new AttrAST(memoryAttrAST, new HashMap<AST.Node, List<PDM.CodeInstr>>(),
+	public static AttrAST generate(final Loops.AttrAST loopsAttrAST) {
+		AttrAST attrAST = new AttrAST(loopsAttrAST, new CodeBuffer(), new HashMap<AST.Node, Range>(),
 				new HashMap<AST.Node, List<PDM.DataInstr>>());
 		(new CodeGenerator(attrAST)).generate();
 		return attrAST;
 	}
 
+	/** Funkcije knjiznice, ki niz na naslovu v argumentu le berejo. */
+	private static final Set<String> readOnlyFuns = Set.of("putstr", "getbyte");
+
+	/**
+	 * Poisce nize, ki jih program lahko le bere: to so nizi, ki so neposredno
+	 * argumenti funkcij knjiznice, ki niz le berejo. Naslov vsakega drugega niza
+	 * lahko pride do shranjevanja v pomnilnik ali do argumenta funkcije, ki v niz
+	 * pise, zato si takega niza ne sme deliti z nobenim drugim.
+	 *
+	 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
+	 *                pomnilniske predstavitve.
+	 * @return Konstante tipa niz, ki jih program lahko le bere.
+	 */
+	private static Set<AST.AtomExpr> readOnlyStrings(final AttrAST attrAST) {
+		final Set<AST.AtomExpr> strings = new HashSet<AST.AtomExpr>();
+		attrAST.ast.accept(new AST.FullVisitor<Object, Object>() {
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final Object arg) {
+				if ((attrAST.attrDef.get(callExpr) instanceof AST.FunDef funDef) && (funDef.stmts.size() == 0)
+						&& readOnlyFuns.contains(funDef.name))
+					for (final AST.Expr expr : callExpr.args)
+						if ((expr instanceof AST.AtomExpr atomExpr) && (atomExpr.type == AST.AtomExpr.Type.STRCONST))
+							strings.add(atomExpr);
+				return AST.FullVisitor.super.visit(callExpr, arg);
+			}
+		}, null);
+		return strings;
+	}
+
 	/**
 	 * Generiranje kode v abstraktnem sintaksnem drevesu.
 	 */
@@ -142,6 +341,9 @@ public class CodeGen {
 		/** Stevec anonimnih label. */
 		// private int labelCounter = 0;
 
+		/** Nizi, ki jih program lahko le bere in si zato lahko delijo vnos. */
+		private final Set<AST.AtomExpr> readOnlyStrings;
+
 		/**
 		 * Ustvari nov generator kode v abstraktnem sintaksnem drevesu.
 		 * 
@@ -150,6 +352,7 @@ public class CodeGen {
 		 */
 		public CodeGenerator(final AttrAST attrAST) {
 			this.attrAST = attrAST;
+			this.readOnlyStrings = stringPooling ? readOnlyStrings(attrAST) : Set.of();
 		}
 
 		/**
@@ -160,326 +363,582 @@ public class CodeGen {
 		 */
 		public AttrAST generate() {
 			attrAST.ast.accept(new Generator(), null);
-			return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrCode),
+			return new AttrAST(attrAST, attrAST.codeBuffer, Collections.unmodifiableMap(attrAST.attrCode),
 					Collections.unmodifiableMap(attrAST.attrData));
 		}
 
 		/** Obiskovalec, ki generira kodo v abstraktnem sintaksnem drevesu. */
-		private class Generator implements AST.FullVisitor<List<PDM.CodeInstr>, Mem.Frame> {
+		private class Generator implements AST.FullVisitor<Range, Mem.Frame> {
 
 			private HashMap<Mem.Frame, AST.Node> frameReturnNode = new HashMap<>();
 
+			/**
+			 * Odmiki v klicnem zapisu trenutne funkcije, kamor so pred zanko shranjeni
+			 * naslovi klicnih zapisov (glede na dolzino verige staticnih povezav).
+			 */
+			private Map<Integer, Integer> hoisted = new HashMap<Integer, Integer>();
+
+			/**
+			 * Virtualni registri, v katerih so pred zanko izracunane vrednosti izrazov,
+			 * linearno odvisnih od stevca zanke.
+			 */
+			private Map<AST.BinExpr, Integer> reduced = new HashMap<AST.BinExpr, Integer>();
+
+			/**
+			 * Spremembe virtualnih registrov (glede na register), ki se izvedejo ob
+			 * spremembi stevca zanke (glede na stavek, ki spremeni stevec).
+			 */
+			private final Map<AST.AssignStmt, Map<Integer, Integer>> increments =
+					new HashMap<AST.AssignStmt, Map<Integer, Integer>>();
+
+			/**
+			 * Stevilo dodatnih besed v klicnem zapisu trenutne funkcije (za naslove
+			 * klicnih zapisov pred zankami in za klicne zapise vstavljenih funkcij).
+			 */
+			private int extraSize = 0;
+
+			/** Globina vstavljene funkcije, katere telo se trenutno generira. */
+			private int inlineDepth = -1;
+
+			/**
+			 * Odmik, ki v klicnem zapisu trenutne funkcije ustreza kazalcu na klicni
+			 * zapis vstavljene funkcije.
+			 */
+			private int inlineBase = 0;
+
+			/**
+			 * Virtualni register trenutne funkcije, ki ustreza prvemu virtualnemu
+			 * registru vstavljene funkcije.
+			 */
+			private int inlineRegBase = 0;
+
+			/**
+			 * Stevilo dodatnih virtualnih registrov trenutne funkcije (za spremenljivke
+			 * in parametre vstavljenih funkcij).
+			 */
+			private int extraRegs = 0;
+
+			/** Parametri vstavljene funkcije, nadomesceni s konstantnimi argumenti. */
+			private Map<AST.ParDef, Integer> inlineConsts = Map.of();
+
+			/** Stavek, ki vrne vrednost vstavljene funkcije. */
+			private AST.Node inlineReturnNode = null;
+
+			/**
+			 * Labele klicev vstavljenih funkcij, katerih telesa se trenutno generirajo
+			 * (zadnja je labela najbolj notranjega klica).
+			 */
+			private final List<Integer> inlineLabels = new ArrayList<Integer>();
+
+			/** Funkcija (lahko tudi vstavljena), katere telo se trenutno generira. */
+			private AST.FunDef body = null;
+
+			/** Klic na repnem mestu trenutne funkcije, ki se generira. */
+			private AST.CallExpr tailCall = null;
+
+			/**
+			 * Stavek {@code let}, ki je prvi stavek trenutne funkcije in se zato izvede
+			 * takoj po rezervaciji (in brisanju) klicnega zapisa.
+			 */
+			private AST.LetStmt frameLet = null;
+
+			/**
+			 * Zacetne vrednosti besed v klicnem zapisu (po odmikih) za spremenljivke
+			 * stavka {@link #frameLet}, ki se generira, ali {@code null}.
+			 */
+			private SortedMap<Integer, Integer> frameInits = null;
+
+			/** Oznake nizov, ki si jih delijo enaki nizi (po vsebini). */
+			private final Map<List<Integer>, Integer> strLabels = new HashMap<List<Integer>, Integer>();
+
+			/**
+			 * Klicni zapisi funkcij, katerih telesa se trenutno generirajo (zadnji je
+			 * klicni zapis trenutne funkcije).
+			 */
+			private final List<Mem.Frame> frames = new ArrayList<Mem.Frame>();
+
+			/**
+			 * Klicni zapisi, v katere lahko kaze naslov spremenljivke ali parametra (in
+			 * jih zato klicana funkcija ne sme prevzeti).
+			 */
+			private final Set<Mem.Frame> addressed = new HashSet<Mem.Frame>();
+
 			@SuppressWarnings({ "doclint:missing" })
 			public Generator() {
 			}
 
 			@Override
-			public List<CodeInstr> visit(Nodes<? extends Node> nodes, Frame arg) {
-				var code = new ArrayList<CodeInstr>();
+			public Range visit(Nodes<? extends Node> nodes, Frame arg) {
+				int start = attrAST.codeBuffer.size();
 
 				for (var node : nodes) {
-					code.addAll(node.accept(this, arg));
+					node.accept(this, arg);
 				}
 
-				return code;
+				return new Range(start, attrAST.codeBuffer.size());
+			}
+
+			/**
+			 * Doda ukaz na konec kode.
+			 *
+			 * @param instr Ukaz.
+			 */
+			private void emit(PDM.CodeInstr instr) {
+				attrAST.codeBuffer.add(instr);
+			}
+
+			/**
+			 * Doloci kodo vozlisca: ukaze od danega mesta do konca kode.
+			 *
+			 * @param node  Vozlisce.
+			 * @param start Mesto prvega ukaza kode vozlisca.
+			 * @return Koda vozlisca.
+			 */
+			private Range code(AST.Node node, int start) {
+				var range = new Range(start, attrAST.codeBuffer.size());
+				attrAST.attrCode.put(node, range);
+				return range;
+			}
+
+			/**
+			 * Vrne virtualni register spremenljivke ali parametra.
+			 *
+			 * @param access Dostop do spremenljivke ali parametra.
+			 * @return Virtualni register ali {@code null}, ce je spremenljivka ali
+			 *         parameter v pomnilniku.
+			 */
+			private Integer register(Mem.Access access) {
+				if (!(access instanceof RelAccess ra) || (ra.reg == null))
+					return null;
+				return ra.depth == inlineDepth ? inlineRegBase + ra.reg : ra.reg;
+			}
+
+			/**
+			 * Vrne virtualni register spremenljivke ali parametra v izrazu.
+			 *
+			 * @param varExpr Izraz s spremenljivko ali parametrom.
+			 * @return Virtualni register ali {@code null}, ce je spremenljivka ali
+			 *         parameter v pomnilniku.
+			 */
+			private Integer register(VarExpr varExpr) {
+				return register(access(attrAST.attrDef.get(varExpr)));
 			}
 
-			public List<CodeInstr> varOrParAddr(VarExpr varExpr, Frame frame) {
-				var code = new ArrayList<CodeInstr>();
-				var loc = attrAST.attrLoc.get(varExpr);
-				var def = attrAST.attrDef.get(varExpr);
+			/**
+			 * Vrne dostop do spremenljivke ali parametra v telesu funkcije, ki se
+			 * trenutno generira. Dvignjena funkcija namesto spremenljivk in parametrov
+			 * zunanjih funkcij uporablja svoje dodatne parametre.
+			 *
+			 * @param def Spremenljivka ali parameter.
+			 * @return Dostop do spremenljivke ali parametra.
+			 */
+			private Mem.Access access(AST.Def def) {
+				var captured = attrAST.attrLifted.getOrDefault(body, Map.of()).get(def);
+				if (captured != null)
+					return captured;
+				return (def instanceof VarDef ? attrAST.attrVarAccess : attrAST.attrParAccess).get(def);
+			}
+
+			public void varOrParAddr(VarExpr varExpr, Frame frame) {
+				addr(attrAST.attrDef.get(varExpr), attrAST.attrLoc.get(varExpr), frame);
+			}
 
-				var access = (def instanceof VarDef ? attrAST.attrVarAccess : attrAST.attrParAccess).get(def);
+			/**
+			 * Generira kodo, ki izracuna naslov spremenljivke ali parametra v pomnilniku.
+			 *
+			 * @param def   Spremenljivka ali parameter.
+			 * @param loc   Lokacija.
+			 * @param frame Klicni zapis funkcije.
+			 */
+			private void addr(AST.Def def, Locatable loc, Frame frame) {
+				var access = access(def);
 
 				switch (access) {
+					case RelAccess ra when ra.depth == inlineDepth -> {
+						emit(new PDM.REGN(Reg.FP, loc));
+						emit(new PDM.PUSH(inlineBase + ra.offset, loc));
+						emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					}
 					case RelAccess ra -> {
-						code.add(new PDM.REGN(Reg.FP, loc));
-
-						for (var d = ra.depth; d < frame.depth; d++) {
-							code.add(new PDM.LOAD(loc));
-						}
-						code.add(new PDM.PUSH(ra.offset, loc));
-						code.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+						frameAddr(frame, ra.depth, loc);
+						emit(new PDM.PUSH(ra.offset, loc));
+						emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
 					}
 					case AbsAccess _ -> {
 						var defLoc = attrAST.attrLoc.get(def);
-						code.add(new PDM.NAME(generateLabel("global", varExpr.name, defLoc), loc));
+						emit(new PDM.NAME(generateLabel("global", def.name, defLoc), loc));
 					}
 					default -> never();
 				}
-
-				return code;
 			}
 
 			@Override
-			public List<CodeInstr> visit(final AST.FunDef funDef, Frame frame) {
+			public Range visit(final AST.FunDef funDef, Frame frame) {
 				if (funDef.stmts.size() == 0)
-					return Collections.emptyList();
+					return null;
 
-				var code = new ArrayList<PDM.CodeInstr>();
 				Locatable loc = attrAST.attrLoc.get(funDef);
 				var curFrame = attrAST.attrFrame.get(funDef);
 
-				AST.Stmt lastStmt = funDef.stmts.getAll().getLast();
-				bp: while (true) {
-					switch (lastStmt) {
-						case AST.ExprStmt e -> {
-							frameReturnNode.put(curFrame, e);
-							break bp;
-						}
-
-						case AST.LetStmt letStmt -> {
-							if (letStmt.stmts.size() != 0)
-								lastStmt = letStmt.stmts.getAll().getLast();
-							else
-								never();
-						}
-						default -> never();
-					}
-				}
-
-				String label = curFrame.depth == 1 ? funDef.name : generateLabel("func", funDef.name, loc);
-				code.add(new PDM.LABEL(label, loc));
+				frameReturnNode.put(curFrame, returnNode(funDef));
 
 				frame = attrAST.attrFrame.get(funDef);
 
-				if (curFrame.varsSize > 8) {
-					code.add(new PDM.PUSH(-curFrame.varsSize + 8, loc));
-					code.add(new PDM.POPN(loc));
+				// Gnezdene funkcije se generirajo pred funkcijo, da je koda funkcije strnjena.
+				frames.add(curFrame);
+				for (var nestedDef : nested(funDef))
+					nestedDef.accept(this, curFrame);
+
+				int start = attrAST.codeBuffer.size();
+				int label = funLabel(funDef);
+				emit(new PDM.LABEL(label, loc));
+
+				// Velikost klicnega zapisa je znana sele po generiranju telesa.
+				int enter = attrAST.codeBuffer.reserve();
+				attrAST.codeBuffer.reserve();
+
+				// Parametri v virtualnih registrih se prenesejo iz klicnega zapisa.
+				var pars = new ArrayList<RelAccess>();
+				for (var parDef : funDef.pars)
+					pars.add(attrAST.attrParAccess.get(parDef));
+				pars.addAll(attrAST.attrLifted.getOrDefault(funDef, Map.of()).values());
+				for (var ra : pars) {
+					if (ra.reg == null)
+						continue;
+					emit(new PDM.REGN(Reg.FP, loc));
+					emit(new PDM.PUSH(ra.offset, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					emit(new PDM.LOAD(loc));
+					emit(new PDM.VSAVE(ra.reg, loc));
 				}
 
-				code.addAll(funDef.stmts.accept(this, curFrame));
+				var outerHoisted = hoisted;
+				var outerHoistedSize = extraSize;
+				var outerExtraRegs = extraRegs;
+				var outerBody = body;
+				hoisted = new HashMap<Integer, Integer>();
+				extraSize = 0;
+				extraRegs = 0;
+				body = funDef;
+				var outerFrameLet = frameLet;
+				frameLet = funDef.stmts.getAll().getFirst() instanceof AST.LetStmt letStmt ? letStmt : null;
+				funDef.stmts.accept(this, curFrame);
+				frames.removeLast();
+				frameLet = outerFrameLet;
+				body = outerBody;
+
+				if (curFrame.varsSize + extraSize > 8) {
+					attrAST.codeBuffer.set(enter, new PDM.PUSH(-curFrame.varsSize - extraSize + 8, loc));
+					attrAST.codeBuffer.set(enter + 1, new PDM.POPN(loc));
+				}
+				hoisted = outerHoisted;
+				extraSize = outerHoistedSize;
+				extraRegs = outerExtraRegs;
 
-				code.add(new PDM.PUSH(funDef.pars.size() * 4, loc));
-				code.add(new PDM.RETN(curFrame, loc));
+				emit(new PDM.PUSH(curFrame.parsSize - 4, loc));
+				emit(new PDM.RETN(curFrame, loc));
 
-				attrAST.attrCode.put(funDef, code);
-				return code;
+				return code(funDef, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.VarDef varDef, final Mem.Frame frame) {
-				var code = new ArrayList<CodeInstr>();
+			public Range visit(final AST.VarDef varDef, final Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
 				var data = new ArrayList<PDM.DataInstr>();
 				Locatable loc = attrAST.attrLoc.get(varDef);
-				String initLabel = generateLabel(varDef.name, loc);
+				int initLabel = generateLabel(varDef.name, loc);
 				var access = attrAST.attrVarAccess.get(varDef);
 
+				// Spremenljivka v virtualnem registru se inicializira neposredno.
+				Integer reg = register(access);
+				if (reg != null) {
+					emit(new PDM.PUSH(access.inits.get(3), loc));
+					emit(new PDM.VSAVE(reg, loc));
+					attrAST.attrData.put(varDef, data);
+					return code(varDef, start);
+				}
+
+				// Staticna spremenljivka se inicializira ze v sliki podatkov.
+				if (access instanceof AbsAccess) {
+					int varLabel = generateLabel("global", varDef.name, loc);
+					data.add(new PDM.LABEL(varLabel, loc));
+					data.addAll(dataImage(initWords(access.inits), access.size, loc));
+					attrAST.attrData.put(varDef, data);
+					return code(varDef, start);
+				}
+
 				data.add(new PDM.LABEL(initLabel, loc));
 				data.addAll(access.inits.stream().map(x -> new PDM.DATA(x, loc)).toList());
 
+				// Tabelo prvega stavka let funkcije inicializira predloga klicnega zapisa.
+				if ((frameInits != null) && inFrameTemplate(access)) {
+					attrAST.attrData.put(varDef, data);
+					return code(varDef, start);
+				}
+
 				switch (access) {
 					case RelAccess ra -> {
-						code.add(new PDM.REGN(Reg.FP, loc));
-						code.add(new PDM.PUSH(ra.offset, loc));
-						code.add(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
-					}
-					default -> {
-						String varLabel = generateLabel("global", varDef.name, loc);
-
-						data.add(new LABEL(varLabel, loc));
-						data.add(new PDM.SIZE(access.size, loc));
-
-						code.add(new PDM.NAME(varLabel, loc));
-
+						emit(new PDM.REGN(Reg.FP, loc));
+						emit(new PDM.PUSH(ra.depth == inlineDepth ? inlineBase + ra.offset : ra.offset, loc));
+						emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
 					}
+					default -> never();
 				}
 
-				code.add(new PDM.NAME(initLabel, loc));
-				code.add(new PDM.INIT(loc));
+				emit(new PDM.NAME(initLabel, loc));
+				emit(new PDM.INIT(loc));
 
-				attrAST.attrCode.put(varDef, code);
 				attrAST.attrData.put(varDef, data);
 
-				return code;
+				return code(varDef, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.WhileStmt whileStmt, final Mem.Frame frame) {
-				var code = new ArrayList<PDM.CodeInstr>();
+			public Range visit(final AST.WhileStmt whileStmt, final Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
 
 				Locatable loc = attrAST.attrLoc.get(whileStmt);
 
-				String wLabel = generateLabel("while:condition", loc);
-				String wBodyLabel = generateLabel("while:body", loc);
-				String wEndLabel = generateLabel("while:end", loc);
+				int wLabel = codeLabel("while:condition", loc);
+				int wBodyLabel = codeLabel("while:body", loc);
+				int wEndLabel = codeLabel("while:end", loc);
 
-				code.add(new PDM.LABEL(wLabel, loc));
-				code.addAll(whileStmt.cond.accept(this, frame));
+				// Konstanten pogoj: zanke ni (telo se ne generira) ali pa je neskoncna.
+				Integer cond = attrAST.attrConst.get(whileStmt.cond);
+				if (cond != null && cond == 0)
+					return code(whileStmt, start);
 
-				code.add(new PDM.NAME(wBodyLabel, loc));
-				code.add(new PDM.NAME(wEndLabel, loc));
-				code.add(new PDM.CJMP(loc));
+				Loops.Loop loop = attrAST.attrLoop.get(whileStmt);
+				if (cond == null && loop != null) {
+					loop(whileStmt, loop, frame);
+					return code(whileStmt, start);
+				}
 
-				code.add(new PDM.LABEL(wBodyLabel, loc));
-				code.addAll(whileStmt.stmts.accept(this, frame));
+				emit(new PDM.LABEL(wLabel, loc));
+				if (cond == null)
+					condition(whileStmt.cond, wBodyLabel, wEndLabel, frame);
 
-				code.add(new PDM.NAME(wLabel, loc));
-				code.add(new PDM.UJMP(loc));
+				emit(new PDM.LABEL(wBodyLabel, loc));
+				whileStmt.stmts.accept(this, frame);
 
-				code.add(new PDM.LABEL(wEndLabel, loc));
+				emit(new PDM.NAME(wLabel, loc));
+				emit(new PDM.UJMP(loc));
 
-				attrAST.attrCode.put(whileStmt, code);
-				return code;
+				emit(new PDM.LABEL(wEndLabel, loc));
+
+				return code(whileStmt, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.IfStmt ifStmt, final Mem.Frame frame) {
-				var code = new ArrayList<PDM.CodeInstr>();
+			public Range visit(final AST.IfStmt ifStmt, final Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
 
 				Locatable loc = attrAST.attrLoc.get(ifStmt);
-				String thenLabel = generateLabel("if:then", loc);
-				String ifElseLabel = generateLabel("if:else", loc);
-				String ifEndLabel = generateLabel("if:end", loc);
-
-				code.addAll(ifStmt.cond.accept(this, frame));
+				int thenLabel = codeLabel("if:then", loc);
+				int ifElseLabel = codeLabel("if:else", loc);
+				int ifEndLabel = codeLabel("if:end", loc);
+
+				// Konstanten pogoj: generira se le izbrana veja.
+				Integer cond = attrAST.attrConst.get(ifStmt.cond);
+				if (cond != null) {
+					if (cond != 0)
+						ifStmt.thenStmts.accept(this, frame);
+					else
+						ifStmt.elseStmts.accept(this, frame);
+					return code(ifStmt, start);
+				}
 
 				if (ifStmt.elseStmts.size() == 0) {
-					code.add(new PDM.NAME(thenLabel, loc));
-					code.add(new PDM.NAME(ifEndLabel, loc));
-					code.add(new PDM.CJMP(loc));
+					condition(ifStmt.cond, thenLabel, ifEndLabel, frame);
 
-					code.add(new PDM.LABEL(thenLabel, loc));
-					code.addAll(ifStmt.thenStmts.accept(this, frame));
+					emit(new PDM.LABEL(thenLabel, loc));
+					ifStmt.thenStmts.accept(this, frame);
 
-					code.add(new PDM.LABEL(thenLabel, loc));
+					emit(new PDM.LABEL(ifEndLabel, loc));
 				} else {
-					code.add(new PDM.NAME(thenLabel, loc));
-					code.add(new PDM.NAME(ifElseLabel, loc));
-					code.add(new PDM.CJMP(loc));
+					condition(ifStmt.cond, thenLabel, ifElseLabel, frame);
 
-					code.add(new PDM.LABEL(thenLabel, loc));
-					code.addAll(ifStmt.thenStmts.accept(this, frame));
+					emit(new PDM.LABEL(thenLabel, loc));
+					ifStmt.thenStmts.accept(this, frame);
 
-					code.add(new PDM.NAME(ifEndLabel, loc));
-					code.add(new PDM.UJMP(loc));
+					emit(new PDM.NAME(ifEndLabel, loc));
+					emit(new PDM.UJMP(loc));
 
-					code.add(new PDM.LABEL(ifElseLabel, loc));
-					code.addAll(ifStmt.elseStmts.accept(this, frame));
+					emit(new PDM.LABEL(ifElseLabel, loc));
+					ifStmt.elseStmts.accept(this, frame);
 
-					code.add(new PDM.LABEL(ifEndLabel, loc));
+					emit(new PDM.LABEL(ifEndLabel, loc));
 				}
 
-				attrAST.attrCode.put(ifStmt, code);
-				return code;
+				return code(ifStmt, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.LetStmt letStmt, final Mem.Frame frame) {
-				var code = new ArrayList<PDM.CodeInstr>();
-
+			public Range visit(final AST.LetStmt letStmt, final Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
+
+				// Tabele prvega stavka let funkcije se inicializirajo s predlogo, ki je
+				// pred kodo spremenljivk.
+				var outerFrameInits = frameInits;
+				frameInits = null;
+				if (letStmt == frameLet) {
+					frameInits = new TreeMap<Integer, Integer>();
+					for (AST.Def def : letStmt.defs) {
+						if (!(def instanceof VarDef varDef) || !inFrameTemplate(attrAST.attrVarAccess.get(varDef)))
+							continue;
+						var ra = (RelAccess) attrAST.attrVarAccess.get(varDef);
+						var words = initWords(ra.inits);
+						for (int w = 0; w < words.size(); w++)
+							frameInits.put(ra.offset + 4 * w, words.get(w));
+					}
+					frameTemplate(letStmt, frameInits);
+				}
+				frameLet = null;
+				// Gnezdene funkcije so ze generirane.
 				for (AST.Def def : letStmt.defs) {
-					if (def instanceof VarDef) {
-						code.addAll(def.accept(this, frame));
-					} else {
+					if (def instanceof VarDef)
 						def.accept(this, frame);
-					}
 				}
+				frameInits = outerFrameInits;
 
-				code.addAll(letStmt.stmts.accept(this, frame));
+				letStmt.stmts.accept(this, frame);
 
-				attrAST.attrCode.put(letStmt, code);
-				return code;
+				return code(letStmt, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.ExprStmt exprStmt, final Mem.Frame frame) {
-				var code = new ArrayList<PDM.CodeInstr>();
+			public Range visit(final AST.ExprStmt exprStmt, final Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
 				var loc = attrAST.attrLoc.get(exprStmt);
 
-				code.addAll(exprStmt.expr.accept(this, frame));
-
 				var returnNode = frameReturnNode.get(frame);
-				if (exprStmt != returnNode) {
-					code.add(new PDM.PUSH(1, loc));
-					code.add(new PDM.POPN(loc));
+				if (tailCalls && (exprStmt == returnNode) && (exprStmt.expr instanceof AST.CallExpr callExpr))
+					tailCall = callExpr;
+				exprStmt.expr.accept(this, frame);
+
+				if ((exprStmt != returnNode) && (exprStmt != inlineReturnNode)) {
+					emit(new PDM.PUSH(1, loc));
+					emit(new PDM.POPN(loc));
 				}
-				attrAST.attrCode.put(exprStmt, code);
-				return code;
+				return code(exprStmt, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.AssignStmt assignStmt, final Mem.Frame frame) {
-				var code = new Vector<PDM.CodeInstr>();
+			public Range visit(final AST.AssignStmt assignStmt, final Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
 				Locatable loc = attrAST.attrLoc.get(assignStmt);
 
-				code.addAll(assignStmt.srcExpr.accept(this, frame));
+				assignStmt.srcExpr.accept(this, frame);
 
-				if (assignStmt.dstExpr instanceof AST.VarExpr ve) {
-					code.addAll(varOrParAddr(ve, frame));
-				} else if (assignStmt.dstExpr instanceof AST.UnExpr ue) {
-					if (ue.oper != AST.UnExpr.Oper.VALUEAT) {
+				if ((assignStmt.dstExpr instanceof AST.VarExpr ve) && (register(ve) != null)) {
+					emit(new PDM.VSAVE(register(ve), loc));
+				} else {
+					if (assignStmt.dstExpr instanceof AST.VarExpr ve) {
+						varOrParAddr(ve, frame);
+					} else if (assignStmt.dstExpr instanceof AST.UnExpr ue) {
+						if (ue.oper != AST.UnExpr.Oper.VALUEAT) {
+							throw new InternalError();
+						}
+						ue.expr.accept(this, frame);
+					} else {
 						throw new InternalError();
 					}
-					code.addAll(ue.expr.accept(this, frame));
-				} else {
-					throw new InternalError();
+					emit(new PDM.SAVE(loc));
 				}
 
-				code.add(new PDM.SAVE(loc));
+				// Izrazi, linearno odvisni od stevca zanke, se spremenijo skupaj s stevcem.
+				for (var increment : increments.getOrDefault(assignStmt, Map.of()).entrySet()) {
+					emit(new PDM.VLOAD(increment.getKey(), loc));
+					emit(new PDM.PUSH(increment.getValue(), loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					emit(new PDM.VSAVE(increment.getKey(), loc));
+				}
 
-				attrAST.attrCode.put(assignStmt, code);
-				return code;
+				return code(assignStmt, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.CallExpr callExpr, final Mem.Frame frame) {
-				var code = new Vector<PDM.CodeInstr>();
+			public Range visit(final AST.CallExpr callExpr, final Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
 				Locatable loc = attrAST.attrLoc.get(callExpr);
 				var def = attrAST.attrDef.get(callExpr);
 				var defFrame = attrAST.attrFrame.get(def);
-				Locatable defLoc = attrAST.attrLoc.get(def);
 
 				if (def == null || !(def instanceof FunDef)) {
 					throw new Report.Error(loc, "Cannot call non-function");
 				}
 
-				for (AST.Expr arg : callExpr.args.getAll().reversed()) {
-					System.out.println(arg.toString());
-					code.addAll(arg.accept(this, frame));
-				}
+				var tail = callExpr == tailCall;
+				tailCall = null;
 
-				String callLabel = defFrame.depth == 1 ? def.name : generateLabel("func", def.name, defLoc);
-
-				code.add(new PDM.REGN(Reg.FP, loc));
-				for (int d = frame.depth; d >= defFrame.depth; d--) {
-					code.add(new PDM.LOAD(loc));
+				var inlined = attrAST.attrInline.get(callExpr);
+				if (inlined != null) {
+					inline(callExpr, inlined, frame);
+					return code(callExpr, start);
 				}
 
-				code.add(new PDM.NAME(callLabel, loc));
-				code.add(new PDM.CALL(defFrame, loc));
-
-				attrAST.attrCode.put(callExpr, code);
-				return code;
+				// Zajete vrednosti dvignjene funkcije so za argumenti.
+				for (AST.Def captured : new ArrayList<AST.Def>(attrAST.attrLifted.getOrDefault(def, Map.of()).keySet())
+						.reversed())
+					value(captured, loc, frame);
+				for (AST.Expr arg : callExpr.args.getAll().reversed())
+					arg.accept(this, frame);
+
+				int callLabel = funLabel((FunDef) def);
+
+				// Funkcija na vrhnjem nivoju staticne povezave ne uporablja.
+				if (defFrame.depth == 1)
+					emit(new PDM.PUSH(0, loc));
+				else
+					frameAddr(frame, defFrame.depth - 1, loc);
+
+				emit(new PDM.NAME(callLabel, loc));
+				// Klicana funkcija prevzame klicni zapis, ce nanj ne kaze noben naslov
+				// in ga ne potrebuje kot staticno povezavo.
+				if (tail && (((FunDef) def).stmts.size() != 0) && (defFrame.depth <= frame.depth)
+						&& !addressed.contains(frame))
+					emit(new PDM.TCALL(defFrame.parsSize - 4, frame.parsSize - 4, defFrame.depth, defFrame, loc));
+				else
+					emit(new PDM.CALL(defFrame.depth, defFrame, loc));
+
+				return code(callExpr, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.UnExpr unExpr, final Mem.Frame frame) {
-				var code = new ArrayList<PDM.CodeInstr>();
+			public Range visit(final AST.UnExpr unExpr, final Mem.Frame frame) {
+				var folded = folded(unExpr, frame);
+				if (folded != null)
+					return folded;
+
+				int start = attrAST.codeBuffer.size();
 				Locatable loc = attrAST.attrLoc.get(unExpr);
 				switch (unExpr.oper) {
 					case AST.UnExpr.Oper.ADD -> {
-						code.addAll(unExpr.expr.accept(this, frame));
+						unExpr.expr.accept(this, frame);
 					}
 
 					case AST.UnExpr.Oper.NOT -> {
-						code.addAll(unExpr.expr.accept(this, frame));
-						code.add(new PDM.OPER(PDM.OPER.Oper.NOT, loc));
+						unExpr.expr.accept(this, frame);
+						emit(new PDM.OPER(PDM.OPER.Oper.NOT, loc));
 					}
 
 					case AST.UnExpr.Oper.SUB -> {
-						code.addAll(unExpr.expr.accept(this, frame));
-						code.add(new PDM.OPER(PDM.OPER.Oper.NEG, loc));
+						unExpr.expr.accept(this, frame);
+						emit(new PDM.OPER(PDM.OPER.Oper.NEG, loc));
 					}
 
 					case AST.UnExpr.Oper.VALUEAT -> {
-						code.addAll(unExpr.expr.accept(this, frame));
-						code.add(new PDM.LOAD(loc));
+						unExpr.expr.accept(this, frame);
+						emit(new PDM.LOAD(loc));
 					}
 					case AST.UnExpr.Oper.MEMADDR -> {
 						switch (unExpr.expr) {
 							case VarExpr ve -> {
-								code.addAll(varOrParAddr(ve, frame));
+								if (access(attrAST.attrDef.get(ve)) instanceof RelAccess ra)
+									addressed.add(ra.depth == inlineDepth ? frame
+											: frames.reversed().stream().filter(f -> f.depth == ra.depth).findFirst()
+													.orElse(frame));
+								varOrParAddr(ve, frame);
 							}
 
 							default -> {
@@ -489,127 +948,741 @@ public class CodeGen {
 					}
 				}
 
-				attrAST.attrCode.put(unExpr, code);
-				return code;
+				return code(unExpr, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.BinExpr binExpr, final Mem.Frame frame) {
-				var code = new ArrayList<PDM.CodeInstr>();
+			public Range visit(final AST.BinExpr binExpr, final Mem.Frame frame) {
+				var folded = folded(binExpr, frame);
+				if (folded != null)
+					return folded;
+
+				int start = attrAST.codeBuffer.size();
 
 				var loc = attrAST.attrLoc.get(binExpr);
 
-				String endLabel = generateLabel("bin:expr:end", loc);
-				String processLabel = generateLabel("bin:expr:2nd", loc);
-				String idkLabel = generateLabel("bin:expr:skip", loc);
+				if (reduced.containsKey(binExpr)) {
+					emit(new PDM.VLOAD(reduced.get(binExpr), loc));
+					return code(binExpr, start);
+				}
 
-				code.addAll(binExpr.fstExpr.accept(this, frame));
+				binExpr.fstExpr.accept(this, frame);
+
+				if ((binExpr.oper != Oper.OR) && (binExpr.oper != Oper.AND)) {
+					binExpr.sndExpr.accept(this, frame);
+					emit(new PDM.OPER(getBinOper(binExpr.oper), loc));
+					return code(binExpr, start);
+				}
+
+				// Labele so potrebne le pri logicnih operatorjih. Vec izrazov se lahko zacne na
+				// istem mestu (npr. a && b || c), zato labele doloca drugi operand.
+				var sndLoc = attrAST.attrLoc.get(binExpr.sndExpr);
+				int endLabel = codeLabel("bin:expr:end", sndLoc);
+				int processLabel = codeLabel("bin:expr:2nd", sndLoc);
+				int idkLabel = codeLabel("bin:expr:skip", sndLoc);
 
 				if (binExpr.oper == Oper.OR) {
-					code.add(new PDM.NAME(endLabel, loc));
-					code.add(new PDM.NAME(processLabel, loc));
-					code.add(new PDM.CJMP(loc));
+					emit(new PDM.NAME(endLabel, loc));
+					emit(new PDM.NAME(processLabel, loc));
+					emit(new PDM.CJMP(loc));
 
-					code.add(new PDM.LABEL(processLabel, loc));
-					code.add(new PDM.PUSH(0, loc));
+					emit(new PDM.LABEL(processLabel, loc));
+					emit(new PDM.PUSH(0, loc));
 
-					code.addAll(binExpr.sndExpr.accept(this, frame));
-					code.add(new PDM.OPER(getBinOper(binExpr.oper), loc));
+					binExpr.sndExpr.accept(this, frame);
+					emit(new PDM.OPER(getBinOper(binExpr.oper), loc));
 
-					code.add(new PDM.NAME(idkLabel, loc));
-					code.add(new PDM.UJMP(loc));
+					emit(new PDM.NAME(idkLabel, loc));
+					emit(new PDM.UJMP(loc));
 
-					code.add(new PDM.LABEL(endLabel, loc));
-					code.add(new PDM.PUSH(1, loc));
+					emit(new PDM.LABEL(endLabel, loc));
+					emit(new PDM.PUSH(1, loc));
 
-					code.add(new PDM.LABEL(idkLabel, loc));
+					emit(new PDM.LABEL(idkLabel, loc));
 
 				} else if (binExpr.oper == Oper.AND) {
-					code.add(new PDM.NAME(processLabel, loc));
-					code.add(new PDM.NAME(endLabel, loc));
-					code.add(new PDM.CJMP(loc));
+					emit(new PDM.NAME(processLabel, loc));
+					emit(new PDM.NAME(endLabel, loc));
+					emit(new PDM.CJMP(loc));
 
-					code.add(new PDM.LABEL(processLabel, loc));
-					code.add(new PDM.PUSH(1, loc));
+					emit(new PDM.LABEL(processLabel, loc));
+					emit(new PDM.PUSH(1, loc));
 
-					code.addAll(binExpr.sndExpr.accept(this, frame));
-					code.add(new PDM.OPER(getBinOper(binExpr.oper), loc));
+					binExpr.sndExpr.accept(this, frame);
+					emit(new PDM.OPER(getBinOper(binExpr.oper), loc));
 
-					code.add(new PDM.NAME(idkLabel, loc));
-					code.add(new PDM.UJMP(loc));
+					emit(new PDM.NAME(idkLabel, loc));
+					emit(new PDM.UJMP(loc));
 
-					code.add(new PDM.LABEL(endLabel, loc));
-					code.add(new PDM.PUSH(0, loc));
+					emit(new PDM.LABEL(endLabel, loc));
+					emit(new PDM.PUSH(0, loc));
 
-					code.add(new PDM.LABEL(idkLabel, loc));
-				} else {
-					code.addAll(binExpr.sndExpr.accept(this, frame));
-					code.add(new PDM.OPER(getBinOper(binExpr.oper), loc));
+					emit(new PDM.LABEL(idkLabel, loc));
 				}
 
-				attrAST.attrCode.put(binExpr, code);
-				return code;
+				return code(binExpr, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.VarExpr varExpr, final Mem.Frame frame) {
-				var code = new ArrayList<PDM.CodeInstr>();
+			public Range visit(final AST.VarExpr varExpr, final Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
 				Locatable loc = attrAST.attrLoc.get(varExpr);
 
-				code.addAll(varOrParAddr(varExpr, frame));
-				code.add(new PDM.LOAD(loc));
+				value(attrAST.attrDef.get(varExpr), loc, frame);
 
-				attrAST.attrCode.put(varExpr, code);
-				return code;
+				return code(varExpr, start);
 			}
 
 			@Override
-			public List<PDM.CodeInstr> visit(final AST.AtomExpr atomExpr, final Mem.Frame frame) {
-				var code = new ArrayList<PDM.CodeInstr>();
+			public Range visit(final AST.AtomExpr atomExpr, final Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
 				Locatable loc = attrAST.attrLoc.get(atomExpr);
 				switch (atomExpr.type) {
 					case INTCONST:
-						code.add(new PDM.PUSH(Memory.decodeIntConst(atomExpr, loc), loc));
+						emit(new PDM.PUSH(Memory.decodeIntConst(atomExpr, loc), loc));
 						break;
 					case CHRCONST:
-						code.add(new PUSH(Memory.decodeChrConst(atomExpr, loc), loc));
+						emit(new PUSH(Memory.decodeChrConst(atomExpr, loc), loc));
 						break;
 					case STRCONST:
 						var data = new ArrayList<PDM.DataInstr>();
-						String label = generateLabel("strconst", loc);
+						var chars = Memory.decodeStrConst(atomExpr, loc);
+						// Niz, katerega koda se generira vec kot enkrat (npr. v vstavljenih
+						// funkcijah), ostane en sam vnos v podatkih.
+						final List<PDM.DataInstr> oldData = attrAST.attrData.get(atomExpr);
+						final int newLabel = oldData != null ? ((PDM.LABEL) oldData.getFirst()).label
+								: generateLabel("strconst", loc);
+						final int label = readOnlyStrings.contains(atomExpr) && !chars.isEmpty()
+								&& (chars.lastElement() == 0)
+										? strLabels.computeIfAbsent(new ArrayList<Integer>(chars), __ -> newLabel)
+										: newLabel;
 						data.add(new LABEL(label, loc));
-						for (int s : Memory.decodeStrConst(atomExpr, loc)) {
-							data.add(new DATA(s, loc));
+						if (packedStrings) {
+							for (int c = 0; c < chars.size(); c += 4) {
+								int word = 0;
+								for (int b = 0; (b < 4) && (c + b < chars.size()); b++)
+									word = word | ((chars.get(c + b) & 0xFF) << (8 * b));
+								data.add(new DATA(word, loc));
+							}
+						} else {
+							for (int s : chars) {
+								data.add(new DATA(s, loc));
+							}
 						}
-						code.add(new PDM.NAME(label, loc));
+						emit(new PDM.NAME(label, loc));
 						attrAST.attrData.put(atomExpr, data);
 						break;
 				}
 
-				attrAST.attrCode.put(atomExpr, code);
-				return code;
+				return code(atomExpr, start);
 			}
 
 			@Override
-			public List<CodeInstr> visit(Init __, Frame ___) {
-				return Collections.emptyList();
+			public Range visit(Init __, Frame ___) {
+				return null;
 			}
 
 			@Override
-			public List<CodeInstr> visit(ParDef __, Frame ___) {
-				return Collections.emptyList();
+			public Range visit(ParDef __, Frame ___) {
+				return null;
 			}
 
 			// Privatne metode
 
-			private String generateLabel(String def, String name, Locatable loc) {
-				return String.format("%s:%s@%d:%d", def, name, loc.location().begLine(),
-						loc.location().begColumn());
+			/**
+			 * Generira kodo, ki na sklad prenese vrednost spremenljivke ali parametra.
+			 *
+			 * @param def   Spremenljivka ali parameter.
+			 * @param loc   Lokacija.
+			 * @param frame Klicni zapis funkcije.
+			 */
+			private void value(AST.Def def, Locatable loc, Mem.Frame frame) {
+				var inlineConst = inlineConsts.get(def);
+				Integer reg = register(access(def));
+				if (inlineConst != null)
+					emit(new PDM.PUSH(inlineConst, loc));
+				else if (reg != null)
+					emit(new PDM.VLOAD(reg, loc));
+				else {
+					addr(def, loc, frame);
+					emit(new PDM.LOAD(loc));
+				}
+			}
+
+			/**
+			 * Generira kodo izraza, ki ga je poenostavila faza {@link Optim}.
+			 *
+			 * @param expr  Izraz.
+			 * @param frame Klicni zapis funkcije, v kateri je izraz.
+			 * @return Koda izraza ali {@code null}, ce izraz ni bil poenostavljen.
+			 */
+			private Range folded(AST.Expr expr, Mem.Frame frame) {
+				int start = attrAST.codeBuffer.size();
+				Integer value = attrAST.attrConst.get(expr);
+				AST.Expr subst = attrAST.attrSubst.get(expr);
+				if (value != null)
+					emit(new PDM.PUSH(value, attrAST.attrLoc.get(expr)));
+				else if (subst != null)
+					subst.accept(this, frame);
+				else
+					return null;
+				return code(expr, start);
+			}
+
+			/**
+			 * Generira kodo pogoja, ki skoci na prvo labelo, ce je vrednost pogoja
+			 * razlicna od 0, sicer pa na drugo labelo.
+			 *
+			 * @param cond       Pogoj.
+			 * @param trueLabel  Labela, na katero se skoci, ce pogoj velja.
+			 * @param falseLabel Labela, na katero se skoci, ce pogoj ne velja.
+			 * @param frame      Klicni zapis funkcije.
+			 */
+			private void condition(AST.Expr cond, int trueLabel, int falseLabel, Mem.Frame frame) {
+				Locatable loc = attrAST.attrLoc.get(cond);
+
+				Integer value = attrAST.attrConst.get(cond);
+				AST.Expr subst = attrAST.attrSubst.get(cond);
+				if (jumpingCode && (value != null)) {
+					emit(new PDM.NAME(value != 0 ? trueLabel : falseLabel, loc));
+					emit(new PDM.UJMP(loc));
+					return;
+				}
+				if (jumpingCode && (subst != null)) {
+					condition(subst, trueLabel, falseLabel, frame);
+					return;
+				}
+
+				switch (cond) {
+					case AST.BinExpr binExpr when jumpingCode && (binExpr.oper == Oper.AND) -> {
+						int sndLabel = codeLabel("cond:and", attrAST.attrLoc.get(binExpr.sndExpr));
+						condition(binExpr.fstExpr, sndLabel, falseLabel, frame);
+						emit(new PDM.LABEL(sndLabel, loc));
+						condition(binExpr.sndExpr, trueLabel, falseLabel, frame);
+					}
+					case AST.BinExpr binExpr when jumpingCode && (binExpr.oper == Oper.OR) -> {
+						int sndLabel = codeLabel("cond:or", attrAST.attrLoc.get(binExpr.sndExpr));
+						condition(binExpr.fstExpr, trueLabel, sndLabel, frame);
+						emit(new PDM.LABEL(sndLabel, loc));
+						condition(binExpr.sndExpr, trueLabel, falseLabel, frame);
+					}
+					case AST.UnExpr unExpr when jumpingCode && (unExpr.oper == AST.UnExpr.Oper.NOT) -> {
+						condition(unExpr.expr, falseLabel, trueLabel, frame);
+					}
+					case AST.UnExpr unExpr when jumpingCode && (unExpr.oper == AST.UnExpr.Oper.ADD) -> {
+						condition(unExpr.expr, trueLabel, falseLabel, frame);
+					}
+					default -> {
+						cond.accept(this, frame);
+						emit(new PDM.NAME(trueLabel, loc));
+						emit(new PDM.NAME(falseLabel, loc));
+						emit(new PDM.CJMP(loc));
+					}
+				}
+			}
+
+			/**
+			 * Generira kodo zanke, ki jo je obdelala faza {@link Loops}.
+			 *
+			 * Pogoj in telo zanke se generirata na mestu, kjer se v kodi prvic pojavita,
+			 * nadaljnje ponovitve pa so kopije ze generirane kode.
+			 *
+			 * @param whileStmt Zanka.
+			 * @param loop      Nacin prevajanja zanke.
+			 * @param frame     Klicni zapis funkcije.
+			 */
+			private void loop(AST.WhileStmt whileStmt, Loops.Loop loop, Mem.Frame frame) {
+				Locatable loc = attrAST.attrLoc.get(whileStmt);
+
+				int wLabel = codeLabel("while:condition", loc);
+				int wBodyLabel = codeLabel("while:body", loc);
+				int wEndLabel = codeLabel("while:end", loc);
+				int wGuardLabel = codeLabel("while:guard", loc);
+
+				// Naslovi klicnih zapisov se izracunajo pred zanko.
+				var outerHoisted = hoisted;
+				hoisted = new HashMap<Integer, Integer>(outerHoisted);
+				for (int distance : loop.hoisted()) {
+					if (hoisted.containsKey(distance))
+						continue;
+					extraSize += 4;
+					int offset = -frame.varsSize - extraSize;
+					staticLink(distance, loc);
+					emit(new PDM.REGN(Reg.FP, loc));
+					emit(new PDM.PUSH(offset, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					emit(new PDM.SAVE(loc));
+					hoisted.put(distance, offset);
+				}
+
+				// Izrazi, linearno odvisni od stevca, se izracunajo pred zanko.
+				var outerReduced = reduced;
+				reduced = new HashMap<AST.BinExpr, Integer>(outerReduced);
+				var steps = new LinkedHashMap<Integer, Integer>();
+				for (var reduction : loop.reduced()) {
+					int reg = frame.numRegs + extraRegs++;
+					reduction.exprs().getFirst().accept(this, frame);
+					emit(new PDM.VSAVE(reg, loc));
+					for (var expr : reduction.exprs())
+						reduced.put(expr, reg);
+					steps.put(reg, reduction.stride());
+				}
+				if (!steps.isEmpty())
+					increments.put(loop.increment(), steps);
+
+				// Telo zanke s stevcem se ponovi, dokler stevec ne doseze meje.
+				Range bodyCode = null;
+				if (loop.unroll() > 1) {
+					int uLabel = codeLabel("while:unrolled:condition", loc);
+					int uBodyLabel = codeLabel("while:unrolled:body", loc);
+					AST.BinExpr binExpr = (AST.BinExpr) whileStmt.cond;
+
+					if (!loop.rotated())
+						emit(new PDM.LABEL(uLabel, loc));
+					int uCondStart = attrAST.codeBuffer.size();
+					binExpr.fstExpr.accept(this, frame);
+					emit(new PDM.PUSH(loop.bound(), loc));
+					emit(new PDM.OPER(getBinOper(binExpr.oper), loc));
+					emit(new PDM.NAME(uBodyLabel, loc));
+					emit(new PDM.NAME(loop.rotated() ? wGuardLabel : wLabel, loc));
+					emit(new PDM.CJMP(loc));
+					var uCondCode = new Range(uCondStart, attrAST.codeBuffer.size());
+
+					emit(new PDM.LABEL(uBodyLabel, loc));
+					bodyCode = whileStmt.stmts.accept(this, frame);
+					for (int copy = 2; copy <= loop.unroll(); copy++)
+						copy(bodyCode, "#" + copy);
+					if (loop.rotated()) {
+						emit(new PDM.LABEL(uLabel, loc));
+						copy(uCondCode, null);
+					} else {
+						emit(new PDM.NAME(uLabel, loc));
+						emit(new PDM.UJMP(loc));
+					}
+				}
+
+				if (loop.rotated()) {
+					emit(new PDM.LABEL(wGuardLabel, loc));
+					int condStart = attrAST.codeBuffer.size();
+					condition(whileStmt.cond, wBodyLabel, wEndLabel, frame);
+					var condCode = new Range(condStart, attrAST.codeBuffer.size());
+					emit(new PDM.LABEL(wBodyLabel, loc));
+					if (bodyCode == null)
+						whileStmt.stmts.accept(this, frame);
+					else
+						copy(bodyCode, "#" + (loop.unroll() + 1));
+					emit(new PDM.LABEL(wLabel, loc));
+					copy(condCode, "#latch");
+				} else {
+					emit(new PDM.LABEL(wLabel, loc));
+					condition(whileStmt.cond, wBodyLabel, wEndLabel, frame);
+					emit(new PDM.LABEL(wBodyLabel, loc));
+					if (bodyCode == null)
+						whileStmt.stmts.accept(this, frame);
+					else
+						copy(bodyCode, "#" + (loop.unroll() + 1));
+					emit(new PDM.NAME(wLabel, loc));
+					emit(new PDM.UJMP(loc));
+				}
+				emit(new PDM.LABEL(wEndLabel, loc));
+
+				hoisted = outerHoisted;
+				reduced = outerReduced;
+				increments.remove(loop.increment());
+			}
+
+			/**
+			 * Generira kodo klica, ki ga je faza {@link Inline} nadomestila s telesom
+			 * funkcije.
+			 *
+			 * Klicni zapis vstavljene funkcije (spremenljivke, kazalec na klicni zapis,
+			 * staticna povezava in parametri) se rezervira na koncu klicnega zapisa
+			 * trenutne funkcije, odmiki v njem pa se ohranijo. Staticne povezave do
+			 * zunanjih funkcij se racunajo od trenutne funkcije, saj so zunanje
+			 * funkcije vstavljene funkcije tudi zunanje funkcije klicoce funkcije.
+			 *
+			 * @param callExpr Klic funkcije.
+			 * @param funDef   Vstavljena funkcija.
+			 * @param frame    Klicni zapis funkcije.
+			 */
+			private void inline(AST.CallExpr callExpr, AST.FunDef funDef, Mem.Frame frame) {
+				Locatable loc = attrAST.attrLoc.get(callExpr);
+				var funFrame = attrAST.attrFrame.get(funDef);
+
+				extraSize += funFrame.varsSize + funFrame.parsSize;
+				int base = -frame.varsSize - extraSize + funFrame.varsSize;
+				int regBase = frame.numRegs + extraRegs;
+				extraRegs += funFrame.numRegs;
+
+				// Argumenti se izracunajo v enakem vrstnem redu kot pri klicu.
+				var consts = new HashMap<AST.ParDef, Integer>();
+				var args = callExpr.args.getAll();
+				for (int arg = args.size() - 1; arg >= 0; arg--) {
+					var parDef = funDef.pars.getAll().get(arg);
+					var value = Inline.constantArg(attrAST, funDef, parDef, args.get(arg));
+					if (value != null)
+						consts.put(parDef, value);
+					else
+						args.get(arg).accept(this, frame);
+				}
+				for (int arg = 0; arg < args.size(); arg++) {
+					var parDef = funDef.pars.getAll().get(arg);
+					if (consts.containsKey(parDef))
+						continue;
+					var ra = attrAST.attrParAccess.get(parDef);
+					if (ra.reg != null) {
+						emit(new PDM.VSAVE(regBase + ra.reg, loc));
+						continue;
+					}
+					emit(new PDM.REGN(Reg.FP, loc));
+					emit(new PDM.PUSH(base + ra.offset, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					emit(new PDM.SAVE(loc));
+				}
+				for (var capture : attrAST.attrLifted.getOrDefault(funDef, Map.of()).entrySet()) {
+					var ra = capture.getValue();
+					value(capture.getKey(), loc, frame);
+					if (ra.reg != null) {
+						emit(new PDM.VSAVE(regBase + ra.reg, loc));
+						continue;
+					}
+					emit(new PDM.REGN(Reg.FP, loc));
+					emit(new PDM.PUSH(base + ra.offset, loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					emit(new PDM.SAVE(loc));
+				}
+
+				var outerInlineDepth = inlineDepth;
+				var outerInlineBase = inlineBase;
+				var outerInlineRegBase = inlineRegBase;
+				var outerInlineConsts = inlineConsts;
+				var outerInlineReturnNode = inlineReturnNode;
+				var outerBody = body;
+				inlineDepth = funFrame.depth;
+				inlineBase = base;
+				inlineRegBase = regBase;
+				inlineConsts = consts;
+				inlineReturnNode = returnNode(funDef);
+				inlineLabels.add(generateLabel("inline", loc));
+				body = funDef;
+				funDef.stmts.accept(this, frame);
+				body = outerBody;
+				inlineLabels.removeLast();
+				inlineDepth = outerInlineDepth;
+				inlineBase = outerInlineBase;
+				inlineRegBase = outerInlineRegBase;
+				inlineConsts = outerInlineConsts;
+				inlineReturnNode = outerInlineReturnNode;
+			}
+
+			/**
+			 * Vrne stavek, ki vrne vrednost funkcije.
+			 *
+			 * @param funDef Funkcija.
+			 * @return Stavek, ki vrne vrednost funkcije.
+			 */
+			private AST.Node returnNode(AST.FunDef funDef) {
+				AST.Stmt lastStmt = funDef.stmts.getAll().getLast();
+				while (true) {
+					switch (lastStmt) {
+						case AST.ExprStmt e -> {
+							return e;
+						}
+						case AST.LetStmt letStmt -> {
+							if (letStmt.stmts.size() != 0)
+								lastStmt = letStmt.stmts.getAll().getLast();
+							else
+								never();
+						}
+						default -> never();
+					}
+				}
+			}
+
+			/**
+			 * Vrne funkcije, definirane v telesu funkcije (brez funkcij, definiranih v
+			 * telesih teh funkcij).
+			 *
+			 * @param funDef Funkcija.
+			 * @return Gnezdene funkcije.
+			 */
+			private List<AST.FunDef> nested(AST.FunDef funDef) {
+				var nested = new ArrayList<AST.FunDef>();
+				funDef.stmts.accept(new AST.FullVisitor<Object, Object>() {
+					@Override
+					public Object visit(final AST.FunDef nestedDef, final Object arg) {
+						nested.add(nestedDef);
+						return null;
+					}
+				}, null);
+				return nested;
+			}
+
+			/**
+			 * Na konec kode doda kopijo dela kode, v kateri so vse labele, definirane v
+			 * tem delu kode, preimenovane.
+			 *
+			 * @param range  Del kode.
+			 * @param suffix Pripona imen label ali {@code null}, ce se labele ne
+			 *               preimenujejo.
+			 */
+			private void copy(Range range, String suffix) {
+				var code = attrAST.codeBuffer.code(range);
+				Set<Integer> labels = new HashSet<Integer>();
+				if (suffix != null)
+					for (PDM.CodeInstr instr : code)
+						if (instr instanceof PDM.LABEL label)
+							labels.add(label.label);
+				for (PDM.CodeInstr instr : code)
+					emit(switch (instr) {
+						case PDM.LABEL label when labels.contains(label.label) ->
+							new PDM.LABEL(copyLabel(label.label, suffix, 0), label.debugLocation);
+						case PDM.NAME name when labels.contains(name.label) ->
+							new PDM.NAME(copyLabel(name.label, suffix, 0), name.debugLocation);
+						default -> instr;
+					});
+			}
+
+			/**
+			 * Vrne labelo v kopiji kode. Pripona kopije se doda pred pripone klicev
+			 * vstavljenih funkcij, v katerih se koda trenutno generira, zato se labele
+			 * kopij v vstavljenem telesu ne morejo ujemati z labelami kopij istega
+			 * telesa, ki jih naredi klicoca funkcija.
+			 *
+			 * @param label  Labela v kodi, ki se kopira.
+			 * @param suffix Pripona imena labele.
+			 * @param depth  Stevilo ze obdelanih pripon klicev vstavljenih funkcij.
+			 * @return Labela v kopiji kode.
+			 */
+			private int copyLabel(int label, String suffix, int depth) {
+				if (depth == inlineLabels.size())
+					return Labels.label(label, suffix);
+				return Labels.label(copyLabel(Labels.base(label), suffix, depth + 1), "#", inlineLabels.get(depth));
+			}
+
+			/**
+			 * Generira kodo, ki izracuna naslov klicnega zapisa dane globine: prek
+			 * prikaza ali po verigi staticnih povezav.
+			 *
+			 * @param frame Klicni zapis funkcije.
+			 * @param depth Globina klicnega zapisa.
+			 * @param loc   Lokacija.
+			 */
+			private void frameAddr(Mem.Frame frame, int depth, Locatable loc) {
+				if (display && (depth < frame.depth))
+					emit(new PDM.DISP(depth, loc));
+				else
+					staticLink(frame.depth - depth, loc);
+			}
+
+			/**
+			 * Generira kodo, ki izracuna naslov klicnega zapisa po verigi staticnih
+			 * povezav.
+			 *
+			 * @param distance Dolzina verige staticnih povezav.
+			 * @param loc      Lokacija.
+			 */
+			private void staticLink(int distance, Locatable loc) {
+				emit(new PDM.REGN(Reg.FP, loc));
+				if (hoisted.containsKey(distance)) {
+					emit(new PDM.PUSH(hoisted.get(distance), loc));
+					emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+					emit(new PDM.LOAD(loc));
+				} else {
+					for (int d = 0; d < distance; d++)
+						emit(new PDM.LOAD(loc));
+				}
+			}
+
+			/**
+			 * Vrne labelo funkcije: funkcije na vrhnjem nivoju imajo kar svoje ime,
+			 * gnezdene (tudi dvignjene) pa labelo z lokacijo definicije.
+			 *
+			 * @param funDef Funkcija.
+			 * @return Labela funkcije.
+			 */
+			private int funLabel(AST.FunDef funDef) {
+				var funFrame = attrAST.attrFrame.get(funDef);
+				if ((funFrame.depth == 1) && !attrAST.attrLifted.containsKey(funDef))
+					return Labels.label(funDef.name);
+				return generateLabel("func", funDef.name, attrAST.attrLoc.get(funDef));
+			}
+
+			/**
+			 * Ali se spremenljivka prvega stavka let funkcije inicializira s predlogo
+			 * klicnega zapisa: to velja za tabele (skalarne spremenljivke se
+			 * inicializirajo posamic, da jih optimizacija SSA lahko prestavi v
+			 * virtualne registre).
+			 *
+			 * @param access Dostop do spremenljivke.
+			 * @return Ali se spremenljivka inicializira s predlogo.
+			 */
+			private boolean inFrameTemplate(Mem.Access access) {
+				return (register(access) == null) && (access instanceof RelAccess ra) && (ra.depth != inlineDepth)
+						&& (ra.size > 4);
+			}
+
+			/**
+			 * Vrne besede, ki jih zapise inicializacija z danim opisom zacetnih vrednosti.
+			 *
+			 * @param inits Opis zacetnih vrednosti.
+			 * @return Zapisane besede.
+			 */
+			private List<Integer> initWords(List<Integer> inits) {
+				var words = new ArrayList<Integer>();
+				int pos = 1;
+				for (int nInit = 0; nInit < inits.get(0); nInit++) {
+					int num = inits.get(pos);
+					int len = inits.get(pos + 1);
+					for (int n = 0; n < num; n++)
+						words.addAll(inits.subList(pos + 2, pos + 2 + len));
+					pos += 2 + len;
+				}
+				return words;
+			}
+
+			/**
+			 * Vrne opis podatkov z danimi zacetnimi vrednostmi: zaporedja nicel se opisejo
+			 * z ukazom {@code SIZE} (pomnilnik jih ne zapisuje), ostale besede pa z ukazi
+			 * {@code DATA}.
+			 *
+			 * @param words Zacetne vrednosti besed.
+			 * @param size  Velikost podatkov (v bajtih).
+			 * @param loc   Lokacija.
+			 * @return Opis podatkov.
+			 */
+			private List<PDM.DataInstr> dataImage(List<Integer> words, int size, Locatable loc) {
+				var data = new ArrayList<PDM.DataInstr>();
+				int zeros = 0;
+				for (int w = 0; w < size / 4; w++) {
+					int word = w < words.size() ? words.get(w) : 0;
+					if (word == 0) {
+						zeros++;
+						continue;
+					}
+					if (zeros > 0)
+						data.add(new PDM.SIZE(4 * zeros, loc));
+					zeros = 0;
+					data.add(new PDM.DATA(word, loc));
+				}
+				if (zeros > 0)
+					data.add(new PDM.SIZE(4 * zeros, loc));
+				return data;
+			}
+
+			/**
+			 * Generira kodo, ki v klicni zapis zapise predlogo zacetnih vrednosti tabel,
+			 * in doda opis predloge v podatke stavka let. Vsako strnjeno podrocje tabel
+			 * se zapise z enim ukazom {@code INIT}, nicle na zacetku in koncu podrocja
+			 * pa se izpustijo, saj je klicni zapis ob rezervaciji ze pociscen.
+			 *
+			 * @param letStmt Stavek let.
+			 * @param inits   Zacetne vrednosti besed v klicnem zapisu (po odmikih).
+			 */
+			private void frameTemplate(AST.LetStmt letStmt, SortedMap<Integer, Integer> inits) {
+				var data = new ArrayList<PDM.DataInstr>();
+				Locatable loc = attrAST.attrLoc.get(letStmt);
+				attrAST.attrData.put(letStmt, data);
+
+				int numTemplates = 0;
+				Integer lo = null;
+				Integer hi = null;
+				for (var init : inits.entrySet()) {
+					int offset = init.getKey();
+					// Podrocje se konca pred besedo, ki ne pripada tabelam.
+					if ((lo != null) && !inits.containsKey(offset - 4)) {
+						frameTemplate(loc, inits, lo, hi, numTemplates++, data);
+						lo = null;
+					}
+					if (init.getValue() != 0) {
+						if (lo == null)
+							lo = offset;
+						hi = offset;
+					}
+				}
+				if (lo != null)
+					frameTemplate(loc, inits, lo, hi, numTemplates++, data);
+			}
+
+			/**
+			 * Generira kodo in doda opis predloge, ki zapise besede klicnega zapisa od
+			 * odmika {@code lo} do odmika {@code hi}.
+			 *
+			 * @param loc   Lokacija stavka let.
+			 * @param inits Zacetne vrednosti besed v klicnem zapisu (po odmikih).
+			 * @param lo    Odmik prve besede.
+			 * @param hi    Odmik zadnje besede.
+			 * @param num   Zaporedna stevilka predloge v stavku let.
+			 * @param data  Podatki.
+			 */
+			private void frameTemplate(Locatable loc, SortedMap<Integer, Integer> inits, int lo, int hi, int num,
+					List<PDM.DataInstr> data) {
+				// Opis: zaporedja enakih besed se ponovijo, ostale besede se prepisejo.
+				var blocks = new ArrayList<Integer>();
+				int numBlocks = 0;
+				var literal = new ArrayList<Integer>();
+				int offset = lo;
+				while (offset <= hi) {
+					int value = inits.get(offset);
+					int repeat = 1;
+					while ((offset + 4 * repeat <= hi) && (inits.get(offset + 4 * repeat) == value))
+						repeat++;
+					if (repeat > 2) {
+						if (!literal.isEmpty()) {
+							blocks.addAll(List.of(1, literal.size()));
+							blocks.addAll(literal);
+							numBlocks++;
+							literal.clear();
+						}
+						blocks.addAll(List.of(repeat, 1, value));
+						numBlocks++;
+					} else {
+						for (int r = 0; r < repeat; r++)
+							literal.add(value);
+					}
+					offset += 4 * repeat;
+				}
+				if (!literal.isEmpty()) {
+					blocks.addAll(List.of(1, literal.size()));
+					blocks.addAll(literal);
+					numBlocks++;
+				}
+
+				int templateLabel = num == 0 ? generateLabel("frame", loc)
+						: Labels.label(generateLabel("frame", loc), "." + num);
+				data.add(new PDM.LABEL(templateLabel, loc));
+				data.add(new PDM.DATA(numBlocks, loc));
+				data.addAll(blocks.stream().map(x -> new PDM.DATA(x, loc)).toList());
+
+				emit(new PDM.REGN(Reg.FP, loc));
+				emit(new PDM.PUSH(lo, loc));
+				emit(new PDM.OPER(PDM.OPER.Oper.ADD, loc));
+				emit(new PDM.NAME(templateLabel, loc));
+				emit(new PDM.INIT(loc));
+			}
+
+			/**
+			 * Vrne labelo, ki je definirana v kodi. V telesu vstavljene funkcije ima
+			 * labela pripono z labelo vsakega klica, v katerega je telo vstavljeno, da
+			 * se labele vstavljenih kopij telesa razlikujejo.
+			 *
+			 * @param def Vrsta labele.
+			 * @param loc Lokacija.
+			 * @return Labela.
+			 */
+			private int codeLabel(String def, Locatable loc) {
+				int label = generateLabel(def, loc);
+				for (int inlineLabel : inlineLabels.reversed())
+					label = Labels.label(label, "#", inlineLabel);
+				return label;
+			}
+
+			private int generateLabel(String def, String name, Locatable loc) {
+				return Labels.label(def, name, loc);
 			}
 
-			private String generateLabel(String def, Locatable loc) {
-				return String.format("%s@%d:%d", def, loc.location().begLine(),
-						loc.location().begColumn());
+			private int generateLabel(String def, Locatable loc) {
+				return Labels.label(def, null, loc);
 			}
 
 			private PDM.OPER.Oper getBinOper(AST.BinExpr.Oper oper) {
@@ -651,7 +1724,10 @@ public class CodeGen {
 		 */
 		private final AttrAST attrAST;
 
-		/** Seznam ukazov za inicializacijo staticnih spremenljivk. */
+		/**
+		 * Seznam ukazov za zagon programa (staticne spremenljivke so inicializirane ze
+		 * v sliki podatkov, zato zanje ni ukazov).
+		 */
 		private final Vector<PDM.CodeInstr> codeInitSegment = new Vector<PDM.CodeInstr>();
 
 		/** Seznam ukazov funkcij. */
@@ -678,11 +1754,11 @@ public class CodeGen {
 		public List<PDM.CodeInstr> codeSegment() {
 			attrAST.ast.accept(new Generator(), null);
 			codeInitSegment.addLast(new PDM.PUSH(0, null));
-			codeInitSegment.addLast(new PDM.NAME("main", null));
-			codeInitSegment.addLast(new PDM.CALL(main, null));
+			codeInitSegment.addLast(new PDM.NAME(Labels.label("main"), null));
+			codeInitSegment.addLast(new PDM.CALL(main == null ? -1 : main.depth, main, null));
 			codeInitSegment.addLast(new PDM.PUSH(0, null));
-			codeInitSegment.addLast(new PDM.NAME("exit", null));
-			codeInitSegment.addLast(new PDM.CALL(null, null));
+			codeInitSegment.addLast(new PDM.NAME(Labels.label("exit"), null));
+			codeInitSegment.addLast(new PDM.CALL(-1, null, null));
 			final Vector<PDM.CodeInstr> codeSegment = new Vector<PDM.CodeInstr>();
 			codeSegment.addAll(codeInitSegment);
 			codeSegment.addAll(codeFunsSegment);
@@ -700,10 +1776,12 @@ public class CodeGen {
 
 			@Override
 			public Object visit(final AST.FunDef funDef, final Object arg) {
-				if (funDef.stmts.size() == 0)
+				if ((funDef.stmts.size() == 0) || !attrAST.attrLive.contains(funDef))
 					return null;
-				List<PDM.CodeInstr> code = attrAST.attrCode.get(funDef);
-				codeFunsSegment.addAll(code);
+				// Funkcija, katere klici so vsi vstavljeni, nima gnezdenih funkcij.
+				if (attrAST.attrInlined.contains(funDef))
+					return null;
+				codeFunsSegment.addAll(attrAST.code(funDef));
 				funDef.pars.accept(this, arg);
 				funDef.stmts.accept(this, arg);
 				switch (funDef.name) {
@@ -716,8 +1794,9 @@ public class CodeGen {
 			public Object visit(final AST.VarDef varDef, final Object arg) {
 				switch (attrAST.attrVarAccess.get(varDef)) {
 					case Mem.AbsAccess _: {
-						List<PDM.CodeInstr> code = attrAST.attrCode.get(varDef);
-						codeInitSegment.addAll(code);
+						if (!attrAST.attrLive.contains(varDef))
+							break;
+						codeInitSegment.addAll(attrAST.code(varDef));
 						break;
 					}
 					case Mem.RelAccess _: {
@@ -733,6 +1812,94 @@ public class CodeGen {
 
 	}
 
+	/**
+	 * Prevede zaporedja ukazov, ki na sklad prenesejo ciljno oznako skoka ali
+	 * klica, velikost parametrov vrnitve oziroma velikost rezerviranega prostora,
+	 * v ukaze s takojsnjimi operandi.
+	 * 
+	 * Klic se prevede v ukaz {@link PDM.CALLI} le, ce je staticna povezava
+	 * izracunana z enim samim ukazom ({@code PUSH 0}, {@code REGN FP} ali
+	 * {@code DISP}), saj jo ukaz {@link PDM.CALLI} prebere iz prikaza. Klica
+	 * funkcij {@code getbyte} in {@code putbyte} se prevedeta neposredno v ukaza
+	 * {@link PDM.LDB} in {@link PDM.STB}.
+	 * 
+	 * @param codeSegment Seznam ukazov, ki predstavljajo kodo programa.
+	 * @return Seznam ukazov s takojsnjimi operandi.
+	 */
+	public static List<PDM.CodeInstr> immediates(final List<PDM.CodeInstr> codeSegment) {
+		if (!immediates)
+			return codeSegment;
+		final Vector<PDM.CodeInstr> code = new Vector<PDM.CodeInstr>();
+		int i = 0;
+		while (i < codeSegment.size()) {
+			final PDM.CodeInstr fst = codeSegment.get(i);
+			final PDM.CodeInstr snd = i + 1 < codeSegment.size() ? codeSegment.get(i + 1) : null;
+			final PDM.CodeInstr trd = i + 2 < codeSegment.size() ? codeSegment.get(i + 2) : null;
+			if ((fst instanceof PDM.NAME name) && (snd instanceof PDM.UJMP ujmp)) {
+				code.add(new PDM.JUMP(name.label, ujmp.debugLocation));
+				i += 2;
+				continue;
+			}
+			if ((fst instanceof PDM.NAME thenName) && (snd instanceof PDM.NAME elseName)
+					&& (trd instanceof PDM.CJMP cjmp)) {
+				// Skok na oznako, ki neposredno sledi, je odvec.
+				final Set<Integer> next = new HashSet<Integer>();
+				for (int j = i + 3; (j < codeSegment.size()) && (codeSegment.get(j) instanceof PDM.LABEL label); j++)
+					next.add(label.label);
+				if (next.contains(elseName.label))
+					code.add(new PDM.JCOND(true, thenName.label, cjmp.debugLocation));
+				else if (next.contains(thenName.label))
+					code.add(new PDM.JCOND(false, elseName.label, cjmp.debugLocation));
+				else {
+					code.add(new PDM.JCOND(true, thenName.label, cjmp.debugLocation));
+					code.add(new PDM.JUMP(elseName.label, cjmp.debugLocation));
+				}
+				i += 3;
+				continue;
+			}
+			if ((fst instanceof PDM.PUSH push) && (push.intc < 0) && (snd instanceof PDM.POPN popn)) {
+				code.add(new PDM.ENTER(-push.intc, popn.debugLocation));
+				i += 2;
+				continue;
+			}
+			if ((fst instanceof PDM.PUSH push) && (snd instanceof PDM.RETN retn)) {
+				code.add(new PDM.RET(push.intc, retn.debugFrame, retn.debugLocation));
+				i += 2;
+				continue;
+			}
+			if ((fst instanceof PDM.PUSH || fst instanceof PDM.REGN || fst instanceof PDM.DISP)
+					&& (snd instanceof PDM.NAME name) && (trd instanceof PDM.CALL call)
+					&& ((name.label == Labels.label("getbyte")) || (name.label == Labels.label("putbyte")))) {
+				if (name.label == Labels.label("getbyte"))
+					code.add(new PDM.LDB(call.debugLocation));
+				else {
+					code.add(new PDM.STB(call.debugLocation));
+					code.add(new PDM.PUSH(1, call.debugLocation));
+				}
+				i += 3;
+				continue;
+			}
+			if ((snd instanceof PDM.NAME name) && (trd instanceof PDM.CALL call)) {
+				final int depth = call.depth < 0 ? -1 : call.depth - 1;
+				final boolean link = switch (fst) {
+					case PDM.PUSH push -> push.intc == 0;
+					case PDM.REGN regn -> (regn.regn == Reg.FP) && (depth > 0);
+					case PDM.DISP disp -> disp.depth == depth;
+					default -> false;
+				};
+				if (link) {
+					code.add(new PDM.CALLI(name.label, fst instanceof PDM.PUSH ? 0 : depth, call.debugFrame,
+							call.debugLocation));
+					i += 3;
+					continue;
+				}
+			}
+			code.add(fst);
+			i += 1;
+		}
+		return Collections.unmodifiableList(code);
+	}
+
 	/**
 	 * Generator seznama ukazov, ki predstavljajo podatke programa.
 	 */
@@ -747,6 +1914,27 @@ public class CodeGen {
 		/** Seznam ukazov, ki predstavljajo podatke programa. */
 		private final Vector<PDM.DataInstr> dataSegment = new Vector<PDM.DataInstr>();
 
+		/**
+		 * Seznam ukazov za staticne spremenljivke z zacetno vrednostjo {@code 0}
+		 * (podrocje, ki ga pomnilnik ne zapisuje, na koncu podatkov).
+		 */
+		private final Vector<PDM.DataInstr> bssSegment = new Vector<PDM.DataInstr>();
+
+		/** Podatki nizov, ki si jih deli vec enakih nizov (po oznakah nizov). */
+		private final Map<Integer, List<PDM.DataInstr>> pooledStrings = new HashMap<Integer, List<PDM.DataInstr>>();
+
+		/**
+		 * Oznake nizov, v katerih konec so postavljeni nizi, ki so njihove pripone
+		 * (po oznakah pripon).
+		 */
+		private final Map<Integer, Integer> hostStrings = new HashMap<Integer, Integer>();
+
+		/** Oznake nizov, ki so ze v seznamu ukazov, ki predstavljajo podatke. */
+		private final Set<Integer> emittedStrings = new HashSet<Integer>();
+
+		/** Nizi, ki jih program lahko le bere in si zato lahko delijo vnos. */
+		private final Set<AST.AtomExpr> readOnlyStrings;
+
 		/**
 		 * Ustvari nov generator seznama ukazov, ki predstavljajo podatke programa.
 		 *
@@ -755,6 +1943,7 @@ public class CodeGen {
 		 */
 		public DataSegmentGenerator(final AttrAST attrAST) {
 			this.attrAST = attrAST;
+			this.readOnlyStrings = stringPooling ? readOnlyStrings(attrAST) : Set.of();
 		}
 
 		/**
@@ -763,10 +1952,112 @@ public class CodeGen {
 		 * @return Seznam ukazov, ki predstavljajo podatke programa.
 		 */
 		public List<PDM.DataInstr> dataSegment() {
+			if (stringPooling) {
+				attrAST.ast.accept(new StringCollector(), null);
+				shareSuffixes();
+			}
 			attrAST.ast.accept(new Generator(), null);
+			dataSegment.addAll(bssSegment);
 			return Collections.unmodifiableList(dataSegment);
 		}
 
+		/**
+		 * Ugotovi, ali si niz deli vnos v podatkih z drugimi enakimi nizi.
+		 *
+		 * @param atomExpr Konstanta tipa niz.
+		 * @return Ali si niz deli vnos v podatkih.
+		 */
+		private boolean isPooled(final AST.AtomExpr atomExpr) {
+			if (!readOnlyStrings.contains(atomExpr))
+				return false;
+			final Vector<Integer> chars = Memory.decodeStrConst(atomExpr, attrAST.attrLoc.get(atomExpr));
+			return !chars.isEmpty() && (chars.lastElement() == 0);
+		}
+
+		/**
+		 * Vsakemu nizu, ki je pripona kaksnega drugega niza, doloci najdaljsi niz, v
+		 * katerega konec je postavljen.
+		 *
+		 * Nizi so urejeni po obrnjeni vsebini, zato je vsak niz, ki je pripona
+		 * kaksnega drugega niza, pripona tudi neposredno naslednjega niza. Nizi,
+		 * shranjeni po en znak na bajt, si konca ne delijo, saj pripona ne bi bila
+		 * poravnana na besedo.
+		 */
+		private void shareSuffixes() {
+			if (packedStrings)
+				return;
+			final List<Integer> labels = new ArrayList<Integer>(pooledStrings.keySet());
+			labels.sort((label1, label2) -> {
+				final List<PDM.DataInstr> data1 = pooledStrings.get(label1);
+				final List<PDM.DataInstr> data2 = pooledStrings.get(label2);
+				for (int i = 1; (i < data1.size()) && (i < data2.size()); i++) {
+					final int c1 = ((PDM.DATA) data1.get(data1.size() - i)).intc;
+					final int c2 = ((PDM.DATA) data2.get(data2.size() - i)).intc;
+					if (c1 != c2)
+						return Integer.compare(c1, c2);
+				}
+				return Integer.compare(data1.size(), data2.size());
+			});
+			for (int l = labels.size() - 2; l >= 0; l--) {
+				final List<PDM.DataInstr> suffix = pooledStrings.get(labels.get(l));
+				final List<PDM.DataInstr> next = pooledStrings.get(labels.get(l + 1));
+				boolean isSuffix = true;
+				for (int i = 1; isSuffix && (i < suffix.size()); i++)
+					isSuffix = ((PDM.DATA) suffix.get(suffix.size() - i)).intc
+							.equals(((PDM.DATA) next.get(next.size() - i)).intc);
+				if (isSuffix)
+					hostStrings.put(labels.get(l), hostStrings.getOrDefault(labels.get(l + 1), labels.get(l + 1)));
+			}
+		}
+
+		/**
+		 * Doda niz v seznam ukazov, ki predstavljajo podatke programa, skupaj z
+		 * oznakami vseh nizov, ki so njegove pripone.
+		 *
+		 * @param label Oznaka niza.
+		 */
+		private void emitString(final int label) {
+			final List<PDM.DataInstr> data = pooledStrings.get(label);
+			final SortedMap<Integer, List<PDM.DataInstr>> suffixLabels = new TreeMap<Integer, List<PDM.DataInstr>>();
+			for (final Map.Entry<Integer, Integer> host : hostStrings.entrySet())
+				if (host.getValue() == label) {
+					final List<PDM.DataInstr> suffix = pooledStrings.get(host.getKey());
+					suffixLabels.computeIfAbsent(data.size() - suffix.size(), __ -> new ArrayList<PDM.DataInstr>())
+							.add(suffix.getFirst());
+				}
+			for (int i = 0; i < data.size(); i++) {
+				dataSegment.add(data.get(i));
+				dataSegment.addAll(suffixLabels.getOrDefault(i, List.of()));
+			}
+		}
+
+		/**
+		 * Obiskovalec, ki poisce nize zivih delov programa, ki si delijo vnos v
+		 * podatkih.
+		 */
+		private class StringCollector implements AST.FullVisitor<Object, Object> {
+
+			@SuppressWarnings({ "doclint:missing" })
+			public StringCollector() {
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Object arg) {
+				if (!attrAST.attrLive.contains(funDef))
+					return null;
+				return AST.FullVisitor.super.visit(funDef, arg);
+			}
+
+			@Override
+			public Object visit(final AST.AtomExpr atomExpr, final Object arg) {
+				List<PDM.DataInstr> data = attrAST.attrData.get(atomExpr);
+				if ((data != null) && attrAST.attrLive.contains(atomExpr) && isPooled(atomExpr))
+					pooledStrings.put(((PDM.LABEL) data.getFirst()).label, data);
+				return null;
+			}
+
+		}
+
 		/**
 		 * Obiskovalec, ki izracuna seznam ukazov, ki predstavljajo podatke programa.
 		 */
@@ -776,20 +2067,45 @@ public class CodeGen {
 			public Generator() {
 			}
 
+			@Override
+			public Object visit(final AST.FunDef funDef, final Object arg) {
+				if (!attrAST.attrLive.contains(funDef))
+					return null;
+				return AST.FullVisitor.super.visit(funDef, arg);
+			}
+
 			@Override
 			public Object visit(final AST.VarDef varDef, final Object arg) {
+				if (!attrAST.attrLive.contains(varDef))
+					return null;
 				List<PDM.DataInstr> data = attrAST.attrData.get(varDef);
-				if (data != null)
+				if ((data != null) && (attrAST.attrVarAccess.get(varDef) instanceof Mem.AbsAccess)
+						&& data.stream().noneMatch(instr -> instr instanceof PDM.DATA))
+					bssSegment.addAll(data);
+				else if (data != null)
 					dataSegment.addAll(data);
 				varDef.inits.accept(this, arg);
 				return null;
 			}
 
+			@Override
+			public Object visit(final AST.LetStmt letStmt, final Object arg) {
+				List<PDM.DataInstr> data = attrAST.attrData.get(letStmt);
+				if (data != null)
+					dataSegment.addAll(data);
+				return AST.FullVisitor.super.visit(letStmt, arg);
+			}
+
 			@Override
 			public Object visit(final AST.AtomExpr atomExpr, final Object arg) {
 				List<PDM.DataInstr> data = attrAST.attrData.get(atomExpr);
-				if (data != null)
+				if ((data == null) || !attrAST.attrLive.contains(atomExpr))
+					return null;
+				final int label = ((PDM.LABEL) data.getFirst()).label;
+				if (!pooledStrings.containsKey(label))
 					dataSegment.addAll(data);
+				else if (emittedStrings.add(hostStrings.getOrDefault(label, label)))
+					emitString(hostStrings.getOrDefault(label, label));
 				return null;
 			}
 
@@ -820,8 +2136,14 @@ public class CodeGen {
 				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
 				// pomnilniska predstavitev:
 				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(memoryAttrAST);
+				// vstavljanje funkcij:
+				final Inline.AttrAST inlineAttrAST = Inline.inline(optimAttrAST);
+				// optimizacija zank:
+				final Loops.AttrAST loopsAttrAST = Loops.optimize(inlineAttrAST);
 				// generiranje kode:
-				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(memoryAttrAST);
+				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(loopsAttrAST);
 
 				(new AST.Logger(codegenAttrAST)).log();
 				{
@@ -0,0 +1,421 @@
+package pins25.phase;
+
+import java.util.*;
+
+import pins25.common.*;
+
+/**
+ * Vstavljanje funkcij.
+ *
+ * Klic majhne nerekurzivne funkcije brez gnezdenih funkcij {@link CodeGen}
+ * nadomesti s kodo telesa funkcije. Parametri in spremenljivke vstavljene
+ * funkcije so v klicnem zapisu klicoce funkcije, kjer je zanje rezerviran
+ * prostor enake oblike kot klicni zapis vstavljene funkcije, zato tudi naslovi
+ * parametrov ({@code ^p}) ostanejo veljavni. Parameter, ki se mu v telesu ne
+ * prireja in katerega naslov se ne uporabi, se ob konstantnem argumentu
+ * nadomesti kar s konstanto.
+ *
+ * Funkcija, katere klici so vsi vstavljeni, se ne prenese v kodo programa.
+ */
+public class Inline {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Inline() {
+		throw new Report.InternalError();
+	}
+
+	/** Ali se funkcije vstavljajo. */
+	public static boolean enabled = true;
+
+	/**
+	 * Najvecje stevilo izrazov v telesu funkcije, ki se vstavi na vec mestih.
+	 * Funkcija, klicana v zanki, je lahko dvakrat vecja, funkcija z enim samim
+	 * klicem pa stirikrat.
+	 */
+	public static int maxSize = 16;
+
+	/** Ali se izpise, kateri klici se vstavijo. */
+	public static boolean verbose = false;
+
+	/**
+	 * Stevilo ukazov, ki se izvedejo pri klicu in vrnitvi iz funkcije in se jim z
+	 * vstavljanjem izognemo ({@code REGN.FP}, {@code NAME}, {@code CALL},
+	 * {@code PUSH}, {@code POPN}, {@code PUSH}, {@code RETN}).
+	 */
+	private static final int CALL_INSTRS = 7;
+
+	/**
+	 * Stevilo ukazov, s katerimi se argument shrani v klicni zapis
+	 * ({@code REGN.FP}, {@code PUSH}, {@code OPER.ADD}, {@code SAVE}).
+	 */
+	private static final int STORE_INSTRS = 4;
+
+	/**
+	 * Abstraktno sintaksno drevo z dodanimi atributi vstavljanja funkcij.
+	 *
+	 * Atributi:
+	 * <ol>
+	 * <li>({@link Abstr}) lokacija kode, ki pripada posameznemu vozliscu;</li>
+	 * <li>({@link SemAn}) definicija uporabljenega imena;</li>
+	 * <li>({@link SemAn}) ali je dani izraz levi izraz;</li>
+	 * <li>({@link Memory}) klicni zapis funkcije;</li>
+	 * <li>({@link Memory}) dostop do parametra;</li>
+	 * <li>({@link Memory}) dostop do spremenljivke;</li>
+	 * <li>({@link Memory}) dostopi do zajetih vrednosti dvignjenih funkcij;</li>
+	 * <li>({@link Optim}) vrednost konstantnega izraza;</li>
+	 * <li>({@link Optim}) podizraz, s katerim se nadomesti izraz;</li>
+	 * <li>({@link Optim}) dosegljive funkcije, spremenljivke in konstantni
+	 * nizi;</li>
+	 * <li>({@link Inline}) klici, ki se nadomestijo s telesom funkcije;</li>
+	 * <li>({@link Inline}) funkcije, katerih klici so vsi vstavljeni.</li>
+	 * </ol>
+	 */
+	public static class AttrAST extends Optim.AttrAST {
+
+		/** Atribut: klici, ki se nadomestijo s telesom funkcije. */
+		public final Map<AST.CallExpr, AST.FunDef> attrInline;
+
+		/** Atribut: funkcije, katerih klici so vsi vstavljeni. */
+		public final Set<AST.FunDef> attrInlined;
+
+		/**
+		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi vstavljanja
+		 * funkcij.
+		 *
+		 * @param attrAST     Abstraktno sintaksno drevo z dodanimi atributi
+		 *                    optimizacije.
+		 * @param attrInline  Attribut: klici, ki se nadomestijo s telesom funkcije.
+		 * @param attrInlined Attribut: funkcije, katerih klici so vsi vstavljeni.
+		 */
+		public AttrAST(final Optim.AttrAST attrAST, final Map<AST.CallExpr, AST.FunDef> attrInline,
+				final Set<AST.FunDef> attrInlined) {
+			super(attrAST);
+			this.attrInline = attrInline;
+			this.attrInlined = attrInlined;
+		}
+
+		/**
+		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi vstavljanja
+		 * funkcij.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi vstavljanja
+		 *                funkcij.
+		 */
+		public AttrAST(final AttrAST attrAST) {
+			super(attrAST);
+			this.attrInline = attrAST.attrInline;
+			this.attrInlined = attrAST.attrInlined;
+		}
+
+		@Override
+		public String head(final AST.Node node, final boolean highlighted) {
+			final StringBuffer head = new StringBuffer();
+			head.append(super.head(node, false));
+			head.append(highlighted ? "\033[31m" : "");
+			if ((node instanceof AST.CallExpr callExpr) && (attrInline.get(callExpr) != null))
+				head.append(" inline");
+			if ((node instanceof AST.FunDef funDef) && attrInlined.contains(funDef))
+				head.append(" inlined");
+			head.append(highlighted ? "\033[30m" : "");
+			return head.toString();
+		}
+
+	}
+
+	/**
+	 * Doloci klice, ki se nadomestijo s telesom funkcije.
+	 *
+	 * @param optimAttrAST Abstraktno sintaksno drevo z dodanimi atributi
+	 *                     optimizacije.
+	 * @return Abstraktno sintaksno drevo z dodanimi atributi vstavljanja funkcij.
+	 */
+	public static AttrAST inline(final Optim.AttrAST optimAttrAST) {
+		final AttrAST attrAST = new AttrAST(optimAttrAST, new HashMap<AST.CallExpr, AST.FunDef>(),
+				new HashSet<AST.FunDef>());
+		if (enabled)
+			(new Inliner(attrAST)).inline();
+		return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrInline),
+				Collections.unmodifiableSet(attrAST.attrInlined));
+	}
+
+	/**
+	 * Ali se parameter lahko nadomesti s konstantnim argumentom.
+	 *
+	 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+	 * @param funDef  Funkcija.
+	 * @param parDef  Parameter funkcije.
+	 * @param arg     Argument.
+	 * @return Vrednost konstantnega argumenta ali {@code null}, ce se parameter ne
+	 *         more nadomestiti.
+	 */
+	public static Integer constantArg(final Optim.AttrAST attrAST, final AST.FunDef funDef, final AST.ParDef parDef,
+			final AST.Expr arg) {
+		Integer value = attrAST.attrConst.get(arg);
+		if ((value == null) && (arg instanceof AST.AtomExpr atomExpr))
+			value = switch (atomExpr.type) {
+				case INTCONST -> Memory.decodeIntConst(atomExpr, attrAST.attrLoc.get(atomExpr));
+				case CHRCONST -> Memory.decodeChrConst(atomExpr, attrAST.attrLoc.get(atomExpr));
+				default -> null;
+			};
+		if (value == null)
+			return null;
+		// Parametru se v telesu ne sme prirejati in njegov naslov se ne sme uporabiti.
+		final boolean[] modified = { false };
+		funDef.stmts.accept(new AST.FullVisitor<Object, Object>() {
+
+			@Override
+			public Object visit(final AST.AssignStmt assignStmt, final Object arg) {
+				if ((assignStmt.dstExpr instanceof AST.VarExpr varExpr) && (attrAST.attrDef.get(varExpr) == parDef))
+					modified[0] = true;
+				return AST.FullVisitor.super.visit(assignStmt, arg);
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final Object arg) {
+				if ((unExpr.oper == AST.UnExpr.Oper.MEMADDR) && (unExpr.expr instanceof AST.VarExpr varExpr)
+						&& (attrAST.attrDef.get(varExpr) == parDef))
+					modified[0] = true;
+				return AST.FullVisitor.super.visit(unExpr, arg);
+			}
+
+		}, null);
+		return modified[0] ? null : value;
+	}
+
+	/**
+	 * Izbira klicev, ki se nadomestijo s telesom funkcije.
+	 */
+	private static class Inliner {
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi vstavljanja funkcij. */
+		private final AttrAST attrAST;
+
+		/** Klici v telesu posamezne funkcije (brez gnezdenih funkcij). */
+		private final Map<AST.FunDef, List<AST.CallExpr>> calls = new LinkedHashMap<AST.FunDef, List<AST.CallExpr>>();
+
+		/** Globina gnezdenja zank, v katerih je klic. */
+		private final Map<AST.CallExpr, Integer> loopDepth = new HashMap<AST.CallExpr, Integer>();
+
+		/** Funkcije z gnezdenimi funkcijami. */
+		private final Set<AST.FunDef> withNested = new HashSet<AST.FunDef>();
+
+		/** Velikost telesa funkcije (stevilo izrazov). */
+		private final Map<AST.FunDef, Integer> size = new HashMap<AST.FunDef, Integer>();
+
+		/**
+		 * Ustvari novo izbiro klicev.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi vstavljanja
+		 *                funkcij.
+		 */
+		public Inliner(final AttrAST attrAST) {
+			this.attrAST = attrAST;
+		}
+
+		/**
+		 * Sprozi izbiro klicev.
+		 */
+		public void inline() {
+			attrAST.ast.accept(new CallFinder(), null);
+
+			final Map<AST.FunDef, Integer> numCalls = new HashMap<AST.FunDef, Integer>();
+			for (final List<AST.CallExpr> funCalls : calls.values())
+				for (final AST.CallExpr callExpr : funCalls)
+					numCalls.merge(callee(callExpr), 1, Integer::sum);
+
+			final Map<AST.FunDef, Integer> numInlined = new HashMap<AST.FunDef, Integer>();
+			for (final List<AST.CallExpr> funCalls : calls.values())
+				for (final AST.CallExpr callExpr : funCalls) {
+					final AST.FunDef callee = callee(callExpr);
+					final String reason = reason(callExpr, callee, numCalls.get(callee));
+					if (verbose)
+						Report.info(attrAST.attrLoc.get(callExpr),
+								callee.name + "(): " + (reason == null ? "inlined" : "not inlined (" + reason + ")"));
+					if (reason == null) {
+						attrAST.attrInline.put(callExpr, callee);
+						numInlined.merge(callee, 1, Integer::sum);
+					}
+				}
+
+			for (final AST.FunDef callee : numInlined.keySet())
+				if (numInlined.get(callee).equals(numCalls.get(callee)) && !Optim.roots.contains(callee.name))
+					attrAST.attrInlined.add(callee);
+		}
+
+		/**
+		 * Vrne klicano funkcijo.
+		 *
+		 * @param callExpr Klic funkcije.
+		 * @return Klicana funkcija.
+		 */
+		private AST.FunDef callee(final AST.CallExpr callExpr) {
+			return (AST.FunDef) attrAST.attrDef.get(callExpr);
+		}
+
+		/**
+		 * Vrne razlog, zakaj se klic ne nadomesti s telesom funkcije.
+		 *
+		 * @param callExpr Klic funkcije.
+		 * @param callee   Klicana funkcija.
+		 * @param numCalls Stevilo klicev funkcije.
+		 * @return Razlog ali {@code null}, ce se klic nadomesti s telesom funkcije.
+		 */
+		private String reason(final AST.CallExpr callExpr, final AST.FunDef callee, final int numCalls) {
+			if (callee.stmts.size() == 0)
+				return "no body";
+			if (withNested.contains(callee))
+				return "has nested functions";
+			if (isRecursive(callee))
+				return "recursive";
+
+			// Cena: vsak argument, ki ni konstanta, se shrani v klicni zapis.
+			int stores = 0;
+			for (int arg = 0; arg < callExpr.args.size(); arg++)
+				if (constantArg(attrAST, callee, callee.pars.getAll().get(arg), callExpr.args.getAll().get(arg)) == null)
+					stores++;
+			if (stores * STORE_INSTRS > CALL_INSTRS)
+				return "storing " + stores + " arguments is slower than the call";
+
+			final int budget = numCalls == 1 ? 4 * maxSize : loopDepth.get(callExpr) > 0 ? 2 * maxSize : maxSize;
+			if (size.get(callee) > budget)
+				return "body is too large (" + size.get(callee) + " > " + budget + " expressions)";
+			return null;
+		}
+
+		/**
+		 * Ali je funkcija rekurzivna (posredno ali neposredno).
+		 *
+		 * @param funDef Funkcija.
+		 * @return Ali je funkcija rekurzivna.
+		 */
+		private boolean isRecursive(final AST.FunDef funDef) {
+			final Set<AST.FunDef> visited = new HashSet<AST.FunDef>();
+			final Deque<AST.FunDef> worklist = new ArrayDeque<AST.FunDef>();
+			worklist.add(funDef);
+			while (!worklist.isEmpty()) {
+				for (final AST.CallExpr callExpr : calls.getOrDefault(worklist.removeFirst(), List.of())) {
+					final AST.FunDef callee = callee(callExpr);
+					if (callee == funDef)
+						return true;
+					if (visited.add(callee))
+						worklist.addLast(callee);
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Obiskovalec, ki zgradi graf klicev.
+		 */
+		private class CallFinder implements AST.FullVisitor<Object, AST.FunDef> {
+
+			/** Trenutna globina gnezdenja zank. */
+			private int depth = 0;
+
+			@SuppressWarnings({ "doclint:missing" })
+			public CallFinder() {
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final AST.FunDef outer) {
+				if (outer != null)
+					withNested.add(outer);
+				calls.put(funDef, new ArrayList<AST.CallExpr>());
+				size.put(funDef, 0);
+				final int outerDepth = depth;
+				depth = 0;
+				AST.FullVisitor.super.visit(funDef, funDef);
+				depth = outerDepth;
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.WhileStmt whileStmt, final AST.FunDef funDef) {
+				depth++;
+				AST.FullVisitor.super.visit(whileStmt, funDef);
+				depth--;
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final AST.FunDef funDef) {
+				size.merge(funDef, 1, Integer::sum);
+				calls.get(funDef).add(callExpr);
+				loopDepth.put(callExpr, depth);
+				return AST.FullVisitor.super.visit(callExpr, funDef);
+			}
+
+			@Override
+			public Object visit(final AST.AtomExpr atomExpr, final AST.FunDef funDef) {
+				if (funDef != null)
+					size.merge(funDef, 1, Integer::sum);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.VarExpr varExpr, final AST.FunDef funDef) {
+				size.merge(funDef, 1, Integer::sum);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final AST.FunDef funDef) {
+				size.merge(funDef, 1, Integer::sum);
+				return AST.FullVisitor.super.visit(unExpr, funDef);
+			}
+
+			@Override
+			public Object visit(final AST.BinExpr binExpr, final AST.FunDef funDef) {
+				size.merge(funDef, 1, Integer::sum);
+				return AST.FullVisitor.super.visit(binExpr, funDef);
+			}
+
+		}
+
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon vstavljanja funkcij kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (function inlining):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(memoryAttrAST);
+				// vstavljanje funkcij:
+				verbose = true;
+				final Inline.AttrAST inlineAttrAST = Inline.inline(optimAttrAST);
+
+				(new AST.Logger(inlineAttrAST)).log();
+			}
+
+			// Upajmo, da kdaj pridemo to te tocke.
+			// A zavedajmo se sledecega:
+			// 1. Prevod je zaradi napak v programu lahko napacen :-o
+			// 2. Izvorni program se zdalec ni tisto, kar je programer hotel, da bi bil ;-)
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,692 @@
+package pins25.phase;
+
+import java.util.*;
+
+import pins25.common.*;
+
+/**
+ * Optimizacija zank.
+ *
+ * Za vsako zanko {@code while} se doloci, kako naj jo {@link CodeGen} prevede:
+ * <ol>
+ * <li>zanka se obrne, tako da se pogoj preverja na koncu telesa (pred zanko
+ * se pogoj preveri le enkrat), s cimer se v vsakem obhodu prihrani brezpogojni
+ * skok;</li>
+ * <li>telo kratke zanke s stevcem (npr.
+ * {@code while i > 0 do ... i = i - 1 end}) se veckrat ponovi, pogoj pa se
+ * preveri le enkrat za vse ponovitve, ostali obhodi se izvedejo v obicajni
+ * zanki;</li>
+ * <li>naslov klicnega zapisa, do katerega telo zanke dostopa po dolgi verigi
+ * staticnih povezav, se izracuna pred zanko in shrani v klicni zapis;</li>
+ * <li>izraz, ki je linearno odvisen od stevca zanke (npr. naslov elementa
+ * tabele {@code ^a + 4 * i}), se izracuna pred zanko v virtualni register, ob
+ * vsaki spremembi stevca pa se register poveca za korak izraza (zmanjsanje
+ * moci).</li>
+ * </ol>
+ */
+public class Loops {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Loops() {
+		throw new Report.InternalError();
+	}
+
+	/** Ali se zanke obrnejo (pogoj na koncu telesa). */
+	public static boolean rotation = true;
+
+	/** Kolikokrat se ponovi telo zanke s stevcem ({@code 1} pomeni nikoli). */
+	public static int unrollFactor = 4;
+
+	/** Najvecje stevilo izrazov v telesu zanke, ki se ponovi. */
+	public static int maxUnrollSize = 24;
+
+	/** Ali se naslovi klicnih zapisov izracunajo pred zanko. */
+	public static boolean hoisting = true;
+
+	/** Ali se izrazi, linearno odvisni od stevca zanke, racunajo s sestevanjem. */
+	public static boolean strengthReduction = true;
+
+	/** Ali se izpise, kako se prevede posamezna zanka. */
+	public static boolean verbose = false;
+
+	/**
+	 * Najkrajsa veriga staticnih povezav, ki se izracuna pred zanko.
+	 *
+	 * Veriga dolzine {@code d} obsega {@code d+1} ukazov, branje naslova iz
+	 * klicnega zapisa pa 4 ukaze ({@code REGN.FP}, {@code PUSH}, {@code OPER.ADD},
+	 * {@code LOAD}), zato se izracun pred zanko splaca sele pri dolzini 4.
+	 * Naslovov globalnih spremenljivk (en ukaz {@code NAME}) se ne splaca shraniti.
+	 */
+	public static final int HOIST_MIN_DISTANCE = 4;
+
+	/**
+	 * Cena spremembe virtualnega registra ob vsaki spremembi stevca.
+	 *
+	 * Sprememba obsega 4 ukaze ({@code VLOAD}, {@code PUSH}, {@code OPER.ADD},
+	 * {@code VSAVE}), izracun izraza pa se nadomesti z enim ukazom
+	 * ({@code VLOAD}), zato se izraz racuna s sestevanjem le, ce izracuni vseh
+	 * njegovih pojavitev v telesu zanke skupaj prihranijo vec kot 4 ukaze.
+	 */
+	public static final int REDUCTION_UPDATE_COST = 4;
+
+	/**
+	 * Izrazi oblike {@code b + k * i}, kjer je {@code i} stevec zanke, ki imajo
+	 * enako osnovo {@code b} in enak koeficient {@code k}, zato se racunajo v
+	 * istem virtualnem registru.
+	 *
+	 * @param exprs  Izrazi.
+	 * @param stride Sprememba vrednosti izrazov ob spremembi stevca.
+	 */
+	public record Reduction(List<AST.BinExpr> exprs, int stride) {
+	}
+
+	/**
+	 * Nacin prevajanja zanke.
+	 *
+	 * @param rotated   Ali se pogoj preverja na koncu telesa.
+	 * @param unroll    Kolikokrat se ponovi telo zanke ({@code 1}, ce se ne).
+	 * @param bound     Meja stevca, pri kateri se lahko izvede {@code unroll}
+	 *                  obhodov brez preverjanja pogoja.
+	 * @param hoisted   Dolzine verig staticnih povezav, ki se izracunajo pred
+	 *                  zanko.
+	 * @param reduced   Izrazi, ki se racunajo s sestevanjem.
+	 * @param increment Stavek, ki spremeni stevec (ali {@code null}, ce se noben
+	 *                  izraz ne racuna s sestevanjem).
+	 */
+	public record Loop(boolean rotated, int unroll, Integer bound, List<Integer> hoisted, List<Reduction> reduced,
+			AST.AssignStmt increment) {
+
+		@Override
+		public String toString() {
+			return (rotated ? "rotated" : "") + (unroll > 1 ? " unroll=" + unroll + " bound=" + bound : "")
+					+ (hoisted.isEmpty() ? "" : " hoisted=" + hoisted)
+					+ (reduced.isEmpty() ? "" : " reduced=" + reduced.stream().map(Reduction::stride).toList());
+		}
+
+	}
+
+	/**
+	 * Abstraktno sintaksno drevo z dodanimi atributi optimizacije zank.
+	 *
+	 * Atributi:
+	 * <ol>
+	 * <li>({@link Abstr}) lokacija kode, ki pripada posameznemu vozliscu;</li>
+	 * <li>({@link SemAn}) definicija uporabljenega imena;</li>
+	 * <li>({@link SemAn}) ali je dani izraz levi izraz;</li>
+	 * <li>({@link Memory}) klicni zapis funkcije;</li>
+	 * <li>({@link Memory}) dostop do parametra;</li>
+	 * <li>({@link Memory}) dostop do spremenljivke;</li>
+	 * <li>({@link Memory}) dostopi do zajetih vrednosti dvignjenih funkcij;</li>
+	 * <li>({@link Optim}) vrednost konstantnega izraza;</li>
+	 * <li>({@link Optim}) podizraz, s katerim se nadomesti izraz;</li>
+	 * <li>({@link Optim}) dosegljive funkcije, spremenljivke in konstantni
+	 * nizi;</li>
+	 * <li>({@link Inline}) klici, ki se nadomestijo s telesom funkcije;</li>
+	 * <li>({@link Inline}) funkcije, katerih klici so vsi vstavljeni;</li>
+	 * <li>({@link Loops}) nacin prevajanja zanke.</li>
+	 * </ol>
+	 */
+	public static class AttrAST extends Inline.AttrAST {
+
+		/** Atribut: nacin prevajanja zanke. */
+		public final Map<AST.WhileStmt, Loop> attrLoop;
+
+		/**
+		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 * zank.
+		 *
+		 * @param attrAST  Abstraktno sintaksno drevo z dodanimi atributi
+		 *                 vstavljanja funkcij.
+		 * @param attrLoop Attribut: nacin prevajanja zanke.
+		 */
+		public AttrAST(final Inline.AttrAST attrAST, final Map<AST.WhileStmt, Loop> attrLoop) {
+			super(attrAST);
+			this.attrLoop = attrLoop;
+		}
+
+		/**
+		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 * zank.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 *                zank.
+		 */
+		public AttrAST(final AttrAST attrAST) {
+			super(attrAST);
+			this.attrLoop = attrAST.attrLoop;
+		}
+
+		@Override
+		public String head(final AST.Node node, final boolean highlighted) {
+			final StringBuffer head = new StringBuffer();
+			head.append(super.head(node, false));
+			head.append(highlighted ? "\033[31m" : "");
+			if ((node instanceof AST.WhileStmt whileStmt) && (attrLoop.get(whileStmt) != null))
+				head.append(" loop=" + attrLoop.get(whileStmt).toString().trim());
+			head.append(highlighted ? "\033[30m" : "");
+			return head.toString();
+		}
+
+	}
+
+	/**
+	 * Doloci nacin prevajanja zank.
+	 *
+	 * @param inlineAttrAST Abstraktno sintaksno drevo z dodanimi atributi
+	 *                      vstavljanja funkcij.
+	 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije zank.
+	 */
+	public static AttrAST optimize(final Inline.AttrAST inlineAttrAST) {
+		final AttrAST attrAST = new AttrAST(inlineAttrAST, new HashMap<AST.WhileStmt, Loop>());
+		(new LoopAnalyzer(attrAST)).analyze();
+		return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrLoop));
+	}
+
+	/**
+	 * Analiza zank.
+	 */
+	private static class LoopAnalyzer {
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije zank. */
+		private final AttrAST attrAST;
+
+		/**
+		 * Spremenljivke in parametri, ki so dosegljivi tudi drugace kot neposredno
+		 * iz funkcije, v kateri so definirani (iz gnezdenih funkcij ali prek
+		 * naslova).
+		 */
+		private final Set<AST.Def> escaping = new HashSet<AST.Def>();
+
+		/**
+		 * Ustvari novo analizo zank.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije
+		 *                zank.
+		 */
+		public LoopAnalyzer(final AttrAST attrAST) {
+			this.attrAST = attrAST;
+		}
+
+		/**
+		 * Sprozi analizo zank.
+		 */
+		public void analyze() {
+			attrAST.ast.accept(new EscapeFinder(), null);
+			attrAST.ast.accept(new LoopFinder(), null);
+		}
+
+		/**
+		 * Vrne dostop do spremenljivke ali parametra.
+		 *
+		 * @param def Definicija spremenljivke ali parametra.
+		 * @return Dostop do spremenljivke ali parametra.
+		 */
+		private Mem.Access access(final AST.Def def) {
+			return switch (def) {
+				case AST.VarDef varDef -> attrAST.attrVarAccess.get(varDef);
+				case AST.ParDef parDef -> attrAST.attrParAccess.get(parDef);
+				default -> null;
+			};
+		}
+
+		/**
+		 * Vrne vrednost konstante.
+		 *
+		 * @param expr Izraz.
+		 * @return Vrednost konstante ali {@code null}, ce izraz ni konstanta.
+		 */
+		private Integer constant(final AST.Expr expr) {
+			if (attrAST.attrConst.get(expr) != null)
+				return attrAST.attrConst.get(expr);
+			if (expr instanceof AST.AtomExpr atomExpr) {
+				final Report.Locatable loc = attrAST.attrLoc.get(atomExpr);
+				return switch (atomExpr.type) {
+					case INTCONST -> Memory.decodeIntConst(atomExpr, loc);
+					case CHRCONST -> Memory.decodeChrConst(atomExpr, loc);
+					default -> null;
+				};
+			}
+			return null;
+		}
+
+		/**
+		 * Ali je izraz uporaba dane spremenljivke ali parametra.
+		 *
+		 * @param expr Izraz.
+		 * @param def  Definicija spremenljivke ali parametra.
+		 * @return Ali je izraz uporaba dane spremenljivke ali parametra.
+		 */
+		private boolean isUse(final AST.Expr expr, final AST.Def def) {
+			return (expr instanceof AST.VarExpr varExpr) && (attrAST.attrDef.get(varExpr) == def);
+		}
+
+		/**
+		 * Doloci nacin prevajanja zanke.
+		 *
+		 * @param whileStmt Zanka.
+		 * @param frame     Klicni zapis funkcije, v kateri je zanka.
+		 */
+		private void analyze(final AST.WhileStmt whileStmt, final Mem.Frame frame) {
+			final Report.Locatable loc = attrAST.attrLoc.get(whileStmt);
+			// Zanke s konstantnim pogojem prevede ze CodeGen.
+			if (constant(whileStmt.cond) != null)
+				return;
+
+			final BodyScanner scanner = new BodyScanner(frame);
+			whileStmt.cond.accept(scanner, null);
+			final int condSize = scanner.size;
+			whileStmt.stmts.accept(scanner, null);
+
+			// Stevec zanke.
+			AST.Def counterDef = null;
+			int step = 0;
+			String reason = null;
+			if (!(whileStmt.cond instanceof AST.BinExpr cond) || !(cond.fstExpr instanceof AST.VarExpr counter))
+				reason = "condition is not a comparison of a variable";
+			else {
+				final AST.Def def = attrAST.attrDef.get(counter);
+				step = switch (cond.oper) {
+					case GTH, GEQ -> -1;
+					case LTH, LEQ -> +1;
+					default -> 0;
+				};
+				final AST.Stmt lastStmt = whileStmt.stmts.getAll().getLast();
+				if (step == 0)
+					reason = "condition is not an ordering";
+				else if (!(access(def) instanceof Mem.RelAccess) || escaping.contains(def))
+					reason = "counter '" + counter.name + "' is not a local variable of this function";
+				else if (!(lastStmt instanceof AST.AssignStmt assign) || !isUse(assign.dstExpr, def)
+						|| !(assign.srcExpr instanceof AST.BinExpr next) || !isUse(next.fstExpr, def)
+						|| !Objects.equals(constant(next.sndExpr), 1)
+						|| (next.oper != (step < 0 ? AST.BinExpr.Oper.SUB : AST.BinExpr.Oper.ADD)))
+					reason = "body does not end with '" + counter.name + " = " + counter.name
+							+ (step < 0 ? " - 1" : " + 1") + "'";
+				else if (scanner.assigned.stream().filter(dst -> isUse(dst, def)).count() != 1)
+					reason = "counter '" + counter.name + "' is assigned more than once";
+				else
+					counterDef = def;
+			}
+
+			// Ponovitev telesa (le, ce je meja stevca konstanta).
+			int unroll = 1;
+			Integer bound = null;
+			if (unrollFactor <= 1)
+				reason = "disabled";
+			else if ((counterDef != null) && (constant(((AST.BinExpr) whileStmt.cond).sndExpr) == null))
+				reason = "condition is not a comparison of a variable with a constant";
+			else if (counterDef != null) {
+				final AST.BinExpr cond = (AST.BinExpr) whileStmt.cond;
+				final long limit = constant(cond.sndExpr) + (long) -step * (unrollFactor - 1);
+				if (scanner.size - condSize > maxUnrollSize)
+					reason = "body is too large (" + (scanner.size - condSize) + " expressions)";
+				else if ((limit < Integer.MIN_VALUE) || (limit > Integer.MAX_VALUE))
+					reason = "bound overflows";
+				else {
+					unroll = unrollFactor;
+					bound = (int) limit;
+				}
+			}
+
+			// Verige staticnih povezav (s prikazom jih ni).
+			final List<Integer> hoisted = new ArrayList<Integer>();
+			if (hoisting && !CodeGen.display)
+				for (final Integer distance : scanner.distances)
+					if (distance >= HOIST_MIN_DISTANCE)
+						hoisted.add(distance);
+
+			// Izrazi, linearno odvisni od stevca.
+			final List<Reduction> reduced = new ArrayList<Reduction>();
+			AST.AssignStmt increment = null;
+			if (strengthReduction && (counterDef != null)) {
+				increment = (AST.AssignStmt) whileStmt.stmts.getAll().getLast();
+				final ReductionFinder finder = new ReductionFinder(frame, counterDef, increment, scanner.assigned);
+				whileStmt.stmts.accept(finder, null);
+				for (final List<Object> key : finder.exprs.keySet())
+					if (finder.savings.get(key) > REDUCTION_UPDATE_COST)
+						reduced.add(new Reduction(finder.exprs.get(key), (Integer) key.get(2) * step));
+				if (reduced.isEmpty())
+					increment = null;
+			}
+
+			if (verbose)
+				Report.info(loc, "while: " + (rotation ? "rotated" : "not rotated") + ", "
+						+ (unroll > 1 ? "unrolled " + unroll + "x" : "not unrolled (" + reason + ")") + ", "
+						+ (hoisted.isEmpty() ? "nothing hoisted" : "hoisted static links " + hoisted)
+						+ (scanner.distances.isEmpty() ? "" : " (static link chains " + scanner.distances + ")")
+						+ (reduced.isEmpty() ? ""
+								: ", strength-reduced " + reduced.stream().mapToInt(r -> r.exprs().size()).sum()
+										+ " expressions with strides "
+										+ reduced.stream().map(Reduction::stride).toList()));
+			if (rotation || (unroll > 1) || !hoisted.isEmpty() || !reduced.isEmpty())
+				attrAST.attrLoop.put(whileStmt, new Loop(rotation, unroll, bound, hoisted, reduced, increment));
+		}
+
+		/**
+		 * Ali je izraz poenostavila faza {@link Optim}.
+		 *
+		 * @param expr Izraz.
+		 * @return Ali je izraz poenostavljen.
+		 */
+		private boolean folded(final AST.Expr expr) {
+			return (attrAST.attrConst.get(expr) != null) || (attrAST.attrSubst.get(expr) != null);
+		}
+
+		/**
+		 * Vrne stevilo ukazov, ki prenesejo vrednost spremenljivke ali parametra na
+		 * sklad.
+		 *
+		 * @param access Dostop do spremenljivke ali parametra.
+		 * @return Stevilo ukazov.
+		 */
+		private int cost(final Mem.Access access) {
+			return switch (access) {
+				case Mem.RelAccess relAccess -> relAccess.reg != null ? 1 : 4;
+				default -> 2;
+			};
+		}
+
+		/**
+		 * Obiskovalec, ki poisce spremenljivke in parametre, dosegljive iz gnezdenih
+		 * funkcij ali prek naslova.
+		 */
+		private class EscapeFinder implements AST.FullVisitor<Object, Mem.Frame> {
+
+			@SuppressWarnings({ "doclint:missing" })
+			public EscapeFinder() {
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Mem.Frame frame) {
+				return AST.FullVisitor.super.visit(funDef, attrAST.attrFrame.get(funDef));
+			}
+
+			@Override
+			public Object visit(final AST.VarExpr varExpr, final Mem.Frame frame) {
+				final AST.Def def = attrAST.attrDef.get(varExpr);
+				if ((access(def) instanceof Mem.RelAccess relAccess) && (relAccess.depth != frame.depth))
+					escaping.add(def);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final Mem.Frame frame) {
+				if ((unExpr.oper == AST.UnExpr.Oper.MEMADDR) && (unExpr.expr instanceof AST.VarExpr varExpr))
+					escaping.add(attrAST.attrDef.get(varExpr));
+				return AST.FullVisitor.super.visit(unExpr, frame);
+			}
+
+		}
+
+		/**
+		 * Obiskovalec, ki poisce zanke.
+		 */
+		private class LoopFinder implements AST.FullVisitor<Object, Mem.Frame> {
+
+			@SuppressWarnings({ "doclint:missing" })
+			public LoopFinder() {
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Mem.Frame frame) {
+				return AST.FullVisitor.super.visit(funDef, attrAST.attrFrame.get(funDef));
+			}
+
+			@Override
+			public Object visit(final AST.WhileStmt whileStmt, final Mem.Frame frame) {
+				analyze(whileStmt, frame);
+				return AST.FullVisitor.super.visit(whileStmt, frame);
+			}
+
+		}
+
+		/**
+		 * Obiskovalec, ki v telesu zanke (brez gnezdenih funkcij in stavka, ki
+		 * spremeni stevec) poisce izraze oblike {@code b + k * i}, kjer je {@code i}
+		 * stevec zanke, {@code k} konstanta, osnova {@code b} pa konstanta, naslov
+		 * spremenljivke ali lokalna spremenljivka, ki se ji v zanki ne prireja.
+		 */
+		private class ReductionFinder implements AST.FullVisitor<Object, Object> {
+
+			/** Klicni zapis funkcije, v kateri je zanka. */
+			private final Mem.Frame frame;
+
+			/** Stevec zanke. */
+			private final AST.Def counterDef;
+
+			/** Stavek, ki spremeni stevec. */
+			private final AST.AssignStmt increment;
+
+			/** Izrazi, ki dolocajo naslove, kamor se v zanki prireja. */
+			private final List<AST.Expr> assigned;
+
+			/**
+			 * Izrazi glede na vrsto in vrednost osnove ter koeficient (v tem
+			 * vrstnem redu).
+			 */
+			private final Map<List<Object>, List<AST.BinExpr>> exprs =
+					new LinkedHashMap<List<Object>, List<AST.BinExpr>>();
+
+			/**
+			 * Stevilo ukazov, ki jih prihranijo izracuni izrazov (izracun osnove,
+			 * izracun {@code k * i} in sestevanje se nadomestijo z enim ukazom).
+			 */
+			private final Map<List<Object>, Integer> savings = new HashMap<List<Object>, Integer>();
+
+			/**
+			 * Ustvari novo iskanje izrazov, linearno odvisnih od stevca.
+			 *
+			 * @param frame      Klicni zapis funkcije, v kateri je zanka.
+			 * @param counterDef Stevec zanke.
+			 * @param increment  Stavek, ki spremeni stevec.
+			 * @param assigned   Izrazi, ki dolocajo naslove, kamor se v zanki prireja.
+			 */
+			public ReductionFinder(final Mem.Frame frame, final AST.Def counterDef, final AST.AssignStmt increment,
+					final List<AST.Expr> assigned) {
+				this.frame = frame;
+				this.counterDef = counterDef;
+				this.increment = increment;
+				this.assigned = assigned;
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Object arg) {
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.AssignStmt assignStmt, final Object arg) {
+				if (assignStmt == increment)
+					return null;
+				return AST.FullVisitor.super.visit(assignStmt, arg);
+			}
+
+			@Override
+			public Object visit(final AST.BinExpr binExpr, final Object arg) {
+				if ((binExpr.oper == AST.BinExpr.Oper.ADD) && !folded(binExpr))
+					if (!candidate(binExpr, binExpr.fstExpr, binExpr.sndExpr))
+						candidate(binExpr, binExpr.sndExpr, binExpr.fstExpr);
+				return AST.FullVisitor.super.visit(binExpr, arg);
+			}
+
+			/**
+			 * Zabelezi izraz, ce je oblike {@code b + k * i}.
+			 *
+			 * @param binExpr Izraz.
+			 * @param base    Operand, ki naj bo osnova {@code b}.
+			 * @param term    Operand, ki naj bo {@code k * i}.
+			 * @return Ali je izraz zabelezen.
+			 */
+			private boolean candidate(final AST.BinExpr binExpr, final AST.Expr base, final AST.Expr term) {
+				// Koeficient.
+				final int counterCost = cost(access(counterDef));
+				Integer coef = null;
+				int termCost = counterCost;
+				if (isUse(term, counterDef) && !folded(term))
+					coef = 1;
+				else if ((term instanceof AST.BinExpr mul) && (mul.oper == AST.BinExpr.Oper.MUL) && !folded(mul)) {
+					termCost = counterCost + 2;
+					if (isUse(mul.fstExpr, counterDef) && !folded(mul.fstExpr))
+						coef = constant(mul.sndExpr);
+					else if (isUse(mul.sndExpr, counterDef) && !folded(mul.sndExpr))
+						coef = constant(mul.fstExpr);
+				}
+				if (coef == null)
+					return false;
+
+				// Osnova.
+				final List<Object> key;
+				final int baseCost;
+				if (constant(base) != null) {
+					key = List.of("const", constant(base), coef);
+					baseCost = 1;
+				} else if ((base instanceof AST.UnExpr unExpr) && (unExpr.oper == AST.UnExpr.Oper.MEMADDR)
+						&& (unExpr.expr instanceof AST.VarExpr varExpr) && !folded(unExpr)) {
+					final AST.Def def = attrAST.attrDef.get(varExpr);
+					if (access(def) instanceof Mem.AbsAccess)
+						baseCost = 1;
+					else if ((access(def) instanceof Mem.RelAccess relAccess) && (relAccess.depth == frame.depth))
+						baseCost = 3;
+					else
+						return false;
+					key = List.of("addr", def, coef);
+				} else if ((base instanceof AST.VarExpr varExpr) && !folded(varExpr)) {
+					final AST.Def def = attrAST.attrDef.get(varExpr);
+					if (!(access(def) instanceof Mem.RelAccess relAccess) || (relAccess.depth != frame.depth)
+							|| escaping.contains(def) || assigned.stream().anyMatch(dst -> isUse(dst, def)))
+						return false;
+					key = List.of("var", def, coef);
+					baseCost = cost(relAccess);
+				} else
+					return false;
+
+				exprs.computeIfAbsent(key, k -> new ArrayList<AST.BinExpr>()).add(binExpr);
+				savings.merge(key, baseCost + termCost, Integer::sum);
+				return true;
+			}
+
+		}
+
+		/**
+		 * Obiskovalec, ki pregleda telo zanke (brez gnezdenih funkcij).
+		 */
+		private class BodyScanner implements AST.FullVisitor<Object, Object> {
+
+			/** Klicni zapis funkcije, v kateri je zanka. */
+			private final Mem.Frame frame;
+
+			/** Stevilo izrazov. */
+			private int size = 0;
+
+			/** Izrazi, ki dolocajo naslove, kamor se prireja. */
+			private final List<AST.Expr> assigned = new ArrayList<AST.Expr>();
+
+			/** Dolzine uporabljenih verig staticnih povezav. */
+			private final SortedSet<Integer> distances = new TreeSet<Integer>();
+
+			/**
+			 * Ustvari nov pregled telesa zanke.
+			 *
+			 * @param frame Klicni zapis funkcije, v kateri je zanka.
+			 */
+			public BodyScanner(final Mem.Frame frame) {
+				this.frame = frame;
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Object arg) {
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.AssignStmt assignStmt, final Object arg) {
+				assigned.add(assignStmt.dstExpr);
+				return AST.FullVisitor.super.visit(assignStmt, arg);
+			}
+
+			@Override
+			public Object visit(final AST.AtomExpr atomExpr, final Object arg) {
+				size++;
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.VarExpr varExpr, final Object arg) {
+				size++;
+				if ((access(attrAST.attrDef.get(varExpr)) instanceof Mem.RelAccess relAccess)
+						&& (relAccess.depth < frame.depth))
+					distances.add(frame.depth - relAccess.depth);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final Object arg) {
+				size++;
+				final Mem.Frame defFrame = attrAST.attrFrame.get(attrAST.attrDef.get(callExpr));
+				if ((defFrame != null) && (defFrame.depth > 1) && (frame.depth - defFrame.depth + 1 > 0))
+					distances.add(frame.depth - defFrame.depth + 1);
+				return AST.FullVisitor.super.visit(callExpr, arg);
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final Object arg) {
+				size++;
+				return AST.FullVisitor.super.visit(unExpr, arg);
+			}
+
+			@Override
+			public Object visit(final AST.BinExpr binExpr, final Object arg) {
+				size++;
+				return AST.FullVisitor.super.visit(binExpr, arg);
+			}
+
+		}
+
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon optimizacije zank kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (loop optimization):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(memoryAttrAST);
+				// vstavljanje funkcij:
+				final Inline.AttrAST inlineAttrAST = Inline.inline(optimAttrAST);
+				// optimizacija zank:
+				verbose = true;
+				final Loops.AttrAST loopsAttrAST = Loops.optimize(inlineAttrAST);
+
+				(new AST.Logger(loopsAttrAST)).log();
+			}
+
+			// Upajmo, da kdaj pridemo to te tocke.
+			// A zavedajmo se sledecega:
+			// 1. Prevod je zaradi napak v programu lahko napacen :-o
+			// 2. Izvorni program se zdalec ni tisto, kar je programer hotel, da bi bil ;-)
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package pins25.phase;
 
+import java.io.*;
 import java.util.*;
 
 import pins25.common.*;
@@ -16,7 +17,23 @@ import pins25.common.*;
  * <li>{@code -5}: {@code fun putstr(straddr)}</li>
  * <li>{@code -6}: {@code fun new(size)}</li>
  * <li>{@code -7}: {@code fun del(addr)}</li>
+ * <li>{@code -8}: {@code fun clock()} (monotona ura v mikrosekundah od zacetka
+ * izvajanja)</li>
+ * <li>{@code -9}: {@code fun instrs()} (stevilo doslej izvedenih ukazov)</li>
+ * <li>{@code -10}: {@code fun getbyte(addr)}</li>
+ * <li>{@code -11}: {@code fun putbyte(addr, bytevalue)}</li>
  * </ol>
+ *
+ * Funkciji {@code getstr} in {@code putstr} nize hranita po en znak na besedo
+ * oziroma, ce je program preveden z vklopljeno zastavico
+ * {@link CodeGen#packedStrings} (kar se stroju pove ob njegovi izdelavi), po en
+ * znak na bajt.
+ *
+ * Stroj vzdrzuje prikaz: za vsako globino kazalec na zadnji klicni zapis
+ * funkcije te globine. Ob klicu se vnos za globino klicane funkcije nastavi na
+ * nov klicni zapis, ob vrnitvi pa obnovi, zato ukaz {@code DISP} v konstantnem
+ * casu vrne klicni zapis, do katerega bi sicer vodila veriga staticnih povezav.
+ * Iz prikaza prebere staticno povezavo tudi ukaz {@code CALLI}.
  */
 public class Machine {
 
@@ -34,26 +51,272 @@ public class Machine {
 	/** Ali se opravi testni izpis dogajanja na skladu. */
 	public static boolean debugStack = false;
 
+	/** Ali se belezijo naslovi ukazov, ki so izpisali posamezne dele izhoda. */
+	public static boolean debugOutputs = false;
+
+	/** Najvecje stevilo izvedenih ukazov ({@code 0} pomeni brez omejitve). */
+	public static long maxInstrs = 0;
+
+	/** Ali se steje izvedene ukaze po posameznih vrstah ukazov. */
+	public static boolean countInstrs = false;
+
+	/**
+	 * Stroj, ki izvaja preveden program.
+	 */
+	public static interface Processor {
+
+		/**
+		 * Izvede program.
+		 */
+		public void run();
+
+		/**
+		 * Vrne izhodno kodo programa.
+		 * 
+		 * @return Izhodna koda programa ali {@code null}, ce se program se ni koncal.
+		 */
+		public Integer exitCode();
+
+		/**
+		 * Vrne stevilo izvedenih ukazov.
+		 * 
+		 * @return Stevilo izvedenih ukazov.
+		 */
+		public long numInstrs();
+
+		/**
+		 * Vrne stevilo izvedenih ukazov po posameznih vrstah ukazov (le, ce je
+		 * vklopljen {@link Machine#countInstrs}).
+		 * 
+		 * @return Stevilo izvedenih ukazov po posameznih vrstah ukazov.
+		 */
+		public SortedMap<String, Long> numInstrsByOpcode();
+
+		/**
+		 * Vrne najvecjo porabo pomnilnika med izvajanjem, torej najvecjo velikost
+		 * sklada in velikost kopice.
+		 * 
+		 * @return Najvecja poraba pomnilnika (v bajtih).
+		 */
+		public int peakMemory();
+
+		/**
+		 * Vrne velikost kopice, ki se zacne takoj za staticnimi spremenljivkami.
+		 * 
+		 * @return Velikost kopice (v bajtih).
+		 */
+		public int heapSize();
+
+		/**
+		 * Vrne najvecjo velikost sklada, ki se zacne na vrhu pomnilnika.
+		 * 
+		 * @return Najvecja velikost sklada (v bajtih).
+		 */
+		public int stackSize();
+
+		/**
+		 * Vrne vrednost programskega stevca.
+		 * 
+		 * @return Vrednost programskega stevca.
+		 */
+		public int PC();
+
+		/**
+		 * Vrne naslove ukazov, ki so pisali na standardni izhod, po mestih prvih
+		 * izpisanih znakov (le, ce je vklopljen {@link Machine#debugOutputs}).
+		 * 
+		 * @return Naslovi ukazov po mestih v standardnem izhodu.
+		 */
+		public SortedMap<Integer, Integer> outputPCs();
+
+		/**
+		 * Vrne fizicni naslov oznake.
+		 * 
+		 * @param label Oznaka (glej {@link Labels}).
+		 * @return Fizicni naslov oznake ali {@code null}, ce oznaka ne obstaja.
+		 */
+		public Integer labelAddr(final int label);
+
+		/**
+		 * Prebere vrednost iz pomnilnika.
+		 * 
+		 * @param addr Pomnilniski naslov.
+		 * @return Vrednost.
+		 */
+		public int load(final int addr);
+
+		/**
+		 * Opise naslov ukaza z najblizjo predhodno oznako in lokacijo v izvorni kodi.
+		 * 
+		 * @param pc Naslov ukaza.
+		 * @return Opis naslova ukaza.
+		 */
+		public String location(final int pc);
+
+	}
+
+	/**
+	 * Pomnilnik stroja, razdeljen na strani, ki se ustvarijo ob prvem pisanju.
+	 * 
+	 * Neobstojece strani vsebujejo same nicle, zato polnjenje z niclami ne ustvari
+	 * novih strani, obstojece strani pa napolni v enem koraku.
+	 */
+	public static class Store {
+
+		/** Stevilo bitov odmika znotraj strani. */
+		private static final int PAGE_BITS = 12;
+
+		/** Velikost strani (v bajtih). */
+		private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+		/** Strani pomnilnika. */
+		private final HashMap<Integer, byte[]> pages = new HashMap<Integer, byte[]>();
+
+		@SuppressWarnings({ "doclint:missing" })
+		public Store() {
+		}
+
+		/**
+		 * Vrne stran, na kateri je dani naslov.
+		 * 
+		 * @param addr   Pomnilniski naslov.
+		 * @param create Ali se neobstojeca stran ustvari.
+		 * @return Stran ali {@code null}, ce stran ne obstaja in se ne ustvari.
+		 */
+		private byte[] page(final int addr, final boolean create) {
+			final byte[] page = pages.get(addr >> PAGE_BITS);
+			if ((page != null) || !create)
+				return page;
+			final byte[] newPage = new byte[PAGE_SIZE];
+			pages.put(addr >> PAGE_BITS, newPage);
+			return newPage;
+		}
+
+		/**
+		 * Prebere vrednost iz pomnilnika.
+		 * 
+		 * @param addr Pomnilniski naslov.
+		 * @return Vrednost.
+		 */
+		public int load(final int addr) {
+			int value = 0;
+			for (int b = 0; b < 4; b++) {
+				final byte[] page = page(addr + b, false);
+				if (page != null)
+					value = value | ((page[(addr + b) & (PAGE_SIZE - 1)] & 0xFF) << (b * 8));
+			}
+			return value;
+		}
+
+		/**
+		 * Shrani vrednost v pomnilnik.
+		 * 
+		 * @param addr  Pomnilniski naslov.
+		 * @param value Vrednost.
+		 */
+		public void save(final int addr, final int value) {
+			for (int b = 0; b < 4; b++)
+				page(addr + b, true)[(addr + b) & (PAGE_SIZE - 1)] = (byte) (value >> (b * 8));
+		}
+
+		/**
+		 * Prebere bajt iz pomnilnika.
+		 * 
+		 * @param addr Pomnilniski naslov.
+		 * @return Vrednost bajta (razsirjena z niclami).
+		 */
+		public int loadByte(final int addr) {
+			final byte[] page = page(addr, false);
+			return page == null ? 0 : page[addr & (PAGE_SIZE - 1)] & 0xFF;
+		}
+
+		/**
+		 * Shrani najnizji bajt vrednosti v pomnilnik.
+		 * 
+		 * @param addr  Pomnilniski naslov.
+		 * @param value Vrednost.
+		 */
+		public void saveByte(final int addr, final int value) {
+			page(addr, true)[addr & (PAGE_SIZE - 1)] = (byte) value;
+		}
+
+		/**
+		 * Shrani zaporedje vrednosti v pomnilnik.
+		 * 
+		 * @param addr   Zacetni pomnilniski naslov.
+		 * @param values Vrednosti.
+		 */
+		public void save(final int addr, final int[] values) {
+			for (int v = 0; v < values.length; v++)
+				save(addr + 4 * v, values[v]);
+		}
+
+		/**
+		 * Napolni podrocje pomnilnika z niclami.
+		 * 
+		 * @param addr Zacetni pomnilniski naslov.
+		 * @param size Velikost podrocja (v bajtih).
+		 */
+		public void fill(int addr, int size) {
+			while (size > 0) {
+				final int offset = addr & (PAGE_SIZE - 1);
+				final int len = Math.min(size, PAGE_SIZE - offset);
+				final byte[] page = page(addr, false);
+				if (page != null)
+					Arrays.fill(page, offset, offset + len, (byte) 0);
+				addr += len;
+				size -= len;
+			}
+		}
+
+	}
+
 	/**
 	 * Izvajanje skladovnega stroja.
 	 */
-	public static class Executor {
+	public static class Executor implements Processor {
 
 		/** Seznam ukazov kode programa. */
 		private final HashMap<Integer, PDM.CodeInstr> program = new HashMap<Integer, PDM.CodeInstr>();
 
-		/** Pomnilnik (brez predstavitve ukazov. */
-		private final HashMap<Integer, Byte> memory = new HashMap<Integer, Byte>();
+		/** Pomnilnik (brez predstavitve ukazov). */
+		private final Store memory = new Store();
+
+		/** Preslikava oznak v fizicne naslove. */
+		private final HashMap<Integer, Integer> labelToAddr = new HashMap<Integer, Integer>();
+
+		/**
+		 * Zaporedje besed v predlogi za inicializacijo pomnilnika.
+		 * 
+		 * @param offset Odmik prve besede od zacetka inicializiranega podrocja.
+		 * @param size   Velikost zaporedja (v bajtih).
+		 * @param values Besede ali {@code null}, ce so vse besede enake {@code 0}.
+		 */
+		private record InitRun(int offset, int size, int[] values) {
+		}
+
+		/**
+		 * Zacetne vrednosti besed v segmentu s staticnimi spremenljivkami (po
+		 * naslovih), kot jih doloca seznam ukazov s podatki programa. Program jih med
+		 * izvajanjem ne more spremeniti.
+		 */
+		private final HashMap<Integer, Integer> dataImage = new HashMap<Integer, Integer>();
 
-		/** Preslikava imen oznak v fizicne naslove. */
-		private final HashMap<String, Integer> labelToAddr = new HashMap<String, Integer>();
+		/**
+		 * Predloge za inicializacijo pomnilnika, izracunane iz opisov zacetnih
+		 * vrednosti v podatkih (po naslovih opisov).
+		 */
+		private final HashMap<Integer, InitRun[]> initImages = new HashMap<Integer, InitRun[]>();
 
-		/** Preslikava fizicnih naslovov v imena oznak. */
-		private final HashMap<Integer, String> addrToLabel = new HashMap<Integer, String>();
+		/** Preslikava fizicnih naslovov v oznake. */
+		private final HashMap<Integer, Integer> addrToLabel = new HashMap<Integer, Integer>();
 
 		/** Velikost segmenta z ukazi kode programa. */
 		private final int codeSegmentSize;
 
+		/** Ali so nizi programa shranjeni po en znak na bajt. */
+		private final boolean packedStrings;
+
 		/** Velikost segmenta s staticnimi spremenljivkami. */
 		private final int dataSegmentSize;
 
@@ -64,20 +327,12 @@ public class Machine {
 		final HashMap<Integer, String> debugDscs = new HashMap<Integer, String>();
 
 		{
-			labelToAddr.put("exit", -1);
-			addrToLabel.put(-1, "exit");
-			labelToAddr.put("getint", -2);
-			addrToLabel.put(-2, "getint");
-			labelToAddr.put("putint", -3);
-			addrToLabel.put(-3, "putint");
-			labelToAddr.put("getstr", -4);
-			addrToLabel.put(-4, "getstr");
-			labelToAddr.put("putstr", -5);
-			addrToLabel.put(-5, "putstr");
-			labelToAddr.put("new", -6);
-			addrToLabel.put(-6, "new");
-			labelToAddr.put("del", -7);
-			addrToLabel.put(-7, "del");
+			final String[] syscalls = { "exit", "getint", "putint", "getstr", "putstr", "new", "del", "clock",
+					"instrs", "getbyte", "putbyte" };
+			for (int s = 0; s < syscalls.length; s++) {
+				labelToAddr.put(Labels.label(syscalls[s]), -1 - s);
+				addrToLabel.put(-1 - s, Labels.label(syscalls[s]));
+			}
 		}
 
 		/** Programski stevec. */
@@ -92,6 +347,54 @@ public class Machine {
 		/** Kazalec na prvi prosti naslov na kopici. */
 		private int HP;
 
+		/** Standardni vhod programa. */
+		private final Scanner scanner;
+
+		/** Standardni izhod programa. */
+		private final PrintStream stdout;
+
+		/** Stevilo znakov, ki jih je program izpisal na standardni izhod. */
+		private int stdoutSize = 0;
+
+		/** Preslikava mesta v izhodu v naslov ukaza, ki je izpisal ta del izhoda. */
+		private final TreeMap<Integer, Integer> debugOuts = new TreeMap<Integer, Integer>();
+
+		/** Stevilo izvedenih ukazov. */
+		private long numInstrs = 0;
+
+		/** Stevilo izvedenih ukazov po posameznih vrstah ukazov. */
+		private final TreeMap<String, Long> numInstrsByOpcode = new TreeMap<String, Long>();
+
+		/** Najmanjsa vrednost skladovnega kazalca med izvajanjem. */
+		private int minSP;
+
+		/** Virtualni registri klicnega zapisa trenutne funkcije. */
+		private int[] regs = new int[0];
+
+		/** Virtualni registri klicnih zapisov klicocih funkcij. */
+		private final Stack<int[]> callerRegs = new Stack<int[]>();
+
+		/** Skupno stevilo virtualnih registrov vseh zivih klicnih zapisov. */
+		private int numRegs = 0;
+
+		/** Najvecje skupno stevilo virtualnih registrov med izvajanjem. */
+		private int maxNumRegs = 0;
+
+		/** Prikaz: kazalci na zadnje klicne zapise posameznih globin. */
+		private int[] display = new int[0];
+
+		/** Globine in prejsnje vrednosti prikaza klicocih funkcij. */
+		private final Stack<int[]> callerDisplay = new Stack<int[]>();
+
+		/** Zacetek kopice. */
+		private int heapStart;
+
+		/** Cas zacetka izvajanja (v nanosekundah). */
+		private final long startTime = System.nanoTime();
+
+		/** Izhodna koda programa (ali {@code null}, ce se program se ni koncal). */
+		private Integer exitCode = null;
+
 		/**
 		 * Shrani vrednost v pomnilnik.
 		 * 
@@ -99,16 +402,12 @@ public class Machine {
 		 * @param value      Vrednost.
 		 * @param debugInstr Lokacija dela izvorne kode, ki zahteva shranjevanje.
 		 */
-		private void memSAVE(int addr, int value, final PDM.INSTR debugInstr) {
+		private void memSAVE(final int addr, final int value, final PDM.INSTR debugInstr) {
 			if (addr < codeSegmentSize)
 				throw new Report.InternalError();
 			if (debugStack && (debugInstr != null) && (debugInstr.debugLocation != null))
 				debugLocs.put(addr, debugInstr.debugLocation.toString());
-			for (int b = 0; b < 4; b++) {
-				int val = ((value >> (b * 8)) & 0xFF);
-				memory.put(addr, (byte) val);
-				addr += 1;
-			}
+			memory.save(addr, value);
 		}
 
 		/**
@@ -117,18 +416,37 @@ public class Machine {
 		 * @param addr Pomnilniski naslov.
 		 * @return Vrednost.
 		 */
-		private int memLOAD(int addr) {
+		private int memLOAD(final int addr) {
 			if (addr < codeSegmentSize)
 				throw new Report.InternalError();
-			int value = 0;
-			for (int b = 0; b < 4; b++) {
-				Byte val = memory.get(addr);
-				addr += 1;
-				if (val == null)
-					val = 0;
-				value = value | (((val < 0) ? ((int) val) + 256 : ((int) val)) << (b * 8));
-			}
-			return value;
+			return memory.load(addr);
+		}
+
+		/**
+		 * Shrani najnizji bajt vrednosti v pomnilnik.
+		 * 
+		 * @param addr       Pomnilniski naslov.
+		 * @param value      Vrednost.
+		 * @param debugInstr Lokacija dela izvorne kode, ki zahteva shranjevanje.
+		 */
+		private void memSTB(final int addr, final int value, final PDM.INSTR debugInstr) {
+			if (addr < codeSegmentSize)
+				throw new Report.InternalError();
+			if (debugStack && (debugInstr != null) && (debugInstr.debugLocation != null))
+				debugLocs.put(addr, debugInstr.debugLocation.toString());
+			memory.saveByte(addr, value);
+		}
+
+		/**
+		 * Prebere bajt iz pomnilnika.
+		 * 
+		 * @param addr Pomnilniski naslov.
+		 * @return Vrednost bajta (razsirjena z niclami).
+		 */
+		private int memLDB(final int addr) {
+			if (addr < codeSegmentSize)
+				throw new Report.InternalError();
+			return memory.loadByte(addr);
 		}
 
 		/**
@@ -140,6 +458,8 @@ public class Machine {
 		 */
 		private void push(final int value, final PDM.INSTR debugInstr) {
 			SP -= 4;
+			if (SP < minSP)
+				minSP = SP;
 			memSAVE(SP, value, debugInstr);
 		}
 
@@ -156,15 +476,113 @@ public class Machine {
 			return value;
 		}
 
+		/**
+		 * Izracuna predlogo za inicializacijo pomnilnika iz opisa zacetnih vrednosti
+		 * (stevilo blokov, nato za vsak blok stevilo ponovitev, dolzina in besede).
+		 * Opis se prebere iz zacetnih vrednosti podatkov in ne iz pomnilnika, zato
+		 * predloge ostanejo veljavne ne glede na pisanje programa.
+		 * 
+		 * @param initAddr Naslov opisa zacetnih vrednosti.
+		 * @return Predloga: zaporedja nicel in zaporedja ostalih besed.
+		 */
+		private InitRun[] initImage(int initAddr) {
+			final List<Integer> words = new ArrayList<Integer>();
+			final int numInits = dataWord(initAddr);
+			initAddr += 4;
+			for (int nInit = 0; nInit < numInits; nInit++) {
+				final int num = dataWord(initAddr);
+				initAddr += 4;
+				final int len = dataWord(initAddr);
+				initAddr += 4;
+				for (int n = 0; n < num; n++)
+					for (int l = 0; l < len; l++)
+						words.add(dataWord(initAddr + 4 * l));
+				initAddr += 4 * len;
+			}
+			final List<InitRun> runs = new ArrayList<InitRun>();
+			int beg = 0;
+			while (beg < words.size()) {
+				final boolean zero = words.get(beg) == 0;
+				int end = beg + 1;
+				while ((end < words.size()) && ((words.get(end) == 0) == zero))
+					end++;
+				runs.add(new InitRun(4 * beg, 4 * (end - beg),
+						zero ? null : words.subList(beg, end).stream().mapToInt(Integer::intValue).toArray()));
+				beg = end;
+			}
+			return runs.toArray(new InitRun[0]);
+		}
+
+		/**
+		 * Vrne zacetno vrednost besede v segmentu s staticnimi spremenljivkami.
+		 * 
+		 * @param addr Naslov besede.
+		 * @return Zacetna vrednost besede.
+		 */
+		private int dataWord(final int addr) {
+			if ((addr < codeSegmentSize) || (addr + 4 > codeSegmentSize + dataSegmentSize))
+				throw new Report.InternalError();
+			return dataImage.getOrDefault(addr, 0);
+		}
+
+		/**
+		 * Rezervira podrocje na vrhu sklada in ga v enem koraku napolni z niclami.
+		 * 
+		 * @param size       Velikost podrocja (v bajtih).
+		 * @param debugInstr Lokacija dela izvorne kode, ki zahteva rezervacijo.
+		 */
+		private void alloc(final int size, final PDM.INSTR debugInstr) {
+			if (SP - size < codeSegmentSize)
+				throw new Report.InternalError();
+			SP -= size;
+			if (SP < minSP)
+				minSP = SP;
+			memory.fill(SP, size);
+			if (debugStack && (debugInstr != null) && (debugInstr.debugLocation != null))
+				for (int addr = SP; addr < SP + size; addr += 4)
+					debugLocs.put(addr, debugInstr.debugLocation.toString());
+		}
+
+		/**
+		 * Sprosti podrocje na vrhu sklada v enem koraku.
+		 * 
+		 * @param size Velikost podrocja (v bajtih).
+		 */
+		private void free(final int size) {
+			if (debugStack)
+				for (int addr = SP; addr < SP + size; addr += 4)
+					debugLocs.put(addr, null);
+			SP += size;
+		}
+
 		/**
 		 * Ustvari nov skladovni stroj za podan program in ta program izvede.
 		 * 
-		 * @param codeSegment Seznam ukazov, ki predstavljajo kodo programa.
-		 * @param dataSegment Seznam ukazov, ki predstavljajo podatke programa.
+		 * @param codeSegment   Seznam ukazov, ki predstavljajo kodo programa.
+		 * @param dataSegment   Seznam ukazov, ki predstavljajo podatke programa.
+		 * @param packedStrings Ali so nizi programa shranjeni po en znak na bajt.
 		 */
-		public Executor(final List<PDM.CodeInstr> codeSegment, final List<PDM.DataInstr> dataSegment) {
+		public Executor(final List<PDM.CodeInstr> codeSegment, final List<PDM.DataInstr> dataSegment,
+				final boolean packedStrings) {
+			this(codeSegment, dataSegment, packedStrings, System.in, System.out);
+			run();
+		}
 
-			Scanner scanner = new Scanner(System.in);
+		/**
+		 * Ustvari nov skladovni stroj za podan program, vendar programa ne izvede.
+		 * 
+		 * @param codeSegment   Seznam ukazov, ki predstavljajo kodo programa.
+		 * @param dataSegment   Seznam ukazov, ki predstavljajo podatke programa.
+		 * @param packedStrings Ali so nizi programa shranjeni po en znak na bajt.
+		 * @param stdin         Standardni vhod programa.
+		 * @param stdout        Standardni izhod programa.
+		 */
+		public Executor(final List<PDM.CodeInstr> codeSegment, final List<PDM.DataInstr> dataSegment,
+				final boolean packedStrings, final InputStream stdin, final PrintStream stdout) {
+
+			this.scanner = new Scanner(stdin);
+			this.stdout = stdout;
+			this.packedStrings = packedStrings;
 
 			int memPtr = 0;
 
@@ -173,16 +591,22 @@ public class Machine {
 			for (final PDM.CodeInstr instr : codeSegment) {
 				switch (instr) {
 					case PDM.LABEL i -> {
-						labelToAddr.put(i.name, memPtr);
-						addrToLabel.put(memPtr, i.name);
+						labelToAddr.put(i.label, memPtr);
+						addrToLabel.put(memPtr, i.label);
 						if (debugLabelsList)
-							System.out.printf("LABEL %s = %d\n", i.name, memPtr);
+							System.out.printf("LABEL %s = %d\n", Labels.name(i.label), memPtr);
 						memPtr -= 1;
 					}
 					case PDM.INIT i -> program.put(memPtr, i);
 					case PDM.LOAD i -> program.put(memPtr, i);
 					case PDM.SAVE i -> program.put(memPtr, i);
+					case PDM.LDB i -> program.put(memPtr, i);
+					case PDM.STB i -> program.put(memPtr, i);
 					case PDM.POPN i -> program.put(memPtr, i);
+					case PDM.ENTER i -> {
+						program.put(memPtr, i);
+						memPtr += 4;
+					}
 					case PDM.PUSH i -> {
 						program.put(memPtr, i);
 						memPtr += 4;
@@ -191,12 +615,44 @@ public class Machine {
 						program.put(memPtr, i);
 						memPtr += 4;
 					}
+					case PDM.VLOAD i -> {
+						program.put(memPtr, i);
+						memPtr += 4;
+					}
+					case PDM.VSAVE i -> {
+						program.put(memPtr, i);
+						memPtr += 4;
+					}
 					case PDM.REGN i -> program.put(memPtr, i);
+					case PDM.DISP i -> {
+						program.put(memPtr, i);
+						memPtr += 4;
+					}
 					case PDM.OPER i -> program.put(memPtr, i);
 					case PDM.UJMP i -> program.put(memPtr, i);
 					case PDM.CJMP i -> program.put(memPtr, i);
+					case PDM.JUMP i -> {
+						program.put(memPtr, i);
+						memPtr += 4;
+					}
+					case PDM.JCOND i -> {
+						program.put(memPtr, i);
+						memPtr += 4;
+					}
 					case PDM.CALL i -> program.put(memPtr, i);
+					case PDM.CALLI i -> {
+						program.put(memPtr, i);
+						memPtr += 8;
+					}
+					case PDM.TCALL i -> {
+						program.put(memPtr, i);
+						memPtr += 8;
+					}
 					case PDM.RETN i -> program.put(memPtr, i);
+					case PDM.RET i -> {
+						program.put(memPtr, i);
+						memPtr += 4;
+					}
 					default -> throw new Report.InternalError();
 				}
 				memPtr += 1;
@@ -208,16 +664,17 @@ public class Machine {
 			for (final PDM.DataInstr instr : dataSegment) {
 				switch (instr) {
 					case PDM.LABEL i -> {
-						labelToAddr.put(i.name, memPtr);
-						addrToLabel.put(memPtr, i.name);
+						labelToAddr.put(i.label, memPtr);
+						addrToLabel.put(memPtr, i.label);
 						if (debugLabelsList)
-							System.out.printf("LABEL %s = %d\n", i.name, memPtr);
+							System.out.printf("LABEL %s = %d\n", Labels.name(i.label), memPtr);
 					}
 					case PDM.SIZE i -> {
 						memPtr += i.size;
 					}
 					case PDM.DATA i -> {
 						memSAVE(memPtr, i.intc, i);
+						dataImage.put(memPtr, i.intc);
 						memPtr += 4;
 					}
 					default -> throw new Report.InternalError();
@@ -225,19 +682,36 @@ public class Machine {
 			}
 			dataSegmentSize = memPtr - codeSegmentSize;
 
+			// Predloge za inicializacijo se pripravijo ob nalaganju programa.
+			for (int i = 0; i + 1 < codeSegment.size(); i++)
+				if ((codeSegment.get(i) instanceof PDM.NAME name) && (codeSegment.get(i + 1) instanceof PDM.INIT)
+						&& (labelToAddr.get(name.label) != null) && (labelToAddr.get(name.label) >= codeSegmentSize))
+					initImages.computeIfAbsent(labelToAddr.get(name.label), this::initImage);
+
 			PC = 0;
 			FP = 0x10000;
 			SP = 0x10000;
 			HP = codeSegmentSize + dataSegmentSize;
+			minSP = SP;
+			heapStart = HP;
 
 			push(-1, null);
 			FP = SP + 0;
 			push(-1, null);
 			SP = SP + 0;
+		}
 
+		/**
+		 * Izvede program.
+		 */
+		public void run() {
 			System.out.printf("\n");
 			loop: while (true) {
 
+				if ((maxInstrs > 0) && (numInstrs == maxInstrs))
+					throw new Report.Error("Instruction limit exceeded at " + location(PC) + ".");
+				numInstrs++;
+
 				if (debugStack) {
 					for (int stackAddr = 0x10000 - 4; stackAddr >= SP; stackAddr -= 4) {
 						final String debugLoc = debugLocs.get(stackAddr);
@@ -257,6 +731,8 @@ public class Machine {
 				}
 
 				final PDM.CodeInstr instr = program.get(PC);
+				if (countInstrs)
+					numInstrsByOpcode.merge(opcode(instr), 1L, Long::sum);
 				if (debugStack) {
 					System.out.printf("\033[1m%15s %5d: %s\033[0m\n\n",
 							((PDM.INSTR) instr).debugLocation == null ? "" : ((PDM.INSTR) instr).debugLocation, PC,
@@ -265,22 +741,18 @@ public class Machine {
 
 				switch (instr) {
 					case PDM.INIT i: {
-						int initAddr = pop();
-						int dstAddr = pop();
-						final int numInits = memLOAD(initAddr);
-						initAddr += 4;
-						for (int nInit = 0; nInit < numInits; nInit++) {
-							int num = memLOAD(initAddr);
-							initAddr += 4;
-							int len = memLOAD(initAddr);
-							initAddr += 4;
-							for (int n = 0; n < num; n++) {
-								for (int l = 0; l < len; l++) {
-									memSAVE(dstAddr, memLOAD(initAddr + 4 * l), i);
-									dstAddr += 4;
-								}
-							}
-							initAddr += 4 * len;
+						final int initAddr = pop();
+						final int dstAddr = pop();
+						for (final InitRun run : initImages.computeIfAbsent(initAddr, this::initImage)) {
+							if (dstAddr + run.offset < codeSegmentSize)
+								throw new Report.InternalError();
+							if (run.values == null)
+								memory.fill(dstAddr + run.offset, run.size);
+							else
+								memory.save(dstAddr + run.offset, run.values);
+							if (debugStack && (i.debugLocation != null))
+								for (int addr = 0; addr < run.size; addr += 4)
+									debugLocs.put(dstAddr + run.offset + addr, i.debugLocation.toString());
 						}
 						PC += i.size();
 						break;
@@ -299,19 +771,46 @@ public class Machine {
 						PC += i.size();
 						break;
 					}
-					case PDM.POPN i: {
-						int n = pop();
-						if (n < 0) {
-							while (n < 0) {
-								push(0, i);
-								n += 4;
-							}
-						} else {
-							while (n > 0) {
-								pop();
-								n -= 4;
-							}
+					case PDM.LDB i: {
+						push(memLDB(pop()), i);
+						PC += i.size();
+						break;
+					}
+					case PDM.STB i: {
+						final int addr = pop();
+						final int value = pop();
+						memSTB(addr, value, i);
+						PC += i.size();
+						break;
+					}
+					case PDM.VLOAD i: {
+						push(i.reg < regs.length ? regs[i.reg] : 0, i);
+						PC += i.size();
+						break;
+					}
+					case PDM.VSAVE i: {
+						final int value = pop();
+						if (i.reg >= regs.length) {
+							numRegs += i.reg + 1 - regs.length;
+							maxNumRegs = Math.max(maxNumRegs, numRegs);
+							regs = Arrays.copyOf(regs, i.reg + 1);
 						}
+						regs[i.reg] = value;
+						PC += i.size();
+						break;
+					}
+					case PDM.POPN i: {
+						// Velikost se zaokrozi navzgor na cele besede.
+						final int n = pop();
+						if (n < 0)
+							alloc((-n + 3) / 4 * 4, i);
+						else
+							free((n + 3) / 4 * 4);
+						PC += i.size();
+						break;
+					}
+					case PDM.ENTER i: {
+						alloc((i.size + 3) / 4 * 4, i);
 						PC += i.size();
 						break;
 					}
@@ -321,7 +820,7 @@ public class Machine {
 						break;
 					}
 					case PDM.NAME i: {
-						push(labelToAddr.get(i.name), i);
+						push(labelToAddr.get(i.label), i);
 						PC += i.size();
 						break;
 					}
@@ -336,6 +835,11 @@ public class Machine {
 						PC += i.size();
 						break;
 					}
+					case PDM.DISP i: {
+						push(i.depth < display.length ? display[i.depth] : 0, i);
+						PC += i.size();
+						break;
+					}
 					case PDM.OPER i: {
 						switch (i.oper) {
 							case NOT:
@@ -400,158 +904,428 @@ public class Machine {
 						PC = (cond != 0) ? thenPC : elsePC;
 						break;
 					}
+					case PDM.JUMP i: {
+						PC = labelToAddr.get(i.target);
+						break;
+					}
+					case PDM.JCOND i: {
+						final int cond = pop();
+						PC = ((cond != 0) == i.ifTrue) ? labelToAddr.get(i.target) : PC + i.size();
+						break;
+					}
 					case PDM.CALL i: {
+						if (!call(pop(), i.depth, i.debugFrame, i))
+							break loop;
+						break;
+					}
+					case PDM.CALLI i: {
+						push(i.depth == 0 ? 0 : display[i.depth], i);
+						if (!call(labelToAddr.get(i.target), i.depth + 1, i.debugFrame, i))
+							break loop;
+						break;
+					}
+					case PDM.TCALL i: {
 						final int newPC = pop();
-						if (newPC < 0) {
-							switch (newPC) {
-								case -1: { // exit(exitcode)
-									pop(); // SL
-									final int exitCode = pop();
-									pop();
-									pop();
-									System.out.printf("EXIT CODE (SP=%d): %d\n", SP, exitCode);
-									break loop;
-								}
-								case -2: { // getint()
-									pop(); // SL
-									final int intValue = scanner.nextInt();
-									push(intValue, null); // result
-									PC += i.size();
-									break;
-								}
-								case -3: { // putint(intvalue)
-									pop(); // SL
-									final int intValue = pop();
-									System.out.printf("%d", intValue);
-									push(1, null); // result
-									PC += i.size();
-									break;
-								}
-								case -4: { // getstr(straddr)
-									pop(); // SL
-									int strAddr = pop();
-									final String strValue = scanner.nextLine();
-									for (int c = 0; c < strValue.length(); c++) {
-										memSAVE(strAddr, strValue.charAt(c), null);
-										strAddr += 4;
-									}
-									memSAVE(strAddr, 0, null);
-									push(1, null); // result
-									PC += i.size();
-									break;
-								}
-								case -5: { // putstr(straddr)
-									pop(); // SL
-									int strAddr = pop();
-									while (true) {
-										int c = memLOAD(strAddr);
-										if (c == 0)
-											break;
-										System.out.printf("%c", c);
-										strAddr += 4;
-									}
-									push(1, null); // result
-									PC += i.size();
-									break;
-								}
-								case -6: { // new(size)
-									pop(); // SL
-									final int size = pop();
-									final int addr = HP;
-									for (int a = addr; a < addr + size; a++)
-										memory.put(a, (byte) 0);
-									HP += size;
-									push(addr, null); // result
-									PC += i.size();
-									break;
-								}
-								case -7: { // del(addr)
-									pop(); // SL
-									pop(); // addr
-									push(1, null); // result
-									PC += i.size();
-									break;
-								}
-								default:
-									throw new Report.InternalError();
-							}
-						} else {
-							if (debugStack) {
-								debugDscs.put(SP, "... SL");
-								debugDscs.put(SP - 4,
-										"... FP *** " + (i.debugFrame == null ? "" : i.debugFrame.name) + " ***");
-								debugDscs.put(SP - 8, "... RA ");
-								if (i.debugFrame != null) {
-									if (i.debugFrame.debugPars != null)
-										for (final Mem.RelAccess relAccess : i.debugFrame.debugPars)
-											if (relAccess.debugName != null)
-												debugDscs.put(SP + relAccess.offset, "... par: " + relAccess.debugName);
-									if (i.debugFrame.debugVars != null)
-										for (final Mem.RelAccess relAccess : i.debugFrame.debugVars)
-											if (relAccess.debugName != null) {
-												if (relAccess.size == 4)
-													debugDscs.put(SP + relAccess.offset,
-															"... var: " + relAccess.debugName);
-												else {
-													for (int s = 0; s < relAccess.size; s += 4)
-														debugDscs.put(SP + relAccess.offset + s,
-																"... var: " + relAccess.debugName + "[" + (s / 4)
-																		+ "]");
-												}
-											}
-								}
-							}
-							push(FP, i);
-							push(PC + i.size(), i);
-							FP = SP + 8;
-							PC = newPC;
+						if (newPC < 0)
+							throw new Report.InternalError();
+						// Argumenti (prvi je staticna povezava) nadomestijo parametre.
+						final int[] args = new int[i.argsSize / 4 + 1];
+						for (int a = 0; a < args.length; a++)
+							args[a] = pop();
+						final int oldPC = memLOAD(FP - 8);
+						final int oldFP = memLOAD(FP - 4);
+						SP = FP + i.parsSize + 4;
+						for (int a = args.length - 1; a >= 0; a--)
+							push(args[a], i);
+						if (debugStack) {
+							debugDscs.put(SP, "... SL");
+							debugDscs.put(SP - 4,
+									"... FP *** " + (i.debugFrame == null ? "" : i.debugFrame.name) + " ***");
+							debugDscs.put(SP - 8, "... RA ");
 						}
+						push(oldFP, i);
+						push(oldPC, i);
+						FP = SP + 8;
+						PC = newPC;
+						numRegs -= regs.length;
+						regs = new int[0];
+						// Klicana funkcija prevzame vnos v prikazu klicoce funkcije.
+						final int[] oldDisplay = callerDisplay.pop();
+						if (oldDisplay[0] >= 0)
+							display[oldDisplay[0]] = oldDisplay[1];
+						final int depth = i.depth;
+						if (depth >= display.length)
+							display = Arrays.copyOf(display, depth + 1);
+						callerDisplay.push(new int[] { depth, depth < 0 ? 0 : display[depth] });
+						if (depth >= 0)
+							display[depth] = FP;
 						break;
 					}
 					case PDM.RETN i: {
-						if (debugStack) {
-							debugDscs.put(FP, null);
-							debugDscs.put(FP - 4, null);
-							debugDscs.put(FP - 8, null);
-							if (i.debugFrame != null) {
-								if (i.debugFrame.debugPars != null)
-									for (final Mem.RelAccess relAccess : i.debugFrame.debugPars)
-										if (relAccess.debugName != null)
-											debugDscs.put(FP + relAccess.offset, null);
-								if (i.debugFrame.debugVars != null)
-									for (final Mem.RelAccess relAccess : i.debugFrame.debugVars)
-										if (relAccess.debugName != null) {
-											if (relAccess.size == 4)
-												debugDscs.put(FP + relAccess.offset, null);
-											else {
-												for (int s = 0; s < relAccess.size; s += 4)
-													debugDscs.put(FP + relAccess.offset + s, null);
-											}
-										}
+						ret(pop(), i.debugFrame, i);
+						break;
+					}
+					case PDM.RET i: {
+						ret(i.parsSize, i.debugFrame, i);
+						break;
+					}
+					default:
+						throw new Report.InternalError();
+				}
+			}
+
+			scanner.close();
+		}
+
+		/**
+		 * Izvede klic podprograma, katerega argumenti (in staticna povezava) so ze na
+		 * skladu.
+		 * 
+		 * @param newPC      Naslov klicanega podprograma.
+		 * @param depth      Globina klicnega zapisa klicanega podprograma (ali
+		 *                   {@code -1}, ce ta ni znana).
+		 * @param debugFrame Klicni zapis klicanega podprograma.
+		 * @param i          Ukaz klica.
+		 * @return Ali se izvajanje programa nadaljuje.
+		 */
+		private boolean call(final int newPC, final int depth, final Mem.Frame debugFrame, final PDM.INSTR i) {
+			if (newPC < 0) {
+				switch (newPC) {
+					case -1: { // exit(exitcode)
+						pop(); // SL
+						final int exitCode = pop();
+						pop();
+						pop();
+						System.out.printf("EXIT CODE (SP=%d): %d\n", SP, exitCode);
+						this.exitCode = exitCode;
+						return false;
+					}
+					case -2: { // getint()
+						pop(); // SL
+						final int intValue = scanner.nextInt();
+						push(intValue, null); // result
+						PC += i.size();
+						break;
+					}
+					case -3: { // putint(intvalue)
+						pop(); // SL
+						final int intValue = pop();
+						print(String.valueOf(intValue));
+						push(1, null); // result
+						PC += i.size();
+						break;
+					}
+					case -4: { // getstr(straddr)
+						pop(); // SL
+						int strAddr = pop();
+						final String strValue = scanner.nextLine();
+						for (int c = 0; c < strValue.length(); c++) {
+							if (packedStrings)
+								memSTB(strAddr++, strValue.charAt(c), null);
+							else {
+								memSAVE(strAddr, strValue.charAt(c), null);
+								strAddr += 4;
 							}
 						}
-						int parsSize = pop();
-						final int result = pop();
-						PC = memLOAD(FP - 8);
-						while (SP != FP) {
-							pop();
-						}
-						// SP = FP;
-						FP = memLOAD(FP - 4);
-						parsSize += 4;
-						while (parsSize > 0) {
-							pop();
-							parsSize -= 4;
+						if (packedStrings)
+							memSTB(strAddr, 0, null);
+						else
+							memSAVE(strAddr, 0, null);
+						push(1, null); // result
+						PC += i.size();
+						break;
+					}
+					case -5: { // putstr(straddr)
+						pop(); // SL
+						int strAddr = pop();
+						final StringBuilder strValue = new StringBuilder();
+						while (true) {
+							int c = packedStrings ? memLDB(strAddr) : memLOAD(strAddr);
+							if (c == 0)
+								break;
+							strValue.append((char) c);
+							strAddr += packedStrings ? 1 : 4;
 						}
-						push(result, i);
+						print(strValue.toString());
+						push(1, null); // result
+						PC += i.size();
+						break;
+					}
+					case -6: { // new(size)
+						pop(); // SL
+						final int size = pop();
+						final int addr = HP;
+						memory.fill(addr, size);
+						HP += size;
+						push(addr, null); // result
+						PC += i.size();
+						break;
+					}
+					case -7: { // del(addr)
+						pop(); // SL
+						pop(); // addr
+						push(1, null); // result
+						PC += i.size();
+						break;
+					}
+					case -8: { // clock()
+						pop(); // SL
+						push((int) ((System.nanoTime() - startTime) / 1000), null); // result
+						PC += i.size();
+						break;
+					}
+					case -9: { // instrs()
+						pop(); // SL
+						push((int) numInstrs, null); // result
+						PC += i.size();
+						break;
+					}
+					case -10: { // getbyte(addr)
+						pop(); // SL
+						final int addr = pop();
+						push(memLDB(addr), null); // result
+						PC += i.size();
+						break;
+					}
+					case -11: { // putbyte(addr, bytevalue)
+						pop(); // SL
+						final int addr = pop();
+						final int value = pop();
+						memSTB(addr, value, null);
+						push(1, null); // result
+						PC += i.size();
 						break;
 					}
 					default:
 						throw new Report.InternalError();
 				}
+			} else {
+				if (debugStack) {
+					debugDscs.put(SP, "... SL");
+					debugDscs.put(SP - 4,
+							"... FP *** " + (debugFrame == null ? "" : debugFrame.name) + " ***");
+					debugDscs.put(SP - 8, "... RA ");
+					if (debugFrame != null) {
+						if (debugFrame.debugPars != null)
+							for (final Mem.RelAccess relAccess : debugFrame.debugPars)
+								if ((relAccess.debugName != null) && (relAccess.offset != null))
+									debugDscs.put(SP + relAccess.offset, "... par: " + relAccess.debugName);
+						if (debugFrame.debugVars != null)
+							for (final Mem.RelAccess relAccess : debugFrame.debugVars)
+								if ((relAccess.debugName != null) && (relAccess.offset != null)) {
+									if (relAccess.size == 4)
+										debugDscs.put(SP + relAccess.offset,
+												"... var: " + relAccess.debugName);
+									else {
+										for (int s = 0; s < relAccess.size; s += 4)
+											debugDscs.put(SP + relAccess.offset + s,
+													"... var: " + relAccess.debugName + "[" + (s / 4)
+															+ "]");
+									}
+								}
+					}
+				}
+				push(FP, i);
+				push(PC + i.size(), i);
+				FP = SP + 8;
+				PC = newPC;
+				callerRegs.push(regs);
+				regs = new int[0];
+				// Prikaz za globino klicane funkcije kaze na nov klicni zapis.
+				if (depth >= display.length)
+					display = Arrays.copyOf(display, depth + 1);
+				callerDisplay.push(new int[] { depth, depth < 0 ? 0 : display[depth] });
+				if (depth >= 0)
+					display[depth] = FP;
+			}
+			return true;
+		}
+
+		/**
+		 * Izvede vrnitev iz podprograma, katerega rezultat je na vrhu sklada.
+		 * 
+		 * @param parsSize   Velikost parametrov (brez staticne povezave).
+		 * @param debugFrame Klicni zapis vracajocega se podprograma.
+		 * @param i          Ukaz vrnitve.
+		 */
+		private void ret(final int parsSize, final Mem.Frame debugFrame, final PDM.INSTR i) {
+			if (debugStack) {
+				debugDscs.put(FP, null);
+				debugDscs.put(FP - 4, null);
+				debugDscs.put(FP - 8, null);
+				if (debugFrame != null) {
+					if (debugFrame.debugPars != null)
+						for (final Mem.RelAccess relAccess : debugFrame.debugPars)
+							if ((relAccess.debugName != null) && (relAccess.offset != null))
+								debugDscs.put(FP + relAccess.offset, null);
+					if (debugFrame.debugVars != null)
+						for (final Mem.RelAccess relAccess : debugFrame.debugVars)
+							if ((relAccess.debugName != null) && (relAccess.offset != null)) {
+								if (relAccess.size == 4)
+									debugDscs.put(FP + relAccess.offset, null);
+								else {
+									for (int s = 0; s < relAccess.size; s += 4)
+										debugDscs.put(FP + relAccess.offset + s, null);
+								}
+							}
+				}
 			}
+			final int result = pop();
+			PC = memLOAD(FP - 8);
+			free(FP - SP);
+			FP = memLOAD(FP - 4);
+			numRegs -= regs.length;
+			regs = callerRegs.pop();
+			final int[] oldDisplay = callerDisplay.pop();
+			if (oldDisplay[0] >= 0)
+				display[oldDisplay[0]] = oldDisplay[1];
+			free(parsSize + 4);
+			push(result, i);
+		}
 
-			scanner.close();
+		/**
+		 * Vrne vrsto ukaza, torej ime ukaza brez argumentov.
+		 * 
+		 * @param instr Ukaz.
+		 * @return Vrsta ukaza.
+		 */
+		private static String opcode(final PDM.CodeInstr instr) {
+			return switch (instr) {
+				case PDM.OPER i -> i.toString();
+				case PDM.REGN i -> i.toString();
+				default -> instr.getClass().getSimpleName();
+			};
+		}
+
+		/**
+		 * Izpise niz na standardni izhod programa.
+		 * 
+		 * @param text Niz.
+		 */
+		private void print(final String text) {
+			if (debugOutputs)
+				debugOuts.put(stdoutSize, PC);
+			stdout.print(text);
+			stdoutSize += text.length();
+		}
+
+		/**
+		 * Vrne izhodno kodo programa.
+		 * 
+		 * @return Izhodna koda programa ali {@code null}, ce se program se ni koncal.
+		 */
+		public Integer exitCode() {
+			return exitCode;
+		}
+
+		/**
+		 * Vrne stevilo izvedenih ukazov.
+		 * 
+		 * @return Stevilo izvedenih ukazov.
+		 */
+		public long numInstrs() {
+			return numInstrs;
+		}
+
+		/**
+		 * Vrne stevilo izvedenih ukazov po posameznih vrstah ukazov (le, ce je
+		 * vklopljen {@link Machine#countInstrs}).
+		 * 
+		 * @return Stevilo izvedenih ukazov po posameznih vrstah ukazov.
+		 */
+		public SortedMap<String, Long> numInstrsByOpcode() {
+			return Collections.unmodifiableSortedMap(numInstrsByOpcode);
+		}
+
+		/**
+		 * Vrne najvecjo porabo pomnilnika med izvajanjem, torej najvecjo velikost
+		 * sklada (skupaj z virtualnimi registri) in velikost kopice.
+		 * 
+		 * @return Najvecja poraba pomnilnika (v bajtih).
+		 */
+		public int peakMemory() {
+			return (0x10000 - minSP) + 4 * maxNumRegs + (HP - heapStart);
+		}
+
+		/**
+		 * Vrne velikost kopice, ki se zacne takoj za staticnimi spremenljivkami.
+		 * 
+		 * @return Velikost kopice (v bajtih).
+		 */
+		public int heapSize() {
+			return HP - heapStart;
+		}
+
+		/**
+		 * Vrne najvecjo velikost sklada, ki se zacne na vrhu pomnilnika.
+		 * 
+		 * @return Najvecja velikost sklada (v bajtih).
+		 */
+		public int stackSize() {
+			return 0x10000 - minSP;
+		}
+
+		/**
+		 * Vrne vrednost programskega stevca.
+		 * 
+		 * @return Vrednost programskega stevca.
+		 */
+		public int PC() {
+			return PC;
+		}
+
+		/**
+		 * Vrne naslove ukazov, ki so pisali na standardni izhod, po mestih prvih
+		 * izpisanih znakov (le, ce je vklopljen {@link Machine#debugOutputs}).
+		 * 
+		 * @return Naslovi ukazov po mestih v standardnem izhodu.
+		 */
+		public SortedMap<Integer, Integer> outputPCs() {
+			return Collections.unmodifiableSortedMap(debugOuts);
+		}
+
+		/**
+		 * Vrne fizicni naslov oznake.
+		 * 
+		 * @param label Oznaka (glej {@link Labels}).
+		 * @return Fizicni naslov oznake ali {@code null}, ce oznaka ne obstaja.
+		 */
+		public Integer labelAddr(final int label) {
+			return labelToAddr.get(label);
+		}
+
+		/**
+		 * Prebere vrednost iz pomnilnika.
+		 * 
+		 * @param addr Pomnilniski naslov.
+		 * @return Vrednost.
+		 */
+		public int load(final int addr) {
+			return memLOAD(addr);
+		}
+
+		/**
+		 * Opise naslov ukaza z najblizjo predhodno oznako in lokacijo v izvorni kodi.
+		 * 
+		 * @param pc Naslov ukaza.
+		 * @return Opis naslova ukaza.
+		 */
+		public String location(final int pc) {
+			int labelAddr = Integer.MIN_VALUE;
+			for (final Map.Entry<Integer, Integer> entry : addrToLabel.entrySet())
+				if ((entry.getKey() >= 0) && (entry.getKey() <= pc) && (entry.getKey() > labelAddr))
+					labelAddr = entry.getKey();
+			final StringBuffer loc = new StringBuffer();
+			loc.append(pc);
+			if (labelAddr != Integer.MIN_VALUE)
+				loc.append(" (" + Labels.name(addrToLabel.get(labelAddr)) + "+" + (pc - labelAddr) + ")");
+			final PDM.CodeInstr instr = program.get(pc);
+			if (instr != null) {
+				loc.append(" " + instr);
+				if (((PDM.INSTR) instr).debugLocation != null)
+					loc.append(" " + ((PDM.INSTR) instr).debugLocation);
+			}
+			return loc.toString();
 		}
 
 	}
@@ -579,12 +1353,21 @@ public class Machine {
 				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
 				// pomnilniska predstavitev:
 				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(memoryAttrAST);
+				// vstavljanje funkcij:
+				final Inline.AttrAST inlineAttrAST = Inline.inline(optimAttrAST);
+				// optimizacija zank:
+				final Loops.AttrAST loopsAttrAST = Loops.optimize(inlineAttrAST);
 				// generiranje kode:
-				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(memoryAttrAST);
+				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(loopsAttrAST);
+				// optimizacija v vmesni predstavitvi SSA:
+				final CodeGen.AttrAST ssaAttrAST = Ssa.optimize(codegenAttrAST);
 
-				final List<PDM.CodeInstr> codeSegment = (new CodeGen.CodeSegmentGenerator(codegenAttrAST))
-						.codeSegment();
-				final List<PDM.DataInstr> dataSegment = (new CodeGen.DataSegmentGenerator(codegenAttrAST))
+				// optimizacija skozi lino:
+				final List<PDM.CodeInstr> codeSegment = CodeGen.immediates(Peephole
+						.optimize((new CodeGen.CodeSegmentGenerator(ssaAttrAST)).codeSegment()));
+				final List<PDM.DataInstr> dataSegment = (new CodeGen.DataSegmentGenerator(ssaAttrAST))
 						.dataSegment();
 
 				if (debugInstrsList) {
@@ -608,7 +1391,7 @@ public class Machine {
 				}
 
 				// ustvari nov stroj in izvede program:
-				new Executor(codeSegment, dataSegment);
+				new Executor(codeSegment, dataSegment, CodeGen.packedStrings);
 			}
 
 			// Upajmo, da kdaj pridemo to te tocke.
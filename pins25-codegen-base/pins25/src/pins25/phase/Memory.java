@@ -7,6 +7,23 @@ import pins25.common.Mem.RelAccess;
 
 /**
  * Izracun pomnilniske predstavitve.
+ *
+ * Lokalne spremenljivke velikosti ene besede, katerih naslov se ne uporablja
+ * in ki niso dosegljive iz gnezdenih funkcij, dobijo namesto mesta v klicnem
+ * zapisu virtualni register klicnega zapisa; enako velja za take parametre, ki
+ * se uporabijo vsaj dvakrat (parameter se ob vstopu v funkcijo prenese iz
+ * pomnilnika v register).
+ *
+ * Gnezdene funkcije, ki spremenljivke in parametre zunanjih funkcij le berejo,
+ * se dvignejo na vrhnji nivo: vrednosti zunanjih spremenljivk in parametrov
+ * dobijo kot dodatne parametre, zato do njih ne dostopajo po verigi staticnih
+ * povezav.
+ *
+ * Spremenljivke stavka {@code let} po koncu stavka niso vec dosegljive, zato si
+ * spremenljivke zaporednih (sosednjih) stavkov {@code let} delijo mesta v
+ * klicnem zapisu. Izjema so spremenljivke, katerih naslov se ne uporabi le za
+ * neposreden dostop do pomnilnika (se shrani ali prenese kot argument), saj bi
+ * ga program lahko uporabil tudi po koncu stavka {@code let}.
  */
 public class Memory {
 
@@ -15,6 +32,12 @@ public class Memory {
 		throw new Report.InternalError();
 	}
 
+	/** Ali se gnezdene funkcije dvignejo na vrhnji nivo. */
+	public static boolean lifting = true;
+
+	/** Ali si spremenljivke sosednjih stavkov {@code let} delijo klicni zapis. */
+	public static boolean slotSharing = true;
+
 	/**
 	 * Abstraktno sintaksno drevo z dodanimi atributi izracuna pomnilniske
 	 * predstavitve.
@@ -26,7 +49,8 @@ public class Memory {
 	 * <li>({@link SemAn}) ali je dani izraz levi izraz;</li>
 	 * <li>({@link Memory}) klicni zapis funkcije;</li>
 	 * <li>({@link Memory}) dostop do parametra;</li>
-	 * <li>({@link Memory}) dostop do spremenljivke.</li>
+	 * <li>({@link Memory}) dostop do spremenljivke;</li>
+	 * <li>({@link Memory}) dostopi do zajetih vrednosti dvignjenih funkcij.</li>
 	 * </ol>
 	 */
 	public static class AttrAST extends SemAn.AttrAST {
@@ -40,6 +64,13 @@ public class Memory {
 		/** Atribut: dostop do spremenljivke. */
 		public final Map<AST.VarDef, Mem.Access> attrVarAccess;
 
+		/**
+		 * Atribut: dostopi do dodatnih parametrov dvignjene funkcije, ki hranijo
+		 * vrednosti zajetih spremenljivk in parametrov zunanjih funkcij (v vrstnem
+		 * redu parametrov).
+		 */
+		public final Map<AST.FunDef, Map<AST.Def, Mem.RelAccess>> attrLifted;
+
 		/**
 		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi izracuna
 		 * pomnilniske predstavitve.
@@ -49,13 +80,17 @@ public class Memory {
 		 * @param attrFrame     Attribut: klicni zapis funkcije.
 		 * @param attrParAccess Attribut: dostop do parametra.
 		 * @param attrVarAccess Attribut: dostop do spremenljivke.
+		 * @param attrLifted    Attribut: dostopi do zajetih vrednosti dvignjenih
+		 *                      funkcij.
 		 */
 		public AttrAST(final SemAn.AttrAST attrAST, final Map<AST.FunDef, Mem.Frame> attrFrame,
-				final Map<AST.ParDef, Mem.RelAccess> attrParAccess, final Map<AST.VarDef, Mem.Access> attrVarAccess) {
+				final Map<AST.ParDef, Mem.RelAccess> attrParAccess, final Map<AST.VarDef, Mem.Access> attrVarAccess,
+				final Map<AST.FunDef, Map<AST.Def, Mem.RelAccess>> attrLifted) {
 			super(attrAST);
 			this.attrFrame = attrFrame;
 			this.attrParAccess = attrParAccess;
 			this.attrVarAccess = attrVarAccess;
+			this.attrLifted = attrLifted;
 		}
 
 		/**
@@ -70,6 +105,7 @@ public class Memory {
 			this.attrFrame = attrAST.attrFrame;
 			this.attrParAccess = attrAST.attrParAccess;
 			this.attrVarAccess = attrAST.attrVarAccess;
+			this.attrLifted = attrAST.attrLifted;
 		}
 
 		@Override
@@ -83,10 +119,19 @@ public class Memory {
 					head.append(" depth=" + frame.depth);
 					head.append(" parsSize=" + frame.parsSize);
 					head.append(" varsSize=" + frame.varsSize);
+					head.append(" numRegs=" + frame.numRegs);
+					if (attrLifted.containsKey(funDef)) {
+						head.append(" lifted");
+						for (final Map.Entry<AST.Def, Mem.RelAccess> capture : attrLifted.get(funDef).entrySet())
+							head.append(" " + capture.getKey().name + "@" + capture.getValue().offset
+									+ (capture.getValue().reg == null ? "" : "/reg" + capture.getValue().reg));
+					}
 					break;
 				case final AST.ParDef parDef: {
 					Mem.RelAccess relAccess = attrParAccess.get(parDef);
 					head.append(" offset=" + relAccess.offset);
+					if (relAccess.reg != null)
+						head.append(" reg=" + relAccess.reg);
 					head.append(" size=" + relAccess.size);
 					head.append(" depth=" + relAccess.depth);
 					if (relAccess.inits != null)
@@ -103,7 +148,10 @@ public class Memory {
 									initsToString(absAccess.inits, head);
 								break;
 							case final Mem.RelAccess relAccess:
-								head.append(" offset=" + relAccess.offset);
+								if (relAccess.offset != null)
+									head.append(" offset=" + relAccess.offset);
+								if (relAccess.reg != null)
+									head.append(" reg=" + relAccess.reg);
 								head.append(" size=" + relAccess.size);
 								head.append(" depth=" + relAccess.depth);
 								if (relAccess.inits != null)
@@ -161,7 +209,8 @@ public class Memory {
 	 */
 	public static AttrAST organize(SemAn.AttrAST semanAttrAST) {
 		AttrAST attrAST = new AttrAST(semanAttrAST, new HashMap<AST.FunDef, Mem.Frame>(),
-				new HashMap<AST.ParDef, Mem.RelAccess>(), new HashMap<AST.VarDef, Mem.Access>());
+				new HashMap<AST.ParDef, Mem.RelAccess>(), new HashMap<AST.VarDef, Mem.Access>(),
+				new HashMap<AST.FunDef, Map<AST.Def, Mem.RelAccess>>());
 		(new MemoryOrganizer(attrAST)).organize();
 		return attrAST;
 	}
@@ -177,6 +226,31 @@ public class Memory {
 		 */
 		private final AttrAST attrAST;
 
+		/**
+		 * Spremenljivke in parametri, ki so dosegljivi tudi drugace kot neposredno
+		 * iz funkcije, v kateri so definirani (iz gnezdenih funkcij ali prek
+		 * naslova), in zato ostanejo v pomnilniku.
+		 */
+		private final Set<AST.Def> escaping = new HashSet<AST.Def>();
+
+		/**
+		 * Spremenljivke, katerih naslov se ne uporabi le za neposreden dostop do
+		 * pomnilnika in je zato lahko dosegljiv tudi po koncu stavka {@code let}.
+		 */
+		private final Set<AST.Def> outliving = new HashSet<AST.Def>();
+
+		/** Stevilo uporab posameznih parametrov. */
+		private final Map<AST.ParDef, Integer> parUses = new HashMap<AST.ParDef, Integer>();
+
+		/**
+		 * Spremenljivke in parametri zunanjih funkcij, katerih vrednosti dobijo
+		 * dvignjene funkcije kot dodatne parametre.
+		 */
+		private final Map<AST.FunDef, Set<AST.Def>> captures = new HashMap<AST.FunDef, Set<AST.Def>>();
+
+		/** Stevilo uporab zajetih vrednosti v dvignjenih funkcijah. */
+		private final Map<AST.FunDef, Map<AST.Def, Integer>> captureUses = new HashMap<AST.FunDef, Map<AST.Def, Integer>>();
+
 		/**
 		 * Ustvari nov organizator pomnilniske predstavitve.
 		 * 
@@ -194,10 +268,281 @@ public class Memory {
 		 *         predstavitve.
 		 */
 		public AttrAST organize() {
+			if (lifting) {
+				final Lifter lifter = new Lifter();
+				attrAST.ast.accept(lifter, null);
+				lifter.resolve();
+			}
+			final EscapeFinder escapeFinder = new EscapeFinder();
+			attrAST.ast.accept(escapeFinder, null);
+			escapeFinder.resolve();
 			attrAST.ast.accept(new MemoryVisitor(), null);
 			return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrFrame),
 					Collections.unmodifiableMap(attrAST.attrParAccess),
-					Collections.unmodifiableMap(attrAST.attrVarAccess));
+					Collections.unmodifiableMap(attrAST.attrVarAccess),
+					Collections.unmodifiableMap(attrAST.attrLifted));
+		}
+
+		/**
+		 * Obiskovalec, ki doloci gnezdene funkcije, ki se dvignejo na vrhnji nivo, in
+		 * vrednosti, ki jih te dobijo kot dodatne parametre.
+		 *
+		 * Dvigne se gnezdena funkcija brez gnezdenih funkcij, ki klice le funkcije na
+		 * vrhnjem nivoju in dvignjene funkcije in ki spremenljivke in parametre
+		 * zunanjih funkcij le bere. Tem se ne sme prirejati iz nobene druge funkcije
+		 * in njihov naslov se ne sme uporabiti, zato se med izvajanjem dvignjene
+		 * funkcije ne spremenijo in zadosca, da se ob klicu prenesejo njihove
+		 * vrednosti.
+		 */
+		private class Lifter implements AST.FullVisitor<Object, AST.FunDef> {
+
+			/** Funkcije, v katerih so definirani lokalne spremenljivke in parametri. */
+			private final Map<AST.Def, AST.FunDef> owners = new HashMap<AST.Def, AST.FunDef>();
+
+			/** Funkcije, v katerih so definirane gnezdene funkcije. */
+			private final Map<AST.FunDef, AST.FunDef> parents = new HashMap<AST.FunDef, AST.FunDef>();
+
+			/** Funkcije z gnezdenimi funkcijami. */
+			private final Set<AST.FunDef> enclosing = new HashSet<AST.FunDef>();
+
+			/** Spremenljivke in parametri, ki jih uporablja posamezna funkcija. */
+			private final Map<AST.FunDef, Set<AST.Def>> uses = new HashMap<AST.FunDef, Set<AST.Def>>();
+
+			/** Funkcije, ki jih klice posamezna funkcija. */
+			private final Map<AST.FunDef, Set<AST.FunDef>> callees = new HashMap<AST.FunDef, Set<AST.FunDef>>();
+
+			/** Spremenljivke in parametri, ki se jim prireja v posamezni funkciji. */
+			private final Map<AST.FunDef, Set<AST.Def>> assigned = new HashMap<AST.FunDef, Set<AST.Def>>();
+
+			/** Spremenljivke in parametri, katerih naslov se uporablja. */
+			private final Set<AST.Def> addressed = new HashSet<AST.Def>();
+
+			@SuppressWarnings({ "doclint:missing" })
+			public Lifter() {
+			}
+
+			/**
+			 * Doloci dvignjene funkcije in njihove zajete vrednosti.
+			 */
+			public void resolve() {
+				final Set<AST.FunDef> lifted = new LinkedHashSet<AST.FunDef>();
+				for (final AST.FunDef funDef : parents.keySet())
+					if (!enclosing.contains(funDef) && (funDef.stmts.size() > 0))
+						lifted.add(funDef);
+				boolean changed = true;
+				while (changed) {
+					changed = false;
+					for (final AST.FunDef funDef : new ArrayList<AST.FunDef>(lifted)) {
+						final Set<AST.Def> captured = new LinkedHashSet<AST.Def>();
+						boolean liftable = true;
+						for (final AST.Def def : uses.get(funDef))
+							if ((owners.get(def) != null) && (owners.get(def) != funDef)) {
+								captured.add(def);
+								liftable &= !addressed.contains(def) && !assignedOutside(def);
+							}
+						for (final AST.FunDef callee : callees.get(funDef))
+							if (lifted.contains(callee))
+								captured.addAll(captures.getOrDefault(callee, Set.of()));
+							else if (parents.containsKey(callee))
+								liftable = false;
+						if (!liftable) {
+							lifted.remove(funDef);
+							captures.remove(funDef);
+							changed = true;
+						} else if (!captured.equals(captures.get(funDef))) {
+							captures.put(funDef, captured);
+							changed = true;
+						}
+					}
+				}
+			}
+
+			/**
+			 * Ali se spremenljivki ali parametru prireja v kateri drugi funkciji kot v
+			 * tisti, v kateri je definiran.
+			 *
+			 * @param def Spremenljivka ali parameter.
+			 * @return Ali se spremenljivki ali parametru prireja v drugi funkciji.
+			 */
+			private boolean assignedOutside(final AST.Def def) {
+				for (final Map.Entry<AST.FunDef, Set<AST.Def>> entry : assigned.entrySet())
+					if ((entry.getKey() != owners.get(def)) && entry.getValue().contains(def))
+						return true;
+				return false;
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final AST.FunDef fun) {
+				if (fun != null) {
+					parents.put(funDef, fun);
+					enclosing.add(fun);
+				}
+				uses.put(funDef, new LinkedHashSet<AST.Def>());
+				callees.put(funDef, new LinkedHashSet<AST.FunDef>());
+				assigned.put(funDef, new HashSet<AST.Def>());
+				return AST.FullVisitor.super.visit(funDef, funDef);
+			}
+
+			@Override
+			public Object visit(final AST.ParDef parDef, final AST.FunDef fun) {
+				owners.put(parDef, fun);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.VarDef varDef, final AST.FunDef fun) {
+				if (fun != null)
+					owners.put(varDef, fun);
+				return AST.FullVisitor.super.visit(varDef, fun);
+			}
+
+			@Override
+			public Object visit(final AST.AssignStmt assignStmt, final AST.FunDef fun) {
+				if ((fun != null) && (assignStmt.dstExpr instanceof AST.VarExpr varExpr))
+					assigned.get(fun).add(attrAST.attrDef.get(varExpr));
+				return AST.FullVisitor.super.visit(assignStmt, fun);
+			}
+
+			@Override
+			public Object visit(final AST.VarExpr varExpr, final AST.FunDef fun) {
+				if (fun != null)
+					uses.get(fun).add(attrAST.attrDef.get(varExpr));
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final AST.FunDef fun) {
+				if ((fun != null) && (attrAST.attrDef.get(callExpr) instanceof AST.FunDef callee))
+					callees.get(fun).add(callee);
+				return AST.FullVisitor.super.visit(callExpr, fun);
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final AST.FunDef fun) {
+				if ((unExpr.oper == AST.UnExpr.Oper.MEMADDR) && (unExpr.expr instanceof AST.VarExpr varExpr))
+					addressed.add(attrAST.attrDef.get(varExpr));
+				return AST.FullVisitor.super.visit(unExpr, fun);
+			}
+
+		}
+
+		/**
+		 * Obiskovalec, ki poisce spremenljivke in parametre, dosegljive iz gnezdenih
+		 * funkcij ali prek naslova, in presteje uporabe parametrov.
+		 *
+		 * Vrednosti, ki jih dvignjena funkcija dobi kot dodatne parametre, se preberejo
+		 * ob klicu, zato se stejejo kot uporabe na mestu klica.
+		 */
+		private class EscapeFinder implements AST.FullVisitor<Object, Integer> {
+
+			/** Staticne globine lokalnih spremenljivk in parametrov. */
+			private final Map<AST.Def, Integer> depths = new HashMap<AST.Def, Integer>();
+
+			/** Uporabe spremenljivk in parametrov s staticno globino uporabe. */
+			private final List<Map.Entry<AST.Def, Integer>> uses = new ArrayList<Map.Entry<AST.Def, Integer>>();
+
+			/** Funkcija, katere telo se pregleduje. */
+			private AST.FunDef fun = null;
+
+			/** Naslovi spremenljivk, ki se uporabijo le za dostop do pomnilnika. */
+			private final Set<AST.UnExpr> dereferenced = new HashSet<AST.UnExpr>();
+
+			@SuppressWarnings({ "doclint:missing" })
+			public EscapeFinder() {
+			}
+
+			/**
+			 * Spremenljivke in parametre, uporabljene na drugi staticni globini, kot so
+			 * definirani, doda med dosegljive iz gnezdenih funkcij.
+			 */
+			public void resolve() {
+				for (final Map.Entry<AST.Def, Integer> use : uses)
+					if (depths.containsKey(use.getKey()) && !depths.get(use.getKey()).equals(use.getValue()))
+						escaping.add(use.getKey());
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Integer depth) {
+				final AST.FunDef outerFun = fun;
+				fun = funDef;
+				AST.FullVisitor.super.visit(funDef, depth == null ? 1 : depth + 1);
+				fun = outerFun;
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.ParDef parDef, final Integer depth) {
+				depths.put(parDef, depth);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.VarDef varDef, final Integer depth) {
+				if (depth != null)
+					depths.put(varDef, depth);
+				return AST.FullVisitor.super.visit(varDef, depth);
+			}
+
+			@Override
+			public Object visit(final AST.VarExpr varExpr, final Integer depth) {
+				use(attrAST.attrDef.get(varExpr), depth);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final Integer depth) {
+				for (final AST.Def def : captures.getOrDefault(attrAST.attrDef.get(callExpr), Set.of()))
+					use(def, depth);
+				return AST.FullVisitor.super.visit(callExpr, depth);
+			}
+
+			/**
+			 * Zabelezi uporabo spremenljivke ali parametra v trenutni funkciji.
+			 *
+			 * @param def   Spremenljivka ali parameter.
+			 * @param depth Staticna globina uporabe.
+			 */
+			private void use(final AST.Def def, final Integer depth) {
+				if (captures.getOrDefault(fun, Set.of()).contains(def)) {
+					captureUses.computeIfAbsent(fun, _ -> new HashMap<AST.Def, Integer>()).merge(def, 1, Integer::sum);
+					return;
+				}
+				uses.add(new AbstractMap.SimpleEntry<AST.Def, Integer>(def, depth));
+				if (def instanceof AST.ParDef parDef)
+					parUses.merge(parDef, 1, Integer::sum);
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final Integer depth) {
+				if ((unExpr.oper == AST.UnExpr.Oper.MEMADDR) && (unExpr.expr instanceof AST.VarExpr varExpr)) {
+					escaping.add(attrAST.attrDef.get(varExpr));
+					if (!dereferenced.contains(unExpr))
+						outliving.add(attrAST.attrDef.get(varExpr));
+				}
+				if (unExpr.oper == AST.UnExpr.Oper.VALUEAT)
+					dereference(unExpr.expr);
+				return AST.FullVisitor.super.visit(unExpr, depth);
+			}
+
+			/**
+			 * Zabelezi naslove spremenljivk, iz katerih se (z odmikom) izracuna naslov
+			 * dostopa do pomnilnika.
+			 *
+			 * @param addrExpr Izraz, ki izracuna naslov dostopa do pomnilnika.
+			 */
+			private void dereference(final AST.Expr addrExpr) {
+				switch (addrExpr) {
+					case AST.UnExpr unExpr when unExpr.oper == AST.UnExpr.Oper.MEMADDR -> dereferenced.add(unExpr);
+					case AST.BinExpr binExpr when (binExpr.oper == AST.BinExpr.Oper.ADD)
+							|| (binExpr.oper == AST.BinExpr.Oper.SUB) -> {
+						dereference(binExpr.fstExpr);
+						dereference(binExpr.sndExpr);
+					}
+					default -> {
+					}
+				}
+			}
+
 		}
 
 		/** Obiskovalec, ki izracuna pomnilnisko predstavitev. */
@@ -216,6 +561,8 @@ public class Memory {
 				final List<RelAccess> debugPars;
 				int nextParOffset = 4;
 				int nextVarOffset = -8;
+				int pinnedVarOffset = -8;
+				int nextReg = 0;
 
 				FrameHolder(int depth, int varsSize, List<RelAccess> debugVars, List<RelAccess> debugPars) {
 					this.depth = depth;
@@ -238,15 +585,31 @@ public class Memory {
 
 			@Override
 			public Object visit(final AST.FunDef funDef, final Object arg) {
-				int pDepth = (arg == null) ? 0 : ((FrameHolder) arg).depth;
+				// Dvignjena funkcija je na vrhnjem nivoju.
+				int pDepth = (arg == null) || captures.containsKey(funDef) ? 0 : ((FrameHolder) arg).depth;
 
 				FrameHolder holder = new FrameHolder(pDepth + 1, 8, new ArrayList<>(), new ArrayList<>());
 
 				funDef.pars.accept(this, holder);
+				if (captures.containsKey(funDef)) {
+					// zajete vrednosti kot dodatni parametri
+					Map<AST.Def, Mem.RelAccess> accesses = new LinkedHashMap<AST.Def, Mem.RelAccess>();
+					for (AST.Def def : captures.get(funDef)) {
+						Integer reg = captureUses.getOrDefault(funDef, Map.of()).getOrDefault(def, 0) >= 2
+								? holder.nextReg++
+								: null;
+						Mem.RelAccess relAccess = new Mem.RelAccess(holder.nextParOffset, holder.depth, reg, 4, null,
+								def.name);
+						holder.nextParOffset += 4;
+						holder.debugPars.add(relAccess);
+						accesses.put(def, relAccess);
+					}
+					attrAST.attrLifted.put(funDef, Collections.unmodifiableMap(accesses));
+				}
 				funDef.stmts.accept(this, holder);
 
-				Mem.Frame frame = new Mem.Frame(funDef.name, pDepth + 1, funDef.pars.size() * 4 + 4, holder.varsSize,
-						holder.debugPars,
+				Mem.Frame frame = new Mem.Frame(funDef.name, pDepth + 1, holder.nextParOffset, holder.varsSize,
+						holder.nextReg, holder.debugPars,
 						holder.debugVars);
 				attrAST.attrFrame.put(funDef, frame);
 
@@ -263,13 +626,20 @@ public class Memory {
 					if (fHolder == null) {
 						// globalna spremenljivka
 						access = new Mem.AbsAccess(varDef.name, holder.size * 4, holder.inits);
+					} else if ((initsHolder.size() == 1) && (holder.size == 1) && !escaping.contains(varDef)) {
+						// spremenljivka v virtualnem registru
+						access = new Mem.RelAccess(null, fHolder.depth, fHolder.nextReg++, 4, holder.inits,
+								varDef.name);
+						fHolder.debugVars.add((RelAccess) access);
 					} else {
 						int size = holder.size * 4;
 						int nextOffset = fHolder.nextVarOffset - size;
 						access = new Mem.RelAccess(nextOffset, fHolder.depth, size,
 								holder.inits, varDef.name);
 						fHolder.nextVarOffset = nextOffset;
-						fHolder.varsSize += size;
+						fHolder.varsSize = Math.max(fHolder.varsSize, -nextOffset);
+						if (outliving.contains(varDef))
+							fHolder.pinnedVarOffset = Math.min(fHolder.pinnedVarOffset, nextOffset);
 						fHolder.debugVars.add((RelAccess) access);
 					}
 					attrAST.attrVarAccess.put(varDef, access);
@@ -278,11 +648,26 @@ public class Memory {
 				return null;
 			}
 
+			@Override
+			public Object visit(final AST.LetStmt letStmt, final Object arg) {
+				if (!slotSharing || !(arg instanceof FrameHolder fHolder))
+					return AST.FullVisitor.super.visit(letStmt, arg);
+				// Mesta spremenljivk se po koncu stavka sprostijo (razen tistih, do katerih
+				// je program morda shranil naslov).
+				final int outerVarOffset = fHolder.nextVarOffset;
+				AST.FullVisitor.super.visit(letStmt, arg);
+				fHolder.nextVarOffset = Math.min(outerVarOffset, fHolder.pinnedVarOffset);
+				return null;
+			}
+
 			@Override
 			public Object visit(final AST.ParDef parDef, final Object arg) {
 				if (arg instanceof FrameHolder) {
 					var fHolder = ((FrameHolder) arg);
-					Mem.RelAccess relAccess = new Mem.RelAccess(fHolder.nextParOffset, fHolder.depth, 4, null,
+					Integer reg = (parUses.getOrDefault(parDef, 0) >= 2) && !escaping.contains(parDef)
+							? fHolder.nextReg++
+							: null;
+					Mem.RelAccess relAccess = new Mem.RelAccess(fHolder.nextParOffset, fHolder.depth, reg, 4, null,
 							parDef.name);
 					fHolder.nextParOffset += 4;
 					fHolder.debugPars.add(relAccess);
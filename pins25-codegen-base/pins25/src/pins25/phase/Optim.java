@@ -0,0 +1,545 @@
+package pins25.phase;
+
+import java.util.*;
+
+import pins25.common.*;
+
+/**
+ * Optimizacija abstraktnega sintaksnega drevesa.
+ *
+ * Abstraktno sintaksno drevo se ne spreminja, temvec se izracunajo atributi, ki
+ * jih pri generiranju kode uposteva {@link CodeGen}:
+ * <ol>
+ * <li>konstantni izrazi se izracunajo ze med prevajanjem;</li>
+ * <li>izrazi, ki so zaradi algebrajskih identitet ({@code x+0}, {@code x*1},
+ * ...) enaki enemu od svojih podizrazov, se nadomestijo s tem podizrazom;</li>
+ * <li>dvojna negacija v pogoju ({@code !!x}) se nadomesti z negiranim
+ * izrazom.</li>
+ * </ol>
+ * Stavki {@code if} in {@code while} s konstantnim pogojem se pri generiranju
+ * kode nadomestijo z ustrezno vejo oziroma zanko brez pogoja.
+ *
+ * Poleg tega se izracuna, katere funkcije, spremenljivke in konstantni nizi so
+ * dosegljivi iz funkcije {@code main}; ostali se ne prenesejo v kodo oziroma
+ * podatke programa.
+ */
+public class Optim {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Optim() {
+		throw new Report.InternalError();
+	}
+
+	/** Ali se izracunajo konstantni izrazi in uporabijo algebrajske identitete. */
+	public static boolean constFolding = true;
+
+	/** Ali se iz programa odstranijo nedosegljive funkcije in podatki. */
+	public static boolean deadDefs = true;
+
+	/**
+	 * Imena funkcij na najvisjem nivoju, iz katerih se izracuna dosegljivost (poleg
+	 * funkcije {@code main} na primer funkcija, katere cas izvajanja se meri).
+	 */
+	public static final Set<String> roots = new HashSet<String>(Set.of("main"));
+
+	/**
+	 * Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+	 *
+	 * Atributi:
+	 * <ol>
+	 * <li>({@link Abstr}) lokacija kode, ki pripada posameznemu vozliscu;</li>
+	 * <li>({@link SemAn}) definicija uporabljenega imena;</li>
+	 * <li>({@link SemAn}) ali je dani izraz levi izraz;</li>
+	 * <li>({@link Memory}) klicni zapis funkcije;</li>
+	 * <li>({@link Memory}) dostop do parametra;</li>
+	 * <li>({@link Memory}) dostop do spremenljivke;</li>
+	 * <li>({@link Memory}) dostopi do zajetih vrednosti dvignjenih funkcij;</li>
+	 * <li>({@link Optim}) vrednost konstantnega izraza;</li>
+	 * <li>({@link Optim}) podizraz, s katerim se nadomesti izraz;</li>
+	 * <li>({@link Optim}) dosegljive funkcije, spremenljivke in konstantni
+	 * nizi.</li>
+	 * </ol>
+	 */
+	public static class AttrAST extends Memory.AttrAST {
+
+		/** Atribut: vrednost konstantnega izraza. */
+		public final Map<AST.Expr, Integer> attrConst;
+
+		/** Atribut: podizraz, s katerim se nadomesti izraz. */
+		public final Map<AST.Expr, AST.Expr> attrSubst;
+
+		/** Atribut: dosegljive funkcije, spremenljivke in konstantni nizi. */
+		public final Set<AST.Node> attrLive;
+
+		/**
+		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 *
+		 * @param attrAST   Abstraktno sintaksno drevo z dodanimi atributi pomnilniske
+		 *                  predstavitve.
+		 * @param attrConst Attribut: vrednost konstantnega izraza.
+		 * @param attrSubst Attribut: podizraz, s katerim se nadomesti izraz.
+		 * @param attrLive  Attribut: dosegljive funkcije, spremenljivke in
+		 *                  konstantni nizi.
+		 */
+		public AttrAST(final Memory.AttrAST attrAST, final Map<AST.Expr, Integer> attrConst,
+				final Map<AST.Expr, AST.Expr> attrSubst, final Set<AST.Node> attrLive) {
+			super(attrAST);
+			this.attrConst = attrConst;
+			this.attrSubst = attrSubst;
+			this.attrLive = attrLive;
+		}
+
+		/**
+		 * Ustvari novo abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 */
+		public AttrAST(final AttrAST attrAST) {
+			super(attrAST);
+			this.attrConst = attrAST.attrConst;
+			this.attrSubst = attrAST.attrSubst;
+			this.attrLive = attrAST.attrLive;
+		}
+
+		@Override
+		public String head(final AST.Node node, final boolean highlighted) {
+			final StringBuffer head = new StringBuffer();
+			head.append(super.head(node, false));
+			head.append(highlighted ? "\033[31m" : "");
+			if (node instanceof AST.Expr expr) {
+				if (attrConst.get(expr) != null)
+					head.append(" const=" + attrConst.get(expr));
+				if (attrSubst.get(expr) != null)
+					head.append(" subst@" + attrLoc.get(attrSubst.get(expr)).location().toString());
+			}
+			if (((node instanceof AST.MainDef)
+					|| ((node instanceof AST.AtomExpr atomExpr) && (atomExpr.type == AST.AtomExpr.Type.STRCONST)))
+					&& !attrLive.contains(node))
+				head.append(" dead");
+			head.append(highlighted ? "\033[30m" : "");
+			return head.toString();
+		}
+
+	}
+
+	/**
+	 * Opravi optimizacijo abstraktnega sintaksnega drevesa.
+	 *
+	 * @param memoryAttrAST Abstraktno sintaksno drevo z dodanimi atributi izracuna
+	 *                      pomnilniske predstavitve.
+	 * @return Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+	 */
+	public static AttrAST optimize(final Memory.AttrAST memoryAttrAST) {
+		final AttrAST attrAST = new AttrAST(memoryAttrAST, new HashMap<AST.Expr, Integer>(),
+				new HashMap<AST.Expr, AST.Expr>(), new HashSet<AST.Node>());
+		if (constFolding)
+			(new ConstFolder(attrAST)).fold();
+		(new LiveAnalyzer(attrAST)).analyze();
+		return new AttrAST(attrAST, Collections.unmodifiableMap(attrAST.attrConst),
+				Collections.unmodifiableMap(attrAST.attrSubst), Collections.unmodifiableSet(attrAST.attrLive));
+	}
+
+	/**
+	 * Izracun konstantnih izrazov in uporaba algebrajskih identitet.
+	 */
+	private static class ConstFolder {
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije. */
+		private final AttrAST attrAST;
+
+		/**
+		 * Ustvari nov izracun konstantnih izrazov.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 */
+		public ConstFolder(final AttrAST attrAST) {
+			this.attrAST = attrAST;
+		}
+
+		/**
+		 * Sprozi izracun konstantnih izrazov.
+		 */
+		public void fold() {
+			attrAST.ast.accept(new Folder(), null);
+		}
+
+		/**
+		 * Vrne vrednost konstantnega izraza.
+		 *
+		 * @param expr Izraz.
+		 * @return Vrednost izraza ali {@code null}, ce izraz ni konstanten.
+		 */
+		private Integer value(final AST.Expr expr) {
+			final Integer value = attrAST.attrConst.get(expr);
+			if (value != null)
+				return value;
+			if (expr instanceof AST.AtomExpr atomExpr) {
+				final Report.Locatable loc = attrAST.attrLoc.get(atomExpr);
+				return switch (atomExpr.type) {
+					case INTCONST -> Memory.decodeIntConst(atomExpr, loc);
+					case CHRCONST -> Memory.decodeChrConst(atomExpr, loc);
+					default -> null;
+				};
+			}
+			return null;
+		}
+
+		/**
+		 * Ali je izracun izraza brez stranskih ucinkov in se ne more koncati z
+		 * napako (in ga je zato mogoce izpustiti).
+		 *
+		 * @param expr Izraz.
+		 * @return Ali je izracun izraza brez stranskih ucinkov.
+		 */
+		private boolean isPure(final AST.Expr expr) {
+			if (attrAST.attrConst.get(expr) != null)
+				return true;
+			return switch (expr) {
+				case AST.AtomExpr _ -> true;
+				case AST.VarExpr _ -> true;
+				case AST.UnExpr unExpr -> switch (unExpr.oper) {
+					case NOT, ADD, SUB -> isPure(unExpr.expr);
+					case MEMADDR -> true;
+					case VALUEAT -> false;
+				};
+				case AST.BinExpr binExpr -> {
+					if ((binExpr.oper == AST.BinExpr.Oper.DIV) || (binExpr.oper == AST.BinExpr.Oper.MOD)) {
+						final Integer divisor = value(binExpr.sndExpr);
+						if ((divisor == null) || (divisor == 0))
+							yield false;
+					}
+					yield isPure(binExpr.fstExpr) && isPure(binExpr.sndExpr);
+				}
+				default -> false;
+			};
+		}
+
+		/**
+		 * Poenostavi izraz, katerega vrednost se uporabi le kot pogoj: dvojna negacija
+		 * {@code !!x} se nadomesti z izrazom {@code x}.
+		 *
+		 * @param cond Izraz.
+		 */
+		private void condition(final AST.Expr cond) {
+			if ((attrAST.attrConst.get(cond) == null) && (cond instanceof AST.UnExpr outer)
+					&& (outer.oper == AST.UnExpr.Oper.NOT) && (outer.expr instanceof AST.UnExpr inner)
+					&& (inner.oper == AST.UnExpr.Oper.NOT)) {
+				attrAST.attrSubst.put(cond, inner.expr);
+				condition(inner.expr);
+			}
+		}
+
+		/** Obiskovalec, ki izracuna konstantne izraze. */
+		private class Folder implements AST.FullVisitor<Object, Object> {
+
+			@SuppressWarnings({ "doclint:missing" })
+			public Folder() {
+			}
+
+			@Override
+			public Object visit(final AST.IfStmt ifStmt, final Object arg) {
+				AST.FullVisitor.super.visit(ifStmt, arg);
+				condition(ifStmt.cond);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.WhileStmt whileStmt, final Object arg) {
+				AST.FullVisitor.super.visit(whileStmt, arg);
+				condition(whileStmt.cond);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final Object arg) {
+				unExpr.expr.accept(this, arg);
+				final Integer value = value(unExpr.expr);
+				if (value == null)
+					return null;
+				switch (unExpr.oper) {
+					case NOT -> attrAST.attrConst.put(unExpr, value == 0 ? 1 : 0);
+					case ADD -> attrAST.attrConst.put(unExpr, value);
+					case SUB -> attrAST.attrConst.put(unExpr, -value);
+					default -> {
+					}
+				}
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.BinExpr binExpr, final Object arg) {
+				binExpr.fstExpr.accept(this, arg);
+				binExpr.sndExpr.accept(this, arg);
+				final AST.Expr fstExpr = binExpr.fstExpr;
+				final AST.Expr sndExpr = binExpr.sndExpr;
+				final Integer fst = value(fstExpr);
+				final Integer snd = value(sndExpr);
+
+				switch (binExpr.oper) {
+					case AND, OR -> {
+						// Drugi operand se izracuna le, ce prvi ne doloca rezultata.
+						final boolean isAnd = binExpr.oper == AST.BinExpr.Oper.AND;
+						if ((fst != null) && ((fst != 0) != isAnd))
+							attrAST.attrConst.put(binExpr, isAnd ? 0 : 1);
+						else if ((fst != null) && (snd != null))
+							attrAST.attrConst.put(binExpr, snd != 0 ? 1 : 0);
+						else {
+							condition(fstExpr);
+							condition(sndExpr);
+						}
+						return null;
+					}
+					default -> {
+					}
+				}
+
+				if ((fst != null) && (snd != null)) {
+					final Integer value = switch (binExpr.oper) {
+						case EQU -> fst.intValue() == snd.intValue() ? 1 : 0;
+						case NEQ -> fst.intValue() != snd.intValue() ? 1 : 0;
+						case LTH -> fst < snd ? 1 : 0;
+						case GTH -> fst > snd ? 1 : 0;
+						case LEQ -> fst <= snd ? 1 : 0;
+						case GEQ -> fst >= snd ? 1 : 0;
+						case ADD -> fst + snd;
+						case SUB -> fst - snd;
+						case MUL -> fst * snd;
+						// Deljenje z 0 se mora zgoditi med izvajanjem.
+						case DIV -> snd == 0 ? null : fst / snd;
+						case MOD -> snd == 0 ? null : fst % snd;
+						default -> throw new Report.InternalError();
+					};
+					if (value != null)
+						attrAST.attrConst.put(binExpr, value);
+					return null;
+				}
+
+				switch (binExpr.oper) {
+					case ADD -> {
+						if (Objects.equals(snd, 0))
+							attrAST.attrSubst.put(binExpr, fstExpr);
+						else if (Objects.equals(fst, 0))
+							attrAST.attrSubst.put(binExpr, sndExpr);
+					}
+					case SUB -> {
+						if (Objects.equals(snd, 0))
+							attrAST.attrSubst.put(binExpr, fstExpr);
+					}
+					case MUL -> {
+						if (Objects.equals(snd, 1))
+							attrAST.attrSubst.put(binExpr, fstExpr);
+						else if (Objects.equals(fst, 1))
+							attrAST.attrSubst.put(binExpr, sndExpr);
+						else if ((Objects.equals(snd, 0) && isPure(fstExpr))
+								|| (Objects.equals(fst, 0) && isPure(sndExpr)))
+							attrAST.attrConst.put(binExpr, 0);
+					}
+					case DIV -> {
+						if (Objects.equals(snd, 1))
+							attrAST.attrSubst.put(binExpr, fstExpr);
+					}
+					case MOD -> {
+						if ((Objects.equals(snd, 1) || Objects.equals(snd, -1)) && isPure(fstExpr))
+							attrAST.attrConst.put(binExpr, 0);
+					}
+					default -> {
+					}
+				}
+				return null;
+			}
+
+		}
+
+	}
+
+	/**
+	 * Izracun dosegljivih funkcij, spremenljivk in konstantnih nizov.
+	 *
+	 * Funkcija je dosegljiva, ce je na seznamu {@link #roots} ali pa je klicana v
+	 * kodi dosegljive funkcije; spremenljivka je dosegljiva, ce je definirana ali
+	 * uporabljena v kodi dosegljive funkcije. Podizrazi, ki se zaradi
+	 * optimizacije ne prevedejo, se ne upostevajo.
+	 */
+	private static class LiveAnalyzer {
+
+		/** Abstraktno sintaksno drevo z dodanimi atributi optimizacije. */
+		private final AttrAST attrAST;
+
+		/** Dosegljive funkcije, katerih koda se se ni pregledala. */
+		private final Deque<AST.FunDef> worklist = new ArrayDeque<AST.FunDef>();
+
+		/**
+		 * Ustvari nov izracun dosegljivosti.
+		 *
+		 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi optimizacije.
+		 */
+		public LiveAnalyzer(final AttrAST attrAST) {
+			this.attrAST = attrAST;
+		}
+
+		/**
+		 * Sprozi izracun dosegljivosti.
+		 */
+		public void analyze() {
+			if (!deadDefs) {
+				attrAST.ast.accept(new Marker(), null);
+				return;
+			}
+			for (final AST.Node node : (AST.Nodes<?>) attrAST.ast)
+				if ((node instanceof AST.FunDef funDef) && roots.contains(funDef.name))
+					live(funDef);
+			while (!worklist.isEmpty())
+				worklist.removeFirst().accept(new Marker(), true);
+		}
+
+		/**
+		 * Oznaci definicijo kot dosegljivo.
+		 *
+		 * @param def Definicija.
+		 */
+		private void live(final AST.Def def) {
+			if (!attrAST.attrLive.add(def))
+				return;
+			switch (def) {
+				case AST.FunDef funDef -> worklist.addLast(funDef);
+				case AST.VarDef varDef -> varDef.inits.accept(new Marker(), null);
+				default -> {
+				}
+			}
+		}
+
+		/**
+		 * Obiskovalec, ki oznaci dosegljive definicije in konstantne nize.
+		 *
+		 * Ce izracun dosegljivosti ni vklopljen, so dosegljive vse definicije in vsi
+		 * konstantni nizi.
+		 */
+		private class Marker implements AST.FullVisitor<Object, Boolean> {
+
+			@SuppressWarnings({ "doclint:missing" })
+			public Marker() {
+			}
+
+			@Override
+			public Object visit(final AST.FunDef funDef, final Boolean body) {
+				if (!deadDefs) {
+					attrAST.attrLive.add(funDef);
+					return AST.FullVisitor.super.visit(funDef, body);
+				}
+				// Gnezdene funkcije se pregledajo le, ce so klicane.
+				if ((body != null) && body)
+					AST.FullVisitor.super.visit(funDef, null);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.VarDef varDef, final Boolean body) {
+				if (!deadDefs) {
+					attrAST.attrLive.add(varDef);
+					return AST.FullVisitor.super.visit(varDef, body);
+				}
+				// Lokalne spremenljivke dosegljive funkcije so dosegljive.
+				live(varDef);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.IfStmt ifStmt, final Boolean body) {
+				final Integer cond = deadDefs ? attrAST.attrConst.get(ifStmt.cond) : null;
+				if (cond == null)
+					return AST.FullVisitor.super.visit(ifStmt, body);
+				return (cond != 0 ? ifStmt.thenStmts : ifStmt.elseStmts).accept(this, body);
+			}
+
+			@Override
+			public Object visit(final AST.WhileStmt whileStmt, final Boolean body) {
+				final Integer cond = deadDefs ? attrAST.attrConst.get(whileStmt.cond) : null;
+				if (cond == null)
+					return AST.FullVisitor.super.visit(whileStmt, body);
+				return cond == 0 ? null : whileStmt.stmts.accept(this, body);
+			}
+
+			@Override
+			public Object visit(final AST.UnExpr unExpr, final Boolean body) {
+				if (deadDefs && (attrAST.attrConst.get(unExpr) != null))
+					return null;
+				return AST.FullVisitor.super.visit(unExpr, body);
+			}
+
+			@Override
+			public Object visit(final AST.BinExpr binExpr, final Boolean body) {
+				if (deadDefs && (attrAST.attrConst.get(binExpr) != null))
+					return null;
+				if (deadDefs && (attrAST.attrSubst.get(binExpr) != null))
+					return attrAST.attrSubst.get(binExpr).accept(this, body);
+				return AST.FullVisitor.super.visit(binExpr, body);
+			}
+
+			@Override
+			public Object visit(final AST.AtomExpr atomExpr, final Boolean body) {
+				if (atomExpr.type == AST.AtomExpr.Type.STRCONST)
+					attrAST.attrLive.add(atomExpr);
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.VarExpr varExpr, final Boolean body) {
+				if (deadDefs)
+					live(attrAST.attrDef.get(varExpr));
+				return null;
+			}
+
+			@Override
+			public Object visit(final AST.CallExpr callExpr, final Boolean body) {
+				if (deadDefs)
+					live(attrAST.attrDef.get(callExpr));
+				return AST.FullVisitor.super.visit(callExpr, body);
+			}
+
+		}
+
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon optimizacije abstraktnega sintaksnega drevesa kot samostojnega
+	 * programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (optimization):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(memoryAttrAST);
+
+				(new AST.Logger(optimAttrAST)).log();
+			}
+
+			// Upajmo, da kdaj pridemo to te tocke.
+			// A zavedajmo se sledecega:
+			// 1. Prevod je zaradi napak v programu lahko napacen :-o
+			// 2. Izvorni program se zdalec ni tisto, kar je programer hotel, da bi bil ;-)
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,517 @@
+package pins25.phase;
+
+import java.util.*;
+
+import pins25.common.*;
+
+/**
+ * Optimizacija kode skozi lino (angl. peephole optimization).
+ *
+ * Pravila iz tabele {@link #rules} se uporabljajo na seznamu ukazov, ki ga
+ * izracuna {@link CodeGen.CodeSegmentGenerator}, dokler se koda spreminja. Za
+ * vsako pravilo se steje, kolikokrat je bilo uporabljeno.
+ */
+public class Peephole {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Peephole() {
+		throw new Report.InternalError();
+	}
+
+	/** Ali se izvede optimizacija skozi lino. */
+	public static boolean enabled = true;
+
+	/** Imena pravil, ki se ne uporabljajo. */
+	public static final Set<String> disabledRules = new HashSet<String>();
+
+	/** Ali se opravi izpis statistike uporabe pravil. */
+	public static boolean debugStats = false;
+
+	/**
+	 * Rezultat uporabe pravila.
+	 *
+	 * @param length      Stevilo ukazov, ki se zamenjajo.
+	 * @param replacement Ukazi, s katerimi se zamenjajo.
+	 */
+	public record Match(int length, List<PDM.CodeInstr> replacement) {
+	}
+
+	/**
+	 * Pravilo optimizacije skozi lino.
+	 */
+	@FunctionalInterface
+	public interface Matcher {
+
+		/**
+		 * Poskusi uporabiti pravilo na danem mestu v kodi.
+		 *
+		 * @param optimizer Optimizator.
+		 * @param pos       Mesto v kodi.
+		 * @return Rezultat uporabe pravila ali {@code null}, ce pravila ni mogoce
+		 *         uporabiti.
+		 */
+		public Match match(Optimizer optimizer, int pos);
+
+	}
+
+	/**
+	 * Poimenovano pravilo optimizacije skozi lino.
+	 *
+	 * @param name    Ime pravila.
+	 * @param matcher Pravilo.
+	 */
+	public record Rule(String name, Matcher matcher) {
+	}
+
+	/** Tabela pravil optimizacije skozi lino. */
+	public static final List<Rule> rules = List.of(
+			// PUSH c; OPER.NOT|NEG => PUSH c'
+			new Rule("fold-unary", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.PUSH c) && (opt.instr(pos + 1) instanceof PDM.OPER o)) {
+					return switch (o.oper) {
+						case NOT -> opt.match(2, new PDM.PUSH(c.intc == 0 ? 1 : 0, opt.loc(pos)));
+						case NEG -> opt.match(2, new PDM.PUSH(-c.intc, opt.loc(pos)));
+						default -> null;
+					};
+				}
+				return null;
+			}),
+			// PUSH a; PUSH b; OPER.op => PUSH a op b
+			new Rule("fold-binary", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.PUSH a) && (opt.instr(pos + 1) instanceof PDM.PUSH b)
+						&& (opt.instr(pos + 2) instanceof PDM.OPER o)) {
+					final int fst = a.intc;
+					final int snd = b.intc;
+					final Integer value = switch (o.oper) {
+						case OR -> (fst != 0) || (snd != 0) ? 1 : 0;
+						case AND -> (fst != 0) && (snd != 0) ? 1 : 0;
+						case EQU -> fst == snd ? 1 : 0;
+						case NEQ -> fst != snd ? 1 : 0;
+						case GTH -> fst > snd ? 1 : 0;
+						case LTH -> fst < snd ? 1 : 0;
+						case GEQ -> fst >= snd ? 1 : 0;
+						case LEQ -> fst <= snd ? 1 : 0;
+						case ADD -> fst + snd;
+						case SUB -> fst - snd;
+						case MUL -> fst * snd;
+						case DIV -> snd == 0 ? null : fst / snd;
+						case MOD -> snd == 0 ? null : fst % snd;
+						default -> null;
+					};
+					return value == null ? null : opt.match(3, new PDM.PUSH(value, opt.loc(pos)));
+				}
+				return null;
+			}),
+			// PUSH 0; OPER.ADD|SUB => / in PUSH 1; OPER.MUL|DIV => /
+			new Rule("neutral-operand", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.PUSH c) && (opt.instr(pos + 1) instanceof PDM.OPER o)) {
+					if ((c.intc == 0) && ((o.oper == PDM.OPER.Oper.ADD) || (o.oper == PDM.OPER.Oper.SUB)))
+						return opt.match(2);
+					if ((c.intc == 1) && ((o.oper == PDM.OPER.Oper.MUL) || (o.oper == PDM.OPER.Oper.DIV)))
+						return opt.match(2);
+				}
+				return null;
+			}),
+			// OPER.NEG; OPER.NEG => /
+			new Rule("neg-neg", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.OPER o1) && (o1.oper == PDM.OPER.Oper.NEG)
+						&& (opt.instr(pos + 1) instanceof PDM.OPER o2) && (o2.oper == PDM.OPER.Oper.NEG))
+					return opt.match(2);
+				return null;
+			}),
+			// PUSH|NAME|REGN|DISP|VLOAD; PUSH n; POPN => PUSH n-4; POPN
+			new Rule("discard-pure", (opt, pos) -> {
+				final PDM.CodeInstr instr = opt.instr(pos);
+				if (((instr instanceof PDM.PUSH) || (instr instanceof PDM.NAME) || (instr instanceof PDM.REGN)
+						|| (instr instanceof PDM.DISP) || (instr instanceof PDM.VLOAD))
+						&& (opt.instr(pos + 1) instanceof PDM.PUSH n) && (n.intc > 0)
+						&& (opt.instr(pos + 2) instanceof PDM.POPN))
+					return n.intc <= 4 ? opt.match(3)
+							: opt.match(3, new PDM.PUSH(n.intc - 4, opt.loc(pos + 1)),
+									new PDM.POPN(opt.loc(pos + 2)));
+				return null;
+			}),
+			// PUSH 0; POPN => /
+			new Rule("popn-zero", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.PUSH n) && (n.intc == 0) && (opt.instr(pos + 1) instanceof PDM.POPN))
+					return opt.match(2);
+				return null;
+			}),
+			// PUSH a; POPN; PUSH b; POPN => PUSH a+b; POPN
+			new Rule("merge-popn", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.PUSH a) && (a.intc > 0) && (opt.instr(pos + 1) instanceof PDM.POPN)
+						&& (opt.instr(pos + 2) instanceof PDM.PUSH b) && (b.intc > 0)
+						&& (opt.instr(pos + 3) instanceof PDM.POPN)) {
+					final int size = 4 * ((a.intc + 3) / 4 + (b.intc + 3) / 4);
+					return opt.match(4, new PDM.PUSH(size, opt.loc(pos)), new PDM.POPN(opt.loc(pos + 1)));
+				}
+				return null;
+			}),
+			// OPER.NOT; NAME t; NAME e; CJMP => NAME e; NAME t; CJMP
+			new Rule("not-cjmp", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.OPER o) && (o.oper == PDM.OPER.Oper.NOT)
+						&& (opt.instr(pos + 1) instanceof PDM.NAME t) && (opt.instr(pos + 2) instanceof PDM.NAME e)
+						&& (opt.instr(pos + 3) instanceof PDM.CJMP))
+					return opt.match(4, new PDM.NAME(e.label, opt.loc(pos + 2)), new PDM.NAME(t.label, opt.loc(pos + 1)),
+							new PDM.CJMP(opt.loc(pos + 3)));
+				return null;
+			}),
+			// PUSH c; NAME t; NAME e; CJMP => NAME t|e; UJMP
+			new Rule("const-cjmp", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.PUSH c) && (opt.instr(pos + 1) instanceof PDM.NAME t)
+						&& (opt.instr(pos + 2) instanceof PDM.NAME e) && (opt.instr(pos + 3) instanceof PDM.CJMP))
+					return opt.match(4, new PDM.NAME(c.intc != 0 ? t.label : e.label, opt.loc(pos + 3)),
+							new PDM.UJMP(opt.loc(pos + 3)));
+				return null;
+			}),
+			// NAME l; NAME l; CJMP => PUSH 4; POPN; NAME l; UJMP
+			new Rule("same-target-cjmp", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.NAME t) && (opt.instr(pos + 1) instanceof PDM.NAME e)
+						&& (t.label == e.label) && (opt.instr(pos + 2) instanceof PDM.CJMP))
+					return opt.match(3, new PDM.PUSH(4, opt.loc(pos + 2)), new PDM.POPN(opt.loc(pos + 2)),
+							new PDM.NAME(t.label, opt.loc(pos)), new PDM.UJMP(opt.loc(pos + 2)));
+				return null;
+			}),
+			// NAME l; UJMP; LABEL ...; LABEL l => LABEL ...; LABEL l
+			new Rule("jump-to-next", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.NAME l) && (opt.instr(pos + 1) instanceof PDM.UJMP)) {
+					for (int next = pos + 2; opt.instr(next) instanceof PDM.LABEL label; next++)
+						if (label.label == l.label)
+							return opt.match(2);
+				}
+				return null;
+			}),
+			// NAME l; UJMP|CJMP in l: NAME m; UJMP => NAME m; UJMP|CJMP
+			new Rule("jump-threading", (opt, pos) -> {
+				if (!(opt.instr(pos) instanceof PDM.NAME l) || !opt.isJumpTarget(pos))
+					return null;
+				final int target = opt.finalTarget(l.label);
+				if (target == l.label)
+					return null;
+				return opt.match(1, new PDM.NAME(target, opt.loc(pos)));
+			}),
+			// UJMP|RETN|TCALL; ukaz => UJMP|RETN|TCALL
+			new Rule("unreachable", (opt, pos) -> {
+				final PDM.CodeInstr instr = opt.instr(pos);
+				if (((instr instanceof PDM.UJMP) || (instr instanceof PDM.RETN) || (instr instanceof PDM.TCALL))
+						&& (opt.instr(pos + 1) != null)
+						&& !(opt.instr(pos + 1) instanceof PDM.LABEL))
+					return opt.match(2, instr);
+				return null;
+			}),
+			// LABEL l, ki ni nikjer uporabljena => /
+			new Rule("dead-label", (opt, pos) -> {
+				if ((opt.instr(pos) instanceof PDM.LABEL l) && Labels.generated(l.label) && !opt.isReferenced(l.label))
+					return opt.match(1);
+				return null;
+			}),
+			// PUSH 1; b; OPER.AND => b in PUSH 0; b; OPER.OR => b, ce je b logicna vrednost
+			new Rule("bool-normalise", (opt, pos) -> {
+				if (!(opt.instr(pos) instanceof PDM.PUSH c) || ((c.intc != 0) && (c.intc != 1)))
+					return null;
+				final PDM.OPER.Oper normalise = c.intc == 1 ? PDM.OPER.Oper.AND : PDM.OPER.Oper.OR;
+				final int end = opt.valueEnd(pos + 1, normalise);
+				if ((end < 0) || !opt.isBoolean(end - 1))
+					return null;
+				final List<PDM.CodeInstr> value = new ArrayList<PDM.CodeInstr>(opt.code.subList(pos + 1, end));
+				return new Match(end - pos + 1, value);
+			}));
+
+	/**
+	 * Optimizator skozi lino.
+	 */
+	public static class Optimizer {
+
+		/** Koda, ki se optimizira. */
+		private final List<PDM.CodeInstr> code;
+
+		/** Stevilo uporab posameznih pravil. */
+		private final SortedMap<String, Integer> hits = new TreeMap<String, Integer>();
+
+		/** Mesta oznak v kodi (ali {@code null}, ce jih je treba izracunati). */
+		private HashMap<Integer, Integer> labels = null;
+
+		/** Stevilo uporab oznak v kodi (ali {@code null}, ce jih je treba izracunati). */
+		private HashMap<Integer, Integer> references = null;
+
+		/**
+		 * Ustvari nov optimizator skozi lino.
+		 *
+		 * @param code Koda, ki se optimizira.
+		 */
+		public Optimizer(final List<PDM.CodeInstr> code) {
+			this.code = new ArrayList<PDM.CodeInstr>(code);
+		}
+
+		/**
+		 * Izvede optimizacijo skozi lino.
+		 *
+		 * @return Optimizirana koda.
+		 */
+		public List<PDM.CodeInstr> optimize() {
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				int pos = 0;
+				while (pos < code.size()) {
+					boolean applied = false;
+					for (final Rule rule : rules) {
+						if (disabledRules.contains(rule.name()))
+							continue;
+						final Match match = rule.matcher().match(this, pos);
+						if (match == null)
+							continue;
+						final List<PDM.CodeInstr> window = code.subList(pos, pos + match.length());
+						window.clear();
+						window.addAll(match.replacement());
+						labels = null;
+						references = null;
+						hits.merge(rule.name(), 1, Integer::sum);
+						applied = true;
+						changed = true;
+						break;
+					}
+					// Po spremembi se pravila preverijo tudi na nekaj predhodnih ukazih.
+					pos = applied ? Math.max(0, pos - 3) : pos + 1;
+				}
+			}
+			return Collections.unmodifiableList(code);
+		}
+
+		/**
+		 * Vrne stevilo uporab posameznih pravil.
+		 *
+		 * @return Stevilo uporab posameznih pravil.
+		 */
+		public SortedMap<String, Integer> hits() {
+			return Collections.unmodifiableSortedMap(hits);
+		}
+
+		/**
+		 * Vrne ukaz na danem mestu.
+		 *
+		 * @param pos Mesto v kodi.
+		 * @return Ukaz ali {@code null}, ce je mesto izven kode.
+		 */
+		public PDM.CodeInstr instr(final int pos) {
+			return (pos >= 0) && (pos < code.size()) ? code.get(pos) : null;
+		}
+
+		/**
+		 * Vrne lokacijo ukaza na danem mestu.
+		 *
+		 * @param pos Mesto v kodi.
+		 * @return Lokacija ukaza.
+		 */
+		public Report.Location loc(final int pos) {
+			return ((PDM.INSTR) code.get(pos)).debugLocation;
+		}
+
+		/**
+		 * Vrne rezultat uporabe pravila.
+		 *
+		 * @param length      Stevilo ukazov, ki se zamenjajo.
+		 * @param replacement Ukazi, s katerimi se zamenjajo.
+		 * @return Rezultat uporabe pravila.
+		 */
+		public Match match(final int length, final PDM.CodeInstr... replacement) {
+			return new Match(length, List.of(replacement));
+		}
+
+		/**
+		 * Izracuna mesta oznak in stevilo njihovih uporab.
+		 */
+		private void scan() {
+			if (labels != null)
+				return;
+			labels = new HashMap<Integer, Integer>();
+			references = new HashMap<Integer, Integer>();
+			for (int pos = 0; pos < code.size(); pos++) {
+				if (code.get(pos) instanceof PDM.LABEL label)
+					labels.put(label.label, pos);
+				if (code.get(pos) instanceof PDM.NAME name)
+					references.merge(name.label, 1, Integer::sum);
+			}
+		}
+
+		/**
+		 * Ali je oznaka kjerkoli uporabljena.
+		 *
+		 * @param label Oznaka.
+		 * @return Ali je oznaka uporabljena.
+		 */
+		public boolean isReferenced(final int label) {
+			scan();
+			return references.containsKey(label);
+		}
+
+		/**
+		 * Ali je ukaz {@code NAME} na danem mestu cilj skoka.
+		 *
+		 * @param pos Mesto v kodi.
+		 * @return Ali je ukaz cilj skoka.
+		 */
+		public boolean isJumpTarget(final int pos) {
+			if (instr(pos + 1) instanceof PDM.UJMP)
+				return true;
+			if ((instr(pos + 1) instanceof PDM.CJMP) && (instr(pos - 1) instanceof PDM.NAME))
+				return true;
+			return (instr(pos + 1) instanceof PDM.NAME) && (instr(pos + 2) instanceof PDM.CJMP);
+		}
+
+		/**
+		 * Poisce koncni cilj zaporedja brezpogojnih skokov.
+		 *
+		 * @param label Oznaka.
+		 * @return Oznaka koncnega cilja.
+		 */
+		public int finalTarget(final int label) {
+			scan();
+			final Set<Integer> visited = new HashSet<Integer>();
+			int target = label;
+			while (visited.add(target)) {
+				final Integer labelPos = labels.get(target);
+				if (labelPos == null)
+					return target;
+				int pos = labelPos;
+				while (instr(pos) instanceof PDM.LABEL)
+					pos++;
+				if (!(instr(pos) instanceof PDM.NAME next) || !(instr(pos + 1) instanceof PDM.UJMP))
+					return target;
+				target = next.label;
+			}
+			// Neskoncna zanka skokov.
+			return label;
+		}
+
+		/**
+		 * Poisce binarno operacijo, ki kot drugi operand uporabi vrednost, ki jo
+		 * izracuna zaporedje ukazov brez skokov.
+		 *
+		 * @param pos  Zacetek zaporedja ukazov.
+		 * @param oper Binarna operacija.
+		 * @return Mesto binarne operacije ali {@code -1}, ce je ni.
+		 */
+		public int valueEnd(int pos, final PDM.OPER.Oper oper) {
+			int depth = 0;
+			while (true) {
+				final PDM.CodeInstr instr = instr(pos);
+				if ((depth == 1) && (instr instanceof PDM.OPER o) && (o.oper == oper))
+					return pos;
+				depth += switch (instr) {
+					case PDM.PUSH _, PDM.NAME _, PDM.REGN _, PDM.DISP _, PDM.VLOAD _ -> 1;
+					case PDM.LOAD _ -> 0;
+					case PDM.VSAVE _ -> -1;
+					case PDM.SAVE _ -> -2;
+					case PDM.OPER o -> (o.oper == PDM.OPER.Oper.NOT) || (o.oper == PDM.OPER.Oper.NEG) ? 0 : -1;
+					case null, default -> Integer.MIN_VALUE;
+				};
+				if (depth <= 0)
+					return -1;
+				pos++;
+			}
+		}
+
+		/**
+		 * Ali ukaz na danem mestu izracuna logicno vrednost ({@code 0} ali {@code 1}).
+		 *
+		 * @param pos Mesto v kodi.
+		 * @return Ali ukaz izracuna logicno vrednost.
+		 */
+		public boolean isBoolean(final int pos) {
+			return switch (instr(pos)) {
+				case PDM.OPER o -> switch (o.oper) {
+					case NEG, ADD, SUB, MUL, DIV, MOD -> false;
+					default -> true;
+				};
+				case PDM.PUSH c -> (c.intc == 0) || (c.intc == 1);
+				case null, default -> false;
+			};
+		}
+
+	}
+
+	/**
+	 * Opravi optimizacijo skozi lino.
+	 *
+	 * @param codeSegment Seznam ukazov, ki predstavljajo kodo programa.
+	 * @return Optimiziran seznam ukazov, ki predstavljajo kodo programa.
+	 */
+	public static List<PDM.CodeInstr> optimize(final List<PDM.CodeInstr> codeSegment) {
+		if (!enabled)
+			return codeSegment;
+		final Optimizer optimizer = new Optimizer(codeSegment);
+		final List<PDM.CodeInstr> code = optimizer.optimize();
+		if (debugStats) {
+			System.out.println("\n\033[1mPEEPHOLE RULES:\033[0m");
+			for (final Map.Entry<String, Integer> hit : optimizer.hits().entrySet())
+				System.out.printf("%-20s %d\n", hit.getKey(), hit.getValue());
+		}
+		return code;
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon optimizacije skozi lino kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (peephole optimization):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(memoryAttrAST);
+				// vstavljanje funkcij:
+				final Inline.AttrAST inlineAttrAST = Inline.inline(optimAttrAST);
+				// optimizacija zank:
+				final Loops.AttrAST loopsAttrAST = Loops.optimize(inlineAttrAST);
+				// generiranje kode:
+				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(loopsAttrAST);
+				// optimizacija v vmesni predstavitvi SSA:
+				final CodeGen.AttrAST ssaAttrAST = Ssa.optimize(codegenAttrAST);
+
+				final List<PDM.CodeInstr> codeSegment = (new CodeGen.CodeSegmentGenerator(ssaAttrAST))
+						.codeSegment();
+				// optimizacija skozi lino:
+				debugStats = true;
+				final List<PDM.CodeInstr> optCodeSegment = optimize(codeSegment);
+				{
+					int addr = 0;
+					System.out.println("\n\033[1mCODE SEGMENT:\033[0m");
+					for (final PDM.CodeInstr instr : optCodeSegment) {
+						System.out.printf("%8d [%s] %s\n", addr, instr.size(),
+								(instr instanceof PDM.LABEL ? "" : "  ") + instr.toString());
+						addr += instr.size();
+					}
+					System.out.printf("\n%d -> %d instructions\n", codeSegment.stream().filter(instr -> !(instr instanceof PDM.LABEL)).count(),
+							optCodeSegment.stream().filter(instr -> !(instr instanceof PDM.LABEL)).count());
+				}
+			}
+
+			// Upajmo, da kdaj pridemo to te tocke.
+			// A zavedajmo se sledecega:
+			// 1. Prevod je zaradi napak v programu lahko napacen :-o
+			// 2. Izvorni program se zdalec ni tisto, kar je programer hotel, da bi bil ;-)
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
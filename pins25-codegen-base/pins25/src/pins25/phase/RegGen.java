@@ -0,0 +1,769 @@
+package pins25.phase;
+
+import java.util.*;
+
+import pins25.common.*;
+import pins25.common.IR.*;
+
+/**
+ * Generiranje kode za registrski stroj.
+ *
+ * Koda skladovnega stroja se razdeli na inicializacijo programa in funkcije,
+ * vsak del pa se prevede v vmesno predstavitev {@link IR} (in optimizira s
+ * prehodi iz {@link Ssa}). Vrednosti vmesne predstavitve se z linearnim
+ * dodeljevanjem registrov (Poletto in Sarkar, 1999) razporedijo v
+ * {@link #numRegs} registrov, vrednosti, za katere registrov zmanjka, pa se
+ * hranijo v klicnem zapisu pod lokalnimi spremenljivkami. Konstante, naslovi
+ * label in naslovi v klicnem zapisu se, kjer je to mogoce, vgradijo v ukaze,
+ * sicer pa se izracunajo tik pred uporabo.
+ */
+public class RegGen {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public RegGen() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Stevilo registrov, v katere se razporedijo vrednosti (registri z vecjimi
+	 * stevilkami se uporabljajo le za prenos vrednosti iz klicnega zapisa).
+	 */
+	public static int numRegs = 16;
+
+	/** Ime oznake zacetka programa (inicializacije programa). */
+	public static final String START = "program:start";
+
+	/** Stevila parametrov 'sistemskih' funkcij (glej {@link Machine}). */
+	private static final Map<String, Integer> SYSCALL_PARS = Map.ofEntries(Map.entry("exit", 1),
+			Map.entry("getint", 0), Map.entry("putint", 1), Map.entry("getstr", 1), Map.entry("putstr", 1),
+			Map.entry("new", 1), Map.entry("del", 1), Map.entry("clock", 0), Map.entry("instrs", 0),
+			Map.entry("getbyte", 1), Map.entry("putbyte", 2));
+
+	/**
+	 * Prevede program za skladovni stroj v program za registrski stroj.
+	 *
+	 * @param codeSegment Seznam ukazov, ki predstavljajo kodo programa.
+	 * @param dataSegment Seznam ukazov, ki predstavljajo podatke programa.
+	 * @return Seznam ukazov registrskega stroja (prvi je oznaka {@link #START}).
+	 */
+	public static List<RM.INSTR> generate(final List<PDM.CodeInstr> codeSegment,
+			final List<PDM.DataInstr> dataSegment) {
+		final Map<Integer, List<Integer>> data = Ssa.data(dataSegment);
+
+		// Funkcije so oznake, ki se klicejo.
+		final Set<Integer> labels = new HashSet<Integer>();
+		for (final PDM.CodeInstr instr : codeSegment)
+			if (instr instanceof PDM.LABEL label)
+				labels.add(label.label);
+		final Set<Integer> funLabels = new HashSet<Integer>();
+		for (int i = 0; i + 1 < codeSegment.size(); i++)
+			if ((codeSegment.get(i) instanceof PDM.NAME name) && labels.contains(name.label)
+					&& ((codeSegment.get(i + 1) instanceof PDM.CALL) || (codeSegment.get(i + 1) instanceof PDM.TCALL)))
+				funLabels.add(name.label);
+
+		// Razdelitev kode na inicializacijo programa in funkcije.
+		final int start = Labels.label(START);
+		final List<List<PDM.CodeInstr>> parts = new ArrayList<List<PDM.CodeInstr>>();
+		parts.add(new ArrayList<PDM.CodeInstr>(List.of(new PDM.LABEL(start, null))));
+		for (final PDM.CodeInstr instr : codeSegment) {
+			if ((instr instanceof PDM.LABEL label) && funLabels.contains(label.label))
+				parts.add(new ArrayList<PDM.CodeInstr>());
+			parts.getLast().add(instr);
+		}
+		parts.getFirst().addAll(List.of(new PDM.PUSH(0, null), new PDM.PUSH(0, null), new PDM.RETN(null, null)));
+
+		// Klicni zapisi funkcij.
+		final Map<Integer, Mem.Frame> frames = new HashMap<Integer, Mem.Frame>();
+		frames.put(start, new Mem.Frame(START, 0, 0, 0, List.of(), List.of()));
+		for (final List<PDM.CodeInstr> part : parts.subList(1, parts.size()))
+			for (final PDM.CodeInstr instr : part)
+				if ((instr instanceof PDM.RETN retn) && (retn.debugFrame != null)) {
+					frames.put(((PDM.LABEL) part.getFirst()).label, retn.debugFrame);
+					break;
+				}
+		// Funkcije, ki se nikoli ne vrnejo: klicni zapis pri klicu.
+		for (int i = 0; i + 1 < codeSegment.size(); i++)
+			if (codeSegment.get(i) instanceof PDM.NAME name) {
+				if ((codeSegment.get(i + 1) instanceof PDM.CALL call) && (call.debugFrame != null))
+					frames.putIfAbsent(name.label, call.debugFrame);
+				if ((codeSegment.get(i + 1) instanceof PDM.TCALL call) && (call.debugFrame != null))
+					frames.putIfAbsent(name.label, call.debugFrame);
+			}
+		for (final Map.Entry<String, Integer> syscall : SYSCALL_PARS.entrySet())
+			frames.putIfAbsent(Labels.label(syscall.getKey()), new Mem.Frame(syscall.getKey(), 1, 4 * syscall.getValue() + 4, 0,
+					List.of(), List.of()));
+
+		final List<RM.INSTR> code = new ArrayList<RM.INSTR>();
+		for (final List<PDM.CodeInstr> part : parts) {
+			final int label = ((PDM.LABEL) part.getFirst()).label;
+			if (!frames.containsKey(label))
+				throw new Report.Error("Cannot determine the frame of function '" + Labels.name(label) + "'.");
+			final IR.Function fun = Ssa.construct(calls(part, frames), frames.get(label), data);
+			if (fun == null)
+				throw new Report.Error(
+						"Cannot translate function '" + Labels.name(label) + "' for the register machine.");
+			code.addAll(new Lowering(fun).lower());
+		}
+		return Collections.unmodifiableList(code);
+	}
+
+	/**
+	 * Klicem brez klicnega zapisa klicane funkcije doloci klicni zapis.
+	 *
+	 * @param code   Koda.
+	 * @param frames Klicni zapisi funkcij.
+	 * @return Koda z dolocenimi klicnimi zapisi klicanih funkcij.
+	 */
+	private static List<PDM.CodeInstr> calls(final List<PDM.CodeInstr> code, final Map<Integer, Mem.Frame> frames) {
+		final List<PDM.CodeInstr> newCode = new ArrayList<PDM.CodeInstr>(code);
+		for (int i = 1; i < newCode.size(); i++) {
+			if (!((newCode.get(i) instanceof PDM.CALL call) && (call.debugFrame == null)))
+				continue;
+			if (!((newCode.get(i - 1) instanceof PDM.NAME name) && frames.containsKey(name.label)))
+				throw new Report.Error("Cannot determine the callee at " + call.debugLocation + ".");
+			newCode.set(i, new PDM.CALL(call.depth, frames.get(name.label), call.debugLocation));
+		}
+		return newCode;
+	}
+
+	/**
+	 * Ali je dvomestno operacijo mogoce izvesti z zamenjanima operandoma.
+	 *
+	 * @param oper Operacija.
+	 * @return Operacija, ki z zamenjanima operandoma izracuna isto, ali
+	 *         {@code null}, ce je ni.
+	 */
+	private static PDM.OPER.Oper swapped(final PDM.OPER.Oper oper) {
+		return switch (oper) {
+			case ADD, MUL, AND, OR, EQU, NEQ -> oper;
+			case LTH -> PDM.OPER.Oper.GTH;
+			case GTH -> PDM.OPER.Oper.LTH;
+			case LEQ -> PDM.OPER.Oper.GEQ;
+			case GEQ -> PDM.OPER.Oper.LEQ;
+			default -> null;
+		};
+	}
+
+	/**
+	 * Ali je vrednost konstanta, naslov labele, naslov v klicnem zapisu ali
+	 * kazalec na klicni zapis iz prikaza (torej vrednost, ki jo je mogoce
+	 * izracunati kjerkoli).
+	 *
+	 * @param value Vrednost.
+	 * @return Ali je vrednost konstanta, naslov labele, naslov v klicnem zapisu
+	 *         ali kazalec na klicni zapis iz prikaza.
+	 */
+	private static boolean isImmediate(final Instr value) {
+		return (value instanceof Const) || (value instanceof Name) || (value instanceof Slot)
+				|| (value instanceof Display);
+	}
+
+	/**
+	 * Ali ukaz potrebuje operand v registru (ali pa je operand vgrajen v ukaz).
+	 *
+	 * @param instr Ukaz.
+	 * @param i     Mesto operanda.
+	 * @return Ali ukaz potrebuje operand v registru.
+	 */
+	private static boolean inReg(final Instr instr, final int i) {
+		final Instr op = instr.ops.get(i);
+		return switch (instr) {
+			case Phi _ -> !isImmediate(op);
+			case Bin bin -> !(((i == 1) && (op instanceof Const))
+					|| ((i == 0) && (op instanceof Const) && !(bin.ops.get(1) instanceof Const)
+							&& (swapped(bin.oper) != null)));
+			case Load _ -> !(op instanceof Slot);
+			case Store _ -> !((i == 1) && (op instanceof Slot));
+			case Call _ -> !((i == instr.ops.size() - 1) && (op instanceof Name));
+			default -> true;
+		};
+	}
+
+	/**
+	 * Prevajanje funkcije v vmesni predstavitvi v kodo registrskega stroja.
+	 *
+	 * Lokacija vrednosti je register (nenegativna stevilka) ali beseda v klicnem
+	 * zapisu (negativen odmik).
+	 */
+	private static class Lowering {
+
+		/** Funkcija. */
+		private final IR.Function fun;
+
+		/** Vrednosti, ki se hranijo v registrih ali v klicnem zapisu. */
+		private final Set<Instr> values = new HashSet<Instr>();
+
+		/** Zacetna mesta blokov. */
+		private final Map<Block, Integer> from = new HashMap<Block, Integer>();
+
+		/** Koncna mesta blokov. */
+		private final Map<Block, Integer> to = new HashMap<Block, Integer>();
+
+		/** Mesta ukazov. */
+		private final Map<Instr, Integer> pos = new HashMap<Instr, Integer>();
+
+		/** Mesta kopiranj za funkcije phi na koncu blokov. */
+		private final Map<Block, Integer> copyPos = new HashMap<Block, Integer>();
+
+		/** Zacetki zivljenjskih intervalov vrednosti. */
+		private final Map<Instr, Integer> start = new HashMap<Instr, Integer>();
+
+		/** Konci zivljenjskih intervalov vrednosti. */
+		private final Map<Instr, Integer> end = new HashMap<Instr, Integer>();
+
+		/** Lokacije vrednosti. */
+		private final Map<Instr, Integer> locs = new HashMap<Instr, Integer>();
+
+		/** Velikost dela klicnega zapisa pod kazalcem na klicni zapis. */
+		private int frameSize;
+
+		/** Koda registrskega stroja. */
+		private final List<RM.INSTR> code = new ArrayList<RM.INSTR>();
+
+		/**
+		 * Ustvari novo prevajanje funkcije.
+		 *
+		 * @param fun Funkcija.
+		 */
+		public Lowering(final IR.Function fun) {
+			this.fun = fun;
+			this.frameSize = fun.frameSize;
+		}
+
+		/**
+		 * Prevede funkcijo.
+		 *
+		 * @return Koda registrskega stroja.
+		 */
+		public List<RM.INSTR> lower() {
+			splitEdges();
+			rematerialize();
+			number();
+			intervals();
+			allocate();
+			emit();
+			return code;
+		}
+
+		/**
+		 * Razbije povezave iz blokov z vec nasledniki v bloke s funkcijami phi (da
+		 * je kopiranja za funkcije phi mogoce dodati na konec predhodnikov).
+		 */
+		private void splitEdges() {
+			for (final Block block : new ArrayList<Block>(fun.blocks)) {
+				if (!(block.term instanceof Branch branch))
+					continue;
+				for (final Block succ : block.succs()) {
+					if (succ.phis.isEmpty())
+						continue;
+					final Block edge = new Block(Labels.label(block.label, "#edge#", succ.label));
+					edge.term = fun.add(new Jump(succ, branch.loc));
+					edge.term.block = edge;
+					edge.preds.add(block);
+					succ.replacePred(block, edge);
+					if (branch.thenBlock == succ)
+						branch.thenBlock = edge;
+					if (branch.elseBlock == succ)
+						branch.elseBlock = edge;
+					fun.blocks.add(fun.blocks.indexOf(block) + 1, edge);
+				}
+			}
+		}
+
+		/**
+		 * Vrednosti, ki jih je mogoce kadarkoli ponovno izracunati (konstante, naslove
+		 * label, naslove v klicnem zapisu in branja nespremenljivih parametrov), in
+		 * jih ni mogoce vgraditi v ukaze, izracuna tik pred uporabo: prehodi nad
+		 * vmesno predstavitvijo jih namrec ne premikajo skupaj z uporabami.
+		 */
+		private void rematerialize() {
+			for (final Block block : fun.blocks) {
+				final List<Instr> instrs = new ArrayList<Instr>(block.instrs);
+				instrs.add(block.term);
+				for (final Instr instr : instrs)
+					for (int i = 0; i < instr.ops.size(); i++)
+						if (Ssa.remat(fun, instr.ops.get(i)) && inReg(instr, i)) {
+							final int index = block.instrs.indexOf(instr);
+							instr.ops.set(i, copy(block, index < 0 ? block.instrs.size() : index, instr.ops.get(i)));
+						}
+				// Branja parametrov za funkcije phi na koncu predhodnikov.
+				for (final Phi phi : block.phis)
+					for (int i = 0; i < phi.ops.size(); i++)
+						if ((phi.ops.get(i) instanceof Load) && Ssa.remat(fun, phi.ops.get(i))) {
+							final Block pred = block.preds.get(i);
+							phi.ops.set(i, copy(pred, pred.instrs.size(), phi.ops.get(i)));
+						}
+			}
+
+			// Vrednosti, ki potrebujejo lokacijo.
+			final Map<Instr, List<Instr>> uses = fun.uses();
+			for (final Block block : fun.blocks)
+				for (final Instr instr : block.all()) {
+					if (!instr.hasValue())
+						continue;
+					final List<Instr> users = uses.getOrDefault(instr, List.of());
+					boolean used = false;
+					for (final Instr user : users)
+						for (int i = 0; i < user.ops.size(); i++)
+							if ((user.ops.get(i) == instr) && inReg(user, i))
+								used = true;
+					if (used || ((instr instanceof Load) && !Ssa.remat(fun, instr))
+							|| (!instr.isPure() && !(instr instanceof Call)))
+						values.add(instr);
+				}
+		}
+
+		/**
+		 * Vstavi kopijo vrednosti, ki jo je mogoce kadarkoli ponovno izracunati, v
+		 * blok.
+		 *
+		 * @param block Blok.
+		 * @param index Mesto v bloku.
+		 * @param value Vrednost.
+		 * @return Kopija vrednosti.
+		 */
+		private Instr copy(final Block block, final int index, final Instr value) {
+			final Instr copy = switch (value) {
+				case Const c -> new Const(c.value, c.loc);
+				case Name name -> new Name(name.label, name.loc);
+				case Slot slot -> new Slot(slot.offset, slot.loc);
+				case Display display -> new Display(display.depth, display.loc);
+				case Load load -> new Load(load.ops.get(0), load.loc);
+				default -> throw new Report.InternalError();
+			};
+			fun.add(copy).block = block;
+			block.instrs.add(index, copy);
+			return copy;
+		}
+
+		/**
+		 * Doloci mesta blokov in ukazov.
+		 */
+		private void number() {
+			int next = 0;
+			for (final Block block : fun.blocks) {
+				from.put(block, next);
+				for (final Phi phi : block.phis)
+					pos.put(phi, next);
+				next += 2;
+				for (final Instr instr : block.instrs) {
+					pos.put(instr, next);
+					next += 2;
+				}
+				copyPos.put(block, next);
+				next += 2;
+				pos.put(block.term, next);
+				next += 2;
+				to.put(block, next);
+			}
+		}
+
+		/**
+		 * Vrne vrednosti, ki jih blok uporabi kot operande funkcij phi v danem
+		 * nasledniku.
+		 *
+		 * @param block Blok.
+		 * @param succ  Naslednik.
+		 * @return Operandi funkcij phi.
+		 */
+		private List<Instr> phiOps(final Block block, final Block succ) {
+			final List<Instr> ops = new ArrayList<Instr>();
+			final int pred = succ.preds.indexOf(block);
+			for (final Phi phi : succ.phis)
+				if (values.contains(phi) && inReg(phi, pred))
+					ops.add(phi.ops.get(pred));
+			return ops;
+		}
+
+		/**
+		 * Izracuna zivljenjske intervale vrednosti.
+		 */
+		private void intervals() {
+			// Zive vrednosti ob vstopu v bloke in ob izstopu iz blokov.
+			final Map<Block, Set<Instr>> liveIn = new HashMap<Block, Set<Instr>>();
+			final Map<Block, Set<Instr>> liveOut = new HashMap<Block, Set<Instr>>();
+			for (final Block block : fun.blocks) {
+				liveIn.put(block, new HashSet<Instr>());
+				liveOut.put(block, new HashSet<Instr>());
+			}
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (final Block block : fun.blocks.reversed()) {
+					final Set<Instr> live = new HashSet<Instr>();
+					for (final Block succ : block.succs()) {
+						for (final Instr value : liveIn.get(succ))
+							if (!((value instanceof Phi) && (value.block == succ)))
+								live.add(value);
+						live.addAll(phiOps(block, succ));
+					}
+					liveOut.get(block).addAll(live);
+					final List<Instr> instrs = new ArrayList<Instr>(block.instrs);
+					instrs.add(block.term);
+					for (final Instr instr : instrs.reversed()) {
+						live.remove(instr);
+						for (int i = 0; i < instr.ops.size(); i++)
+							if (inReg(instr, i))
+								live.add(instr.ops.get(i));
+					}
+					live.removeAll(block.phis);
+					if (liveIn.get(block).addAll(live))
+						changed = true;
+				}
+			}
+
+			for (final Block block : fun.blocks) {
+				for (final Instr value : liveIn.get(block))
+					extend(value, from.get(block));
+				for (final Instr value : liveOut.get(block))
+					extend(value, to.get(block));
+				for (final Instr instr : block.all()) {
+					if (values.contains(instr))
+						extend(instr, pos.get(instr) + (instr instanceof Phi ? 0 : 1));
+					if (instr instanceof Phi)
+						continue;
+					for (int i = 0; i < instr.ops.size(); i++)
+						if (inReg(instr, i))
+							extend(instr.ops.get(i), pos.get(instr));
+				}
+				for (final Block succ : block.succs())
+					for (final Instr op : phiOps(block, succ))
+						extend(op, copyPos.get(block));
+			}
+		}
+
+		/**
+		 * Razsiri zivljenjski interval vrednosti.
+		 *
+		 * @param value Vrednost.
+		 * @param point Mesto, ki mora biti v intervalu.
+		 */
+		private void extend(final Instr value, final int point) {
+			start.merge(value, point, Math::min);
+			end.merge(value, point, Math::max);
+		}
+
+		/**
+		 * Vrednostim doloci lokacije z linearnim dodeljevanjem registrov.
+		 */
+		private void allocate() {
+			// Vrednosti, ki naj bodo v istem registru (funkcije phi in njihovi
+			// operandi).
+			final Map<Instr, List<Instr>> partners = new HashMap<Instr, List<Instr>>();
+			for (final Block block : fun.blocks)
+				for (final Phi phi : block.phis)
+					for (int i = 0; i < phi.ops.size(); i++)
+						if (values.contains(phi) && inReg(phi, i)) {
+							partners.computeIfAbsent(phi, _ -> new ArrayList<Instr>()).add(phi.ops.get(i));
+							partners.computeIfAbsent(phi.ops.get(i), _ -> new ArrayList<Instr>()).add(phi);
+						}
+
+			final List<Instr> intervals = new ArrayList<Instr>(values);
+			intervals.sort(Comparator.comparing((Instr value) -> start.get(value)).thenComparing(value -> value.id));
+			final TreeSet<Integer> free = new TreeSet<Integer>();
+			for (int reg = 0; reg < numRegs; reg++)
+				free.add(reg);
+			final List<Instr> active = new ArrayList<Instr>();
+			final List<Integer> slots = new ArrayList<Integer>();
+			final Map<Integer, Integer> slotEnds = new HashMap<Integer, Integer>();
+			for (final Instr value : intervals) {
+				for (final Instr old : new ArrayList<Instr>(active))
+					if (end.get(old) < start.get(value)) {
+						active.remove(old);
+						free.add(locs.get(old));
+					}
+				if (!free.isEmpty()) {
+					Integer reg = free.first();
+					for (final Instr partner : partners.getOrDefault(value, List.of()))
+						if (locs.containsKey(partner) && free.contains(locs.get(partner))) {
+							reg = locs.get(partner);
+							break;
+						}
+					free.remove(reg);
+					locs.put(value, reg);
+					active.add(value);
+					continue;
+				}
+				Instr spilled = value;
+				for (final Instr old : active)
+					if (end.get(old) > end.get(spilled))
+						spilled = old;
+				if (spilled != value) {
+					locs.put(value, locs.get(spilled));
+					active.remove(spilled);
+					active.add(value);
+				}
+				Integer slot = null;
+				for (final int candidate : slots)
+					if (slotEnds.get(candidate) < start.get(spilled)) {
+						slot = candidate;
+						break;
+					}
+				if (slot == null) {
+					frameSize += 4;
+					slot = -frameSize;
+					slots.add(slot);
+				}
+				slotEnds.put(slot, end.get(spilled));
+				locs.put(spilled, slot);
+			}
+		}
+
+		/**
+		 * Vrne register z vrednostjo operanda (ce je vrednost v klicnem zapisu, jo
+		 * najprej prenese v pomozni register).
+		 *
+		 * @param value   Vrednost.
+		 * @param scratch Zaporedna stevilka pomoznega registra.
+		 * @param loc     Lokacija.
+		 * @return Register z vrednostjo.
+		 */
+		private int use(final Instr value, final int scratch, final Report.Locatable loc) {
+			final int location = locs.get(value);
+			if (location >= 0)
+				return location;
+			code.add(new RM.LD(numRegs + scratch, null, location, loc));
+			return numRegs + scratch;
+		}
+
+		/**
+		 * Vrne register za rezultat ukaza.
+		 *
+		 * @param value Vrednost.
+		 * @return Register za rezultat.
+		 */
+		private int def(final Instr value) {
+			final int location = locs.get(value);
+			return location >= 0 ? location : numRegs;
+		}
+
+		/**
+		 * Rezultat ukaza, ki je bil izracunan v pomoznem registru, prenese v klicni
+		 * zapis.
+		 *
+		 * @param value Vrednost.
+		 * @param loc   Lokacija.
+		 */
+		private void spill(final Instr value, final Report.Locatable loc) {
+			final int location = locs.get(value);
+			if (location < 0)
+				code.add(new RM.ST(numRegs, null, location, loc));
+		}
+
+		/**
+		 * Prenese vrednost iz ene lokacije v drugo.
+		 *
+		 * @param dst Ciljna lokacija.
+		 * @param src Izvorna lokacija.
+		 * @param loc Lokacija.
+		 */
+		private void move(final int dst, final int src, final Report.Locatable loc) {
+			if (dst == src)
+				return;
+			if ((dst >= 0) && (src >= 0))
+				code.add(new RM.MOV(dst, src, loc));
+			else if (dst >= 0)
+				code.add(new RM.LD(dst, null, src, loc));
+			else if (src >= 0)
+				code.add(new RM.ST(src, null, dst, loc));
+			else {
+				code.add(new RM.LD(numRegs + 1, null, src, loc));
+				code.add(new RM.ST(numRegs + 1, null, dst, loc));
+			}
+		}
+
+		/**
+		 * Izracuna konstanto, naslov labele, naslov v klicnem zapisu ali kazalec na
+		 * klicni zapis iz prikaza v register.
+		 *
+		 * @param rd    Ciljni register.
+		 * @param value Vrednost.
+		 * @param loc   Lokacija.
+		 */
+		private void immediate(final int rd, final Instr value, final Report.Locatable loc) {
+			switch (value) {
+				case Const c -> code.add(new RM.LI(rd, c.value, loc));
+				case Name name -> code.add(new RM.LA(rd, name.label, loc));
+				case Slot slot -> code.add(new RM.LF(rd, slot.offset, loc));
+				case Display display -> code.add(new RM.LP(rd, display.depth, loc));
+				default -> throw new Report.InternalError();
+			}
+		}
+
+		/**
+		 * Doda kopiranja za funkcije phi naslednika na konec bloka.
+		 *
+		 * @param block Blok.
+		 * @param succ  Naslednik.
+		 */
+		private void copies(final Block block, final Block succ) {
+			final int pred = succ.preds.indexOf(block);
+			final Report.Locatable loc = block.term.loc;
+			final List<int[]> moves = new ArrayList<int[]>();
+			final List<Phi> immediates = new ArrayList<Phi>();
+			for (final Phi phi : succ.phis) {
+				if (!values.contains(phi))
+					continue;
+				if (inReg(phi, pred))
+					moves.add(new int[] { locs.get(phi), locs.get(phi.ops.get(pred)) });
+				else
+					immediates.add(phi);
+			}
+
+			// Vzporedno kopiranje.
+			moves.removeIf(move -> move[0] == move[1]);
+			while (!moves.isEmpty()) {
+				int[] ready = null;
+				for (final int[] move : moves)
+					if (moves.stream().noneMatch(other -> other[1] == move[0])) {
+						ready = move;
+						break;
+					}
+				if (ready == null) {
+					final int blocked = moves.getFirst()[0];
+					move(numRegs, blocked, loc);
+					for (final int[] move : moves)
+						if (move[1] == blocked)
+							move[1] = numRegs;
+					continue;
+				}
+				move(ready[0], ready[1], loc);
+				moves.remove(ready);
+			}
+
+			for (final Phi phi : immediates) {
+				immediate(def(phi), phi.ops.get(pred), loc);
+				spill(phi, loc);
+			}
+		}
+
+		/**
+		 * Ali se klic prevede v klic na repnem mestu: klic je oznacen kot repni,
+		 * je zadnji ukaz bloka in blok vrne njegov rezultat.
+		 *
+		 * @param call Klic.
+		 * @return Ali se klic prevede v klic na repnem mestu.
+		 */
+		private boolean tailCall(final Call call) {
+			return call.tail && (call.block.instrs.getLast() == call) && (call.block.term instanceof Ret ret)
+					&& (ret.ops.get(0) == call);
+		}
+
+		/**
+		 * Prevede ukaz.
+		 *
+		 * @param instr Ukaz.
+		 * @param next  Naslednji blok v kodi (ali {@code null}).
+		 */
+		private void emit(final Instr instr, final Block next) {
+			final Report.Locatable loc = instr.loc;
+			switch (instr) {
+				case Const _, Name _, Slot _, Display _ -> {
+					if (!values.contains(instr))
+						return;
+					immediate(def(instr), instr, loc);
+				}
+				case Un un -> {
+					if (!values.contains(instr))
+						return;
+					code.add(new RM.UNOP(un.oper, def(un), use(un.ops.get(0), 0, loc), loc));
+				}
+				case Bin bin -> {
+					if (!values.contains(instr))
+						return;
+					final Instr fst = bin.ops.get(0);
+					final Instr snd = bin.ops.get(1);
+					if (!inReg(bin, 1))
+						code.add(new RM.BINOPI(bin.oper, def(bin), use(fst, 0, loc), ((Const) snd).value, loc));
+					else if (!inReg(bin, 0))
+						code.add(new RM.BINOPI(swapped(bin.oper), def(bin), use(snd, 0, loc), ((Const) fst).value,
+								loc));
+					else
+						code.add(new RM.BINOP(bin.oper, def(bin), use(fst, 0, loc), use(snd, 1, loc), loc));
+				}
+				case Load load -> {
+					if (load.ops.get(0) instanceof Slot slot)
+						code.add(new RM.LD(def(load), null, slot.offset, loc));
+					else
+						code.add(new RM.LD(def(load), use(load.ops.get(0), 0, loc), 0, loc));
+				}
+				case Store store -> {
+					final int rs = use(store.ops.get(0), 0, loc);
+					if (store.ops.get(1) instanceof Slot slot)
+						code.add(new RM.ST(rs, null, slot.offset, loc));
+					else
+						code.add(new RM.ST(rs, use(store.ops.get(1), 1, loc), 0, loc));
+				}
+				case Init init -> code
+						.add(new RM.INIT(use(init.ops.get(0), 0, loc), use(init.ops.get(1), 1, loc), loc));
+				case Call call when tailCall(call) -> {
+					final List<Integer> args = new ArrayList<Integer>();
+					for (int i = 0; i < call.ops.size() - 1; i++)
+						args.add(use(call.ops.get(i), i + 1, loc));
+					final Instr target = call.ops.getLast();
+					final int parsSize = ((Ret) call.block.term).parsSize;
+					if (target instanceof Name name)
+						code.add(new RM.TCALL(name.label, null, args, parsSize, call.frame.depth, call.frame, loc));
+					else
+						code.add(new RM.TCALL(null, use(target, 0, loc), args, parsSize, call.frame.depth, call.frame,
+								loc));
+					return;
+				}
+				case Call call -> {
+					final List<Integer> args = new ArrayList<Integer>();
+					for (int i = 0; i < call.ops.size() - 1; i++)
+						args.add(use(call.ops.get(i), i + 1, loc));
+					final Instr target = call.ops.getLast();
+					final Integer rd = values.contains(call) ? def(call) : null;
+					if (target instanceof Name name)
+						code.add(new RM.CALL(rd, name.label, null, args, call.frame.depth, call.frame, loc));
+					else
+						code.add(new RM.CALL(rd, null, use(target, 0, loc), args, call.frame.depth, call.frame, loc));
+				}
+				case Phi _ -> {
+				}
+				case Jump jump -> {
+					if (jump.target != next)
+						code.add(new RM.JMP(jump.target.label, loc));
+				}
+				case Branch branch -> {
+					final int rc = use(branch.ops.get(0), 0, loc);
+					if (branch.elseBlock == next)
+						code.add(new RM.JCOND(rc, true, branch.thenBlock.label, loc));
+					else if (branch.thenBlock == next)
+						code.add(new RM.JCOND(rc, false, branch.elseBlock.label, loc));
+					else {
+						code.add(new RM.JCOND(rc, true, branch.thenBlock.label, loc));
+						code.add(new RM.JMP(branch.elseBlock.label, loc));
+					}
+				}
+				case Ret ret -> code.add(new RM.RET(use(ret.ops.get(0), 0, loc), ret.parsSize, fun.frame, loc));
+				default -> throw new Report.InternalError();
+			}
+			if (instr.hasValue() && values.contains(instr))
+				spill(instr, loc);
+		}
+
+		/**
+		 * Prevede bloke funkcije.
+		 */
+		private void emit() {
+			for (int b = 0; b < fun.blocks.size(); b++) {
+				final Block block = fun.blocks.get(b);
+				final Block next = b + 1 < fun.blocks.size() ? fun.blocks.get(b + 1) : null;
+				code.add(new RM.LABEL(block.label, block.term.loc));
+				if ((b == 0) && (frameSize > 8))
+					code.add(new RM.ENTER(frameSize, block.term.loc));
+				for (final Instr instr : block.instrs)
+					emit(instr, next);
+				if (!block.instrs.isEmpty() && (block.instrs.getLast() instanceof Call call) && tailCall(call))
+					continue;
+				if ((block.succs().size() == 1) && !block.succs().getFirst().phis.isEmpty())
+					copies(block, block.succs().getFirst());
+				emit(block.term, next);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,740 @@
+package pins25.phase;
+
+import java.io.*;
+import java.util.*;
+
+import pins25.common.*;
+
+/**
+ * Registrski stroj.
+ *
+ * Pomnilnik, klicni zapisi in 'sistemske' funkcije so enaki kot pri skladovnem
+ * stroju ({@link Machine}), le da se vmesni rezultati namesto na skladu hranijo
+ * v registrih. Vsak klicni zapis ima svoj nabor registrov, ki se ob klicu
+ * ustvari, ob vrnitvi pa zavrze. Prikaz se vzdrzuje enako kot pri skladovnem
+ * stroju.
+ */
+public class RegMachine {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public RegMachine() {
+		throw new Report.InternalError();
+	}
+
+	/** Ali orodja programe izvajajo na registrskem stroju (in ne na skladovnem). */
+	public static boolean enabled = false;
+
+	/**
+	 * Izvajanje registrskega stroja.
+	 *
+	 * Testni izpisi in omejitve izvajanja so nastavljeni z zastavicami
+	 * skladovnega stroja ({@link Machine#maxInstrs}, {@link Machine#countInstrs}
+	 * in {@link Machine#debugOutputs}).
+	 */
+	public static class Executor implements Machine.Processor {
+
+		/**
+		 * Klicni zapis, iz katerega je bila klicana funkcija.
+		 *
+		 * @param regs    Registri klicoce funkcije.
+		 * @param rd      Register za rezultat klica ali {@code null}.
+		 * @param depth   Globina klicane funkcije ali {@code -1}, ce ni znana.
+		 * @param display Prejsnja vrednost prikaza za globino klicane funkcije.
+		 */
+		private record Caller(int[] regs, Integer rd, int depth, int display) {
+		}
+
+		/** Ukazi kode programa (brez oznak). */
+		private final RM.INSTR[] program;
+
+		/** Pomnilnik. */
+		private final Machine.Store memory = new Machine.Store();
+
+		/** Preslikava oznak v fizicne naslove. */
+		private final HashMap<Integer, Integer> labelToAddr = new HashMap<Integer, Integer>();
+
+		/** Preslikava fizicnih naslovov v oznake. */
+		private final HashMap<Integer, Integer> addrToLabel = new HashMap<Integer, Integer>();
+
+		/** Velikost segmenta z ukazi kode programa. */
+		private final int codeSegmentSize;
+
+		/** Ali so nizi programa shranjeni po en znak na bajt. */
+		private final boolean packedStrings;
+
+		/** Stevilo registrov v enem naboru registrov. */
+		private final int numRegs;
+
+		{
+			final String[] syscalls = { "exit", "getint", "putint", "getstr", "putstr", "new", "del", "clock",
+					"instrs", "getbyte", "putbyte" };
+			for (int s = 0; s < syscalls.length; s++) {
+				labelToAddr.put(Labels.label(syscalls[s]), -1 - s);
+				addrToLabel.put(-1 - s, Labels.label(syscalls[s]));
+			}
+		}
+
+		/** Programski stevec. */
+		private int PC;
+
+		/** Klicni kazalec. */
+		private int FP;
+
+		/** Skladovni kazalec. */
+		private int SP;
+
+		/** Kazalec na prvi prosti naslov na kopici. */
+		private int HP;
+
+		/** Registri trenutnega klicnega zapisa. */
+		private int[] regs;
+
+		/** Klicni zapisi, iz katerih so bile klicane aktivne funkcije. */
+		private final Deque<Caller> callers = new ArrayDeque<Caller>();
+
+		/** Prikaz: kazalci na zadnje klicne zapise posameznih globin. */
+		private int[] display = new int[0];
+
+		/** Standardni vhod programa. */
+		private final Scanner scanner;
+
+		/** Standardni izhod programa. */
+		private final PrintStream stdout;
+
+		/** Stevilo znakov, ki jih je program izpisal na standardni izhod. */
+		private int stdoutSize = 0;
+
+		/** Preslikava mesta v izhodu v naslov ukaza, ki je izpisal ta del izhoda. */
+		private final TreeMap<Integer, Integer> debugOuts = new TreeMap<Integer, Integer>();
+
+		/** Stevilo izvedenih ukazov. */
+		private long numInstrs = 0;
+
+		/** Stevilo izvedenih ukazov po posameznih vrstah ukazov. */
+		private final TreeMap<String, Long> numInstrsByOpcode = new TreeMap<String, Long>();
+
+		/** Najmanjsa vrednost skladovnega kazalca med izvajanjem. */
+		private int minSP;
+
+		/** Zacetek kopice. */
+		private int heapStart;
+
+		/** Cas zacetka izvajanja (v nanosekundah). */
+		private final long startTime = System.nanoTime();
+
+		/** Izhodna koda programa (ali {@code null}, ce se program se ni koncal). */
+		private Integer exitCode = null;
+
+		/**
+		 * Shrani vrednost v pomnilnik.
+		 *
+		 * @param addr  Pomnilniski naslov.
+		 * @param value Vrednost.
+		 */
+		private void memSAVE(final int addr, final int value) {
+			if (addr < codeSegmentSize)
+				throw new Report.InternalError();
+			memory.save(addr, value);
+		}
+
+		/**
+		 * Prebere vrednost iz pomnilnika.
+		 *
+		 * @param addr Pomnilniski naslov.
+		 * @return Vrednost.
+		 */
+		private int memLOAD(final int addr) {
+			if (addr < codeSegmentSize)
+				throw new Report.InternalError();
+			return memory.load(addr);
+		}
+
+		/**
+		 * Shrani najnizji bajt vrednosti v pomnilnik.
+		 *
+		 * @param addr  Pomnilniski naslov.
+		 * @param value Vrednost.
+		 */
+		private void memSTB(final int addr, final int value) {
+			if (addr < codeSegmentSize)
+				throw new Report.InternalError();
+			memory.saveByte(addr, value);
+		}
+
+		/**
+		 * Prebere bajt iz pomnilnika.
+		 *
+		 * @param addr Pomnilniski naslov.
+		 * @return Vrednost bajta (razsirjena z niclami).
+		 */
+		private int memLDB(final int addr) {
+			if (addr < codeSegmentSize)
+				throw new Report.InternalError();
+			return memory.loadByte(addr);
+		}
+
+		/**
+		 * Prenos nove vrednosti na sklad.
+		 *
+		 * @param value Vrednost.
+		 */
+		private void push(final int value) {
+			SP -= 4;
+			if (SP < minSP)
+				minSP = SP;
+			memSAVE(SP, value);
+		}
+
+		/**
+		 * Ustvari nov registrski stroj za podan program in ta program izvede.
+		 *
+		 * @param codeSegment   Seznam ukazov registrskega stroja.
+		 * @param dataSegment   Seznam ukazov, ki predstavljajo podatke programa.
+		 * @param packedStrings Ali so nizi programa shranjeni po en znak na bajt.
+		 */
+		public Executor(final List<RM.INSTR> codeSegment, final List<PDM.DataInstr> dataSegment,
+				final boolean packedStrings) {
+			this(codeSegment, dataSegment, packedStrings, System.in, System.out);
+			run();
+		}
+
+		/**
+		 * Ustvari nov registrski stroj za podan program, vendar programa ne izvede.
+		 *
+		 * @param codeSegment   Seznam ukazov registrskega stroja.
+		 * @param dataSegment   Seznam ukazov, ki predstavljajo podatke programa.
+		 * @param packedStrings Ali so nizi programa shranjeni po en znak na bajt.
+		 * @param stdin         Standardni vhod programa.
+		 * @param stdout        Standardni izhod programa.
+		 */
+		public Executor(final List<RM.INSTR> codeSegment, final List<PDM.DataInstr> dataSegment,
+				final boolean packedStrings, final InputStream stdin, final PrintStream stdout) {
+
+			this.scanner = new Scanner(stdin);
+			this.stdout = stdout;
+			this.packedStrings = packedStrings;
+
+			final List<RM.INSTR> instrs = new ArrayList<RM.INSTR>();
+			int maxReg = -1;
+			for (final RM.INSTR instr : codeSegment) {
+				if (instr instanceof RM.LABEL label) {
+					labelToAddr.put(label.label, instrs.size());
+					addrToLabel.put(instrs.size(), label.label);
+					continue;
+				}
+				instrs.add(instr);
+				for (final int reg : instr.regs())
+					maxReg = Math.max(maxReg, reg);
+			}
+			program = instrs.toArray(new RM.INSTR[0]);
+			codeSegmentSize = program.length;
+			numRegs = maxReg + 1;
+
+			int memPtr = codeSegmentSize;
+			for (final PDM.DataInstr instr : dataSegment) {
+				switch (instr) {
+					case PDM.LABEL i -> {
+						labelToAddr.put(i.label, memPtr);
+						addrToLabel.put(memPtr, i.label);
+					}
+					case PDM.SIZE i -> memPtr += i.size;
+					case PDM.DATA i -> {
+						memSAVE(memPtr, i.intc);
+						memPtr += 4;
+					}
+					default -> throw new Report.InternalError();
+				}
+			}
+
+			PC = 0;
+			FP = 0x10000;
+			SP = 0x10000;
+			HP = memPtr;
+			minSP = SP;
+			heapStart = HP;
+			regs = new int[numRegs];
+
+			push(-1);
+			FP = SP + 0;
+			push(-1);
+		}
+
+		/**
+		 * Vrne naslov oznake.
+		 *
+		 * @param label Oznaka.
+		 * @return Naslov oznake.
+		 */
+		private int addr(final int label) {
+			final Integer addr = labelToAddr.get(label);
+			if (addr == null)
+				throw new Report.Error("Undefined label '" + Labels.name(label) + "'.");
+			return addr;
+		}
+
+		/**
+		 * Izracuna dvomestno operacijo.
+		 *
+		 * @param oper Operacija.
+		 * @param fst  Prvi operand.
+		 * @param snd  Drugi operand.
+		 * @return Rezultat.
+		 */
+		private static int oper(final PDM.OPER.Oper oper, final int fst, final int snd) {
+			return switch (oper) {
+				case OR -> (fst != 0) || (snd != 0) ? 1 : 0;
+				case AND -> (fst != 0) && (snd != 0) ? 1 : 0;
+				case EQU -> fst == snd ? 1 : 0;
+				case NEQ -> fst != snd ? 1 : 0;
+				case GTH -> fst > snd ? 1 : 0;
+				case LTH -> fst < snd ? 1 : 0;
+				case GEQ -> fst >= snd ? 1 : 0;
+				case LEQ -> fst <= snd ? 1 : 0;
+				case ADD -> fst + snd;
+				case SUB -> fst - snd;
+				case MUL -> fst * snd;
+				case DIV -> fst / snd;
+				case MOD -> fst % snd;
+				default -> throw new Report.InternalError();
+			};
+		}
+
+		/**
+		 * Izvede program.
+		 */
+		public void run() {
+			System.out.printf("\n");
+			loop: while (true) {
+
+				if ((Machine.maxInstrs > 0) && (numInstrs == Machine.maxInstrs))
+					throw new Report.Error("Instruction limit exceeded at " + location(PC) + ".");
+				numInstrs++;
+
+				final RM.INSTR instr = program[PC];
+				if (Machine.countInstrs)
+					numInstrsByOpcode.merge(opcode(instr), 1L, Long::sum);
+				PC++;
+
+				switch (instr) {
+					case RM.ENTER i -> {
+						// Prostor za lokalne spremenljivke se rezervira in pocisti v enem koraku.
+						if (SP > FP - i.size) {
+							if (FP - i.size < codeSegmentSize)
+								throw new Report.InternalError();
+							memory.fill(FP - i.size, SP - (FP - i.size));
+							SP = FP - i.size;
+							if (SP < minSP)
+								minSP = SP;
+						}
+					}
+					case RM.LI i -> regs[i.rd] = i.intc;
+					case RM.LA i -> regs[i.rd] = addr(i.label);
+					case RM.LF i -> regs[i.rd] = FP + i.offset;
+					case RM.LP i -> regs[i.rd] = i.depth < display.length ? display[i.depth] : 0;
+					case RM.MOV i -> regs[i.rd] = regs[i.rs];
+					case RM.UNOP i -> regs[i.rd] = switch (i.oper) {
+						case NOT -> (regs[i.rs] == 0) ? 1 : 0;
+						case NEG -> -regs[i.rs];
+						default -> throw new Report.InternalError();
+					};
+					case RM.BINOP i -> regs[i.rd] = oper(i.oper, regs[i.rs1], regs[i.rs2]);
+					case RM.BINOPI i -> regs[i.rd] = oper(i.oper, regs[i.rs], i.intc);
+					case RM.LD i -> regs[i.rd] = memLOAD((i.base == null ? FP : regs[i.base]) + i.offset);
+					case RM.ST i -> memSAVE((i.base == null ? FP : regs[i.base]) + i.offset, regs[i.rs]);
+					case RM.INIT i -> {
+						int initAddr = regs[i.rinit];
+						int dstAddr = regs[i.rdst];
+						final int numInits = memLOAD(initAddr);
+						initAddr += 4;
+						for (int nInit = 0; nInit < numInits; nInit++) {
+							final int num = memLOAD(initAddr);
+							initAddr += 4;
+							final int len = memLOAD(initAddr);
+							initAddr += 4;
+							for (int n = 0; n < num; n++) {
+								for (int l = 0; l < len; l++) {
+									memSAVE(dstAddr, memLOAD(initAddr + 4 * l));
+									dstAddr += 4;
+								}
+							}
+							initAddr += 4 * len;
+						}
+					}
+					case RM.JMP i -> PC = addr(i.target);
+					case RM.JCOND i -> {
+						if ((regs[i.rc] != 0) == i.ifTrue)
+							PC = addr(i.target);
+					}
+					case RM.CALL i -> {
+						final int newPC = i.target == null ? regs[i.rt] : addr(i.target);
+						final int[] args = new int[i.args.size()];
+						for (int a = 0; a < args.length; a++)
+							args[a] = regs[i.args.get(a)];
+						if (newPC < 0) {
+							// Prvi parameter je tik pod staticno povezavo.
+							final int arg = args.length > 1 ? args[args.length - 2] : 0;
+							final int result;
+							switch (newPC) {
+								case -1: { // exit(exitcode)
+									System.out.printf("EXIT CODE (SP=%d): %d\n", SP, arg);
+									this.exitCode = arg;
+									break loop;
+								}
+								case -2: { // getint()
+									result = scanner.nextInt();
+									break;
+								}
+								case -3: { // putint(intvalue)
+									print(String.valueOf(arg));
+									result = 1;
+									break;
+								}
+								case -4: { // getstr(straddr)
+									int strAddr = arg;
+									final String strValue = scanner.nextLine();
+									for (int c = 0; c < strValue.length(); c++) {
+										if (packedStrings)
+											memSTB(strAddr++, strValue.charAt(c));
+										else {
+											memSAVE(strAddr, strValue.charAt(c));
+											strAddr += 4;
+										}
+									}
+									if (packedStrings)
+										memSTB(strAddr, 0);
+									else
+										memSAVE(strAddr, 0);
+									result = 1;
+									break;
+								}
+								case -5: { // putstr(straddr)
+									int strAddr = arg;
+									final StringBuilder strValue = new StringBuilder();
+									while (true) {
+										int c = packedStrings ? memLDB(strAddr) : memLOAD(strAddr);
+										if (c == 0)
+											break;
+										strValue.append((char) c);
+										strAddr += packedStrings ? 1 : 4;
+									}
+									print(strValue.toString());
+									result = 1;
+									break;
+								}
+								case -6: { // new(size)
+									final int addr = HP;
+									memory.fill(addr, arg);
+									HP += arg;
+									result = addr;
+									break;
+								}
+								case -7: { // del(addr)
+									result = 1;
+									break;
+								}
+								case -8: { // clock()
+									result = (int) ((System.nanoTime() - startTime) / 1000);
+									break;
+								}
+								case -9: { // instrs()
+									result = (int) numInstrs;
+									break;
+								}
+								case -10: { // getbyte(addr)
+									result = memLDB(arg);
+									break;
+								}
+								case -11: { // putbyte(addr, bytevalue)
+									memSTB(arg, args.length > 2 ? args[args.length - 3] : 0);
+									result = 1;
+									break;
+								}
+								default:
+									throw new Report.InternalError();
+							}
+							if (i.rd != null)
+								regs[i.rd] = result;
+						} else {
+							for (final int arg : args)
+								push(arg);
+							push(FP);
+							push(PC);
+							FP = SP + 8;
+							PC = newPC;
+							final int depth = i.depth;
+							if (depth >= display.length)
+								display = Arrays.copyOf(display, depth + 1);
+							callers.push(new Caller(regs, i.rd, depth, depth < 0 ? 0 : display[depth]));
+							if (depth >= 0)
+								display[depth] = FP;
+							regs = new int[numRegs];
+						}
+					}
+					case RM.TCALL i -> {
+						final int newPC = i.target == null ? regs[i.rt] : addr(i.target);
+						if (newPC < 0)
+							throw new Report.InternalError();
+						final int[] args = new int[i.args.size()];
+						for (int a = 0; a < args.length; a++)
+							args[a] = regs[i.args.get(a)];
+						// Argumenti nadomestijo parametre klicoce funkcije.
+						final int oldPC = memLOAD(FP - 8);
+						final int oldFP = memLOAD(FP - 4);
+						SP = FP + i.parsSize + 4;
+						for (final int arg : args)
+							push(arg);
+						push(oldFP);
+						push(oldPC);
+						FP = SP + 8;
+						PC = newPC;
+						final Caller caller = callers.pop();
+						if (caller.depth() >= 0)
+							display[caller.depth()] = caller.display();
+						final int depth = i.depth;
+						if (depth >= display.length)
+							display = Arrays.copyOf(display, depth + 1);
+						callers.push(new Caller(caller.regs(), caller.rd(), depth, depth < 0 ? 0 : display[depth]));
+						if (depth >= 0)
+							display[depth] = FP;
+						regs = new int[numRegs];
+					}
+					case RM.RET i -> {
+						final int result = regs[i.rs];
+						if (callers.isEmpty())
+							break loop;
+						PC = memLOAD(FP - 8);
+						final int oldFP = memLOAD(FP - 4);
+						SP = FP + i.parsSize + 4;
+						FP = oldFP;
+						final Caller caller = callers.pop();
+						if (caller.depth() >= 0)
+							display[caller.depth()] = caller.display();
+						regs = caller.regs();
+						if (caller.rd() != null)
+							regs[caller.rd()] = result;
+					}
+					default -> throw new Report.InternalError();
+				}
+			}
+
+			scanner.close();
+		}
+
+		/**
+		 * Vrne vrsto ukaza, torej ime ukaza brez argumentov.
+		 *
+		 * @param instr Ukaz.
+		 * @return Vrsta ukaza.
+		 */
+		private static String opcode(final RM.INSTR instr) {
+			return switch (instr) {
+				case RM.UNOP i -> i.oper.toString();
+				case RM.BINOP i -> i.oper.toString();
+				case RM.BINOPI i -> i.oper + "I";
+				case RM.JCOND i -> i.ifTrue ? "JT" : "JF";
+				default -> instr.getClass().getSimpleName();
+			};
+		}
+
+		/**
+		 * Izpise niz na standardni izhod programa.
+		 *
+		 * @param text Niz.
+		 */
+		private void print(final String text) {
+			if (Machine.debugOutputs)
+				debugOuts.put(stdoutSize, PC - 1);
+			stdout.print(text);
+			stdoutSize += text.length();
+		}
+
+		/**
+		 * Vrne izhodno kodo programa.
+		 * 
+		 * @return Izhodna koda programa ali {@code null}, ce se program se ni koncal.
+		 */
+		public Integer exitCode() {
+			return exitCode;
+		}
+
+		/**
+		 * Vrne stevilo izvedenih ukazov.
+		 * 
+		 * @return Stevilo izvedenih ukazov.
+		 */
+		public long numInstrs() {
+			return numInstrs;
+		}
+
+		/**
+		 * Vrne stevilo izvedenih ukazov po posameznih vrstah ukazov (le, ce je
+		 * vklopljen {@link Machine#countInstrs}).
+		 * 
+		 * @return Stevilo izvedenih ukazov po posameznih vrstah ukazov.
+		 */
+		public SortedMap<String, Long> numInstrsByOpcode() {
+			return Collections.unmodifiableSortedMap(numInstrsByOpcode);
+		}
+
+		/**
+		 * Vrne najvecjo porabo pomnilnika med izvajanjem, torej najvecjo velikost
+		 * sklada in velikost kopice.
+		 * 
+		 * @return Najvecja poraba pomnilnika (v bajtih).
+		 */
+		public int peakMemory() {
+			return (0x10000 - minSP) + (HP - heapStart);
+		}
+
+		/**
+		 * Vrne velikost kopice, ki se zacne takoj za staticnimi spremenljivkami.
+		 * 
+		 * @return Velikost kopice (v bajtih).
+		 */
+		public int heapSize() {
+			return HP - heapStart;
+		}
+
+		/**
+		 * Vrne najvecjo velikost sklada, ki se zacne na vrhu pomnilnika.
+		 * 
+		 * @return Najvecja velikost sklada (v bajtih).
+		 */
+		public int stackSize() {
+			return 0x10000 - minSP;
+		}
+
+		/**
+		 * Vrne vrednost programskega stevca.
+		 * 
+		 * @return Vrednost programskega stevca.
+		 */
+		public int PC() {
+			return PC;
+		}
+
+		/**
+		 * Vrne naslove ukazov, ki so pisali na standardni izhod, po mestih prvih
+		 * izpisanih znakov (le, ce je vklopljen {@link Machine#debugOutputs}).
+		 * 
+		 * @return Naslovi ukazov po mestih v standardnem izhodu.
+		 */
+		public SortedMap<Integer, Integer> outputPCs() {
+			return Collections.unmodifiableSortedMap(debugOuts);
+		}
+
+		/**
+		 * Vrne fizicni naslov oznake.
+		 * 
+		 * @param label Oznaka.
+		 * @return Fizicni naslov oznake ali {@code null}, ce oznaka ne obstaja.
+		 */
+		public Integer labelAddr(final int label) {
+			return labelToAddr.get(label);
+		}
+
+		/**
+		 * Prebere vrednost iz pomnilnika.
+		 * 
+		 * @param addr Pomnilniski naslov.
+		 * @return Vrednost.
+		 */
+		public int load(final int addr) {
+			return memLOAD(addr);
+		}
+
+		/**
+		 * Opise naslov ukaza z najblizjo predhodno oznako in lokacijo v izvorni kodi.
+		 * 
+		 * @param pc Naslov ukaza.
+		 * @return Opis naslova ukaza.
+		 */
+		public String location(final int pc) {
+			int labelAddr = Integer.MIN_VALUE;
+			for (final Map.Entry<Integer, Integer> entry : addrToLabel.entrySet())
+				if ((entry.getKey() >= 0) && (entry.getKey() <= pc) && (entry.getKey() > labelAddr)
+						&& (entry.getKey() < codeSegmentSize))
+					labelAddr = entry.getKey();
+			final StringBuffer loc = new StringBuffer();
+			loc.append(pc);
+			if (labelAddr != Integer.MIN_VALUE)
+				loc.append(" (" + Labels.name(addrToLabel.get(labelAddr)) + "+" + (pc - labelAddr) + ")");
+			if ((pc >= 0) && (pc < codeSegmentSize)) {
+				loc.append(" " + program[pc]);
+				if (program[pc].debugLocation != null)
+					loc.append(" " + program[pc].debugLocation);
+			}
+			return loc.toString();
+		}
+
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon registrskega stroja kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (register machine):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(memoryAttrAST);
+				// vstavljanje funkcij:
+				final Inline.AttrAST inlineAttrAST = Inline.inline(optimAttrAST);
+				// optimizacija zank:
+				final Loops.AttrAST loopsAttrAST = Loops.optimize(inlineAttrAST);
+				// generiranje kode:
+				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(loopsAttrAST);
+				// optimizacija v vmesni predstavitvi SSA:
+				final CodeGen.AttrAST ssaAttrAST = Ssa.optimize(codegenAttrAST);
+
+				// optimizacija skozi lino:
+				final List<PDM.CodeInstr> codeSegment = Peephole
+						.optimize((new CodeGen.CodeSegmentGenerator(ssaAttrAST)).codeSegment());
+				final List<PDM.DataInstr> dataSegment = (new CodeGen.DataSegmentGenerator(ssaAttrAST))
+						.dataSegment();
+				// generiranje kode za registrski stroj:
+				final List<RM.INSTR> regCode = RegGen.generate(codeSegment, dataSegment);
+
+				if (Machine.debugInstrsList) {
+					System.out.println("\n\033[1mCODE SEGMENT:\033[0m");
+					int addr = 0;
+					for (final RM.INSTR instr : regCode) {
+						System.out.printf("%8d %s\n", addr, (instr instanceof RM.LABEL ? "" : "  ") + instr);
+						if (!(instr instanceof RM.LABEL))
+							addr++;
+					}
+				}
+
+				// ustvari nov stroj in izvede program:
+				new Executor(regCode, dataSegment, CodeGen.packedStrings);
+			}
+
+			// Upajmo, da kdaj pridemo to te tocke.
+			// A zavedajmo se sledecega:
+			// 1. Prevod je zaradi napak v programu lahko napacen :-o
+			// 2. Izvorni program se zdalec ni tisto, kar je programer hotel, da bi bil ;-)
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
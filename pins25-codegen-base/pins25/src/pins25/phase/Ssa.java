@@ -0,0 +1,2260 @@
+package pins25.phase;
+
+import java.util.*;
+
+import pins25.common.*;
+import pins25.common.IR.*;
+
+/**
+ * Optimizacija kode v vmesni predstavitvi SSA.
+ *
+ * Koda vsake funkcije, ki jo izracuna {@link CodeGen}, se prevede v vmesno
+ * predstavitev {@link IR}: lokalne spremenljivke in parametri, katerih naslov
+ * se ne uporablja, postanejo vrednosti in funkcije phi, vsi ostali dostopi do
+ * pomnilnika pa ostanejo eksplicitni. Na vmesni predstavitvi se izvajajo
+ * prehodi iz tabele {@link #passes}, dokler se koda spreminja, nato pa se
+ * vmesna predstavitev prevede nazaj v kodo skladovnega stroja. Ce je nova koda
+ * (glede na ocenjeno stevilo izvedenih ukazov) slabsa od prvotne ali ce vmesne
+ * predstavitve ni mogoce zgraditi, ostane prvotna koda.
+ */
+public class Ssa {
+
+	@SuppressWarnings({ "doclint:missing" })
+	public Ssa() {
+		throw new Report.InternalError();
+	}
+
+	/** Ali se izvede optimizacija v vmesni predstavitvi SSA. */
+	public static boolean enabled = true;
+
+	/** Imena prehodov, ki se ne izvajajo. */
+	public static final Set<String> disabledPasses = new HashSet<String>();
+
+	/** Ali se opravi izpis vmesne predstavitve. */
+	public static boolean debugIR = false;
+
+	/** Najvecje stevilo ponovitev vseh prehodov. */
+	private static final int MAX_ROUNDS = 4;
+
+	/**
+	 * Prehod optimizacije vmesne predstavitve.
+	 */
+	@FunctionalInterface
+	public interface Transform {
+
+		/**
+		 * Izvede prehod na funkciji.
+		 *
+		 * @param fun Funkcija.
+		 * @return Ali se je funkcija spremenila.
+		 */
+		public boolean run(IR.Function fun);
+
+	}
+
+	/**
+	 * Poimenovan prehod optimizacije vmesne predstavitve.
+	 *
+	 * @param name      Ime prehoda.
+	 * @param transform Prehod.
+	 */
+	public record Pass(String name, Transform transform) {
+	}
+
+	/** Tabela prehodov v vrstnem redu izvajanja. */
+	public static final List<Pass> passes = List.of( //
+			new Pass("sccp", Ssa::sccp), //
+			new Pass("gvn", Ssa::gvn), //
+			new Pass("licm", Ssa::licm), //
+			new Pass("dce", Ssa::dce));
+
+	/**
+	 * Vmesne predstavitve ni mogoce zgraditi (ali prevesti nazaj v kodo
+	 * skladovnega stroja); funkcija obdrzi prvotno kodo.
+	 */
+	@SuppressWarnings("serial")
+	private static class Unsupported extends RuntimeException {
+
+		/**
+		 * Ustvari nov opis razloga.
+		 *
+		 * @param reason Razlog.
+		 */
+		public Unsupported(final String reason) {
+			super(reason, null, false, false);
+		}
+
+	}
+
+	/**
+	 * Izvede optimizacijo v vmesni predstavitvi SSA na vseh zivih funkcijah.
+	 *
+	 * @param attrAST Abstraktno sintaksno drevo z dodanimi atributi generiranja
+	 *                kode.
+	 * @return Abstraktno sintaksno drevo z optimizirano kodo funkcij.
+	 */
+	public static CodeGen.AttrAST optimize(final CodeGen.AttrAST attrAST) {
+		if (!enabled)
+			return attrAST;
+
+		// Vsebina podatkov po labelah (za opise zacetnih vrednosti).
+		final Map<Integer, List<Integer>> data = new HashMap<Integer, List<Integer>>();
+		for (final List<PDM.DataInstr> instrs : attrAST.attrData.values())
+			data.putAll(data(instrs));
+
+		// Optimizirana koda funkcij se doda na konec zaporedja ukazov.
+		final Map<AST.Node, CodeGen.Range> attrCode = new HashMap<AST.Node, CodeGen.Range>(attrAST.attrCode);
+		attrAST.ast.accept(new AST.FullVisitor<Object, Object>() {
+			@Override
+			public Object visit(final AST.FunDef funDef, final Object arg) {
+				if ((funDef.stmts.size() != 0) && attrAST.attrLive.contains(funDef)
+						&& !attrAST.attrInlined.contains(funDef))
+					attrCode.put(funDef, attrAST.codeBuffer
+							.append(optimize(attrAST.code(funDef), attrAST.attrFrame.get(funDef), data)));
+				return AST.FullVisitor.super.visit(funDef, arg);
+			}
+		}, null);
+		return new CodeGen.AttrAST(attrAST, attrAST.codeBuffer, Collections.unmodifiableMap(attrCode),
+				attrAST.attrData);
+	}
+
+	/**
+	 * Vrne vsebino podatkov po labelah.
+	 *
+	 * @param instrs Ukazi za opis podatkov.
+	 * @return Preslikava, ki vsaki labeli doloci besede, ki ji sledijo.
+	 */
+	public static Map<Integer, List<Integer>> data(final List<PDM.DataInstr> instrs) {
+		final Map<Integer, List<Integer>> data = new HashMap<Integer, List<Integer>>();
+		List<Integer> words = null;
+		for (final PDM.DataInstr instr : instrs) {
+			switch (instr) {
+				case PDM.LABEL label -> data.put(label.label, words = new ArrayList<Integer>());
+				case PDM.DATA word -> {
+					if (words != null)
+						words.add(word.intc);
+				}
+				default -> words = null;
+			}
+		}
+		return data;
+	}
+
+	/**
+	 * Zgradi vmesno predstavitev funkcije in nad njo izvede prehode (ne glede na
+	 * {@link #enabled}).
+	 *
+	 * @param code  Koda funkcije.
+	 * @param frame Klicni zapis funkcije.
+	 * @param data  Vsebina podatkov po labelah.
+	 * @return Funkcija v vmesni predstavitvi ali {@code null}, ce vmesne
+	 *         predstavitve ni mogoce zgraditi.
+	 */
+	public static IR.Function construct(final List<PDM.CodeInstr> code, final Mem.Frame frame,
+			final Map<Integer, List<Integer>> data) {
+		try {
+			return transform(new Builder(code, frame, data));
+		} catch (final Unsupported unsupported) {
+			if (debugIR)
+				System.out.printf("\n%s: %s\n", frame.name, unsupported.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Zgradi vmesno predstavitev funkcije in nad njo izvede prehode.
+	 *
+	 * @param builder Gradnja vmesne predstavitve.
+	 * @return Funkcija v vmesni predstavitvi.
+	 */
+	private static IR.Function transform(final Builder builder) {
+		final IR.Function fun = builder.build();
+		if (debugIR)
+			System.out.print("\n" + fun);
+		for (int round = 0; round < MAX_ROUNDS; round++) {
+			boolean changed = false;
+			for (final Pass pass : passes) {
+				if (disabledPasses.contains(pass.name()))
+					continue;
+				if (pass.transform().run(fun)) {
+					changed = true;
+					fun.removeUnreachable();
+					removeTrivialPhis(fun);
+				}
+			}
+			if (!changed)
+				break;
+		}
+		if (debugIR)
+			System.out.print("\n" + fun);
+		return fun;
+	}
+
+	/**
+	 * Izvede optimizacijo v vmesni predstavitvi SSA na eni funkciji.
+	 *
+	 * @param code  Koda funkcije.
+	 * @param frame Klicni zapis funkcije.
+	 * @param data  Vsebina podatkov po labelah.
+	 * @return Optimizirana koda funkcije (ali prvotna koda, ce optimizacija ni
+	 *         uspela ali ni izboljsala kode).
+	 */
+	private static List<PDM.CodeInstr> optimize(final List<PDM.CodeInstr> code, final Mem.Frame frame,
+			final Map<Integer, List<Integer>> data) {
+		try {
+			final Builder builder = new Builder(code, frame, data);
+			final IR.Function fun = transform(builder);
+			final Lowering lowering = new Lowering(fun);
+			final List<PDM.CodeInstr> newCode = lowering.lower();
+			if (debugIR)
+				System.out.printf("\n%s: cost %d -> %d\n", Labels.name(fun.label), builder.cost, lowering.cost);
+			return lowering.cost < builder.cost ? newCode : code;
+		} catch (final Unsupported unsupported) {
+			if (debugIR)
+				System.out.printf("\n%s: %s\n", frame.name, unsupported.getMessage());
+			return code;
+		}
+	}
+
+	/**
+	 * Vrne besede, ki jih zapise ukaz {@link PDM.INIT} z danim opisom zacetnih
+	 * vrednosti.
+	 *
+	 * @param init Opis zacetnih vrednosti.
+	 * @return Zapisane besede ali {@code null}, ce opis ni veljaven.
+	 */
+	private static List<Integer> initWords(final List<Integer> init) {
+		if ((init == null) || init.isEmpty())
+			return null;
+		final List<Integer> words = new ArrayList<Integer>();
+		int pos = 1;
+		for (int nInit = 0; nInit < init.get(0); nInit++) {
+			if (pos + 2 > init.size())
+				return null;
+			final int num = init.get(pos);
+			final int len = init.get(pos + 1);
+			if ((num < 0) || (len < 0) || (pos + 2 + len > init.size()) || ((long) num * len > 1024))
+				return null;
+			for (int n = 0; n < num; n++)
+				words.addAll(init.subList(pos + 2, pos + 2 + len));
+			pos += 2 + len;
+		}
+		return words;
+	}
+
+	/**
+	 * Doda ukaz na konec bloka.
+	 *
+	 * @param <I>   Vrsta ukaza.
+	 * @param fun   Funkcija.
+	 * @param block Blok.
+	 * @param instr Ukaz.
+	 * @return Ukaz.
+	 */
+	private static <I extends Instr> I append(final IR.Function fun, final Block block, final I instr) {
+		fun.add(instr).block = block;
+		block.instrs.add(instr);
+		return instr;
+	}
+
+	/**
+	 * Doda ukaz v blok na dano mesto.
+	 *
+	 * @param <I>   Vrsta ukaza.
+	 * @param fun   Funkcija.
+	 * @param block Blok.
+	 * @param index Mesto v bloku.
+	 * @param instr Ukaz.
+	 * @return Ukaz.
+	 */
+	private static <I extends Instr> I insert(final IR.Function fun, final Block block, final int index,
+			final I instr) {
+		fun.add(instr).block = block;
+		block.instrs.add(index, instr);
+		return instr;
+	}
+
+	/**
+	 * Vrne koncno nadomestno vrednost.
+	 *
+	 * @param replacement Preslikava, ki vrednostim doloca nadomestne vrednosti.
+	 * @param value       Vrednost.
+	 * @return Koncna nadomestna vrednost.
+	 */
+	private static Instr resolve(final Map<Instr, Instr> replacement, Instr value) {
+		while (replacement.containsKey(value))
+			value = replacement.get(value);
+		return value;
+	}
+
+	/**
+	 * Odstrani funkcije phi, ki imajo (poleg sebe) le en operand.
+	 *
+	 * @param fun Funkcija.
+	 * @return Ali je bila kaksna funkcija phi odstranjena.
+	 */
+	private static boolean removeTrivialPhis(final IR.Function fun) {
+		boolean removed = false;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			final Map<Instr, Instr> replacement = new HashMap<Instr, Instr>();
+			for (final Block block : fun.blocks) {
+				for (final Phi phi : block.phis) {
+					Instr same = null;
+					boolean trivial = true;
+					for (final Instr op : phi.ops) {
+						final Instr value = resolve(replacement, op);
+						if ((value == phi) || (value == same))
+							continue;
+						if (same != null) {
+							trivial = false;
+							break;
+						}
+						same = value;
+					}
+					if (trivial && (same != null))
+						replacement.put(phi, same);
+				}
+			}
+			if (!replacement.isEmpty()) {
+				fun.replace(replacement);
+				for (final Block block : fun.blocks)
+					block.phis.removeIf(replacement::containsKey);
+				removed = changed = true;
+			}
+		}
+		return removed;
+	}
+
+	/**
+	 * Vrne najnizji odmik besede v klicnem zapisu, ki je lahko dosegljiva prek
+	 * naslova, ki se uporablja kot vrednost.
+	 *
+	 * @param limit  Dosedanji najnizji odmik.
+	 * @param offset Odmik naslova.
+	 * @return Najnizji odmik.
+	 */
+	private static int escape(final int limit, final int offset) {
+		final int word = Math.floorDiv(offset, 4) * 4;
+		return Math.min(limit, word == 0 ? Integer.MIN_VALUE : word);
+	}
+
+	/**
+	 * Ali je vrednost mogoce kadarkoli ponovno izracunati brez branja zacasnih
+	 * spremenljivk (konstanta, naslov labele, naslov v klicnem zapisu, kazalec
+	 * na klicni zapis iz prikaza ali branje nespremenljivega parametra).
+	 *
+	 * @param fun   Funkcija.
+	 * @param value Vrednost.
+	 * @return Ali je vrednost mogoce kadarkoli ponovno izracunati.
+	 */
+	static boolean remat(final IR.Function fun, final Instr value) {
+		return switch (value) {
+			case Const _, Name _, Slot _, Display _ -> true;
+			case Load load -> (load.ops.get(0) instanceof Slot slot) && fun.readOnlySlots.contains(slot.offset);
+			default -> false;
+		};
+	}
+
+	// --- GRADNJA VMESNE PREDSTAVITVE ---
+
+	/**
+	 * Vrednosti spremenljivk po blokih med gradnjo oblike SSA (po postopku, ki ga
+	 * opisejo Braun in drugi, 2013).
+	 *
+	 * @param <Key> Vrsta imen spremenljivk.
+	 */
+	private static abstract class Variables<Key> {
+
+		/** Funkcija. */
+		private final IR.Function fun;
+
+		/** Trenutne vrednosti spremenljivk po blokih. */
+		private final Map<Block, Map<Key, Instr>> defs = new HashMap<Block, Map<Key, Instr>>();
+
+		/** Funkcije phi v blokih, katerih predhodniki se niso vsi obdelani. */
+		private final Map<Block, Map<Key, Phi>> incompletePhis = new HashMap<Block, Map<Key, Phi>>();
+
+		/** Bloki, katerih predhodniki so vsi obdelani. */
+		private final Set<Block> sealed = new HashSet<Block>();
+
+		/**
+		 * Ustvari nove vrednosti spremenljivk.
+		 *
+		 * @param fun Funkcija.
+		 */
+		public Variables(final IR.Function fun) {
+			this.fun = fun;
+		}
+
+		/**
+		 * Vrne vrednost spremenljivke ob vstopu v funkcijo.
+		 *
+		 * @param key Ime spremenljivke.
+		 * @return Vrednost spremenljivke ob vstopu v funkcijo.
+		 */
+		protected abstract Instr entryValue(Key key);
+
+		/**
+		 * Vrne odmik besede v klicnem zapisu, ki ga predstavlja spremenljivka.
+		 *
+		 * @param key Ime spremenljivke.
+		 * @return Odmik besede v klicnem zapisu ali {@code null}.
+		 */
+		protected abstract Integer slot(Key key);
+
+		/**
+		 * Zapise vrednost spremenljivke v bloku.
+		 *
+		 * @param block Blok.
+		 * @param key   Ime spremenljivke.
+		 * @param value Vrednost.
+		 */
+		public void write(final Block block, final Key key, final Instr value) {
+			defs.computeIfAbsent(block, _ -> new HashMap<Key, Instr>()).put(key, value);
+		}
+
+		/**
+		 * Vrne vrednost spremenljivke v bloku.
+		 *
+		 * @param block Blok.
+		 * @param key   Ime spremenljivke.
+		 * @return Vrednost spremenljivke.
+		 */
+		public Instr read(final Block block, final Key key) {
+			Instr value = defs.getOrDefault(block, Map.of()).get(key);
+			if (value != null)
+				return value;
+			if (!sealed.contains(block)) {
+				final Phi phi = phi(block, key);
+				incompletePhis.computeIfAbsent(block, _ -> new LinkedHashMap<Key, Phi>()).put(key, phi);
+				value = phi;
+			} else if (block.preds.isEmpty())
+				value = entryValue(key);
+			else if (block.preds.size() == 1)
+				value = read(block.preds.getFirst(), key);
+			else {
+				final Phi phi = phi(block, key);
+				write(block, key, phi);
+				for (final Block pred : block.preds)
+					phi.ops.add(read(pred, key));
+				value = phi;
+			}
+			write(block, key, value);
+			return value;
+		}
+
+		/**
+		 * Oznaci, da so vsi predhodniki bloka obdelani.
+		 *
+		 * @param block Blok.
+		 */
+		public void seal(final Block block) {
+			if (!sealed.add(block))
+				return;
+			for (final Map.Entry<Key, Phi> incomplete : incompletePhis.getOrDefault(block, Map.of()).entrySet())
+				for (final Block pred : block.preds)
+					incomplete.getValue().ops.add(read(pred, incomplete.getKey()));
+		}
+
+		/**
+		 * Ali so vsi predhodniki bloka obdelani.
+		 *
+		 * @param block Blok.
+		 * @return Ali so vsi predhodniki bloka obdelani.
+		 */
+		public boolean isSealed(final Block block) {
+			return sealed.contains(block);
+		}
+
+		/**
+		 * Ustvari novo (prazno) funkcijo phi na zacetku bloka.
+		 *
+		 * @param block Blok.
+		 * @param key   Ime spremenljivke.
+		 * @return Funkcija phi.
+		 */
+		private Phi phi(final Block block, final Key key) {
+			final Phi phi = fun.add(new Phi(slot(key), null));
+			phi.block = block;
+			block.phis.add(phi);
+			return phi;
+		}
+
+	}
+
+	/**
+	 * Vrednost na danem mestu sklada.
+	 *
+	 * @param index Mesto na skladu (od dna navzgor).
+	 */
+	private record StackVar(int index) {
+	}
+
+	/**
+	 * Virtualni register klicnega zapisa.
+	 *
+	 * @param reg Stevilka virtualnega registra.
+	 */
+	private record VReg(int reg) {
+	}
+
+	/**
+	 * Gradnja vmesne predstavitve iz kode skladovnega stroja.
+	 */
+	private static class Builder {
+
+		/** Koda funkcije. */
+		private final List<PDM.CodeInstr> code;
+
+		/** Klicni zapis funkcije. */
+		private final Mem.Frame frame;
+
+		/** Vsebina podatkov po labelah. */
+		private final Map<Integer, List<Integer>> data;
+
+		/** Funkcija. */
+		private IR.Function fun;
+
+		/** Koda posameznih blokov. */
+		private final Map<Block, List<PDM.CodeInstr>> blockCode = new HashMap<Block, List<PDM.CodeInstr>>();
+
+		/** Bloki po labelah. */
+		private final Map<Integer, Block> labels = new HashMap<Integer, Block>();
+
+		/** Globina sklada ob vstopu v blok. */
+		private final Map<Block, Integer> depths = new HashMap<Block, Integer>();
+
+		/** Vrednosti virtualnih registrov. */
+		private Variables<VReg> regVars;
+
+		/** Ocena stevila izvedenih ukazov prvotne kode. */
+		public long cost = 0;
+
+		/**
+		 * Ustvari novo gradnjo vmesne predstavitve.
+		 *
+		 * @param code  Koda funkcije.
+		 * @param frame Klicni zapis funkcije.
+		 * @param data  Vsebina podatkov po labelah.
+		 */
+		public Builder(final List<PDM.CodeInstr> code, final Mem.Frame frame, final Map<Integer, List<Integer>> data) {
+			this.code = code;
+			this.frame = frame;
+			this.data = data;
+		}
+
+		/**
+		 * Zgradi vmesno predstavitev funkcije.
+		 *
+		 * @return Funkcija v vmesni predstavitvi.
+		 */
+		public IR.Function build() {
+			split();
+			connect();
+			execute();
+			final Cfg cfg = new Cfg(fun);
+			for (final Block block : fun.blocks)
+				cost += (long) cfg.weight(block) * blockCode.get(block).stream()
+						.filter(instr -> !(instr instanceof PDM.LABEL)).count();
+			if (fun.frameSize > 8)
+				cost += 2;
+			removeTrivialPhis(fun);
+			promote();
+			removeTrivialPhis(fun);
+			return fun;
+		}
+
+		/**
+		 * Razdeli kodo na osnovne bloke.
+		 */
+		private void split() {
+			if (!(code.getFirst() instanceof PDM.LABEL funLabel))
+				throw new Unsupported("no function label");
+			int start = 1;
+			int frameSize = 8;
+			if ((code.size() > 2) && (code.get(1) instanceof PDM.PUSH size) && (size.intc < 0)
+					&& (code.get(2) instanceof PDM.POPN)) {
+				frameSize = 8 - size.intc;
+				start = 3;
+			}
+			fun = new IR.Function(funLabel.label, frame, frameSize);
+			Block block = new Block(funLabel.label);
+			fun.blocks.add(block);
+			blockCode.put(block, new ArrayList<PDM.CodeInstr>());
+			boolean terminated = false;
+			for (final PDM.CodeInstr instr : code.subList(start, code.size())) {
+				if (instr instanceof PDM.LABEL label) {
+					if ((label.label == fun.label) || labels.containsKey(label.label))
+						throw new Unsupported("duplicate label " + Labels.name(label.label));
+					block = new Block(label.label);
+					labels.put(label.label, block);
+					fun.blocks.add(block);
+					blockCode.put(block, new ArrayList<PDM.CodeInstr>());
+					terminated = false;
+				}
+				if (terminated)
+					continue;
+				blockCode.get(block).add(instr);
+				if ((instr instanceof PDM.UJMP) || (instr instanceof PDM.CJMP) || (instr instanceof PDM.RETN)
+						|| (instr instanceof PDM.TCALL))
+					terminated = true;
+			}
+		}
+
+		/**
+		 * Doloci naslednike in predhodnike blokov.
+		 */
+		private void connect() {
+			for (int b = 0; b < fun.blocks.size(); b++) {
+				final Block block = fun.blocks.get(b);
+				final List<PDM.CodeInstr> instrs = blockCode.get(block);
+				for (int i = 0; i < instrs.size(); i++) {
+					if (!((instrs.get(i) instanceof PDM.NAME name) && labels.containsKey(name.label)))
+						continue;
+					final boolean jump = (i + 1 < instrs.size()) && (instrs.get(i + 1) instanceof PDM.UJMP);
+					final boolean fstTarget = (i + 2 < instrs.size()) && (instrs.get(i + 2) instanceof PDM.CJMP)
+							&& (instrs.get(i + 1) instanceof PDM.NAME next) && labels.containsKey(next.label);
+					final boolean sndTarget = (i > 0) && (i + 1 < instrs.size())
+							&& (instrs.get(i + 1) instanceof PDM.CJMP) && (instrs.get(i - 1) instanceof PDM.NAME prev)
+							&& labels.containsKey(prev.label);
+					if (!(jump || fstTarget || sndTarget))
+						throw new Unsupported("address of label " + Labels.name(name.label));
+				}
+				final PDM.CodeInstr last = instrs.isEmpty() ? null : instrs.getLast();
+				final Report.Locatable loc = last == null ? null : ((PDM.INSTR) last).debugLocation;
+				switch (last) {
+					case PDM.UJMP _ -> block.term = new Jump(target(instrs, 2), loc);
+					case PDM.CJMP _ -> {
+						final Block thenBlock = target(instrs, 3);
+						final Block elseBlock = target(instrs, 2);
+						block.term = thenBlock == elseBlock ? new Jump(thenBlock, loc)
+								: new Branch(null, thenBlock, elseBlock, loc);
+					}
+					case PDM.RETN _, PDM.TCALL _ -> {
+					}
+					case null, default -> {
+						if (b + 1 == fun.blocks.size())
+							throw new Unsupported("no return");
+						block.term = new Jump(fun.blocks.get(b + 1), loc);
+					}
+				}
+				if (block.term != null)
+					fun.add(block.term).block = block;
+			}
+			fun.blocks.retainAll(fun.reversePostorder());
+			for (final Block block : fun.blocks)
+				for (final Block succ : block.succs())
+					succ.preds.add(block);
+			if (!fun.entry().preds.isEmpty())
+				throw new Unsupported("jump to function entry");
+		}
+
+		/**
+		 * Vrne ciljni blok skoka.
+		 *
+		 * @param instrs Koda bloka.
+		 * @param pos    Mesto ukaza {@link PDM.NAME} od konca kode bloka.
+		 * @return Ciljni blok skoka.
+		 */
+		private Block target(final List<PDM.CodeInstr> instrs, final int pos) {
+			if ((instrs.size() < pos) || !(instrs.get(instrs.size() - pos) instanceof PDM.NAME name)
+					|| !labels.containsKey(name.label))
+				throw new Unsupported("computed jump");
+			return labels.get(name.label);
+		}
+
+		/**
+		 * Simbolicno izvede kodo blokov in zgradi ukaze vmesne predstavitve.
+		 */
+		private void execute() {
+			final Variables<StackVar> stackVars = new Variables<StackVar>(fun) {
+				@Override
+				protected Instr entryValue(final StackVar key) {
+					throw new Unsupported("stack underflow");
+				}
+
+				@Override
+				protected Integer slot(final StackVar key) {
+					return null;
+				}
+			};
+			regVars = new Variables<VReg>(fun) {
+				@Override
+				protected Instr entryValue(final VReg key) {
+					return insert(fun, fun.entry(), 0, new Const(0, null));
+				}
+
+				@Override
+				protected Integer slot(final VReg key) {
+					return null;
+				}
+			};
+			final Set<Block> done = new HashSet<Block>();
+			depths.put(fun.entry(), 0);
+			stackVars.seal(fun.entry());
+			regVars.seal(fun.entry());
+			for (final Block block : fun.reversePostorder()) {
+				final List<Instr> stack = new ArrayList<Instr>();
+				for (int index = 0; index < depths.get(block); index++)
+					stack.add(stackVars.read(block, new StackVar(index)));
+				block.stack.addAll(stack);
+				for (final PDM.CodeInstr instr : blockCode.get(block))
+					execute(block, instr, stack);
+				if (block.term == null)
+					throw new Unsupported("no return");
+				for (int index = 0; index < stack.size(); index++)
+					stackVars.write(block, new StackVar(index), stack.get(index));
+				done.add(block);
+				for (final Block succ : block.succs()) {
+					if (depths.getOrDefault(succ, stack.size()) != stack.size())
+						throw new Unsupported("stack depth mismatch");
+					depths.put(succ, stack.size());
+					if (done.containsAll(succ.preds)) {
+						stackVars.seal(succ);
+						regVars.seal(succ);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Vzame vrednost z vrha sklada.
+		 *
+		 * @param stack Sklad.
+		 * @return Vrednost z vrha sklada.
+		 */
+		private static Instr pop(final List<Instr> stack) {
+			if (stack.isEmpty())
+				throw new Unsupported("stack underflow");
+			return stack.removeLast();
+		}
+
+		/**
+		 * Simbolicno izvede ukaz.
+		 *
+		 * @param block Blok.
+		 * @param instr Ukaz.
+		 * @param stack Sklad.
+		 */
+		private void execute(final Block block, final PDM.CodeInstr instr, final List<Instr> stack) {
+			final Report.Locatable loc = ((PDM.INSTR) instr).debugLocation;
+			switch (instr) {
+				case PDM.LABEL _ -> {
+				}
+				case PDM.PUSH push -> stack.add(append(fun, block, new Const(push.intc, loc)));
+				case PDM.NAME name -> stack.add(labels.containsKey(name.label) ? new Name(name.label, loc)
+						: append(fun, block, new Name(name.label, loc)));
+				case PDM.REGN regn -> {
+					if (regn.regn != PDM.REGN.Reg.FP)
+						throw new Unsupported("register " + regn.regn);
+					stack.add(append(fun, block, new Slot(0, loc)));
+				}
+				case PDM.DISP disp -> stack.add(append(fun, block, new Display(disp.depth, loc)));
+				case PDM.LOAD _ -> stack.add(append(fun, block, new Load(pop(stack), loc)));
+				case PDM.VLOAD vload -> stack.add(regVars.read(block, new VReg(vload.reg)));
+				case PDM.VSAVE vsave -> regVars.write(block, new VReg(vsave.reg), pop(stack));
+				case PDM.SAVE _ -> {
+					final Instr addr = pop(stack);
+					append(fun, block, new Store(pop(stack), addr, loc));
+				}
+				case PDM.INIT _ -> {
+					final Instr init = pop(stack);
+					final Instr dst = pop(stack);
+					final List<Integer> words = init instanceof Name name ? initWords(data.get(name.label)) : null;
+					if ((dst instanceof Slot) && (words != null) && (words.size() <= 1)) {
+						if (words.size() == 1)
+							append(fun, block, new Store(append(fun, block, new Const(words.getFirst(), loc)), dst, loc));
+					} else {
+						append(fun, block, new Init(dst, init, words == null ? null : words.size(), loc));
+					}
+				}
+				case PDM.OPER oper -> {
+					switch (oper.oper) {
+						case NOT, NEG -> stack.add(append(fun, block, new Un(oper.oper, pop(stack), loc)));
+						default -> {
+							final Instr snd = pop(stack);
+							final Instr fst = pop(stack);
+							if ((oper.oper == PDM.OPER.Oper.ADD) && (fst instanceof Slot slot) && (snd instanceof Const c))
+								stack.add(append(fun, block, new Slot(slot.offset + c.value, loc)));
+							else if ((oper.oper == PDM.OPER.Oper.ADD) && (fst instanceof Const c)
+									&& (snd instanceof Slot slot))
+								stack.add(append(fun, block, new Slot(slot.offset + c.value, loc)));
+							else if ((oper.oper == PDM.OPER.Oper.SUB) && (fst instanceof Slot slot)
+									&& (snd instanceof Const c))
+								stack.add(append(fun, block, new Slot(slot.offset - c.value, loc)));
+							else
+								stack.add(append(fun, block, new Bin(oper.oper, fst, snd, loc)));
+						}
+					}
+				}
+				case PDM.POPN _ -> {
+					if (!(pop(stack) instanceof Const size))
+						throw new Unsupported("computed POPN");
+					if (size.value > 0)
+						for (int n = 0; n < (size.value + 3) / 4; n++)
+							pop(stack);
+					else
+						for (int n = 0; n < (-size.value + 3) / 4; n++)
+							stack.add(append(fun, block, new Const(0, loc)));
+				}
+				case PDM.CALL call -> {
+					if (call.debugFrame == null)
+						throw new Unsupported("call without frame");
+					final Instr target = pop(stack);
+					final List<Instr> ops = new ArrayList<Instr>();
+					for (int n = 0; n < call.debugFrame.parsSize / 4; n++)
+						ops.addFirst(pop(stack));
+					ops.add(target);
+					stack.add(append(fun, block, new Call(call.debugFrame, ops, loc)));
+				}
+				case PDM.UJMP _ -> pop(stack);
+				case PDM.CJMP _ -> {
+					pop(stack);
+					pop(stack);
+					final Instr cond = pop(stack);
+					if (block.term instanceof Branch branch)
+						branch.ops.set(0, cond);
+				}
+				case PDM.TCALL tcall -> {
+					// Klic na repnem mestu je klic, katerega rezultat funkcija vrne.
+					if (tcall.debugFrame == null)
+						throw new Unsupported("call without frame");
+					final Instr target = pop(stack);
+					final List<Instr> ops = new ArrayList<Instr>();
+					for (int n = 0; n < tcall.argsSize / 4 + 1; n++)
+						ops.addFirst(pop(stack));
+					ops.add(target);
+					final Instr call = append(fun, block, new Call(tcall.debugFrame, ops, true, loc));
+					block.term = fun.add(new Ret(call, tcall.parsSize, loc));
+					block.term.block = block;
+					stack.clear();
+				}
+				case PDM.RETN _ -> {
+					if (!(pop(stack) instanceof Const parsSize))
+						throw new Unsupported("computed RETN");
+					block.term = fun.add(new Ret(pop(stack), parsSize.value, loc));
+					block.term.block = block;
+					stack.clear();
+				}
+				default -> throw new Unsupported("instruction " + instr);
+			}
+		}
+
+		/**
+		 * Lokalne spremenljivke in parametre, katerih naslov se ne uporablja,
+		 * predstavi z vrednostmi in funkcijami phi.
+		 */
+		private void promote() {
+			int limit = Integer.MAX_VALUE;
+			final Set<Integer> accessed = new TreeSet<Integer>();
+			final Set<Integer> stored = new HashSet<Integer>();
+			final Set<Integer> initialized = new HashSet<Integer>();
+			for (final Block block : fun.blocks) {
+				for (final Instr value : block.stack)
+					if (value instanceof Slot slot)
+						limit = escape(limit, slot.offset);
+				for (final Instr instr : block.all()) {
+					for (int i = 0; i < instr.ops.size(); i++) {
+						if (!(instr.ops.get(i) instanceof Slot slot))
+							continue;
+						if (((instr instanceof Load) && (i == 0)) || ((instr instanceof Store) && (i == 1))) {
+							if (slot.offset % 4 != 0)
+								return;
+							accessed.add(slot.offset);
+							if (instr instanceof Store)
+								stored.add(slot.offset);
+						} else if ((instr instanceof Init init) && (i == 0) && (init.size != null)) {
+							for (int word = 0; word < init.size; word++)
+								initialized.add(slot.offset + 4 * word);
+						} else
+							limit = escape(limit, slot.offset);
+					}
+				}
+			}
+			final Set<Integer> promoted = new HashSet<Integer>();
+			for (final int offset : accessed) {
+				if ((offset >= limit) || initialized.contains(offset) || (offset >= frame.parsSize)
+						|| (offset < -fun.frameSize) || (offset == -4) || (offset == -8))
+					continue;
+				if ((offset >= 0) && !stored.contains(offset))
+					fun.readOnlySlots.add(offset);
+				else
+					promoted.add(offset);
+			}
+			if (promoted.isEmpty())
+				return;
+
+			final Variables<Integer> slotVars = new Variables<Integer>(fun) {
+				@Override
+				protected Instr entryValue(final Integer offset) {
+					final Block entry = fun.entry();
+					if (offset < 0)
+						return insert(fun, entry, 0, new Const(0, null));
+					final Slot slot = insert(fun, entry, 0, new Slot(offset, null));
+					return insert(fun, entry, 1, new Load(slot, null));
+				}
+
+				@Override
+				protected Integer slot(final Integer offset) {
+					return offset;
+				}
+			};
+			final Map<Instr, Instr> replacement = new HashMap<Instr, Instr>();
+			final Set<Block> done = new HashSet<Block>();
+			slotVars.seal(fun.entry());
+			for (final Block block : fun.reversePostorder()) {
+				for (final Instr instr : new ArrayList<Instr>(block.instrs)) {
+					if ((instr instanceof Load) && (instr.ops.get(0) instanceof Slot slot)
+							&& promoted.contains(slot.offset)) {
+						replacement.put(instr, slotVars.read(block, slot.offset));
+						block.instrs.remove(instr);
+					}
+					if ((instr instanceof Store) && (instr.ops.get(1) instanceof Slot slot)
+							&& promoted.contains(slot.offset)) {
+						slotVars.write(block, slot.offset, resolve(replacement, instr.ops.get(0)));
+						block.instrs.remove(instr);
+					}
+				}
+				done.add(block);
+				for (final Block succ : block.succs())
+					if (done.containsAll(succ.preds))
+						slotVars.seal(succ);
+			}
+			fun.replace(replacement);
+			fun.promotedSlots.addAll(promoted);
+		}
+
+	}
+
+	// --- GRAF POTEKA ---
+
+	/**
+	 * Dominatorji, zanke in utezi blokov funkcije.
+	 */
+	private static class Cfg {
+
+		/** Bloki v obratnem vrstnem redu obiska v globino. */
+		public final List<Block> rpo;
+
+		/** Mesta blokov v obratnem vrstnem redu obiska v globino. */
+		private final Map<Block, Integer> index = new HashMap<Block, Integer>();
+
+		/** Neposredni dominatorji blokov (vstopni blok ga nima). */
+		private final Map<Block, Block> idom = new HashMap<Block, Block>();
+
+		/** Otroci blokov v drevesu dominatorjev. */
+		public final Map<Block, List<Block>> children = new HashMap<Block, List<Block>>();
+
+		/** Zanke: glava zanke in bloki zanke (skupaj z glavo). */
+		public final Map<Block, Set<Block>> loops = new LinkedHashMap<Block, Set<Block>>();
+
+		/** Globine gnezdenja zank, v katerih so bloki. */
+		private final Map<Block, Integer> depth = new HashMap<Block, Integer>();
+
+		/**
+		 * Izracuna dominatorje, zanke in utezi blokov funkcije.
+		 *
+		 * @param fun Funkcija.
+		 */
+		public Cfg(final IR.Function fun) {
+			rpo = fun.reversePostorder();
+			for (int i = 0; i < rpo.size(); i++) {
+				index.put(rpo.get(i), i);
+				children.put(rpo.get(i), new ArrayList<Block>());
+			}
+
+			// Dominatorji (Cooper, Harvey in Kennedy, 2001).
+			final Block entry = fun.entry();
+			idom.put(entry, entry);
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (final Block block : rpo.subList(1, rpo.size())) {
+					Block newIdom = null;
+					for (final Block pred : block.preds) {
+						if (!idom.containsKey(pred))
+							continue;
+						newIdom = newIdom == null ? pred : intersect(pred, newIdom);
+					}
+					if (idom.get(block) != newIdom) {
+						idom.put(block, newIdom);
+						changed = true;
+					}
+				}
+			}
+			idom.remove(entry);
+			for (final Block block : rpo.subList(1, rpo.size()))
+				children.get(idom.get(block)).add(block);
+
+			// Naravne zanke.
+			for (final Block block : rpo) {
+				for (final Block header : block.succs()) {
+					if (!dominates(header, block))
+						continue;
+					final Set<Block> body = loops.computeIfAbsent(header, _ -> new HashSet<Block>());
+					body.add(header);
+					final Deque<Block> worklist = new ArrayDeque<Block>();
+					if (body.add(block))
+						worklist.add(block);
+					while (!worklist.isEmpty())
+						for (final Block pred : worklist.removeFirst().preds)
+							if (index.containsKey(pred) && body.add(pred))
+								worklist.add(pred);
+				}
+			}
+			for (final Set<Block> body : loops.values())
+				for (final Block block : body)
+					depth.merge(block, 1, Integer::sum);
+		}
+
+		/**
+		 * Vrne najblizjega skupnega dominatorja blokov.
+		 *
+		 * @param fst Prvi blok.
+		 * @param snd Drugi blok.
+		 * @return Najblizji skupni dominator.
+		 */
+		private Block intersect(Block fst, Block snd) {
+			while (fst != snd) {
+				while (index.get(fst) > index.get(snd))
+					fst = idom.get(fst);
+				while (index.get(snd) > index.get(fst))
+					snd = idom.get(snd);
+			}
+			return fst;
+		}
+
+		/**
+		 * Ali blok dominira drug blok.
+		 *
+		 * @param dom   Blok.
+		 * @param block Drug blok.
+		 * @return Ali {@code dom} dominira {@code block}.
+		 */
+		public boolean dominates(final Block dom, Block block) {
+			while (block != null) {
+				if (block == dom)
+					return true;
+				block = idom.get(block);
+			}
+			return false;
+		}
+
+		/**
+		 * Vrne oceno, kolikokrat se izvede blok.
+		 *
+		 * @param block Blok.
+		 * @return Ocena, kolikokrat se izvede blok.
+		 */
+		public int weight(final Block block) {
+			int weight = 1;
+			for (int d = 0; d < Math.min(depth.getOrDefault(block, 0), 6); d++)
+				weight *= 10;
+			return weight;
+		}
+
+	}
+
+	// --- PREHODI ---
+
+	/** Vrednost, ki ni konstantna. */
+	private static final Object BOTTOM = new Object();
+
+	/**
+	 * Redko pogojno sirjenje konstant (Wegman in Zadeck, 1991).
+	 *
+	 * @param fun Funkcija.
+	 * @return Ali se je funkcija spremenila.
+	 */
+	private static boolean sccp(final IR.Function fun) {
+		record Edge(Block from, Block to) {
+		}
+		final Map<Instr, Object> values = new HashMap<Instr, Object>();
+		final Set<Block> executable = new HashSet<Block>();
+		final Set<Edge> edges = new HashSet<Edge>();
+		final Deque<Edge> flowWork = new ArrayDeque<Edge>();
+		final Deque<Instr> ssaWork = new ArrayDeque<Instr>();
+		final Map<Instr, List<Instr>> uses = fun.uses();
+
+		flowWork.add(new Edge(null, fun.entry()));
+		while (!flowWork.isEmpty() || !ssaWork.isEmpty()) {
+			final List<Instr> visit = new ArrayList<Instr>();
+			if (!flowWork.isEmpty()) {
+				final Edge edge = flowWork.removeFirst();
+				if (!edges.add(edge))
+					continue;
+				if (executable.add(edge.to()))
+					visit.addAll(edge.to().all());
+				else
+					visit.addAll(edge.to().phis);
+			} else {
+				final Instr instr = ssaWork.removeFirst();
+				if (executable.contains(instr.block))
+					visit.add(instr);
+			}
+			for (final Instr instr : visit) {
+				final Block block = instr.block;
+				final Object value = switch (instr) {
+					case Phi phi -> {
+						Object meet = null;
+						for (int i = 0; i < phi.ops.size(); i++)
+							if (edges.contains(new Edge(block.preds.get(i), block)))
+								meet = meet(meet, values.get(phi.ops.get(i)));
+						yield meet;
+					}
+					case Jump jump -> {
+						flowWork.add(new Edge(block, jump.target));
+						yield null;
+					}
+					case Branch branch -> {
+						final Object cond = values.get(branch.ops.get(0));
+						if ((cond == BOTTOM) || ((cond instanceof Integer c) && (c != 0)))
+							flowWork.add(new Edge(block, branch.thenBlock));
+						if ((cond == BOTTOM) || ((cond instanceof Integer c) && (c == 0)))
+							flowWork.add(new Edge(block, branch.elseBlock));
+						yield null;
+					}
+					case Const c -> c.value;
+					case Un un -> fold(un.oper, null, values.get(un.ops.get(0)));
+					case Bin bin -> fold(bin.oper, values.get(bin.ops.get(0)), values.get(bin.ops.get(1)));
+					default -> instr.hasValue() ? BOTTOM : null;
+				};
+				if ((value != null) && !value.equals(values.get(instr))) {
+					values.put(instr, value);
+					ssaWork.addAll(uses.getOrDefault(instr, List.of()));
+				}
+			}
+		}
+
+		boolean changed = false;
+		final Map<Instr, Instr> replacement = new HashMap<Instr, Instr>();
+		for (final Block block : fun.blocks) {
+			if (!executable.contains(block))
+				continue;
+			for (final Phi phi : block.phis)
+				if (values.get(phi) instanceof Integer value)
+					replacement.put(phi, insert(fun, block, 0, new Const(value, phi.loc)));
+			for (int i = 0; i < block.instrs.size(); i++) {
+				final Instr instr = block.instrs.get(i);
+				if (((instr instanceof Un) || (instr instanceof Bin)) && (values.get(instr) instanceof Integer value)) {
+					final Const c = fun.add(new Const(value, instr.loc));
+					c.block = block;
+					block.instrs.set(i, c);
+					replacement.put(instr, c);
+				}
+			}
+			if ((block.term instanceof Branch branch) && (values.get(branch.ops.get(0)) instanceof Integer cond)) {
+				final Block taken = cond != 0 ? branch.thenBlock : branch.elseBlock;
+				final Block untaken = cond != 0 ? branch.elseBlock : branch.thenBlock;
+				untaken.removePred(untaken.preds.indexOf(block));
+				block.term = fun.add(new Jump(taken, branch.loc));
+				block.term.block = block;
+				changed = true;
+			}
+		}
+		if (!replacement.isEmpty()) {
+			for (final Block block : fun.blocks)
+				block.phis.removeIf(replacement::containsKey);
+			fun.replace(replacement);
+			changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * Vrne stik vrednosti v mrezi konstant.
+	 *
+	 * @param fst Prva vrednost ({@code null} pomeni nedoloceno vrednost).
+	 * @param snd Druga vrednost.
+	 * @return Stik vrednosti.
+	 */
+	private static Object meet(final Object fst, final Object snd) {
+		if (fst == null)
+			return snd;
+		if (snd == null)
+			return fst;
+		return fst.equals(snd) ? fst : BOTTOM;
+	}
+
+	/**
+	 * Izracuna vrednost operacije v mrezi konstant.
+	 *
+	 * @param oper Operacija.
+	 * @param fst  Prvi operand ({@code null} pri enomestnih operacijah).
+	 * @param snd  Drugi operand.
+	 * @return Vrednost operacije.
+	 */
+	private static Object fold(final PDM.OPER.Oper oper, final Object fst, final Object snd) {
+		switch (oper) {
+			case NOT, NEG -> {
+				if (!(snd instanceof Integer value))
+					return snd;
+				return oper == PDM.OPER.Oper.NOT ? (value == 0 ? 1 : 0) : -value;
+			}
+			case AND, MUL -> {
+				if (Integer.valueOf(0).equals(fst) || Integer.valueOf(0).equals(snd))
+					return 0;
+			}
+			case OR -> {
+				if (((fst instanceof Integer f) && (f != 0)) || ((snd instanceof Integer s) && (s != 0)))
+					return 1;
+			}
+			default -> {
+			}
+		}
+		if ((fst == BOTTOM) || (snd == BOTTOM))
+			return BOTTOM;
+		if (!(fst instanceof Integer f) || !(snd instanceof Integer s))
+			return null;
+		return switch (oper) {
+			case OR -> (f != 0) || (s != 0) ? 1 : 0;
+			case AND -> (f != 0) && (s != 0) ? 1 : 0;
+			case EQU -> f.intValue() == s.intValue() ? 1 : 0;
+			case NEQ -> f.intValue() != s.intValue() ? 1 : 0;
+			case GTH -> f > s ? 1 : 0;
+			case LTH -> f < s ? 1 : 0;
+			case GEQ -> f >= s ? 1 : 0;
+			case LEQ -> f <= s ? 1 : 0;
+			case ADD -> f + s;
+			case SUB -> f - s;
+			case MUL -> f * s;
+			case DIV -> s == 0 ? BOTTOM : f / s;
+			case MOD -> s == 0 ? BOTTOM : f % s;
+			default -> BOTTOM;
+		};
+	}
+
+	/**
+	 * Globalno stevilcenje vrednosti po drevesu dominatorjev.
+	 *
+	 * @param fun Funkcija.
+	 * @return Ali se je funkcija spremenila.
+	 */
+	private static boolean gvn(final IR.Function fun) {
+		final Cfg cfg = new Cfg(fun);
+		final Map<Instr, Instr> replacement = new HashMap<Instr, Instr>();
+		final Map<List<Object>, Instr> table = new HashMap<List<Object>, Instr>();
+		final Deque<Object> work = new ArrayDeque<Object>();
+		work.push(fun.entry());
+		while (!work.isEmpty()) {
+			// Zakljucek obiska poddrevesa: odstranitev kljucev iz tabele.
+			if (work.peek() instanceof List<?> scope) {
+				work.pop();
+				table.keySet().removeAll(scope);
+				continue;
+			}
+			final Block block = (Block) work.pop();
+			final List<List<Object>> scope = new ArrayList<List<Object>>();
+			final List<Instr> instrs = new ArrayList<Instr>(block.phis);
+			instrs.addAll(block.instrs);
+			for (final Instr instr : instrs) {
+				instr.ops.replaceAll(op -> resolve(replacement, op));
+				final List<Object> key = key(fun, instr);
+				if (key == null)
+					continue;
+				final Instr same = table.get(key);
+				if (same != null) {
+					replacement.put(instr, same);
+					if (instr instanceof Phi)
+						block.phis.remove(instr);
+					else
+						block.instrs.remove(instr);
+				} else {
+					table.put(key, instr);
+					scope.add(key);
+				}
+			}
+			work.push(scope);
+			for (final Block child : cfg.children.get(block).reversed())
+				work.push(child);
+		}
+		fun.replace(replacement);
+		return !replacement.isEmpty();
+	}
+
+	/**
+	 * Vrne kljuc vrednosti za globalno stevilcenje vrednosti.
+	 *
+	 * @param fun   Funkcija.
+	 * @param instr Ukaz.
+	 * @return Kljuc vrednosti ali {@code null}, ce ukaza ni mogoce nadomestiti z
+	 *         enakim ukazom.
+	 */
+	private static List<Object> key(final IR.Function fun, final Instr instr) {
+		return switch (instr) {
+			case Const c -> List.of("const", c.value);
+			case Name name -> List.of("name", name.label);
+			case Slot slot -> List.of("slot", slot.offset);
+			case Display display -> List.of("display", display.depth);
+			case Un un -> List.of("un", un.oper, un.ops.get(0));
+			case Bin bin when bin.isPure() -> {
+				Instr fst = bin.ops.get(0);
+				Instr snd = bin.ops.get(1);
+				if (switch (bin.oper) {
+					case ADD, MUL, EQU, NEQ, AND, OR -> fst.id > snd.id;
+					default -> false;
+				}) {
+					final Instr tmp = fst;
+					fst = snd;
+					snd = tmp;
+				}
+				yield List.of("bin", bin.oper, fst, snd);
+			}
+			case Load load when remat(fun, load) -> List.of("load", ((Slot) load.ops.get(0)).offset);
+			case Phi phi -> List.of("phi", phi.block, List.copyOf(phi.ops));
+			default -> null;
+		};
+	}
+
+	/**
+	 * Premikanje izracunov, ki se v zanki ne spreminjajo, pred zanko.
+	 *
+	 * @param fun Funkcija.
+	 * @return Ali se je funkcija spremenila.
+	 */
+	private static boolean licm(final IR.Function fun) {
+		boolean changed = false;
+		// Najprej notranje zanke.
+		final Cfg initial = new Cfg(fun);
+		final List<Block> headers = new ArrayList<Block>(initial.loops.keySet());
+		headers.sort(Comparator.comparing(header -> initial.loops.get(header).size()));
+		for (final Block header : headers) {
+			final Cfg cfg = new Cfg(fun);
+			final Set<Block> body = cfg.loops.get(header);
+			if ((body == null) || !header.stack.isEmpty())
+				continue;
+
+			// Izracuni, ki se v zanki ne spreminjajo.
+			final Set<Instr> invariant = new LinkedHashSet<Instr>();
+			boolean grown = true;
+			while (grown) {
+				grown = false;
+				for (final Block block : cfg.rpo) {
+					if (!body.contains(block))
+						continue;
+					for (final Instr instr : block.instrs) {
+						if (!instr.isPure() || remat(fun, instr) || invariant.contains(instr))
+							continue;
+						if (instr.ops.stream().allMatch(op -> remat(fun, op) || !body.contains(op.block)
+								|| invariant.contains(op)))
+							grown |= invariant.add(instr);
+					}
+				}
+			}
+			if (invariant.isEmpty())
+				continue;
+
+			// Izracuni, ki se premaknejo: drevesa, katerih cena v zanki je vecja od
+			// branja zacasne spremenljivke.
+			final Map<Instr, List<Instr>> uses = fun.uses();
+			final Set<Instr> hoisted = new HashSet<Instr>();
+			for (final Instr instr : invariant) {
+				final boolean root = uses.getOrDefault(instr, List.of()).stream()
+						.anyMatch(use -> !invariant.contains(use))
+						|| body.stream().anyMatch(block -> block.stack.contains(instr));
+				if (root && (cost(fun, invariant, instr) > 4))
+					hoist(invariant, instr, hoisted);
+			}
+			if (hoisted.isEmpty())
+				continue;
+
+			final Block preheader = preheader(fun, header, body);
+			for (final Block block : cfg.rpo) {
+				if (!body.contains(block))
+					continue;
+				for (final Instr instr : new ArrayList<Instr>(block.instrs)) {
+					if (!hoisted.contains(instr))
+						continue;
+					block.instrs.remove(instr);
+					instr.block = preheader;
+					preheader.instrs.add(instr);
+				}
+			}
+			changed = true;
+		}
+		return changed;
+	}
+
+	/**
+	 * Vrne ceno izracuna vrednosti v zanki.
+	 *
+	 * @param fun       Funkcija.
+	 * @param invariant Izracuni, ki se v zanki ne spreminjajo.
+	 * @param value     Vrednost.
+	 * @return Cena izracuna vrednosti v zanki.
+	 */
+	private static int cost(final IR.Function fun, final Set<Instr> invariant, final Instr value) {
+		if (remat(fun, value))
+			return value instanceof Load ? 4 : value instanceof Slot slot && slot.offset != 0 ? 3 : 1;
+		if (!invariant.contains(value))
+			return 4;
+		int cost = 1;
+		for (final Instr op : value.ops)
+			cost += cost(fun, invariant, op);
+		return cost;
+	}
+
+	/**
+	 * Oznaci izracun in vse njegove nespremenljive operande za premik pred zanko.
+	 *
+	 * @param invariant Izracuni, ki se v zanki ne spreminjajo.
+	 * @param value     Vrednost.
+	 * @param hoisted   Izracuni, ki se premaknejo pred zanko.
+	 */
+	private static void hoist(final Set<Instr> invariant, final Instr value, final Set<Instr> hoisted) {
+		if (invariant.contains(value) && hoisted.add(value))
+			for (final Instr op : value.ops)
+				hoist(invariant, op, hoisted);
+	}
+
+	/**
+	 * Vrne (in po potrebi ustvari) blok pred zanko, ki se izvede tik pred vstopom v
+	 * zanko.
+	 *
+	 * @param fun    Funkcija.
+	 * @param header Glava zanke.
+	 * @param body   Bloki zanke.
+	 * @return Blok pred zanko.
+	 */
+	private static Block preheader(final IR.Function fun, final Block header, final Set<Block> body) {
+		final List<Integer> outside = new ArrayList<Integer>();
+		for (int pred = 0; pred < header.preds.size(); pred++)
+			if (!body.contains(header.preds.get(pred)))
+				outside.add(pred);
+		if ((outside.size() == 1) && (header.preds.get(outside.getFirst()).succs().size() == 1))
+			return header.preds.get(outside.getFirst());
+
+		final Block preheader = new Block(Labels.label(header.label, "#preheader"));
+		fun.blocks.add(fun.blocks.indexOf(header), preheader);
+		preheader.term = fun.add(new Jump(header, header.term.loc));
+		preheader.term.block = preheader;
+		for (final int pred : outside) {
+			final Block block = header.preds.get(pred);
+			preheader.preds.add(block);
+			switch (block.term) {
+				case Jump jump -> jump.target = preheader;
+				case Branch branch -> {
+					if (branch.thenBlock == header)
+						branch.thenBlock = preheader;
+					if (branch.elseBlock == header)
+						branch.elseBlock = preheader;
+				}
+				default -> throw new Report.InternalError();
+			}
+		}
+		for (final Phi phi : header.phis) {
+			final List<Instr> ops = new ArrayList<Instr>();
+			for (final int pred : outside)
+				ops.add(phi.ops.get(pred));
+			Instr value = ops.getFirst();
+			if (ops.size() > 1) {
+				final Phi prePhi = fun.add(new Phi(phi.slot, phi.loc));
+				prePhi.block = preheader;
+				prePhi.ops.addAll(ops);
+				preheader.phis.add(prePhi);
+				value = prePhi;
+			}
+			final List<Instr> inside = new ArrayList<Instr>();
+			for (int pred = 0; pred < header.preds.size(); pred++)
+				if (!outside.contains(pred))
+					inside.add(phi.ops.get(pred));
+			phi.ops.clear();
+			phi.ops.add(value);
+			phi.ops.addAll(inside);
+		}
+		final List<Block> inside = new ArrayList<Block>();
+		for (int pred = 0; pred < header.preds.size(); pred++)
+			if (!outside.contains(pred))
+				inside.add(header.preds.get(pred));
+		header.preds.clear();
+		header.preds.add(preheader);
+		header.preds.addAll(inside);
+		return preheader;
+	}
+
+	/**
+	 * Odstranjevanje mrtve kode.
+	 *
+	 * @param fun Funkcija.
+	 * @return Ali se je funkcija spremenila.
+	 */
+	private static boolean dce(final IR.Function fun) {
+		final Set<Instr> live = new HashSet<Instr>();
+		final Deque<Instr> worklist = new ArrayDeque<Instr>();
+		for (final Block block : fun.blocks)
+			for (final Instr instr : block.all())
+				if (!instr.isPure() && !(instr instanceof Load) && live.add(instr))
+					worklist.add(instr);
+		while (!worklist.isEmpty())
+			for (final Instr op : worklist.removeFirst().ops)
+				if (live.add(op))
+					worklist.add(op);
+		boolean changed = false;
+		for (final Block block : fun.blocks) {
+			changed |= block.phis.removeIf(phi -> !live.contains(phi));
+			changed |= block.instrs.removeIf(instr -> !live.contains(instr));
+			block.stack.removeIf(value -> !live.contains(value));
+		}
+		return changed;
+	}
+
+	// --- PREVAJANJE NAZAJ V KODO SKLADOVNEGA STROJA ---
+
+	/** Del kode bloka pred dodelitvijo mest zacasnim spremenljivkam. */
+	private sealed interface Item permits Code, Temp, ParamLoad, Moves {
+	}
+
+	/**
+	 * Ukaz skladovnega stroja.
+	 *
+	 * @param instr Ukaz.
+	 */
+	private record Code(PDM.CodeInstr instr) implements Item {
+	}
+
+	/**
+	 * Branje ali pisanje zacasne spremenljivke.
+	 *
+	 * @param value Vrednost, ki jo hrani zacasna spremenljivka.
+	 * @param save  Ali gre za pisanje.
+	 * @param loc   Lokacija.
+	 */
+	private record Temp(Instr value, boolean save, Report.Locatable loc) implements Item {
+	}
+
+	/**
+	 * Prenos parametra v zacasno spremenljivko.
+	 *
+	 * @param value  Vrednost parametra ob vstopu v funkcijo.
+	 * @param offset Odmik parametra.
+	 * @param loc    Lokacija.
+	 */
+	private record ParamLoad(Instr value, int offset, Report.Locatable loc) implements Item {
+	}
+
+	/**
+	 * Hkratni prenos vrednosti v zacasne spremenljivke funkcij phi.
+	 *
+	 * @param sources    Vrednosti (prvih {@code numOnStack} je ze na skladu).
+	 * @param numOnStack Stevilo vrednosti, ki so ze na skladu.
+	 * @param targets    Funkcije phi.
+	 * @param loc        Lokacija.
+	 */
+	private record Moves(List<Instr> sources, int numOnStack, List<Instr> targets, Report.Locatable loc)
+			implements Item {
+	}
+
+	/**
+	 * Vrednosti, ki ne morejo ostati na skladu in jih je treba shraniti v zacasne
+	 * spremenljivke.
+	 */
+	@SuppressWarnings("serial")
+	private static class Demote extends RuntimeException {
+
+		/** Vrednosti. */
+		public final Set<Instr> values;
+
+		/**
+		 * Ustvari nov zahtevek.
+		 *
+		 * @param values Vrednosti.
+		 */
+		public Demote(final Collection<Instr> values) {
+			super(null, null, false, false);
+			this.values = new HashSet<Instr>(values);
+		}
+
+	}
+
+	/**
+	 * Prevajanje vmesne predstavitve nazaj v kodo skladovnega stroja.
+	 *
+	 * Vrednost z enim samim uporabnikom ostane na skladu, ce je ob uporabi na
+	 * pravem mestu; konstante in naslovi se izracunajo ob vsaki uporabi, prav
+	 * tako branja nespremenljivih parametrov z eno samo uporabo; vse ostale
+	 * vrednosti se shranijo v zacasne spremenljivke v virtualnih registrih.
+	 */
+	private static class Lowering {
+
+		/** Funkcija. */
+		private final IR.Function fun;
+
+		/** Stevilo uporab posameznih vrednosti. */
+		private final Map<Instr, Integer> consumers = new HashMap<Instr, Integer>();
+
+		/** Blok, v katerem se vrednost uporabi (pri funkciji phi predhodnik). */
+		private final Map<Instr, Block> consumerBlocks = new HashMap<Instr, Block>();
+
+		/** Vrednosti, ki se hranijo v zacasnih spremenljivkah. */
+		private final Set<Instr> temps = new LinkedHashSet<Instr>();
+
+		/** Koda blokov. */
+		private final Map<Block, List<Item>> items = new HashMap<Block, List<Item>>();
+
+		/** Vrednosti, ki se istocasno hranijo v zacasnih spremenljivkah. */
+		private final Map<Instr, Set<Instr>> interference = new HashMap<Instr, Set<Instr>>();
+
+		/** Predstavniki skupin vrednosti, ki si delijo zacasno spremenljivko. */
+		private final Map<Instr, Instr> groups = new HashMap<Instr, Instr>();
+
+		/** Virtualni registri zacasnih spremenljivk po predstavnikih skupin. */
+		private final Map<Instr, Integer> regs = new HashMap<Instr, Integer>();
+
+		/**
+		 * Branja nespremenljivih parametrov, ki se ob vstopu v funkcijo prenesejo v
+		 * zacasne spremenljivke.
+		 */
+		private final List<Instr> entryParams = new ArrayList<Instr>();
+
+		/** Ocena stevila izvedenih ukazov nove kode. */
+		public long cost = 0;
+
+		/**
+		 * Ustvari novo prevajanje vmesne predstavitve.
+		 *
+		 * @param fun Funkcija.
+		 */
+		public Lowering(final IR.Function fun) {
+			this.fun = fun;
+			for (final Block block : fun.blocks)
+				for (final Instr instr : block.all())
+					for (int i = 0; i < instr.ops.size(); i++) {
+						consumers.merge(instr.ops.get(i), 1, Integer::sum);
+						consumerBlocks.put(instr.ops.get(i), instr instanceof Phi ? block.preds.get(i) : block);
+					}
+		}
+
+		/**
+		 * Prevede vmesno predstavitev v kodo skladovnega stroja.
+		 *
+		 * @return Koda funkcije.
+		 */
+		public List<PDM.CodeInstr> lower() {
+			for (final Block block : fun.blocks)
+				for (final Instr value : block.all()) {
+					if (!value.hasValue() || remat(fun, value))
+						continue;
+					final int num = consumers.getOrDefault(value, 0);
+					if ((num >= 2) || ((num == 1) && (consumerBlocks.get(value) != value.block)
+							&& !consumerBlocks.get(value).stack.contains(value)))
+						temps.add(value);
+				}
+			for (final Block block : fun.blocks)
+				for (final Instr value : block.instrs) {
+					if (!(value instanceof Load) || !remat(fun, value))
+						continue;
+					// Branje ob vsaki uporabi ali enkratno branje ob vstopu v funkcijo.
+					final int size = push(value, null).size();
+					if (consumers.getOrDefault(value, 0) * (size - 1) > size + 1) {
+						temps.add(value);
+						entryParams.add(value);
+					}
+				}
+			while (true) {
+				for (final Block block : fun.blocks)
+					for (final Phi phi : block.phis)
+						if (!stacked(phi))
+							temps.add(phi);
+				try {
+					items.clear();
+					for (int b = 0; b < fun.blocks.size(); b++)
+						items.put(fun.blocks.get(b), simulate(b));
+					break;
+				} catch (final Demote demote) {
+					if (!temps.addAll(demote.values))
+						throw new Unsupported("stack allocation");
+				}
+			}
+			allocate();
+			return emit();
+		}
+
+		/**
+		 * Ali vrednost ostane na skladu od izracuna do uporabe.
+		 *
+		 * @param value Vrednost.
+		 * @return Ali vrednost ostane na skladu.
+		 */
+		private boolean stacked(final Instr value) {
+			return value.hasValue() && !remat(fun, value) && !temps.contains(value)
+					&& (consumers.getOrDefault(value, 0) == 1)
+					&& (!(value instanceof Phi) || value.block.stack.contains(value));
+		}
+
+		/**
+		 * Ali se klic prevede v klic na repnem mestu: klic je oznacen kot repni,
+		 * je zadnji ukaz bloka in blok vrne njegov rezultat.
+		 *
+		 * @param block Blok.
+		 * @param call  Klic.
+		 * @return Ali se klic prevede v klic na repnem mestu.
+		 */
+		private boolean tailCall(final Block block, final Call call) {
+			return call.tail && (block.instrs.getLast() == call) && (block.term instanceof Ret ret)
+					&& (ret.ops.get(0) == call);
+		}
+
+		/**
+		 * Vrne vrednosti, ki so ob vstopu v blok na skladu.
+		 *
+		 * @param block Blok.
+		 * @return Vrednosti na skladu.
+		 */
+		private List<Instr> entryStack(final Block block) {
+			return block.stack.stream().filter(this::stacked).toList();
+		}
+
+		/**
+		 * Vrne vrednosti, ki morajo biti na skladu ob prehodu v naslednika.
+		 *
+		 * @param block Blok.
+		 * @param succ  Naslednik.
+		 * @return Vrednosti na skladu.
+		 */
+		private List<Instr> exitStack(final Block block, final Block succ) {
+			final int pred = succ.preds.indexOf(block);
+			return entryStack(succ).stream()
+					.map(value -> (value instanceof Phi phi) && (phi.block == succ) ? phi.ops.get(pred) : value)
+					.toList();
+		}
+
+		/**
+		 * Ali so operandi na skladu v pravem vrstnem redu: tisti na skladu morajo biti
+		 * na vrhu sklada in pred vsemi ostalimi.
+		 *
+		 * @param ops   Operandi.
+		 * @param stack Sklad.
+		 * @return Ali so operandi na skladu v pravem vrstnem redu.
+		 */
+		private boolean ready(final List<Instr> ops, final List<Instr> stack) {
+			int num = 0;
+			while ((num < ops.size()) && stacked(ops.get(num)))
+				num++;
+			for (int i = num; i < ops.size(); i++)
+				if (stacked(ops.get(i)))
+					return false;
+			if (num > stack.size())
+				return false;
+			return ops.subList(0, num).equals(stack.subList(stack.size() - num, stack.size()));
+		}
+
+		/**
+		 * Vrne kodo, ki na sklad potisne vrednost, ki ni na skladu.
+		 *
+		 * @param value Vrednost.
+		 * @param loc   Lokacija.
+		 * @return Koda.
+		 */
+		private List<Item> push(final Instr value, final Report.Locatable loc) {
+			final List<Item> code = new ArrayList<Item>();
+			switch (value) {
+				case Load load when temps.contains(load) -> code.add(new Temp(value, false, loc));
+				case Const c -> code.add(new Code(new PDM.PUSH(c.value, loc)));
+				case Name name -> code.add(new Code(new PDM.NAME(name.label, loc)));
+				case Slot slot -> {
+					code.add(new Code(new PDM.REGN(PDM.REGN.Reg.FP, loc)));
+					if (slot.offset != 0) {
+						code.add(new Code(new PDM.PUSH(slot.offset, loc)));
+						code.add(new Code(new PDM.OPER(PDM.OPER.Oper.ADD, loc)));
+					}
+				}
+				case Display display -> code.add(new Code(new PDM.DISP(display.depth, loc)));
+				case Load load when remat(fun, load) -> {
+					code.addAll(push(load.ops.get(0), loc));
+					code.add(new Code(new PDM.LOAD(loc)));
+				}
+				default -> {
+					if (!temps.contains(value))
+						throw new Unsupported("value " + value.ref() + " is lost");
+					code.add(new Temp(value, false, loc));
+				}
+			}
+			return code;
+		}
+
+		/**
+		 * Izracuna kodo bloka.
+		 *
+		 * @param b Mesto bloka.
+		 * @return Koda bloka.
+		 */
+		private List<Item> simulate(final int b) {
+			final Block block = fun.blocks.get(b);
+			final List<Item> code = new ArrayList<Item>();
+			final List<Instr> stack = new ArrayList<Instr>(entryStack(block));
+			if (block == fun.entry())
+				for (final Instr param : entryParams)
+					code.add(new ParamLoad(param, ((Slot) param.ops.get(0)).offset, param.loc));
+			for (final Instr instr : block.instrs) {
+				final Report.Locatable loc = instr.loc;
+				if (remat(fun, instr) || (instr.isPure() && !consumers.containsKey(instr)))
+					continue;
+				if ((instr instanceof Load) && temps.contains(instr) && (instr.ops.get(0) instanceof Slot slot)
+						&& (slot.offset >= 0) && fun.promotedSlots.contains(slot.offset)) {
+					code.add(new ParamLoad(instr, slot.offset, loc));
+					continue;
+				}
+
+				// Operandi.
+				List<Instr> ops = instr.ops;
+				PDM.OPER.Oper oper = instr instanceof Bin bin ? bin.oper : instr instanceof Un un ? un.oper : null;
+				if (!ready(ops, stack)) {
+					final PDM.OPER.Oper swapped = instr instanceof Bin ? switch (oper) {
+						case ADD, MUL, EQU, NEQ, AND, OR -> oper;
+						case LTH -> PDM.OPER.Oper.GTH;
+						case GTH -> PDM.OPER.Oper.LTH;
+						case LEQ -> PDM.OPER.Oper.GEQ;
+						case GEQ -> PDM.OPER.Oper.LEQ;
+						default -> null;
+					} : null;
+					if ((swapped != null) && ready(ops.reversed(), stack)) {
+						ops = ops.reversed();
+						oper = swapped;
+					} else
+						throw new Demote(ops.stream().filter(this::stacked).toList());
+				}
+				for (final Instr op : ops)
+					if (stacked(op))
+						stack.removeLast();
+					else
+						code.addAll(push(op, loc));
+
+				// Ukaz.
+				code.add(new Code(switch (instr) {
+					case Un _, Bin _ -> new PDM.OPER(oper, loc);
+					case Load _ -> new PDM.LOAD(loc);
+					case Store _ -> new PDM.SAVE(loc);
+					case Init _ -> new PDM.INIT(loc);
+					case Call call when tailCall(block, call) -> new PDM.TCALL(call.frame.parsSize - 4,
+							((Ret) block.term).parsSize, call.frame.depth, call.frame, loc);
+					case Call call -> new PDM.CALL(call.frame.depth, call.frame, loc);
+					default -> throw new Unsupported("instruction " + instr);
+				}));
+				if ((instr instanceof Call call) && tailCall(block, call))
+					return code;
+
+				// Rezultat.
+				if (!instr.hasValue())
+					continue;
+				if (stacked(instr))
+					stack.add(instr);
+				else if (temps.contains(instr))
+					code.add(new Temp(instr, true, loc));
+				else {
+					code.add(new Code(new PDM.PUSH(4, loc)));
+					code.add(new Code(new PDM.POPN(loc)));
+				}
+			}
+
+			final Instr term = block.term;
+			final Report.Locatable loc = term.loc;
+
+			// Vrednosti funkcij phi v naslednikih, ki niso na skladu.
+			final List<Instr> sources = new ArrayList<Instr>();
+			final List<Instr> targets = new ArrayList<Instr>();
+			for (final Block succ : block.succs()) {
+				final int pred = succ.preds.indexOf(block);
+				for (final Phi phi : succ.phis)
+					if (!stacked(phi)) {
+						sources.add(phi.ops.get(pred));
+						targets.add(phi);
+					}
+			}
+			if (!sources.isEmpty()) {
+				final List<Instr> stackedSources = sources.stream().filter(this::stacked).toList();
+				final int num = stackedSources.size();
+				if ((num > stack.size())
+						|| !Set.copyOf(stack.subList(stack.size() - num, stack.size())).equals(Set.copyOf(stackedSources)))
+					throw new Demote(stackedSources);
+				final List<Instr> orderedSources = new ArrayList<Instr>(stack.subList(stack.size() - num, stack.size()));
+				final List<Instr> orderedTargets = new ArrayList<Instr>();
+				for (final Instr source : orderedSources)
+					orderedTargets.add(targets.get(sources.indexOf(source)));
+				for (int i = 0; i < sources.size(); i++)
+					if (!stacked(sources.get(i))) {
+						orderedSources.add(sources.get(i));
+						orderedTargets.add(targets.get(i));
+					}
+				for (int i = 0; i < num; i++)
+					stack.removeLast();
+				code.add(new Moves(orderedSources, num, orderedTargets, loc));
+			}
+
+			// Vrednosti, ki morajo biti na skladu ob koncu bloka.
+			final List<Instr> required = new ArrayList<Instr>();
+			switch (term) {
+				case Jump jump -> required.addAll(exitStack(block, jump.target));
+				case Branch branch -> {
+					final List<Instr> thenStack = exitStack(block, branch.thenBlock);
+					if (!thenStack.equals(exitStack(block, branch.elseBlock))) {
+						final List<Instr> demoted = new ArrayList<Instr>(entryStack(branch.thenBlock));
+						demoted.addAll(entryStack(branch.elseBlock));
+						throw new Demote(demoted);
+					}
+					required.addAll(thenStack);
+					required.add(branch.ops.get(0));
+				}
+				case Ret ret -> {
+					final Instr value = ret.ops.get(0);
+					if (stacked(value)) {
+						if (stack.isEmpty() || (stack.getLast() != value))
+							throw new Demote(List.of(value));
+					} else
+						code.addAll(push(value, loc));
+					code.add(new Code(new PDM.PUSH(ret.parsSize, loc)));
+					code.add(new Code(new PDM.RETN(fun.frame, loc)));
+					return code;
+				}
+				default -> throw new Report.InternalError();
+			}
+			int common = 0;
+			while ((common < stack.size()) && (common < required.size())
+					&& (stack.get(common) == required.get(common)))
+				common++;
+			if (common < stack.size())
+				throw new Demote(List.of(stack.get(common)));
+			for (final Instr value : required.subList(common, required.size())) {
+				if (stacked(value))
+					throw new Demote(List.of(value));
+				code.addAll(push(value, loc));
+			}
+			switch (term) {
+				case Jump jump -> {
+					if ((b + 1 == fun.blocks.size()) || (fun.blocks.get(b + 1) != jump.target)) {
+						code.add(new Code(new PDM.NAME(jump.target.label, loc)));
+						code.add(new Code(new PDM.UJMP(loc)));
+					}
+				}
+				case Branch branch -> {
+					code.add(new Code(new PDM.NAME(branch.thenBlock.label, loc)));
+					code.add(new Code(new PDM.NAME(branch.elseBlock.label, loc)));
+					code.add(new Code(new PDM.CJMP(loc)));
+				}
+				default -> throw new Report.InternalError();
+			}
+			return code;
+		}
+
+		/**
+		 * Vrne predstavnika skupine vrednosti.
+		 *
+		 * @param value Vrednost.
+		 * @return Predstavnik skupine.
+		 */
+		private Instr group(final Instr value) {
+			Instr group = value;
+			while (groups.getOrDefault(group, group) != group)
+				group = groups.get(group);
+			return group;
+		}
+
+		/**
+		 * Ali se vrednosti iz dveh skupin hranita istocasno.
+		 *
+		 * @param fst Predstavnik prve skupine.
+		 * @param snd Predstavnik druge skupine.
+		 * @return Ali se vrednosti iz skupin hranita istocasno.
+		 */
+		private boolean interfere(final Instr fst, final Instr snd) {
+			for (final Instr value : temps)
+				if (group(value) == fst)
+					for (final Instr other : interference.getOrDefault(value, Set.of()))
+						if (group(other) == snd)
+							return true;
+			return false;
+		}
+
+		/**
+		 * Zabelezi, da se vrednost, ki se zapise, hrani istocasno z zivimi vrednostmi.
+		 *
+		 * @param value  Vrednost, ki se zapise.
+		 * @param live   Zive vrednosti.
+		 * @param source Vrednost, ki se prepise v dano vrednost, ali {@code null}.
+		 */
+		private void define(final Instr value, final Collection<Instr> live, final Instr source) {
+			for (final Instr other : live)
+				if ((other != value) && (other != source)) {
+					interference.computeIfAbsent(value, _ -> new HashSet<Instr>()).add(other);
+					interference.computeIfAbsent(other, _ -> new HashSet<Instr>()).add(value);
+				}
+		}
+
+		/**
+		 * Izracuna zive vrednosti zacasnih spremenljivk, jih zdruzi in jim doloci
+		 * mesta v klicnem zapisu.
+		 */
+		private void allocate() {
+			// Zive vrednosti ob vstopu v bloke.
+			final Map<Block, Set<Instr>> liveIn = new HashMap<Block, Set<Instr>>();
+			for (final Block block : fun.blocks)
+				liveIn.put(block, new HashSet<Instr>());
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (final Block block : fun.blocks.reversed())
+					changed |= liveIn.get(block).addAll(scan(block, liveIn, false));
+			}
+			for (final Block block : fun.blocks)
+				scan(block, liveIn, true);
+
+			// Zdruzevanje vrednosti funkcij phi z njihovimi operandi.
+			for (final Block block : fun.blocks)
+				for (final Item item : items.get(block))
+					if (item instanceof Moves moves)
+						for (int i = moves.numOnStack(); i < moves.sources().size(); i++) {
+							final Instr source = group(moves.sources().get(i));
+							final Instr target = group(moves.targets().get(i));
+							if (temps.contains(moves.sources().get(i)) && (source != target)
+									&& !interfere(source, target))
+								groups.put(source, target);
+						}
+
+			// Barvanje.
+			for (final Instr value : temps) {
+				final Instr group = group(value);
+				if (regs.containsKey(group))
+					continue;
+				final List<Instr> members = temps.stream().filter(member -> group(member) == group).toList();
+				int reg = 0;
+				while (!allowed(members, reg))
+					reg++;
+				regs.put(group, reg);
+			}
+
+			// Velikost klicnega zapisa: do najnizje besede, ki se se uporablja.
+			int limit = Integer.MAX_VALUE;
+			int bottom = -8;
+			for (final Block block : fun.blocks) {
+				for (final Instr value : block.stack)
+					if (value instanceof Slot slot)
+						limit = escape(limit, slot.offset);
+				for (final Instr instr : block.all())
+					for (int i = 0; i < instr.ops.size(); i++) {
+						if (!(instr.ops.get(i) instanceof Slot slot))
+							continue;
+						final boolean aligned = slot.offset % 4 == 0;
+						if (aligned && (((instr instanceof Load) && (i == 0)) || ((instr instanceof Store) && (i == 1))))
+							bottom = Math.min(bottom, slot.offset);
+						else if (aligned && (instr instanceof Init init) && (i == 0) && (init.size != null))
+							bottom = Math.min(bottom, slot.offset);
+						else
+							limit = escape(limit, slot.offset);
+					}
+			}
+			fun.frameSize = limit == Integer.MIN_VALUE ? fun.frameSize : -Math.min(bottom, Math.min(-8, limit));
+		}
+
+		/**
+		 * Ali je dani virtualni register lahko zacasna spremenljivka skupine.
+		 *
+		 * @param members Vrednosti skupine.
+		 * @param reg     Virtualni register.
+		 * @return Ali je virtualni register lahko zacasna spremenljivka skupine.
+		 */
+		private boolean allowed(final List<Instr> members, final int reg) {
+			for (final Instr member : members)
+				for (final Instr other : interference.getOrDefault(member, Set.of()))
+					if (Integer.valueOf(reg).equals(regs.get(group(other))))
+						return false;
+			return true;
+		}
+
+		/**
+		 * Pregleda kodo bloka od konca proti zacetku in izracuna zive vrednosti.
+		 *
+		 * @param block       Blok.
+		 * @param liveIn      Zive vrednosti ob vstopu v bloke.
+		 * @param interfering Ali se zabelezijo vrednosti, ki se hranijo istocasno.
+		 * @return Zive vrednosti ob vstopu v blok.
+		 */
+		private Set<Instr> scan(final Block block, final Map<Block, Set<Instr>> liveIn, final boolean interfering) {
+			final Set<Instr> live = new HashSet<Instr>();
+			for (final Block succ : block.succs())
+				live.addAll(liveIn.get(succ));
+			for (final Item item : items.get(block).reversed()) {
+				switch (item) {
+					case Temp temp when temp.save() -> {
+						if (interfering)
+							define(temp.value(), live, null);
+						live.remove(temp.value());
+					}
+					case Temp temp -> live.add(temp.value());
+					case ParamLoad paramLoad -> {
+						if (interfering)
+							define(paramLoad.value(), live, null);
+						live.remove(paramLoad.value());
+					}
+					case Moves moves -> {
+						if (interfering)
+							for (int i = 0; i < moves.targets().size(); i++) {
+								define(moves.targets().get(i), live, moves.sources().get(i));
+								define(moves.targets().get(i), moves.targets(), null);
+							}
+						live.removeAll(moves.targets());
+						for (int i = moves.numOnStack(); i < moves.sources().size(); i++)
+							if (temps.contains(moves.sources().get(i)))
+								live.add(moves.sources().get(i));
+					}
+					case Code _ -> {
+					}
+				}
+			}
+			return live;
+		}
+
+		/**
+		 * Vrne virtualni register zacasne spremenljivke.
+		 *
+		 * @param value Vrednost.
+		 * @return Virtualni register zacasne spremenljivke.
+		 */
+		private int reg(final Instr value) {
+			return regs.get(group(value));
+		}
+
+		/**
+		 * Vrne kodo, ki izracuna naslov besede v klicnem zapisu in jo prebere.
+		 *
+		 * @param offset Odmik.
+		 * @param loc    Lokacija.
+		 * @return Koda.
+		 */
+		private static List<PDM.CodeInstr> load(final int offset, final Report.Locatable loc) {
+			if (offset == 0)
+				return List.of(new PDM.REGN(PDM.REGN.Reg.FP, loc), new PDM.LOAD(loc));
+			return List.of(new PDM.REGN(PDM.REGN.Reg.FP, loc), new PDM.PUSH(offset, loc),
+					new PDM.OPER(PDM.OPER.Oper.ADD, loc), new PDM.LOAD(loc));
+		}
+
+		/**
+		 * Vrne kodo dela kode bloka.
+		 *
+		 * @param item Del kode bloka.
+		 * @return Koda.
+		 */
+		private List<PDM.CodeInstr> emit(final Item item) {
+			final List<PDM.CodeInstr> code = new ArrayList<PDM.CodeInstr>();
+			switch (item) {
+				case Code c -> code.add(c.instr());
+				case Temp temp -> code.add(temp.save() ? new PDM.VSAVE(reg(temp.value()), temp.loc())
+						: new PDM.VLOAD(reg(temp.value()), temp.loc()));
+				case ParamLoad paramLoad -> {
+					code.addAll(load(paramLoad.offset(), paramLoad.loc()));
+					code.add(new PDM.VSAVE(reg(paramLoad.value()), paramLoad.loc()));
+				}
+				case Moves moves -> {
+					final List<Instr> targets = new ArrayList<Instr>();
+					for (int i = 0; i < moves.sources().size(); i++) {
+						final Instr source = moves.sources().get(i);
+						if (i < moves.numOnStack())
+							targets.add(moves.targets().get(i));
+						else if (!temps.contains(source) || (reg(source) != reg(moves.targets().get(i)))) {
+							for (final Item push : push(source, moves.loc()))
+								code.addAll(emit(push));
+							targets.add(moves.targets().get(i));
+						}
+					}
+					for (final Instr target : targets.reversed())
+						code.add(new PDM.VSAVE(reg(target), moves.loc()));
+				}
+			}
+			return code;
+		}
+
+		/**
+		 * Vrne kodo funkcije in izracuna oceno stevila izvedenih ukazov.
+		 *
+		 * @return Koda funkcije.
+		 */
+		private List<PDM.CodeInstr> emit() {
+			final Cfg cfg = new Cfg(fun);
+			final List<PDM.CodeInstr> code = new ArrayList<PDM.CodeInstr>();
+			for (final Block block : fun.blocks) {
+				final Report.Locatable loc = block.term.loc;
+				code.add(new PDM.LABEL(block.label, loc));
+				long size = 0;
+				if ((block == fun.entry()) && (fun.frameSize > 8)) {
+					code.add(new PDM.PUSH(8 - fun.frameSize, loc));
+					code.add(new PDM.POPN(loc));
+					size += 2;
+				}
+				for (final Item item : items.get(block)) {
+					final List<PDM.CodeInstr> instrs = emit(item);
+					code.addAll(instrs);
+					size += instrs.size();
+				}
+				cost += cfg.weight(block) * size;
+			}
+			return code;
+		}
+
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon optimizacije v vmesni predstavitvi SSA kot samostojnega programa.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (SSA optimization):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No source file specified in the command line.");
+			if (cmdLineArgs.length > 1)
+				Report.warning("Unused arguments in the command line.");
+
+			try (SynAn synAn = new SynAn(cmdLineArgs[0])) {
+				// abstraktna sintaksa:
+				final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+				// semanticna analiza:
+				final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+				// pomnilniska predstavitev:
+				final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+				// optimizacija:
+				final Optim.AttrAST optimAttrAST = Optim.optimize(memoryAttrAST);
+				// vstavljanje funkcij:
+				final Inline.AttrAST inlineAttrAST = Inline.inline(optimAttrAST);
+				// optimizacija zank:
+				final Loops.AttrAST loopsAttrAST = Loops.optimize(inlineAttrAST);
+				// generiranje kode:
+				final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(loopsAttrAST);
+				// optimizacija v vmesni predstavitvi SSA:
+				debugIR = true;
+				final CodeGen.AttrAST ssaAttrAST = optimize(codegenAttrAST);
+
+				final List<PDM.CodeInstr> codeSegment = (new CodeGen.CodeSegmentGenerator(codegenAttrAST))
+						.codeSegment();
+				final List<PDM.CodeInstr> ssaCodeSegment = (new CodeGen.CodeSegmentGenerator(ssaAttrAST))
+						.codeSegment();
+				{
+					int addr = 0;
+					System.out.println("\n\033[1mCODE SEGMENT:\033[0m");
+					for (final PDM.CodeInstr instr : ssaCodeSegment) {
+						System.out.printf("%8d [%s] %s\n", addr, instr.size(),
+								(instr instanceof PDM.LABEL ? "" : "  ") + instr.toString());
+						addr += instr.size();
+					}
+					System.out.printf("\n%d -> %d instructions\n",
+							codeSegment.stream().filter(instr -> !(instr instanceof PDM.LABEL)).count(),
+							ssaCodeSegment.stream().filter(instr -> !(instr instanceof PDM.LABEL)).count());
+				}
+			}
+
+			// Upajmo, da kdaj pridemo to te tocke.
+			// A zavedajmo se sledecega:
+			// 1. Prevod je zaradi napak v programu lahko napacen :-o
+			// 2. Izvorni program se zdalec ni tisto, kar je programer hotel, da bi bil ;-)
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,423 @@
+package pins25.tools;
+
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+import pins25.common.*;
+
+/**
+ * Shranjevanje in primerjava rezultatov meritev.
+ *
+ * Rezultati meritev so shranjeni v datoteki v obliki JSON, kjer je vsak zagon
+ * meritev dolocen z izdajo ({@code commit}) in razlicico prevajalnika
+ * ({@code variant}, npr. {@code pins25-codegen-base}). Za vsak program iz
+ * korpusa se shrani cas izvajanja posameznih ponovitev in stevilo izvedenih
+ * ukazov. Dva zagona meritev se primerjata z intervali zaupanja za razliko
+ * povprecnih casov izvajanja (Welchev t-test).
+ *
+ * Programi se vedno prevedejo s prevajalnikom, katerega del je to orodje (z
+ * njegovim {@link Pipeline}), zato sta izdaja in razlicica dolocena z
+ * imenikom, iz katerega je nalozen prevajalnik, in ne z imenikom programov.
+ * Izmeriti je torej mogoce le razlicico {@code pins25-codegen-base}: programi
+ * iz drugih razlicic se prevedejo z istim prevajalnikom, saj ostale razlicice
+ * orodij za meritve nimajo.
+ *
+ * Uporaba:
+ * <ul>
+ * <li>{@code BenchStore record [-store datoteka] [-commit izdaja] [-runs n] [-warmup n] datoteka|imenik...}</li>
+ * <li>{@code BenchStore compare [-store datoteka] izdaja[/razlicica] izdaja[/razlicica]}</li>
+ * <li>{@code BenchStore list [-store datoteka]}</li>
+ * </ul>
+ */
+public class BenchStore {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private BenchStore() {
+		throw new Report.InternalError();
+	}
+
+	/** Privzeto ime datoteke z rezultati meritev. */
+	private static final String DEFAULT_STORE = "bench.json";
+
+	/** Kvantil standardne normalne porazdelitve za 95% interval zaupanja. */
+	private static final double Z_975 = 1.959963984540054;
+
+	// --- MERITVE ---
+
+	/**
+	 * Izmeri cas izvajanja in stevilo izvedenih ukazov programa.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @param numRuns     Stevilo merjenih ponovitev.
+	 * @param numWarmups  Stevilo ogrevalnih ponovitev.
+	 * @return Rezultat meritve.
+	 */
+	private static Map<String, Object> measure(final String srcFileName, final int numRuns, final int numWarmups) {
+		Pipeline.setup(Pipeline.config(Pipeline.DEFAULT));
+		final Pipeline.Image image = Pipeline.compile(srcFileName);
+		final String stdin = Pipeline.stdin(srcFileName);
+
+		final List<Object> samples = new ArrayList<Object>();
+		long numInstrs = 0;
+		for (int run = 0; run < numWarmups + numRuns; run++) {
+			final long start = System.nanoTime();
+			final Pipeline.Run result = Pipeline.run(image, stdin);
+			final long stop = System.nanoTime();
+			if (result.error != null)
+				throw new Report.Error(srcFileName + ": " + result.error);
+			numInstrs = result.executor.numInstrs();
+			if (run >= numWarmups)
+				samples.add((stop - start) / 1e6);
+		}
+
+		final Map<String, Object> benchmark = new LinkedHashMap<String, Object>();
+		benchmark.put("unit", "ms");
+		benchmark.put("samples", samples);
+		benchmark.put("instrs", (double) numInstrs);
+		return benchmark;
+	}
+
+	/**
+	 * Poisce imenik, iz katerega je nalozen prevajalnik.
+	 *
+	 * @return Imenik prevajalnika ali {@code null}, ce ga ni mogoce dolociti.
+	 */
+	private static File compilerDir() {
+		final CodeSource codeSource = BenchStore.class.getProtectionDomain().getCodeSource();
+		if (codeSource == null)
+			return null;
+		try {
+			final File location = new File(codeSource.getLocation().toURI()).getCanonicalFile();
+			return location.isDirectory() ? location : location.getParentFile();
+		} catch (IOException | URISyntaxException __) {
+			return null;
+		}
+	}
+
+	/**
+	 * Poisce razlicico prevajalnika, tj. ime imenika {@code pins25-*}, iz katerega
+	 * je nalozen prevajalnik.
+	 *
+	 * @return Razlicica prevajalnika.
+	 */
+	private static String variant() {
+		for (File dir = compilerDir(); dir != null; dir = dir.getParentFile())
+			if (dir.getName().startsWith("pins25-"))
+				return dir.getName();
+		return "pins25";
+	}
+
+	/**
+	 * Poisce trenutno izdajo prevajalnika v sistemu git.
+	 *
+	 * @return Oznaka izdaje ali {@code unknown}, ce je ni mogoce dolociti.
+	 */
+	private static String commit() {
+		try {
+			final File dir = compilerDir();
+			if (dir == null)
+				return "unknown";
+			final Process git = new ProcessBuilder("git", "rev-parse", "--short", "HEAD").directory(dir)
+					.redirectErrorStream(true).start();
+			final String commit = new String(git.getInputStream().readAllBytes()).trim();
+			if ((git.waitFor() == 0) && !commit.isEmpty())
+				return commit;
+		} catch (IOException | InterruptedException __) {
+		}
+		return "unknown";
+	}
+
+	// --- SHRAMBA ---
+
+	/**
+	 * Prebere vse zagone meritev.
+	 *
+	 * @param storeFileName Ime datoteke z rezultati meritev.
+	 * @return Seznam zagonov meritev.
+	 */
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> load(final String storeFileName) {
+		final File storeFile = new File(storeFileName);
+		if (!storeFile.exists())
+			return new ArrayList<Map<String, Object>>();
+		try {
+			final Map<String, Object> store = (Map<String, Object>) Json.read(Files.readString(storeFile.toPath()));
+			return (List<Map<String, Object>>) (List<?>) store.get("runs");
+		} catch (IOException | ClassCastException __) {
+			throw new Report.Error("Cannot read benchmark store '" + storeFileName + "'.");
+		}
+	}
+
+	/**
+	 * Zapise vse zagone meritev.
+	 *
+	 * @param storeFileName Ime datoteke z rezultati meritev.
+	 * @param runs          Seznam zagonov meritev.
+	 */
+	private static void save(final String storeFileName, final List<Map<String, Object>> runs) {
+		final Map<String, Object> store = new LinkedHashMap<String, Object>();
+		store.put("runs", runs);
+		try {
+			Files.writeString(Paths.get(storeFileName), Json.write(store));
+		} catch (IOException __) {
+			throw new Report.Error("Cannot write benchmark store '" + storeFileName + "'.");
+		}
+	}
+
+	/**
+	 * Poisce zagon meritev.
+	 *
+	 * @param runs Seznam zagonov meritev.
+	 * @param key  Izdaja, ki ji lahko sledi {@code /} in razlicica; ce razlicica ni
+	 *             podana, mora biti zagon za dano izdajo en sam.
+	 * @return Zagon meritev.
+	 */
+	private static Map<String, Object> find(final List<Map<String, Object>> runs, final String key) {
+		final String commit = key.contains("/") ? key.substring(0, key.indexOf('/')) : key;
+		final String variant = key.contains("/") ? key.substring(key.indexOf('/') + 1) : null;
+		Map<String, Object> found = null;
+		for (final Map<String, Object> run : runs) {
+			if (!((String) run.get("commit")).startsWith(commit))
+				continue;
+			if ((variant != null) && !run.get("variant").equals(variant))
+				continue;
+			if (found != null)
+				throw new Report.Error("Ambiguous run '" + key + "' (specify commit/variant).");
+			found = run;
+		}
+		if (found == null)
+			throw new Report.Error("No run '" + key + "' in the benchmark store.");
+		return found;
+	}
+
+	// --- STATISTIKA ---
+
+	/**
+	 * Vrne vzorec kot tabelo stevil.
+	 *
+	 * @param benchmark Rezultat meritve.
+	 * @return Vzorec.
+	 */
+	private static double[] samples(final Map<?, ?> benchmark) {
+		return ((List<?>) benchmark.get("samples")).stream().mapToDouble(sample -> (Double) sample).toArray();
+	}
+
+	/**
+	 * Izracuna povprecje vzorca.
+	 *
+	 * @param samples Vzorec.
+	 * @return Povprecje.
+	 */
+	private static double mean(final double[] samples) {
+		double sum = 0.0;
+		for (final double sample : samples)
+			sum += sample;
+		return sum / samples.length;
+	}
+
+	/**
+	 * Izracuna nepristransko oceno variance vzorca.
+	 *
+	 * @param samples Vzorec.
+	 * @return Varianca.
+	 */
+	private static double variance(final double[] samples) {
+		if (samples.length < 2)
+			return 0.0;
+		final double mean = mean(samples);
+		double sum = 0.0;
+		for (final double sample : samples)
+			sum += (sample - mean) * (sample - mean);
+		return sum / (samples.length - 1);
+	}
+
+	/**
+	 * Izracuna priblizek 97.5% kvantila Studentove porazdelitve (Cornish-Fisherjev
+	 * razvoj).
+	 *
+	 * @param df Stevilo prostostnih stopenj.
+	 * @return Kvantil.
+	 */
+	private static double t975(final double df) {
+		final double z = Z_975;
+		final double z3 = z * z * z;
+		final double z5 = z3 * z * z;
+		final double z7 = z5 * z * z;
+		return z + (z3 + z) / (4 * df) + (5 * z5 + 16 * z3 + 3 * z) / (96 * df * df)
+				+ (3 * z7 + 19 * z5 + 17 * z3 - 15 * z) / (384 * df * df * df);
+	}
+
+	/**
+	 * Izracuna 95% interval zaupanja za razliko povprecij dveh vzorcev (Welchev
+	 * t-test).
+	 *
+	 * @param base  Osnovni vzorec.
+	 * @param other Primerjani vzorec.
+	 * @return Spodnja in zgornja meja intervala zaupanja za razliko
+	 *         {@code mean(other) - mean(base)}.
+	 */
+	private static double[] confidenceInterval(final double[] base, final double[] other) {
+		final double diff = mean(other) - mean(base);
+		final double vb = variance(base) / base.length;
+		final double vo = variance(other) / other.length;
+		final double se = Math.sqrt(vb + vo);
+		if (se == 0.0)
+			return new double[] { diff, diff };
+		final double df = (vb + vo) * (vb + vo)
+				/ (vb * vb / Math.max(1, base.length - 1) + vo * vo / Math.max(1, other.length - 1));
+		final double h = t975(df) * se;
+		return new double[] { diff - h, diff + h };
+	}
+
+	// --- UKAZI ---
+
+	/**
+	 * Izvede meritve in jih shrani.
+	 *
+	 * @param storeFileName Ime datoteke z rezultati meritev.
+	 * @param commit        Izdaja (ali {@code null} za trenutno izdajo
+	 *                      prevajalnika).
+	 * @param numRuns       Stevilo merjenih ponovitev.
+	 * @param numWarmups    Stevilo ogrevalnih ponovitev.
+	 * @param paths         Imena datotek in imenikov.
+	 */
+	private static void record(final String storeFileName, String commit, final int numRuns, final int numWarmups,
+			final List<String> paths) {
+		final List<String> sources = Pipeline.sources(paths);
+		if (sources.isEmpty())
+			throw new Report.Error("No source file specified in the command line.");
+		if (numRuns < 2)
+			throw new Report.Error("At least two runs are needed.");
+		if (commit == null)
+			commit = commit();
+		final String variant = variant();
+
+		final Map<String, Object> benchmarks = new TreeMap<String, Object>();
+		for (final String srcFileName : sources) {
+			final Map<String, Object> benchmark = measure(srcFileName, numRuns, numWarmups);
+			final double[] samples = samples(benchmark);
+			System.out.printf("%s: %.3f ms +- %.3f ms, %d instrs\n", new File(srcFileName).getName(), mean(samples),
+					Math.sqrt(variance(samples)), ((Double) benchmark.get("instrs")).longValue());
+			benchmarks.put(new File(srcFileName).getName(), benchmark);
+		}
+
+		final Map<String, Object> run = new LinkedHashMap<String, Object>();
+		run.put("commit", commit);
+		run.put("variant", variant);
+		run.put("date", new Date().toString());
+		run.put("benchmarks", benchmarks);
+
+		// Prejsnji zagon za isto izdajo in razlicico se zamenja.
+		final List<Map<String, Object>> runs = load(storeFileName);
+		final String key = commit;
+		final String var = variant;
+		runs.removeIf(r -> r.get("commit").equals(key) && r.get("variant").equals(var));
+		runs.add(run);
+		save(storeFileName, runs);
+		Report.info("Recorded " + commit + "/" + variant + " in '" + storeFileName + "'.");
+	}
+
+	/**
+	 * Primerja dva zagona meritev.
+	 *
+	 * @param storeFileName Ime datoteke z rezultati meritev.
+	 * @param baseKey       Osnovni zagon.
+	 * @param otherKey      Primerjani zagon.
+	 * @return Stevilo poslabsanj.
+	 */
+	private static int compare(final String storeFileName, final String baseKey, final String otherKey) {
+		final List<Map<String, Object>> runs = load(storeFileName);
+		final Map<?, ?> base = (Map<?, ?>) find(runs, baseKey).get("benchmarks");
+		final Map<?, ?> other = (Map<?, ?>) find(runs, otherKey).get("benchmarks");
+
+		int numRegressions = 0;
+		System.out.printf("%-24s %12s %12s %8s %20s %12s  %s\n", "benchmark", "base [ms]", "other [ms]", "change",
+				"95% CI [ms]", "instrs", "verdict");
+		for (final Object name : new TreeSet<Object>(base.keySet())) {
+			if (!other.containsKey(name))
+				continue;
+			final double[] baseSamples = samples((Map<?, ?>) base.get(name));
+			final double[] otherSamples = samples((Map<?, ?>) other.get(name));
+			final double baseMean = mean(baseSamples);
+			final double otherMean = mean(otherSamples);
+			final double[] ci = confidenceInterval(baseSamples, otherSamples);
+			final long baseInstrs = ((Double) ((Map<?, ?>) base.get(name)).get("instrs")).longValue();
+			final long otherInstrs = ((Double) ((Map<?, ?>) other.get(name)).get("instrs")).longValue();
+
+			final String verdict;
+			if ((ci[0] > 0) || (otherInstrs > baseInstrs)) {
+				verdict = "REGRESSION";
+				numRegressions++;
+			} else if ((ci[1] < 0) || (otherInstrs < baseInstrs))
+				verdict = "improvement";
+			else
+				verdict = "no significant change";
+			System.out.printf("%-24s %12.3f %12.3f %+7.1f%% [%+8.3f,%+8.3f] %+12d  %s\n", name, baseMean, otherMean,
+					100.0 * (otherMean - baseMean) / baseMean, ci[0], ci[1], otherInstrs - baseInstrs, verdict);
+		}
+		return numRegressions;
+	}
+
+	/**
+	 * Izpise vse zagone meritev.
+	 *
+	 * @param storeFileName Ime datoteke z rezultati meritev.
+	 */
+	private static void list(final String storeFileName) {
+		for (final Map<String, Object> run : load(storeFileName))
+			System.out.printf("%s/%s: %d benchmarks (%s)\n", run.get("commit"), run.get("variant"),
+					((Map<?, ?>) run.get("benchmarks")).size(), run.get("date"));
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon shranjevanja in primerjave rezultatov meritev.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (benchmark store):");
+
+		try {
+			if (cmdLineArgs.length == 0)
+				throw new Report.Error("No command specified in the command line.");
+			String storeFileName = DEFAULT_STORE;
+			String commit = null;
+			int numRuns = 10;
+			int numWarmups = 3;
+			final List<String> args = new ArrayList<String>();
+			for (int arg = 1; arg < cmdLineArgs.length; arg++) {
+				switch (cmdLineArgs[arg]) {
+					case "-store" -> storeFileName = cmdLineArgs[++arg];
+					case "-commit" -> commit = cmdLineArgs[++arg];
+					case "-runs" -> numRuns = Integer.parseInt(cmdLineArgs[++arg]);
+					case "-warmup" -> numWarmups = Integer.parseInt(cmdLineArgs[++arg]);
+					default -> args.add(cmdLineArgs[arg]);
+				}
+			}
+
+			switch (cmdLineArgs[0]) {
+				case "record" -> record(storeFileName, commit, numRuns, numWarmups, args);
+				case "compare" -> {
+					if (args.size() != 2)
+						throw new Report.Error("Two runs must be specified in the command line.");
+					final int numRegressions = compare(storeFileName, args.get(0), args.get(1));
+					if (numRegressions > 0)
+						throw new Report.Error(numRegressions + " benchmark(s) regressed.");
+				}
+				case "list" -> list(storeFileName);
+				default -> throw new Report.Error("Unknown command '" + cmdLineArgs[0] + "'.");
+			}
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
@@ -0,0 +1,263 @@
+package pins25.tools;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import pins25.common.*;
+
+/**
+ * Diferencialno testiranje.
+ *
+ * Vsak program iz korpusa in vsak nakljucno generiran program se prevede in
+ * izvede v vseh registriranih konfiguracijah ({@link Pipeline#configs}).
+ * Standardni izhod, vrsta napake med izvajanjem, izhodna koda in koncne
+ * vrednosti staticnih spremenljivk (naslovi v njih simbolicno) morajo biti v
+ * vseh konfiguracijah enaki kot v referencni konfiguraciji. Konfiguracije, ki
+ * nize shranjujejo po en znak na bajt, se primerjajo z referencno konfiguracijo
+ * z enakim nacinom shranjevanja nizov, saj je rezultat programa, ki do znakov
+ * niza dostopa s funkcijama {@code getbyte} in {@code putbyte}, odvisen od
+ * nacina shranjevanja.
+ *
+ * Uporaba: {@code Diff [-n stevilo] [-seed seme] [-keep imenik] datoteka|imenik...}
+ */
+public class Diff {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private Diff() {
+		throw new Report.InternalError();
+	}
+
+	/** Najvecje stevilo izvedenih ukazov pri izvajanju nakljucnega programa. */
+	private static final long RANDOM_MAX_INSTRS = 5_000_000;
+
+	/**
+	 * Ugotovi, ali konfiguracija nize shranjuje po en znak na bajt.
+	 *
+	 * @param config Konfiguracija izvajanja.
+	 * @return Ali konfiguracija nize shranjuje po en znak na bajt.
+	 */
+	private static boolean packedStrings(final Pipeline.Config config) {
+		Pipeline.setup(config);
+		return pins25.phase.CodeGen.packedStrings;
+	}
+
+	/**
+	 * Prevede in izvede program v dani konfiguraciji.
+	 *
+	 * @param srcFileName   Ime izvorne datoteke.
+	 * @param config        Konfiguracija izvajanja.
+	 * @param packedStrings Ali se nizi shranijo po en znak na bajt ne glede na
+	 *                      konfiguracijo.
+	 * @param maxInstrs     Najvecje stevilo izvedenih ukazov.
+	 * @return Rezultat izvajanja ali {@code null}, ce se program ne prevede.
+	 */
+	private static Pipeline.Run run(final String srcFileName, final Pipeline.Config config,
+			final boolean packedStrings, final long maxInstrs) {
+		Pipeline.setup(config);
+		if (packedStrings)
+			pins25.phase.CodeGen.packedStrings = true;
+		pins25.phase.Machine.debugOutputs = true;
+		pins25.phase.Machine.maxInstrs = maxInstrs;
+		final Pipeline.Image image = Pipeline.compile(srcFileName);
+		return Pipeline.run(image, Pipeline.stdin(srcFileName));
+	}
+
+	/**
+	 * Primerja rezultat izvajanja z referencnim rezultatom.
+	 *
+	 * @param ref Referencni rezultat izvajanja.
+	 * @param run Rezultat izvajanja.
+	 * @return Opis prvega razhajanja ali {@code null}, ce razhajanja ni.
+	 */
+	private static String compare(final Pipeline.Run ref, final Pipeline.Run run) {
+		// standardni izhod:
+		final int length = Math.min(ref.stdout.length(), run.stdout.length());
+		int offset = 0;
+		while ((offset < length) && (ref.stdout.charAt(offset) == run.stdout.charAt(offset)))
+			offset++;
+		if ((offset < length) || (ref.stdout.length() != run.stdout.length())) {
+			return String.format("stdout differs at offset %d: expected %s, got %s\n    expected from: %s\n    got from:      %s",
+					offset, excerpt(ref.stdout, offset), excerpt(run.stdout, offset), outputLocation(ref, offset),
+					outputLocation(run, offset));
+		}
+
+		// napake med izvajanjem:
+		if (!Objects.equals(ref.errorType, run.errorType))
+			return String.format("execution differs: expected %s, got %s",
+					ref.error == null ? "normal termination" : ref.error,
+					run.error == null ? "normal termination" : run.error);
+
+		// izhodna koda:
+		if (!Objects.equals(ref.exitCode, run.exitCode))
+			return String.format("exit code differs: expected %s, got %s (at %s)", ref.exitCode, run.exitCode,
+					run.location);
+
+		// staticne spremenljivke (naslovi se primerjajo simbolicno):
+		for (final Map.Entry<String, Pipeline.Static> entry : ref.statics.entrySet()) {
+			final Pipeline.Static refStatic = entry.getValue();
+			final Pipeline.Static runStatic = run.statics.get(entry.getKey());
+			if (runStatic == null)
+				continue;
+			for (int v = 0; v < Math.min(refStatic.values().length, runStatic.values().length); v++) {
+				if (refStatic.values()[v] == runStatic.values()[v])
+					continue;
+				if ((refStatic.pointers()[v] != null) && refStatic.pointers()[v].equals(runStatic.pointers()[v]))
+					continue;
+				final int addr = run.executor.labelAddr(runStatic.label()) + 4 * v;
+				return String.format("data differs at %s+%d (address %d): expected %s, got %s", entry.getKey(),
+						4 * v, addr, value(refStatic, v), value(runStatic, v));
+			}
+			if (refStatic.values().length != runStatic.values().length)
+				return String.format("data differs at %s: expected size %d, got %d", entry.getKey(),
+						4 * refStatic.values().length, 4 * runStatic.values().length);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Opise besedo staticne spremenljivke.
+	 *
+	 * @param value Koncna vrednost staticne spremenljivke.
+	 * @param v     Indeks besede.
+	 * @return Opis besede.
+	 */
+	private static String value(final Pipeline.Static value, final int v) {
+		return value.values()[v] + (value.pointers()[v] == null ? "" : " (" + value.pointers()[v] + ")");
+	}
+
+	/**
+	 * Vrne izsek izhoda od danega mesta naprej.
+	 *
+	 * @param stdout Izhod.
+	 * @param offset Mesto v izhodu.
+	 * @return Izsek izhoda.
+	 */
+	private static String excerpt(final String stdout, final int offset) {
+		if (offset >= stdout.length())
+			return "<end of output>";
+		final String excerpt = stdout.substring(offset, Math.min(stdout.length(), offset + 20));
+		return "\"" + excerpt.replace("\n", "\\n") + "\"";
+	}
+
+	/**
+	 * Opise lokacijo ukaza, ki je izpisal dano mesto izhoda.
+	 *
+	 * @param run    Rezultat izvajanja.
+	 * @param offset Mesto v izhodu.
+	 * @return Opis lokacije ukaza.
+	 */
+	private static String outputLocation(final Pipeline.Run run, final int offset) {
+		final String location = offset < run.stdout.length() ? run.outputLocation(offset) : null;
+		return location == null ? "<end of output> at " + run.location : location;
+	}
+
+	/**
+	 * Preveri program v vseh registriranih konfiguracijah.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @param maxInstrs   Najvecje stevilo izvedenih ukazov.
+	 * @param generated   Ali je program nakljucno generiran (in se mora zato v
+	 *                    referencni konfiguraciji izvesti brez napake).
+	 * @return {@code true}, ce se nobena konfiguracija ne razlikuje od referencne.
+	 */
+	private static boolean check(final String srcFileName, final long maxInstrs, final boolean generated) {
+		final Pipeline.Config refConfig = Pipeline.configs.getFirst();
+		final Pipeline.Run ref;
+		try {
+			ref = run(srcFileName, refConfig, false, maxInstrs);
+		} catch (Report.Error error) {
+			Report.warning(srcFileName + ": skipped (" + error.getMessage() + ")");
+			return true;
+		}
+		if ((ref.error != null) && ref.error.contains("Instruction limit exceeded")) {
+			Report.warning(srcFileName + ": skipped (instruction limit exceeded)");
+			return true;
+		}
+		if ((ref.error != null) && generated) {
+			System.out.printf("%s [%s]: %s\n", srcFileName, refConfig.name(), ref.error);
+			return false;
+		}
+
+		boolean ok = true;
+		Pipeline.Run packedRef = null;
+		for (final Pipeline.Config config : Pipeline.configs.subList(1, Pipeline.configs.size())) {
+			String divergence;
+			try {
+				final boolean packedStrings = packedStrings(config);
+				if (packedStrings && (packedRef == null))
+					packedRef = run(srcFileName, refConfig, true, maxInstrs);
+				divergence = compare(packedStrings ? packedRef : ref, run(srcFileName, config, false, maxInstrs));
+			} catch (Report.Error | RuntimeException exception) {
+				divergence = "compilation failed: " + exception.getMessage();
+			}
+			if (divergence != null) {
+				System.out.printf("%s [%s]: %s\n", srcFileName, config.name(), divergence);
+				ok = false;
+			}
+		}
+		if (ok)
+			System.out.printf("%s: ok (%d configurations)\n", srcFileName, Pipeline.configs.size());
+		return ok;
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon diferencialnega testiranja.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (differential testing):");
+
+		try {
+			int numRandom = 0;
+			long seed = 0;
+			String keepDir = null;
+			final List<String> paths = new ArrayList<String>();
+			for (int arg = 0; arg < cmdLineArgs.length; arg++) {
+				switch (cmdLineArgs[arg]) {
+					case "-n" -> numRandom = Integer.parseInt(cmdLineArgs[++arg]);
+					case "-seed" -> seed = Long.parseLong(cmdLineArgs[++arg]);
+					case "-keep" -> keepDir = cmdLineArgs[++arg];
+					default -> paths.add(cmdLineArgs[arg]);
+				}
+			}
+			if (paths.isEmpty() && (numRandom == 0))
+				throw new Report.Error("No source file specified in the command line.");
+
+			int numFailed = 0;
+			for (final String srcFileName : Pipeline.sources(paths))
+				if (!check(srcFileName, 0, false))
+					numFailed++;
+
+			for (int r = 0; r < numRandom; r++) {
+				final String src = new ProgramGenerator(seed + r).generate();
+				final File srcFile = keepDir == null ? File.createTempFile("random-" + (seed + r) + "-", ".pins25")
+						: new File(keepDir, "random-" + (seed + r) + ".pins25");
+				Files.writeString(srcFile.toPath(), src);
+				if (check(srcFile.getPath(), RANDOM_MAX_INSTRS, true)) {
+					if (keepDir == null)
+						srcFile.delete();
+				} else {
+					System.out.printf("    program kept in %s\n", srcFile.getPath());
+					numFailed++;
+				}
+			}
+
+			if (numFailed > 0)
+				throw new Report.Error(numFailed + " program(s) diverged.");
+			Report.info("Done.");
+		} catch (IOException exception) {
+			System.err.println(":-( " + exception.getMessage());
+			System.exit(1);
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
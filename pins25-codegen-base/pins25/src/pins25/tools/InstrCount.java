@@ -0,0 +1,214 @@
+package pins25.tools;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import pins25.common.*;
+import pins25.phase.*;
+
+/**
+ * Regresijsko preverjanje stevila izvedenih ukazov.
+ *
+ * Vsak program iz korpusa se prevede s privzetimi nastavitvami in izvede,
+ * pri tem pa se steje izvedene ukaze (skupaj in po posameznih vrstah ukazov)
+ * in meri najvecjo porabo pomnilnika. Rezultati se primerjajo z osnovo,
+ * shranjeno v datoteki: ce program izvede vec ukazov ali porabi vec pomnilnika,
+ * kot dovoljuje toleranca, preverjanje ne uspe. Stevilo izvedenih ukazov je za
+ * razliko od casa izvajanja deterministicno.
+ *
+ * Uporaba:
+ * {@code InstrCount [-update] [-tolerance odstotek] osnova datoteka|imenik...}
+ */
+public class InstrCount {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private InstrCount() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Meritev izvajanja programa.
+	 *
+	 * @param numInstrs         Stevilo izvedenih ukazov.
+	 * @param peakMemory        Najvecja poraba pomnilnika (v bajtih).
+	 * @param numInstrsByOpcode Stevilo izvedenih ukazov po vrstah ukazov.
+	 */
+	public record Count(long numInstrs, int peakMemory, SortedMap<String, Long> numInstrsByOpcode) {
+
+		@Override
+		public String toString() {
+			final StringBuffer buffer = new StringBuffer();
+			buffer.append(numInstrs + " " + peakMemory);
+			for (final Map.Entry<String, Long> entry : numInstrsByOpcode.entrySet())
+				buffer.append(" " + entry.getKey() + "=" + entry.getValue());
+			return buffer.toString();
+		}
+
+		/**
+		 * Prebere meritev iz besedila, kot ga vrne {@link #toString()}.
+		 *
+		 * @param text Besedilo.
+		 * @return Meritev.
+		 */
+		public static Count parse(final String text) {
+			final String[] fields = text.trim().split("\\s+");
+			final SortedMap<String, Long> numInstrsByOpcode = new TreeMap<String, Long>();
+			for (int f = 2; f < fields.length; f++) {
+				final int eq = fields[f].indexOf('=');
+				numInstrsByOpcode.put(fields[f].substring(0, eq), Long.parseLong(fields[f].substring(eq + 1)));
+			}
+			return new Count(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), numInstrsByOpcode);
+		}
+
+	}
+
+	/**
+	 * Prevede in izvede program ter izmeri stevilo izvedenih ukazov.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @return Meritev izvajanja programa.
+	 */
+	public static Count count(final String srcFileName) {
+		Pipeline.setup(Pipeline.config(Pipeline.DEFAULT));
+		Machine.countInstrs = true;
+		final Pipeline.Run run = Pipeline.run(Pipeline.compile(srcFileName), Pipeline.stdin(srcFileName));
+		Pipeline.reset();
+		if (run.error != null)
+			throw new Report.Error(srcFileName + ": " + run.error);
+		return new Count(run.executor.numInstrs(), run.executor.peakMemory(),
+				new TreeMap<String, Long>(run.executor.numInstrsByOpcode()));
+	}
+
+	/**
+	 * Prebere osnovo.
+	 *
+	 * @param baselineFileName Ime datoteke z osnovo.
+	 * @return Meritve, urejene po imenih programov.
+	 */
+	private static SortedMap<String, Count> readBaseline(final String baselineFileName) {
+		final SortedMap<String, Count> baseline = new TreeMap<String, Count>();
+		final File baselineFile = new File(baselineFileName);
+		if (!baselineFile.exists())
+			return baseline;
+		try {
+			for (final String line : Files.readAllLines(baselineFile.toPath())) {
+				if (line.isBlank() || line.startsWith("#"))
+					continue;
+				final int sep = line.indexOf(' ');
+				baseline.put(line.substring(0, sep), Count.parse(line.substring(sep + 1)));
+			}
+		} catch (IOException | RuntimeException __) {
+			throw new Report.Error("Cannot read baseline file '" + baselineFileName + "'.");
+		}
+		return baseline;
+	}
+
+	/**
+	 * Zapise osnovo.
+	 *
+	 * @param baselineFileName Ime datoteke z osnovo.
+	 * @param baseline         Meritve, urejene po imenih programov.
+	 */
+	private static void writeBaseline(final String baselineFileName, final SortedMap<String, Count> baseline) {
+		try (final PrintStream out = new PrintStream(baselineFileName)) {
+			out.println("# program instructions peak-memory opcode=instructions...");
+			for (final Map.Entry<String, Count> entry : baseline.entrySet())
+				out.println(entry.getKey() + " " + entry.getValue());
+		} catch (IOException __) {
+			throw new Report.Error("Cannot write baseline file '" + baselineFileName + "'.");
+		}
+	}
+
+	/**
+	 * Vrne relativno spremembo vrednosti v odstotkih.
+	 *
+	 * @param base  Osnovna vrednost.
+	 * @param value Nova vrednost.
+	 * @return Relativna sprememba v odstotkih.
+	 */
+	private static double change(final long base, final long value) {
+		return base == 0 ? 0.0 : 100.0 * (value - base) / base;
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon preverjanja stevila izvedenih ukazov.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (instruction count regression tests):");
+
+		try {
+			boolean update = false;
+			double tolerance = 0.0;
+			String baselineFileName = null;
+			final List<String> paths = new ArrayList<String>();
+			for (int arg = 0; arg < cmdLineArgs.length; arg++) {
+				switch (cmdLineArgs[arg]) {
+					case "-update" -> update = true;
+					case "-tolerance" -> tolerance = Double.parseDouble(cmdLineArgs[++arg]);
+					default -> {
+						if (baselineFileName == null)
+							baselineFileName = cmdLineArgs[arg];
+						else
+							paths.add(cmdLineArgs[arg]);
+					}
+				}
+			}
+			if (baselineFileName == null)
+				throw new Report.Error("No baseline file specified in the command line.");
+			if (paths.isEmpty())
+				throw new Report.Error("No source file specified in the command line.");
+
+			final SortedMap<String, Count> baseline = readBaseline(baselineFileName);
+			final SortedMap<String, Count> counts = new TreeMap<String, Count>();
+			int numFailed = 0;
+			for (final String srcFileName : Pipeline.sources(paths)) {
+				final String name = new File(srcFileName).getName();
+				final Count count = count(srcFileName);
+				counts.put(name, count);
+
+				final Count base = baseline.get(name);
+				if (base == null) {
+					System.out.printf("%s: %d instrs, %d bytes (no baseline)\n", name, count.numInstrs(),
+							count.peakMemory());
+					continue;
+				}
+				final double instrsChange = change(base.numInstrs(), count.numInstrs());
+				final double memoryChange = change(base.peakMemory(), count.peakMemory());
+				final boolean failed = (instrsChange > tolerance) || (memoryChange > tolerance);
+				System.out.printf("%s: %d instrs (%+.2f%%), %d bytes (%+.2f%%)%s\n", name, count.numInstrs(),
+						instrsChange, count.peakMemory(), memoryChange, failed && !update ? " FAILED" : "");
+				if (failed && !update) {
+					// Izpis vrst ukazov, pri katerih se je stevilo izvedenih ukazov povecalo.
+					final SortedSet<String> opcodes = new TreeSet<String>(base.numInstrsByOpcode().keySet());
+					opcodes.addAll(count.numInstrsByOpcode().keySet());
+					for (final String opcode : opcodes) {
+						final long baseNum = base.numInstrsByOpcode().getOrDefault(opcode, 0L);
+						final long num = count.numInstrsByOpcode().getOrDefault(opcode, 0L);
+						if (num > baseNum)
+							System.out.printf("    %-10s %d -> %d\n", opcode, baseNum, num);
+					}
+					numFailed++;
+				}
+			}
+
+			if (update) {
+				baseline.putAll(counts);
+				writeBaseline(baselineFileName, baseline);
+				Report.info("Baseline '" + baselineFileName + "' updated.");
+			}
+			if (numFailed > 0)
+				throw new Report.Error(numFailed + " program(s) exceeded the baseline.");
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
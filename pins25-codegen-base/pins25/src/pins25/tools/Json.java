@@ -0,0 +1,288 @@
+package pins25.tools;
+
+import java.util.*;
+
+import pins25.common.*;
+
+/**
+ * Branje in pisanje podatkov v obliki JSON.
+ *
+ * Objekti so predstavljeni z {@link Map}, tabele z {@link List}, stevila z
+ * {@link Double}, nizi s {@link String}, logicne vrednosti z {@link Boolean},
+ * {@code null} pa z {@code null}.
+ */
+public class Json {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private Json() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Zapise vrednost v obliki JSON.
+	 *
+	 * @param value Vrednost.
+	 * @return Besedilo v obliki JSON.
+	 */
+	public static String write(final Object value) {
+		final StringBuffer buffer = new StringBuffer();
+		write(buffer, value, "");
+		buffer.append("\n");
+		return buffer.toString();
+	}
+
+	/**
+	 * Zapise vrednost v obliki JSON.
+	 *
+	 * @param buffer Besedilo.
+	 * @param value  Vrednost.
+	 * @param indent Zamik.
+	 */
+	private static void write(final StringBuffer buffer, final Object value, final String indent) {
+		switch (value) {
+			case null -> buffer.append("null");
+			case Map<?, ?> map -> {
+				if (map.isEmpty()) {
+					buffer.append("{}");
+					break;
+				}
+				buffer.append("{\n");
+				boolean first = true;
+				for (final Map.Entry<?, ?> entry : map.entrySet()) {
+					if (!first)
+						buffer.append(",\n");
+					first = false;
+					buffer.append(indent + "  ");
+					writeString(buffer, entry.getKey().toString());
+					buffer.append(": ");
+					write(buffer, entry.getValue(), indent + "  ");
+				}
+				buffer.append("\n" + indent + "}");
+			}
+			case List<?> list -> {
+				// Tabele stevil so zapisane v eni vrstici.
+				final boolean flat = list.stream().allMatch(element -> element instanceof Number);
+				buffer.append(flat ? "[" : "[\n");
+				boolean first = true;
+				for (final Object element : list) {
+					if (!first)
+						buffer.append(flat ? ", " : ",\n");
+					first = false;
+					if (!flat)
+						buffer.append(indent + "  ");
+					write(buffer, element, indent + "  ");
+				}
+				buffer.append(flat ? "]" : "\n" + indent + "]");
+			}
+			case String string -> writeString(buffer, string);
+			case Double number when number == Math.rint(number) && !Double.isInfinite(number) ->
+				buffer.append(number.longValue());
+			case Number number -> buffer.append(number.toString());
+			case Boolean bool -> buffer.append(bool.toString());
+			default -> throw new Report.InternalError();
+		}
+	}
+
+	/**
+	 * Zapise niz v obliki JSON.
+	 *
+	 * @param buffer Besedilo.
+	 * @param string Niz.
+	 */
+	private static void writeString(final StringBuffer buffer, final String string) {
+		buffer.append('"');
+		for (final char c : string.toCharArray()) {
+			switch (c) {
+				case '"' -> buffer.append("\\\"");
+				case '\\' -> buffer.append("\\\\");
+				case '\n' -> buffer.append("\\n");
+				case '\t' -> buffer.append("\\t");
+				default -> {
+					if (c < ' ')
+						buffer.append(String.format("\\u%04x", (int) c));
+					else
+						buffer.append(c);
+				}
+			}
+		}
+		buffer.append('"');
+	}
+
+	/**
+	 * Prebere vrednost v obliki JSON.
+	 *
+	 * @param text Besedilo v obliki JSON.
+	 * @return Vrednost.
+	 */
+	public static Object read(final String text) {
+		final Reader reader = new Reader(text);
+		final Object value = reader.value();
+		reader.skipSpaces();
+		if (reader.pos != text.length())
+			throw reader.error();
+		return value;
+	}
+
+	/**
+	 * Bralnik besedila v obliki JSON.
+	 */
+	private static class Reader {
+
+		/** Besedilo. */
+		private final String text;
+
+		/** Trenutni polozaj v besedilu. */
+		private int pos = 0;
+
+		/**
+		 * Ustvari nov bralnik.
+		 *
+		 * @param text Besedilo.
+		 */
+		private Reader(final String text) {
+			this.text = text;
+		}
+
+		/**
+		 * Vrne napako na trenutnem polozaju.
+		 *
+		 * @return Napaka.
+		 */
+		private Report.Error error() {
+			return new Report.Error("Malformed JSON at offset " + pos + ".");
+		}
+
+		/**
+		 * Preskoci presledke.
+		 */
+		private void skipSpaces() {
+			while ((pos < text.length()) && Character.isWhitespace(text.charAt(pos)))
+				pos++;
+		}
+
+		/**
+		 * Preveri in preskoci dani znak.
+		 *
+		 * @param c Znak.
+		 */
+		private void check(final char c) {
+			skipSpaces();
+			if ((pos >= text.length()) || (text.charAt(pos) != c))
+				throw error();
+			pos++;
+		}
+
+		/**
+		 * Ali je naslednji znak enak danemu (in ga v tem primeru preskoci).
+		 *
+		 * @param c Znak.
+		 * @return Ali je naslednji znak enak danemu.
+		 */
+		private boolean accept(final char c) {
+			skipSpaces();
+			if ((pos < text.length()) && (text.charAt(pos) == c)) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Prebere vrednost.
+		 *
+		 * @return Vrednost.
+		 */
+		private Object value() {
+			skipSpaces();
+			if (pos >= text.length())
+				throw error();
+			final char c = text.charAt(pos);
+			switch (c) {
+				case '{': {
+					pos++;
+					final Map<String, Object> map = new LinkedHashMap<String, Object>();
+					if (accept('}'))
+						return map;
+					do {
+						skipSpaces();
+						final String key = string();
+						check(':');
+						map.put(key, value());
+					} while (accept(','));
+					check('}');
+					return map;
+				}
+				case '[': {
+					pos++;
+					final List<Object> list = new ArrayList<Object>();
+					if (accept(']'))
+						return list;
+					do {
+						list.add(value());
+					} while (accept(','));
+					check(']');
+					return list;
+				}
+				case '"':
+					return string();
+				default: {
+					for (final String word : new String[] { "true", "false", "null" }) {
+						if (text.startsWith(word, pos)) {
+							pos += word.length();
+							return word.equals("null") ? null : Boolean.valueOf(word);
+						}
+					}
+					final int start = pos;
+					while ((pos < text.length()) && "+-0123456789.eE".indexOf(text.charAt(pos)) >= 0)
+						pos++;
+					try {
+						return Double.valueOf(text.substring(start, pos));
+					} catch (NumberFormatException __) {
+						pos = start;
+						throw error();
+					}
+				}
+			}
+		}
+
+		/**
+		 * Prebere niz.
+		 *
+		 * @return Niz.
+		 */
+		private String string() {
+			check('"');
+			final StringBuffer buffer = new StringBuffer();
+			while (true) {
+				if (pos >= text.length())
+					throw error();
+				final char c = text.charAt(pos++);
+				if (c == '"')
+					return buffer.toString();
+				if (c != '\\') {
+					buffer.append(c);
+					continue;
+				}
+				if (pos >= text.length())
+					throw error();
+				final char e = text.charAt(pos++);
+				switch (e) {
+					case 'n' -> buffer.append('\n');
+					case 't' -> buffer.append('\t');
+					case 'r' -> buffer.append('\r');
+					case 'b' -> buffer.append('\b');
+					case 'f' -> buffer.append('\f');
+					case 'u' -> {
+						if (pos + 4 > text.length())
+							throw error();
+						buffer.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+						pos += 4;
+					}
+					default -> buffer.append(e);
+				}
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,231 @@
+package pins25.tools;
+
+import java.util.*;
+
+import pins25.common.*;
+import pins25.phase.*;
+
+/**
+ * Merjenje casa izvajanja posamezne funkcije v PINS'25.
+ *
+ * Program se prevede, nato pa se klic funkcije {@code main} nadomesti z
+ * gonilnikom, ki dano funkcijo (definirano na najvisjem nivoju) z danimi
+ * argumenti veckrat zapored poklice. Pred in po vsakem klicu gonilnik s
+ * sistemskima klicema {@code clock} in {@code instrs} odcita uro in stevilo
+ * izvedenih ukazov ter razliki shrani v staticno tabelo, iz katere se po
+ * koncu izvajanja izracunajo povprecje, percentili in stevilo ukazov na klic.
+ * Prvih nekaj klicev je ogrevalnih in se ne uposteva.
+ *
+ * Uporaba:
+ * {@code MicroBench [-warmup n] [-runs n] datoteka funkcija [argument...]}
+ */
+public class MicroBench {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private MicroBench() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Stevilo ukazov gonilnika med obema odcitkoma stevila izvedenih ukazov, ki
+	 * niso del klica funkcije: {@code PUSH 4}, {@code POPN}, {@code PUSH 0},
+	 * {@code NAME instrs} in {@code CALL}.
+	 */
+	private static final int DRIVER_INSTRS = 5;
+
+	/**
+	 * Nadomesti klic funkcije {@code main} v kodi programa z gonilnikom.
+	 *
+	 * @param image   Preveden program.
+	 * @param funName Ime funkcije.
+	 * @param args    Argumenti funkcije.
+	 * @param numRuns Stevilo vseh klicev funkcije.
+	 * @return Preveden program z gonilnikom.
+	 */
+	private static Pipeline.Image driver(final Pipeline.Image image, final String funName, final List<Integer> args,
+			final int numRuns) {
+		final List<PDM.CodeInstr> code = new ArrayList<PDM.CodeInstr>(image.codeSegment());
+
+		if (code.stream()
+				.noneMatch(instr -> (instr instanceof PDM.LABEL label) && (label.label == Labels.label(funName))))
+			throw new Report.Error("No top-level function '" + funName + "' with a body.");
+
+		// Inicializacija programa se konca s klicem funkcij main in exit.
+		int mainCall = -1;
+		for (int i = 1; i + 4 < code.size(); i++)
+			if ((code.get(i) instanceof PDM.NAME name) && (name.label == Labels.label("main"))
+					&& (code.get(i + 1) instanceof PDM.CALL)) {
+				mainCall = i - 1;
+				break;
+			}
+		if (mainCall < 0)
+			throw new Report.Error("Cannot find the call of function 'main'.");
+		for (int i = 0; i < 6; i++)
+			code.remove(mainCall);
+
+		final List<PDM.CodeInstr> driver = new ArrayList<PDM.CodeInstr>();
+		driver.add(new PDM.LABEL(Labels.label("bench:loop"), null));
+		driver.add(new PDM.NAME(Labels.label("bench:i"), null));
+		driver.add(new PDM.LOAD(null));
+		driver.add(new PDM.PUSH(numRuns, null));
+		driver.add(new PDM.OPER(PDM.OPER.Oper.LTH, null));
+		driver.add(new PDM.NAME(Labels.label("bench:body"), null));
+		driver.add(new PDM.NAME(Labels.label("bench:end"), null));
+		driver.add(new PDM.CJMP(null));
+		driver.add(new PDM.LABEL(Labels.label("bench:body"), null));
+		// t0 = clock(), n0 = instrs()
+		driver.addAll(syscall("clock"));
+		driver.addAll(syscall("instrs"));
+		// funkcija(argumenti)
+		for (final Integer arg : args.reversed())
+			driver.add(new PDM.PUSH(arg, null));
+		driver.add(new PDM.PUSH(0, null));
+		driver.add(new PDM.NAME(Labels.label(funName), null));
+		driver.add(new PDM.CALL(-1, null, null));
+		driver.add(new PDM.PUSH(4, null));
+		driver.add(new PDM.POPN(null));
+		// samples[2*i+1] = instrs() - n0
+		driver.addAll(syscall("instrs"));
+		driver.add(new PDM.OPER(PDM.OPER.Oper.SUB, null));
+		driver.add(new PDM.OPER(PDM.OPER.Oper.NEG, null));
+		driver.addAll(sampleAddr(4));
+		driver.add(new PDM.SAVE(null));
+		// samples[2*i] = clock() - t0
+		driver.addAll(syscall("clock"));
+		driver.add(new PDM.OPER(PDM.OPER.Oper.SUB, null));
+		driver.add(new PDM.OPER(PDM.OPER.Oper.NEG, null));
+		driver.addAll(sampleAddr(0));
+		driver.add(new PDM.SAVE(null));
+		// i = i + 1
+		driver.add(new PDM.NAME(Labels.label("bench:i"), null));
+		driver.add(new PDM.LOAD(null));
+		driver.add(new PDM.PUSH(1, null));
+		driver.add(new PDM.OPER(PDM.OPER.Oper.ADD, null));
+		driver.add(new PDM.NAME(Labels.label("bench:i"), null));
+		driver.add(new PDM.SAVE(null));
+		driver.add(new PDM.NAME(Labels.label("bench:loop"), null));
+		driver.add(new PDM.UJMP(null));
+		driver.add(new PDM.LABEL(Labels.label("bench:end"), null));
+		driver.add(new PDM.PUSH(0, null));
+		driver.addAll(syscall("exit"));
+		code.addAll(mainCall, driver);
+
+		final List<PDM.DataInstr> data = new ArrayList<PDM.DataInstr>(image.dataSegment());
+		data.add(new PDM.LABEL(Labels.label("bench:i"), null));
+		data.add(new PDM.DATA(0, null));
+		data.add(new PDM.LABEL(Labels.label("bench:samples"), null));
+		data.add(new PDM.SIZE(8 * numRuns, null));
+
+		return new Pipeline.Image(code, data, image.packedStrings());
+	}
+
+	/**
+	 * Vrne kodo sistemskega klica brez argumentov.
+	 *
+	 * @param name Ime sistemskega klica.
+	 * @return Koda sistemskega klica.
+	 */
+	private static List<PDM.CodeInstr> syscall(final String name) {
+		return List.of(new PDM.PUSH(0, null), new PDM.NAME(Labels.label(name), null), new PDM.CALL(-1, null, null));
+	}
+
+	/**
+	 * Vrne kodo, ki izracuna naslov meritve trenutnega klica.
+	 *
+	 * @param offset Odmik v meritvi ({@code 0} za cas, {@code 4} za stevilo
+	 *               ukazov).
+	 * @return Koda, ki izracuna naslov.
+	 */
+	private static List<PDM.CodeInstr> sampleAddr(final int offset) {
+		return List.of(new PDM.NAME(Labels.label("bench:samples"), null), new PDM.NAME(Labels.label("bench:i"), null),
+				new PDM.LOAD(null), new PDM.PUSH(8, null), new PDM.OPER(PDM.OPER.Oper.MUL, null),
+				new PDM.OPER(PDM.OPER.Oper.ADD, null),
+				new PDM.PUSH(offset, null), new PDM.OPER(PDM.OPER.Oper.ADD, null));
+	}
+
+	/**
+	 * Vrne percentil urejenega vzorca (po metodi najblizjega ranga).
+	 *
+	 * @param sorted     Urejen vzorec.
+	 * @param percentile Percentil.
+	 * @return Vrednost percentila.
+	 */
+	private static long percentile(final long[] sorted, final double percentile) {
+		final int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	// --- ZAGON ---
+
+	/**
+	 * Zagon merjenja casa izvajanja funkcije.
+	 *
+	 * @param cmdLineArgs Argumenti v ukazni vrstici.
+	 */
+	public static void main(final String[] cmdLineArgs) {
+		System.out.println("This is PINS'25 compiler (micro-benchmark runner):");
+
+		try {
+			int numWarmups = 100;
+			int numRuns = 1000;
+			String srcFileName = null;
+			String funName = null;
+			final List<Integer> args = new ArrayList<Integer>();
+			for (int arg = 0; arg < cmdLineArgs.length; arg++) {
+				switch (cmdLineArgs[arg]) {
+					case "-warmup" -> numWarmups = Integer.parseInt(cmdLineArgs[++arg]);
+					case "-runs" -> numRuns = Integer.parseInt(cmdLineArgs[++arg]);
+					default -> {
+						if (srcFileName == null)
+							srcFileName = cmdLineArgs[arg];
+						else if (funName == null)
+							funName = cmdLineArgs[arg];
+						else
+							args.add(Integer.parseInt(cmdLineArgs[arg]));
+					}
+				}
+			}
+			if (srcFileName == null)
+				throw new Report.Error("No source file specified in the command line.");
+			if (funName == null)
+				throw new Report.Error("No function specified in the command line.");
+			if (numRuns < 1)
+				throw new Report.Error("At least one run is needed.");
+
+			Pipeline.setup(Pipeline.config(Pipeline.DEFAULT));
+			// Funkcija, katere cas izvajanja se meri, iz main ni nujno dosegljiva.
+			Optim.roots.add(funName);
+			final Pipeline.Image image = driver(Pipeline.compile(srcFileName), funName, args, numWarmups + numRuns);
+			final Pipeline.Run run = Pipeline.run(image, Pipeline.stdin(srcFileName));
+			if (run.error != null)
+				throw new Report.Error(srcFileName + ": " + run.error);
+			if (!Objects.equals(run.exitCode, 0))
+				throw new Report.Error(srcFileName + ": function '" + funName + "' exited with code "
+						+ run.exitCode + ".");
+
+			final int samplesAddr = run.executor.labelAddr(Labels.label("bench:samples"));
+			final long[] times = new long[numRuns];
+			final long[] instrs = new long[numRuns];
+			for (int r = 0; r < numRuns; r++) {
+				times[r] = run.executor.load(samplesAddr + 8 * (numWarmups + r));
+				instrs[r] = run.executor.load(samplesAddr + 8 * (numWarmups + r) + 4) - DRIVER_INSTRS;
+			}
+			Arrays.sort(times);
+			Arrays.sort(instrs);
+
+			System.out.printf("%s(%s): %d runs after %d warmup runs\n", funName,
+					String.join(", ", args.stream().map(String::valueOf).toList()), numRuns, numWarmups);
+			System.out.printf("  time [us]:       mean %.2f, p50 %d, p90 %d, p99 %d, max %d\n",
+					Arrays.stream(times).average().getAsDouble(), percentile(times, 50), percentile(times, 90),
+					percentile(times, 99), times[numRuns - 1]);
+			System.out.printf("  instrs per call: mean %.2f, min %d, max %d\n",
+					Arrays.stream(instrs).average().getAsDouble(), instrs[0], instrs[numRuns - 1]);
+			Report.info("Done.");
+		} catch (Report.Error error) {
+			// Izpis opisa napake.
+			System.err.println(error.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
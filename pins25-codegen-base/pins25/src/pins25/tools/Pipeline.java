@@ -0,0 +1,483 @@
+package pins25.tools;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+
+import pins25.common.*;
+import pins25.phase.*;
+
+/**
+ * Prevajanje in izvajanje programov za potrebe orodij.
+ *
+ * Vse faze prevajalnika in skladovni stroj so nastavljeni s staticnimi
+ * zastavicami. Konfiguracija izvajanja je zato le imenovana nastavitev teh
+ * zastavic, ki se izvede po {@link #reset()}.
+ */
+public class Pipeline {
+
+	@SuppressWarnings({ "doclint:missing" })
+	private Pipeline() {
+		throw new Report.InternalError();
+	}
+
+	/**
+	 * Preveden program.
+	 *
+	 * @param codeSegment   Seznam ukazov, ki predstavljajo kodo programa.
+	 * @param dataSegment   Seznam ukazov, ki predstavljajo podatke programa.
+	 * @param packedStrings Ali so nizi programa shranjeni po en znak na bajt.
+	 */
+	public record Image(List<PDM.CodeInstr> codeSegment, List<PDM.DataInstr> dataSegment,
+			boolean packedStrings) {
+	}
+
+	/**
+	 * Konfiguracija izvajanja.
+	 *
+	 * @param name  Ime konfiguracije.
+	 * @param setup Nastavitev zastavic prevajalnika in skladovnega stroja.
+	 */
+	public record Config(String name, Runnable setup) {
+	}
+
+	/** Ime konfiguracije s privzetimi nastavitvami prevajalnika. */
+	public static final String DEFAULT = "default";
+
+	/**
+	 * Registrirane konfiguracije izvajanja.
+	 *
+	 * Prva konfiguracija je referencna (brez optimizacij): vse ostale se
+	 * primerjajo z njo.
+	 */
+	public static final List<Config> configs = new ArrayList<Config>();
+
+	static {
+		configs.add(new Config("reference", Pipeline::disableOptims));
+		configs.add(new Config(DEFAULT, () -> {
+		}));
+		configs.add(new Config("const-folding", () -> {
+			disableOptims();
+			Optim.constFolding = true;
+		}));
+		configs.add(new Config("dead-defs", () -> {
+			disableOptims();
+			Optim.deadDefs = true;
+		}));
+		configs.add(new Config("lifting", () -> {
+			disableOptims();
+			Memory.lifting = true;
+		}));
+		configs.add(new Config("slot-sharing", () -> {
+			disableOptims();
+			Memory.slotSharing = true;
+		}));
+		configs.add(new Config("inline", () -> {
+			disableOptims();
+			Inline.enabled = true;
+		}));
+		configs.add(new Config("jumping-code", () -> {
+			disableOptims();
+			CodeGen.jumpingCode = true;
+		}));
+		configs.add(new Config("display", () -> {
+			disableOptims();
+			CodeGen.display = true;
+		}));
+		configs.add(new Config("tail-calls", () -> {
+			disableOptims();
+			CodeGen.tailCalls = true;
+		}));
+		configs.add(new Config("immediates", () -> {
+			disableOptims();
+			CodeGen.immediates = true;
+		}));
+		configs.add(new Config("string-pooling", () -> {
+			disableOptims();
+			CodeGen.stringPooling = true;
+		}));
+		configs.add(new Config("packed-strings", () -> {
+			CodeGen.packedStrings = true;
+		}));
+		configs.add(new Config("loops", () -> {
+			disableOptims();
+			Loops.rotation = true;
+			Loops.unrollFactor = 4;
+			Loops.hoisting = true;
+			Loops.strengthReduction = true;
+		}));
+		configs.add(new Config("ssa", () -> {
+			disableOptims();
+			Ssa.enabled = true;
+		}));
+		configs.add(new Config("peephole", () -> {
+			disableOptims();
+			Peephole.enabled = true;
+		}));
+		configs.add(new Config("register-machine", () -> {
+			RegMachine.enabled = true;
+		}));
+	}
+
+	/**
+	 * Vrne registrirano konfiguracijo izvajanja.
+	 *
+	 * @param name Ime konfiguracije.
+	 * @return Konfiguracija izvajanja.
+	 */
+	public static Config config(final String name) {
+		for (final Config config : configs)
+			if (config.name().equals(name))
+				return config;
+		throw new Report.Error("Unknown configuration '" + name + "'.");
+	}
+
+	/**
+	 * Nastavi vse zastavice prevajalnika in skladovnega stroja na privzete
+	 * vrednosti za orodja (brez testnih izpisov, s privzetimi optimizacijami).
+	 */
+	public static void reset() {
+		Machine.debugInstrsList = false;
+		Machine.debugLabelsList = false;
+		Machine.debugStack = false;
+		Machine.debugOutputs = false;
+		Machine.maxInstrs = 0;
+		Machine.countInstrs = false;
+		Optim.constFolding = true;
+		Optim.deadDefs = true;
+		Optim.roots.clear();
+		Optim.roots.add("main");
+		Memory.lifting = true;
+		Memory.slotSharing = true;
+		Inline.enabled = true;
+		Inline.maxSize = 16;
+		Inline.verbose = false;
+		Loops.rotation = true;
+		Loops.unrollFactor = 4;
+		Loops.maxUnrollSize = 24;
+		Loops.hoisting = true;
+		Loops.strengthReduction = true;
+		Loops.verbose = false;
+		CodeGen.jumpingCode = true;
+		CodeGen.display = true;
+		CodeGen.tailCalls = true;
+		CodeGen.immediates = true;
+		CodeGen.stringPooling = true;
+		CodeGen.packedStrings = false;
+		Ssa.enabled = true;
+		Ssa.disabledPasses.clear();
+		Ssa.debugIR = false;
+		Peephole.enabled = true;
+		Peephole.disabledRules.clear();
+		Peephole.debugStats = false;
+		RegGen.numRegs = 16;
+		RegMachine.enabled = false;
+	}
+
+	/**
+	 * Izklopi vse optimizacije.
+	 */
+	public static void disableOptims() {
+		Optim.constFolding = false;
+		Optim.deadDefs = false;
+		Memory.lifting = false;
+		Memory.slotSharing = false;
+		Inline.enabled = false;
+		Loops.rotation = false;
+		Loops.unrollFactor = 1;
+		Loops.hoisting = false;
+		Loops.strengthReduction = false;
+		CodeGen.jumpingCode = false;
+		CodeGen.display = false;
+		CodeGen.tailCalls = false;
+		CodeGen.immediates = false;
+		CodeGen.stringPooling = false;
+		Ssa.enabled = false;
+		Peephole.enabled = false;
+	}
+
+	/**
+	 * Nastavi zastavice prevajalnika in skladovnega stroja za dano konfiguracijo.
+	 *
+	 * @param config Konfiguracija izvajanja.
+	 */
+	public static void setup(final Config config) {
+		reset();
+		config.setup().run();
+	}
+
+	/**
+	 * Izvede racunanje, pri tem pa zavrze vse, kar se izpise na standardni izhod.
+	 *
+	 * @param <Result>    Tip rezultata.
+	 * @param computation Racunanje.
+	 * @return Rezultat racunanja.
+	 */
+	public static <Result> Result quietly(final Supplier<Result> computation) {
+		final PrintStream out = System.out;
+		System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+		try {
+			return computation.get();
+		} finally {
+			System.setOut(out);
+		}
+	}
+
+	/**
+	 * Prevede program. Tabela oznak se pred prevajanjem izprazni, zato oznake
+	 * prejsnjih prevodov postanejo neveljavne.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @return Preveden program.
+	 */
+	public static Image compile(final String srcFileName) {
+		Labels.reset();
+		try (SynAn synAn = new SynAn(srcFileName)) {
+			// abstraktna sintaksa:
+			final Abstr.AttrAST abstrAttrAST = Abstr.constructAST(synAn);
+			// semanticna analiza:
+			final SemAn.AttrAST semanAttrAST = SemAn.analyze(abstrAttrAST);
+			// pomnilniska predstavitev:
+			final Memory.AttrAST memoryAttrAST = Memory.organize(semanAttrAST);
+			// optimizacija:
+			final Optim.AttrAST optimAttrAST = Optim.optimize(memoryAttrAST);
+			// vstavljanje funkcij:
+			final Inline.AttrAST inlineAttrAST = Inline.inline(optimAttrAST);
+			// optimizacija zank:
+			final Loops.AttrAST loopsAttrAST = Loops.optimize(inlineAttrAST);
+			// generiranje kode:
+			final CodeGen.AttrAST codegenAttrAST = CodeGen.generate(loopsAttrAST);
+			// optimizacija v vmesni predstavitvi SSA:
+			final CodeGen.AttrAST ssaAttrAST = Ssa.optimize(codegenAttrAST);
+
+			// optimizacija skozi lino:
+			final List<PDM.CodeInstr> codeSegment = Peephole
+					.optimize((new CodeGen.CodeSegmentGenerator(ssaAttrAST)).codeSegment());
+			final List<PDM.DataInstr> dataSegment = (new CodeGen.DataSegmentGenerator(ssaAttrAST))
+					.dataSegment();
+			return new Image(codeSegment, dataSegment, CodeGen.packedStrings);
+		}
+	}
+
+	/**
+	 * Rezultat izvajanja programa.
+	 */
+	public static class Run {
+
+		/** Stroj (skladovni ali registrski), ki je izvedel program. */
+		public final Machine.Processor executor;
+
+		/** Standardni izhod programa. */
+		public final String stdout;
+
+		/** Izhodna koda programa (ali {@code null}, ce se program ni koncal). */
+		public final Integer exitCode;
+
+		/** Opis napake med izvajanjem (ali {@code null}, ce je ni bilo). */
+		public final String error;
+
+		/** Vrsta napake med izvajanjem (ali {@code null}, ce je ni bilo). */
+		public final String errorType;
+
+		/** Koncne vrednosti staticnih spremenljivk, urejene po imenih oznak. */
+		public final SortedMap<String, Static> statics;
+
+		/** Lokacija ukaza, pri katerem se je izvajanje koncalo. */
+		public final String location;
+
+		/**
+		 * Lokacije ukazov, ki so pisali na standardni izhod, po mestih prvih
+		 * izpisanih znakov.
+		 */
+		private final TreeMap<Integer, String> outputLocations;
+
+		/**
+		 * Ustvari nov rezultat izvajanja programa.
+		 *
+		 * Lokacije ukazov se izracunajo takoj, saj imena oznak ob naslednjem
+		 * prevajanju niso vec na voljo.
+		 *
+		 * @param executor  Stroj, ki je izvedel program.
+		 * @param stdout    Standardni izhod programa.
+		 * @param error     Opis napake med izvajanjem.
+		 * @param errorType Vrsta napake med izvajanjem.
+		 * @param statics   Koncne vrednosti staticnih spremenljivk.
+		 */
+		private Run(final Machine.Processor executor, final String stdout, final String error,
+				final String errorType, final SortedMap<String, Static> statics) {
+			this.executor = executor;
+			this.stdout = stdout;
+			this.exitCode = executor.exitCode();
+			this.error = error;
+			this.errorType = errorType;
+			this.statics = statics;
+			this.location = executor.location(executor.PC());
+			this.outputLocations = new TreeMap<Integer, String>();
+			final Map<Integer, String> locations = new HashMap<Integer, String>();
+			for (final Map.Entry<Integer, Integer> output : executor.outputPCs().entrySet())
+				outputLocations.put(output.getKey(), locations.computeIfAbsent(output.getValue(), executor::location));
+		}
+
+		/**
+		 * Vrne lokacijo ukaza, ki je izpisal znak na danem mestu standardnega izhoda
+		 * (le, ce je bil vklopljen {@link Machine#debugOutputs}).
+		 *
+		 * @param offset Mesto znaka v standardnem izhodu.
+		 * @return Lokacija ukaza ali {@code null}, ce lokacija ni znana.
+		 */
+		public String outputLocation(final int offset) {
+			final Map.Entry<Integer, String> entry = outputLocations.floorEntry(offset);
+			return entry == null ? null : entry.getValue();
+		}
+
+	}
+
+	/**
+	 * Koncna vrednost staticne spremenljivke.
+	 *
+	 * Naslovi so v razlicnih konfiguracijah lahko razlicni, zato je vsaka beseda,
+	 * ki je lahko naslov, opisana tudi simbolicno: naslov staticne spremenljivke
+	 * z imenom njene oznake in odmikom, naslov konstante z nizom, ki se zacne na
+	 * tem naslovu, naslov na kopici z odmikom od zacetka kopice, naslov na skladu
+	 * pa samo kot tak.
+	 *
+	 * @param label    Oznaka staticne spremenljivke.
+	 * @param values   Besede.
+	 * @param pointers Simbolicni opisi besed ali {@code null} za besede, ki niso
+	 *                 naslovi.
+	 */
+	public record Static(int label, int[] values, String[] pointers) {
+	}
+
+	/**
+	 * Izvede preveden program.
+	 *
+	 * @param image Preveden program.
+	 * @param stdin Standardni vhod programa.
+	 * @return Rezultat izvajanja programa.
+	 */
+	public static Run run(final Image image, final String stdin) {
+		return quietly(() -> {
+			final ByteArrayOutputStream stdout = new ByteArrayOutputStream();
+			final Machine.Processor executor = RegMachine.enabled
+					? new RegMachine.Executor(RegGen.generate(image.codeSegment(), image.dataSegment()),
+							image.dataSegment(), image.packedStrings(), new ByteArrayInputStream(stdin.getBytes()),
+							new PrintStream(stdout))
+					: new Machine.Executor(CodeGen.immediates(image.codeSegment()), image.dataSegment(),
+							image.packedStrings(), new ByteArrayInputStream(stdin.getBytes()), new PrintStream(stdout));
+			String error = null;
+			String errorType = null;
+			try {
+				executor.run();
+			} catch (Report.Error | RuntimeException | StackOverflowError exception) {
+				error = exception.getClass().getSimpleName() + ": " + exception.getMessage() + " at "
+						+ executor.location(executor.PC());
+				errorType = exception.getClass().getName();
+			}
+
+			// Staticne spremenljivke so oznake global:..., ki jim sledi slika podatkov.
+			final TreeMap<Integer, Integer> regions = new TreeMap<Integer, Integer>();
+			final Map<Integer, Integer> sizes = new LinkedHashMap<Integer, Integer>();
+			int dataStart = 0;
+			int dataSize = 0;
+			PDM.LABEL label = null;
+			for (final PDM.DataInstr instr : image.dataSegment()) {
+				if (instr instanceof PDM.LABEL l) {
+					if (regions.isEmpty())
+						dataStart = executor.labelAddr(l.label) - dataSize;
+					regions.put(executor.labelAddr(l.label), l.label);
+					label = "global".equals(Labels.kind(l.label)) ? l : null;
+				} else if (label != null)
+					sizes.merge(label.label, instr.size(), Integer::sum);
+				dataSize += instr.size();
+			}
+			final SortedMap<String, Static> statics = new TreeMap<String, Static>();
+			for (final Map.Entry<Integer, Integer> size : sizes.entrySet()) {
+				final int addr = executor.labelAddr(size.getKey());
+				final int[] values = new int[size.getValue() / 4];
+				final String[] pointers = new String[values.length];
+				for (int v = 0; v < values.length; v++) {
+					values[v] = executor.load(addr + 4 * v);
+					pointers[v] = pointer(executor, regions, dataStart, dataSize, image.packedStrings(), values[v]);
+				}
+				statics.put(Labels.name(size.getKey()), new Static(size.getKey(), values, pointers));
+			}
+
+			return new Run(executor, stdout.toString(), error, errorType, statics);
+		});
+	}
+
+	/**
+	 * Simbolicno opise besedo, ki je lahko naslov.
+	 *
+	 * @param executor      Stroj, ki je izvedel program.
+	 * @param regions       Oznake podatkov po njihovih naslovih.
+	 * @param dataStart     Zacetek podatkov.
+	 * @param dataSize      Velikost podatkov.
+	 * @param packedStrings Ali so nizi programa shranjeni po en znak na bajt.
+	 * @param value         Beseda.
+	 * @return Simbolicni opis naslova ali {@code null}, ce beseda ni naslov.
+	 */
+	private static String pointer(final Machine.Processor executor, final TreeMap<Integer, Integer> regions,
+			final int dataStart, final int dataSize, final boolean packedStrings, final int value) {
+		final int heapStart = dataStart + dataSize;
+		if ((value >= dataStart) && (value < heapStart)) {
+			final Map.Entry<Integer, Integer> region = regions.floorEntry(value);
+			if ((region != null) && "global".equals(Labels.kind(region.getValue())))
+				return "&" + Labels.name(region.getValue()) + "+" + (value - region.getKey());
+			final StringBuilder string = new StringBuilder();
+			for (int addr = value; addr < heapStart; addr += packedStrings ? 1 : 4) {
+				final int c = packedStrings ? executor.load(addr) & 0xFF : executor.load(addr);
+				if (c == 0)
+					break;
+				string.append((char) c);
+			}
+			return "&\"" + string.toString().replace("\n", "\\n") + "\"";
+		}
+		if ((value >= heapStart) && (value < heapStart + executor.heapSize()))
+			return "&heap+" + (value - heapStart);
+		if ((value >= 0x10000 - executor.stackSize()) && (value <= 0x10000))
+			return "&stack";
+		return null;
+	}
+
+	/**
+	 * Prebere standardni vhod programa: ce obstaja datoteka z istim imenom kot
+	 * izvorna datoteka in koncnico {@code .in}, se uporabi njena vsebina, sicer pa
+	 * prazna vrstica.
+	 *
+	 * @param srcFileName Ime izvorne datoteke.
+	 * @return Standardni vhod programa.
+	 */
+	public static String stdin(final String srcFileName) {
+		final File inFile = new File(srcFileName.replaceFirst("\\.pins25$", "") + ".in");
+		try {
+			return inFile.exists() ? new String(java.nio.file.Files.readAllBytes(inFile.toPath())) : "\n";
+		} catch (IOException __) {
+			throw new Report.Error("Cannot read input file '" + inFile + "'.");
+		}
+	}
+
+	/**
+	 * Poisce vse izvorne datoteke.
+	 *
+	 * @param paths Imena datotek in imenikov.
+	 * @return Imena izvornih datotek (imeniki so nadomesceni z vsemi datotekami s
+	 *         koncnico {@code .pins25} v njih).
+	 */
+	public static List<String> sources(final List<String> paths) {
+		final List<String> sources = new ArrayList<String>();
+		for (final String path : paths) {
+			final File file = new File(path);
+			if (file.isDirectory()) {
+				final File[] files = file.listFiles((dir, name) -> name.endsWith(".pins25"));
+				Arrays.sort(files);
+				for (final File srcFile : files)
+					sources.add(srcFile.getPath());
+			} else
+				sources.add(path);
+		}
+		return sources;
+	}
+
+}
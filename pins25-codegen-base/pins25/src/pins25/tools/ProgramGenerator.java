@@ -0,0 +1,667 @@
+package pins25.tools;
+
+import java.util.*;
+
+import pins25.common.*;
+
+/**
+ * Generator nakljucnih programov po slovnici sintaksnega analizatorja.
+ *
+ * Generirani programi se vedno koncajo in se izvedejo brez napake: funkcije
+ * klicejo le prej definirane funkcije, rekurzivne funkcije pa imajo kot prvi
+ * parameter gorivo, ki se pri vsakem rekurzivnem klicu zmanjsa, vsaka zanka
+ * ima svoj stevec z omejenim stevilom ponovitev, delitelj je vedno oblike
+ * {@code e*e+1} (kar ni nikoli {@code 0}), indeksi tabel pa so vedno med
+ * {@code 0} in {@code 9}.
+ *
+ * Kazalci so spremenljivke, ki jim je na zacetku njihovega dosega prirejen
+ * naslov spremenljivke ali elementa tabele, ki zivi vsaj tako dolgo kot kazalec,
+ * in jim drugih vrednosti ni mozno prirediti. Nizi se uporabljajo le prek
+ * spremenljivk z naslovi konstant, ki se samo izpisujejo, zato je izhod
+ * programa neodvisen od predstavitve nizov v pomnilniku. Posamezni bajti se
+ * berejo in pisejo le v tabelah.
+ */
+public class ProgramGenerator {
+
+	/** Dolzina vseh tabel (v besedah). */
+	private static final int ARRAY_LEN = 10;
+
+	/** Najvecja globina gnezdenja funkcij. */
+	private static final int MAX_NESTING = 4;
+
+	/** Najvecja zacetna vrednost goriva rekurzivne funkcije. */
+	private static final int MAX_FUEL = 5;
+
+	/** Izvor nakljucnih stevil. */
+	private final Random random;
+
+	/** Izvorna koda programa. */
+	private final StringBuffer src = new StringBuffer();
+
+	/** Stevec imen, ki zagotavlja, da so vsa imena v programu razlicna. */
+	private int nameCounter = 0;
+
+	/**
+	 * Funkcija, ki jo je mozno klicati.
+	 *
+	 * @param name   Ime funkcije.
+	 * @param arity  Stevilo parametrov (brez goriva).
+	 * @param fuel   Ali je funkcija rekurzivna (in je njen prvi parameter gorivo).
+	 * @param nested Ali je funkcija gnezdena.
+	 */
+	private record Fun(String name, int arity, boolean fuel, boolean nested) {
+	}
+
+	/**
+	 * Doseg imen med generiranjem.
+	 *
+	 * @param scalars  Spremenljivke in parametri, ki jim je mozno prirediti
+	 *                 vrednost.
+	 * @param counters Stevci zank in spremenljivke, ki se jih le bere.
+	 * @param arrays   Tabele.
+	 * @param pointers Kazalci.
+	 * @param strings  Spremenljivke z naslovi nizov.
+	 * @param funs     Funkcije, ki jih je mozno klicati.
+	 * @param loops    Globina gnezdenja zank.
+	 * @param lets     Globina gnezdenja stavkov {@code let}.
+	 * @param nesting  Globina gnezdenja funkcij.
+	 */
+	private record Scope(List<String> scalars, List<String> counters, List<String> arrays, List<String> pointers,
+			List<String> strings, List<Fun> funs, int loops, int lets, int nesting) {
+
+		Scope copy(final int loops, final int lets) {
+			return new Scope(new ArrayList<String>(scalars), new ArrayList<String>(counters),
+					new ArrayList<String>(arrays), new ArrayList<String>(pointers), new ArrayList<String>(strings),
+					new ArrayList<Fun>(funs), loops, lets, nesting);
+		}
+
+		/**
+		 * Vrne doseg imen telesa gnezdene funkcije.
+		 *
+		 * @param readOnly Ali funkcija spremenljivke in parametre zunanjih funkcij le
+		 *                 bere (in jo je zato mozno dvigniti na vrhnji nivo).
+		 * @return Doseg imen telesa gnezdene funkcije.
+		 */
+		Scope nested(final boolean readOnly) {
+			if (!readOnly)
+				return new Scope(new ArrayList<String>(scalars), new ArrayList<String>(counters),
+						new ArrayList<String>(arrays), new ArrayList<String>(pointers),
+						new ArrayList<String>(strings), new ArrayList<Fun>(funs), 0, 0, nesting + 1);
+			final List<String> counters = new ArrayList<String>(this.counters);
+			counters.addAll(scalars);
+			return new Scope(new ArrayList<String>(), counters, new ArrayList<String>(), new ArrayList<String>(),
+					new ArrayList<String>(), new ArrayList<Fun>(funs.stream().filter(fun -> !fun.nested).toList()),
+					0, 0, MAX_NESTING);
+		}
+
+	}
+
+	/**
+	 * Ustvari nov generator nakljucnih programov.
+	 *
+	 * @param seed Seme generatorja nakljucnih stevil.
+	 */
+	public ProgramGenerator(final long seed) {
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * Generira nov nakljucni program.
+	 *
+	 * @return Izvorna koda programa.
+	 */
+	public String generate() {
+		src.setLength(0);
+		src.append("fun putint(v)\nfun putstr(s)\nfun exit(c)\nfun getbyte(a)\nfun putbyte(a, b)\n\n");
+
+		final Scope global = new Scope(new ArrayList<String>(), new ArrayList<String>(), new ArrayList<String>(),
+				new ArrayList<String>(), new ArrayList<String>(), new ArrayList<Fun>(), 0, 0, 1);
+		final int numGlobals = 1 + random.nextInt(3);
+		for (int g = 0; g < numGlobals; g++) {
+			final String name = name("g");
+			src.append("var " + name + " = " + init() + "\n");
+			global.scalars.add(name);
+		}
+		final int numArrays = random.nextInt(3);
+		for (int a = 0; a < numArrays; a++) {
+			final String name = name("a");
+			src.append("var " + name + " = " + arrayInit() + "\n");
+			global.arrays.add(name);
+		}
+		// Kazalci in spremenljivke z naslovi nizov dobijo vrednost na zacetku glavnega
+		// programa, pred klici vseh ostalih funkcij.
+		final List<String> prelude = new ArrayList<String>();
+		final List<String> targets = targets(global);
+		final int numPointers = targets.isEmpty() ? 0 : random.nextInt(2);
+		for (int p = 0; p < numPointers; p++) {
+			final String name = name("q");
+			src.append("var " + name + " = 0\n");
+			prelude.add(pad(1) + name + " = " + pick(targets));
+			global.pointers.add(name);
+		}
+		final int numStrings = random.nextInt(2);
+		for (int s = 0; s < numStrings; s++) {
+			final String name = name("s");
+			src.append("var " + name + " = 0\n");
+			prelude.add(pad(1) + name + " = " + string());
+			global.strings.add(name);
+		}
+		src.append("\n");
+
+		final int numFuns = random.nextInt(4);
+		for (int f = 0; f < numFuns; f++) {
+			if (random.nextInt(3) == 0) {
+				recursion(global);
+				continue;
+			}
+			final String name = name("f");
+			final int arity = random.nextInt(4);
+			final Scope scope = global.copy(0, 0);
+			src.append("fun " + name + "(" + pars(arity, scope) + ") =\n");
+			src.append(body(scope, 1));
+			src.append("\n\n");
+			global.funs.add(new Fun(name, arity, false, false));
+		}
+
+		src.append("fun main() =\n");
+		final Scope scope = global.copy(0, 0);
+		for (final String stmt : prelude)
+			src.append(stmt + ",\n");
+		for (final String stmt : stmts(scope, 1, 2 + random.nextInt(4))) {
+			src.append(stmt);
+			src.append(",\n");
+		}
+		for (final String scalar : global.scalars)
+			src.append("    putint(" + scalar + "), putstr(\" \\00\"),\n");
+		for (final String string : global.strings)
+			src.append("    putstr(" + string + "),\n");
+		for (final String array : global.arrays)
+			src.append("    putint((^" + array + " + 4 * " + random.nextInt(ARRAY_LEN) + ")^), putstr(\" \\00\"),\n");
+		if (random.nextInt(4) == 0)
+			src.append("    exit(" + expr(scope, 2) + ")\n");
+		else
+			src.append("    0\n");
+		return src.toString();
+	}
+
+	/**
+	 * Vrne novo ime.
+	 *
+	 * @param prefix Predpona imena.
+	 * @return Novo ime.
+	 */
+	private String name(final String prefix) {
+		return prefix + (nameCounter++);
+	}
+
+	/**
+	 * Zgenerira par vzajemno rekurzivnih funkcij na vrhnjem nivoju: prva na
+	 * repnem mestu klice drugo z zmanjsanim gorivom, druga pa prvo klice le, ce
+	 * gorivo se ni porabljeno.
+	 *
+	 * @param global Doseg imen na vrhnjem nivoju.
+	 */
+	private void recursion(final Scope global) {
+		final String name = name("r");
+		final String step = name("t");
+		final int arity = random.nextInt(3);
+
+		final String fuel = name("d");
+		final Scope scope = global.copy(0, 0);
+		scope.counters.add(fuel);
+		final String pars = pars(arity, scope);
+		src.append("fun " + name + "(" + fuel + (arity > 0 ? ", " : "") + pars + ") =\n");
+		for (final String stmt : stmts(scope, 1, random.nextInt(3)))
+			src.append(stmt + ",\n");
+		src.append(pad(1) + step + "(" + fuel + " - 1, " + expr(scope, 2) + ")\n\n");
+
+		final String stepFuel = name("d");
+		final String par = name("p");
+		final String result = name("v");
+		final Scope stepScope = global.copy(0, 1);
+		stepScope.counters.add(stepFuel);
+		stepScope.scalars.add(par);
+		stepScope.scalars.add(result);
+		src.append("fun " + step + "(" + stepFuel + ", " + par + ") =\n");
+		src.append(pad(1) + "let var " + result + " = 0 in\n");
+		src.append(pad(2) + "if " + stepFuel + " > 0 then\n");
+		src.append(pad(3) + result + " = " + par + " + " + name + "(" + stepFuel);
+		for (int a = 0; a < arity; a++)
+			src.append(", " + expr(stepScope, 2));
+		src.append(")\n");
+		src.append(pad(2) + "end,\n");
+		src.append(pad(2) + result + "\n");
+		src.append(pad(1) + "end\n\n");
+
+		global.funs.add(new Fun(name, arity, true, false));
+	}
+
+	/**
+	 * Vrne naslove spremenljivk in elementov tabel, ki jih je mozno prirediti
+	 * kazalcu.
+	 *
+	 * @param scope Doseg imen, v katerem je kazalec definiran.
+	 * @return Naslovi spremenljivk in elementov tabel.
+	 */
+	private List<String> targets(final Scope scope) {
+		final List<String> targets = new ArrayList<String>();
+		for (final String scalar : scope.scalars)
+			targets.add("^" + scalar);
+		for (final String array : scope.arrays)
+			targets.add("^" + array + " + 4 * " + random.nextInt(ARRAY_LEN));
+		return targets;
+	}
+
+	/**
+	 * Zgenerira niz.
+	 *
+	 * @return Niz.
+	 */
+	private String string() {
+		final StringBuffer string = new StringBuffer("\"");
+		final int length = 1 + random.nextInt(3);
+		for (int c = 0; c < length; c++)
+			string.append((char) ('a' + random.nextInt(3)));
+		return string.append(" \\00\"").toString();
+	}
+
+	/**
+	 * Zgenerira parametre funkcije.
+	 *
+	 * @param arity Stevilo parametrov.
+	 * @param scope Doseg imen telesa funkcije.
+	 * @return Seznam parametrov.
+	 */
+	private String pars(final int arity, final Scope scope) {
+		final StringBuffer pars = new StringBuffer();
+		for (int p = 0; p < arity; p++) {
+			final String name = name("p");
+			pars.append((p > 0 ? ", " : "") + name);
+			scope.scalars.add(name);
+		}
+		return pars.toString();
+	}
+
+	/**
+	 * Zgenerira telo funkcije (zadnji stavek je vedno izraz).
+	 *
+	 * @param scope  Doseg imen telesa funkcije.
+	 * @param indent Zamik.
+	 * @return Telo funkcije.
+	 */
+	private String body(final Scope scope, final int indent) {
+		final StringBuffer body = new StringBuffer();
+		for (final String stmt : stmts(scope, indent, random.nextInt(4)))
+			body.append(stmt + ",\n");
+		body.append(pad(indent) + expr(scope, 3));
+		return body.toString();
+	}
+
+	/**
+	 * Zgenerira zacetno vrednost skalarne spremenljivke.
+	 *
+	 * @return Zacetna vrednost.
+	 */
+	private String init() {
+		return switch (random.nextInt(3)) {
+			case 0 -> "'" + (char) ('a' + random.nextInt(26)) + "'";
+			default -> Integer.toString(random.nextInt(100));
+		};
+	}
+
+	/**
+	 * Zgenerira zacetno vrednost tabele dolzine vsaj {@link #ARRAY_LEN}.
+	 *
+	 * Zadnja zacetna vrednost vedno pokrije celotno tabelo, saj {@link pins25.phase.Memory}
+	 * velikost spremenljivke doloci le iz zadnje zacetne vrednosti; tako se tudi
+	 * pri razlicni razporeditvi podatkov nikoli ne bere izven tabele.
+	 *
+	 * @return Zacetna vrednost.
+	 */
+	private String arrayInit() {
+		return switch (random.nextInt(3)) {
+			case 0 -> ARRAY_LEN + "*0";
+			case 1 -> ARRAY_LEN + "*" + random.nextInt(50);
+			default -> {
+				final int fst = 1 + random.nextInt(ARRAY_LEN - 1);
+				yield fst + "*" + random.nextInt(50) + ", " + ARRAY_LEN + "*'" + (char) ('a' + random.nextInt(26)) + "'";
+			}
+		};
+	}
+
+	/**
+	 * Vrne zamik.
+	 *
+	 * @param indent Globina zamika.
+	 * @return Zamik.
+	 */
+	private String pad(final int indent) {
+		return "    ".repeat(indent);
+	}
+
+	/**
+	 * Zgenerira zaporedje stavkov.
+	 *
+	 * @param scope  Doseg imen.
+	 * @param indent Zamik.
+	 * @param num    Stevilo stavkov.
+	 * @return Seznam stavkov.
+	 */
+	private List<String> stmts(final Scope scope, final int indent, final int num) {
+		final List<String> stmts = new ArrayList<String>();
+		for (int s = 0; s < num; s++)
+			stmts.add(stmt(scope, indent));
+		return stmts;
+	}
+
+	/**
+	 * Zgenerira stavek.
+	 *
+	 * @param scope  Doseg imen.
+	 * @param indent Zamik.
+	 * @return Stavek.
+	 */
+	private String stmt(final Scope scope, final int indent) {
+		final String pad = pad(indent);
+		switch (random.nextInt(13)) {
+			case 0:
+			case 1:
+				if (!scope.scalars.isEmpty())
+					return pad + pick(scope.scalars) + " = " + expr(scope, 3);
+				break;
+			case 2:
+				if (!scope.arrays.isEmpty())
+					return pad + element(scope, 2) + " = " + expr(scope, 3);
+				break;
+			case 3:
+				if (!scope.scalars.isEmpty())
+					return pad + "(^" + pick(scope.scalars) + ")^ = " + expr(scope, 3);
+				break;
+			case 4:
+				if (indent < 5) {
+					final StringBuffer stmt = new StringBuffer();
+					stmt.append(pad + "if " + expr(scope, 3) + " then\n");
+					stmt.append(String.join(",\n", stmts(scope.copy(scope.loops, scope.lets), indent + 1,
+							1 + random.nextInt(3))));
+					if (random.nextBoolean()) {
+						stmt.append("\n" + pad + "else\n");
+						stmt.append(String.join(",\n", stmts(scope.copy(scope.loops, scope.lets), indent + 1,
+								1 + random.nextInt(3))));
+					}
+					stmt.append("\n" + pad + "end");
+					return stmt.toString();
+				}
+				break;
+			case 5:
+				if (scope.loops < 2)
+					return loop(scope, indent);
+				break;
+			case 6:
+				if (scope.lets < 2)
+					return let(scope, indent);
+				break;
+			case 7:
+				return pad + "putint(" + expr(scope, 3) + "), putstr(\" \\00\")";
+			case 8:
+				if (!scope.funs.isEmpty())
+					return pad + call(scope, 2);
+				break;
+			case 9:
+				if (!scope.pointers.isEmpty())
+					return pad + "(" + pick(scope.pointers) + ")^ = " + expr(scope, 3);
+				break;
+			case 10:
+				if (!scope.strings.isEmpty()) {
+					final String string = pick(scope.strings);
+					if (random.nextBoolean())
+						return pad + string + " = " + string();
+					return pad + "putstr(" + string + ")";
+				}
+				break;
+			case 11:
+				if (!scope.arrays.isEmpty())
+					return pad + "putbyte(" + byteAddr(scope) + ", " + expr(scope, 2) + ")";
+				break;
+			default:
+				break;
+		}
+		return pad + "putstr(\"" + (char) ('a' + random.nextInt(26)) + "\\00\")";
+	}
+
+	/**
+	 * Zgenerira zanko z omejenim stevilom ponovitev.
+	 *
+	 * @param scope  Doseg imen.
+	 * @param indent Zamik.
+	 * @return Zanka.
+	 */
+	private String loop(final Scope scope, final int indent) {
+		final String pad = pad(indent);
+		final String counter = name("c");
+		final Scope body = scope.copy(scope.loops + 1, scope.lets);
+		body.counters.add(counter);
+		final StringBuffer stmt = new StringBuffer();
+		stmt.append(pad + "let var " + counter + " = 0 in\n");
+		stmt.append(pad + "    while " + counter + " < " + (1 + random.nextInt(3)));
+		if (random.nextBoolean())
+			stmt.append(" && " + expr(body, 2));
+		stmt.append(" do\n");
+		for (final String s : stmts(body, indent + 2, 1 + random.nextInt(3)))
+			stmt.append(s + ",\n");
+		stmt.append(pad + "        " + counter + " = " + counter + " + 1\n");
+		stmt.append(pad + "    end\n");
+		stmt.append(pad + "end");
+		return stmt.toString();
+	}
+
+	/**
+	 * Zgenerira stavek {@code let} z lokalnimi spremenljivkami in gnezdenimi
+	 * funkcijami.
+	 *
+	 * @param scope  Doseg imen.
+	 * @param indent Zamik.
+	 * @return Stavek {@code let}.
+	 */
+	private String let(final Scope scope, final int indent) {
+		final String pad = pad(indent);
+		final Scope inner = scope.copy(scope.loops, scope.lets + 1);
+		final StringBuffer stmt = new StringBuffer();
+		final List<String> prelude = new ArrayList<String>();
+		stmt.append(pad + "let\n");
+		final boolean funs = scope.nesting < MAX_NESTING;
+		final int numVars = (funs ? 0 : 1) + random.nextInt(3);
+		for (int v = 0; v < numVars; v++) {
+			final String name = name("l");
+			if (random.nextInt(3) == 0) {
+				stmt.append(pad + "    var " + name + " = " + arrayInit() + "\n");
+				inner.arrays.add(name);
+			} else {
+				stmt.append(pad + "    var " + name + " = " + init() + "\n");
+				inner.scalars.add(name);
+			}
+		}
+		// Kazalec lahko kaze le na spremenljivke, ki zivijo vsaj tako dolgo kot on.
+		final List<String> targets = targets(inner);
+		if (!targets.isEmpty() && (random.nextInt(3) == 0)) {
+			final String name = name("q");
+			stmt.append(pad + "    var " + name + " = 0\n");
+			prelude.add(pad + "    " + name + " = " + pick(targets));
+			inner.pointers.add(name);
+		}
+		if (random.nextInt(4) == 0) {
+			final String name = name("s");
+			stmt.append(pad + "    var " + name + " = 0\n");
+			prelude.add(pad + "    " + name + " = " + string());
+			inner.strings.add(name);
+		}
+		final int numFuns = funs ? (numVars == 0 ? 1 : 0) + random.nextInt(2) : 0;
+		for (int f = 0; f < numFuns; f++) {
+			final String name = name("h");
+			final int arity = random.nextInt(3);
+			// Gnezdena funkcija lahko bere stevce zank, ki jo obdajajo, ne more pa jih
+			// spreminjati, saj stevci niso med spremenljivkami, ki jim je mozno prirediti
+			// vrednost.
+			final boolean readOnly = random.nextInt(3) == 0;
+			final Scope funScope = inner.nested(readOnly);
+			final boolean fuel = !readOnly && (random.nextInt(3) == 0);
+			if (fuel) {
+				// Rekurzivna gnezdena funkcija se klice le z zmanjsanim gorivom.
+				final String fuelName = name("d");
+				funScope.counters.add(fuelName);
+				final String pars = pars(arity, funScope);
+				stmt.append(pad + "    fun " + name + "(" + fuelName + (arity > 0 ? ", " : "") + pars + ") =\n");
+				for (final String s : stmts(funScope, indent + 2, random.nextInt(3)))
+					stmt.append(s + ",\n");
+				if (!funScope.scalars.isEmpty()) {
+					stmt.append(pad(indent + 2) + "if " + fuelName + " > 0 then\n");
+					stmt.append(pad(indent + 3) + pick(funScope.scalars) + " = " + name + "(" + fuelName + " - 1");
+					for (int a = 0; a < arity; a++)
+						stmt.append(", " + expr(funScope, 2));
+					stmt.append(")\n" + pad(indent + 2) + "end,\n");
+				}
+				stmt.append(pad(indent + 2) + expr(funScope, 3) + "\n");
+			} else {
+				stmt.append(pad + "    fun " + name + "(" + pars(arity, funScope) + ") =\n");
+				stmt.append(body(funScope, indent + 2) + "\n");
+			}
+			inner.funs.add(new Fun(name, arity, fuel, true));
+		}
+		stmt.append(pad + "in\n");
+		final List<String> stmts = new ArrayList<String>(prelude);
+		stmts.addAll(stmts(inner, indent + 1, 1 + random.nextInt(3)));
+		stmt.append(String.join(",\n", stmts));
+		stmt.append("\n" + pad + "end");
+		return stmt.toString();
+	}
+
+	/**
+	 * Zgenerira izraz.
+	 *
+	 * @param scope Doseg imen.
+	 * @param depth Najvecja globina izraza.
+	 * @return Izraz.
+	 */
+	private String expr(final Scope scope, final int depth) {
+		if (depth == 0)
+			return leaf(scope);
+		switch (random.nextInt(12)) {
+			case 0:
+			case 1:
+				return leaf(scope);
+			case 2:
+				return "(" + pick(List.of("-", "!", "+")) + "(" + expr(scope, depth - 1) + "))";
+			case 3: {
+				final String divisor = expr(scope, depth - 1);
+				return "(" + expr(scope, depth - 1) + " " + pick(List.of("/", "%")) + " ((" + divisor + ") * ("
+						+ divisor + ") + 1))";
+			}
+			case 4:
+				if (!scope.funs.isEmpty())
+					return call(scope, depth - 1);
+				return leaf(scope);
+			case 5:
+				if (!scope.arrays.isEmpty())
+					return element(scope, depth - 1);
+				return leaf(scope);
+			case 6:
+				return "(" + expr(scope, depth - 1) + " " + pick(List.of("==", "!=", "<", ">", "<=", ">="))
+						+ " " + expr(scope, depth - 1) + ")";
+			case 7:
+				return "(" + expr(scope, depth - 1) + " " + pick(List.of("&&", "||")) + " "
+						+ expr(scope, depth - 1) + ")";
+			default:
+				return "(" + expr(scope, depth - 1) + " " + pick(List.of("+", "-", "*")) + " "
+						+ expr(scope, depth - 1) + ")";
+		}
+	}
+
+	/**
+	 * Zgenerira list izraza.
+	 *
+	 * @param scope Doseg imen.
+	 * @return List izraza.
+	 */
+	private String leaf(final Scope scope) {
+		switch (random.nextInt(9)) {
+			case 0:
+				return Integer.toString(random.nextInt(10));
+			case 1:
+				return pick(List.of("2147483647", "65536", "1000000", "0", "1"));
+			case 2:
+				return "'" + (char) ('a' + random.nextInt(26)) + "'";
+			case 3:
+				if (!scope.counters.isEmpty())
+					return pick(scope.counters);
+				break;
+			case 4:
+				if (!scope.scalars.isEmpty())
+					return "(^" + pick(scope.scalars) + ")^";
+				break;
+			case 5:
+				if (!scope.pointers.isEmpty())
+					return "(" + pick(scope.pointers) + ")^";
+				if (!scope.arrays.isEmpty())
+					return "getbyte(" + byteAddr(scope) + ")";
+				break;
+			default:
+				if (!scope.scalars.isEmpty())
+					return pick(scope.scalars);
+				break;
+		}
+		return Integer.toString(random.nextInt(100));
+	}
+
+	/**
+	 * Zgenerira element tabele.
+	 *
+	 * @param scope Doseg imen.
+	 * @param depth Najvecja globina izraza za indeks.
+	 * @return Element tabele (kot levi izraz).
+	 */
+	private String element(final Scope scope, final int depth) {
+		return "(^" + pick(scope.arrays) + " + 4 * (((" + expr(scope, depth) + ") % " + ARRAY_LEN + " + "
+				+ ARRAY_LEN + ") % " + ARRAY_LEN + "))^";
+	}
+
+	/**
+	 * Zgenerira naslov bajta v tabeli.
+	 *
+	 * @param scope Doseg imen.
+	 * @return Naslov bajta.
+	 */
+	private String byteAddr(final Scope scope) {
+		return "^" + pick(scope.arrays) + " + " + random.nextInt(4 * ARRAY_LEN);
+	}
+
+	/**
+	 * Zgenerira klic funkcije.
+	 *
+	 * @param scope Doseg imen.
+	 * @param depth Najvecja globina izrazov za argumente.
+	 * @return Klic funkcije.
+	 */
+	private String call(final Scope scope, final int depth) {
+		final Fun fun = pick(scope.funs);
+		final StringBuffer call = new StringBuffer(fun.name + "(");
+		if (fun.fuel)
+			call.append(random.nextInt(MAX_FUEL + 1) + (fun.arity > 0 ? ", " : ""));
+		for (int a = 0; a < fun.arity; a++)
+			call.append((a > 0 ? ", " : "") + expr(scope, depth));
+		call.append(")");
+		return call.toString();
+	}
+
+	/**
+	 * Izbere nakljucni element seznama.
+	 *
+	 * @param <Elem> Tip elementov seznama.
+	 * @param list   Seznam.
+	 * @return Nakljucni element seznama.
+	 */
+	private <Elem> Elem pick(final List<Elem> list) {
+		if (list.isEmpty())
+			throw new Report.InternalError();
+		return list.get(random.nextInt(list.size()));
+	}
+
+}
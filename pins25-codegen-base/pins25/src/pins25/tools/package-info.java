@@ -0,0 +1,4 @@
+/**
+ * Orodja za preverjanje in merjenje prevajalnika.
+ */
+package pins25.tools;